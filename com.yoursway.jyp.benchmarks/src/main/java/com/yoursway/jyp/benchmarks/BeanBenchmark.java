@@ -0,0 +1,81 @@
+package com.yoursway.jyp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yoursway.jyp.BeanEncoding;
+import com.yoursway.jyp.JSON;
+import com.yoursway.jyp.BeanEncoding.BeanificationException;
+import com.yoursway.jyp.JSON.SyntaxError;
+import com.yoursway.jyp.benchmarks.beans.ItemBean;
+import com.yoursway.jyp.benchmarks.beans.OrderBean;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BeanBenchmark {
+    
+    @Param( { "1", "100" })
+    public int items;
+    
+    private OrderBean order;
+    
+    private Object simplified;
+    
+    private String json;
+    
+    @Setup
+    public void setUp() throws SyntaxError {
+        List<ItemBean> list = new ArrayList<ItemBean>();
+        for (int i = 0; i < items; i++) {
+            ItemBean item = new ItemBean();
+            item.setSku("sku-" + i);
+            item.setQuantity(i % 7 + 1);
+            item.setPrice(9.99 + i);
+            list.add(item);
+        }
+        order = new OrderBean(list);
+        order.setId(42);
+        order.setCustomer("Andrey");
+        simplified = BeanEncoding.simplify(order);
+        json = JSON.encode(simplified);
+        simplified = JSON.decode(json);
+    }
+    
+    @Benchmark
+    public Object simplify() {
+        return BeanEncoding.simplify(order);
+    }
+    
+    @Benchmark
+    public OrderBean beanify() throws BeanificationException {
+        return BeanEncoding.beanify(simplified, OrderBean.class);
+    }
+    
+    @Benchmark
+    public String simplifyAndEncode() {
+        return JSON.encode(BeanEncoding.simplify(order));
+    }
+    
+    @Benchmark
+    public OrderBean decodeAndBeanify() throws SyntaxError, BeanificationException {
+        return BeanEncoding.beanify(JSON.decode(json), OrderBean.class);
+    }
+    
+}
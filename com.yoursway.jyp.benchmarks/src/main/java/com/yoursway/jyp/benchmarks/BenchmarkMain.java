@@ -0,0 +1,20 @@
+package com.yoursway.jyp.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks selected on the command line (all of them by default)
+ * with the GC profiler enabled, so that allocation rates are reported next to
+ * the throughput. Accepts the usual JMH command line options.
+ */
+public class BenchmarkMain {
+    
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().parent(new CommandLineOptions(args)).addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+    
+}
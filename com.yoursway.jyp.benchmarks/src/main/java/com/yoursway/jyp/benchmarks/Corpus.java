@@ -0,0 +1,104 @@
+package com.yoursway.jyp.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Representative documents, in the simplified representation accepted by
+ * <code>JSON.encode</code>. Each one is generated from a fixed seed, so all
+ * runs measure the same input.
+ */
+public enum Corpus {
+    
+    /** A single RPC-sized record of about 200 characters. */
+    SMALL {
+        @Override
+        Object create(Random random) {
+            Map<Object, Object> record = new HashMap<Object, Object>();
+            record.put("method", "getQuote");
+            record.put("id", random.nextInt(100000));
+            record.put("symbol", text(random, 4).toUpperCase());
+            record.put("bid", random.nextDouble() * 100);
+            record.put("ask", random.nextDouble() * 100);
+            record.put("exchanges", List.of("NYSE", "NASDAQ", "LSE"));
+            record.put("comment", text(random, 60));
+            return record;
+        }
+    },
+    
+    /** An array of records made of integers, longs and doubles. */
+    NUMERIC {
+        @Override
+        Object create(Random random) {
+            List<Object> records = new ArrayList<Object>();
+            for (int i = 0; i < 1000; i++) {
+                Map<Object, Object> record = new HashMap<Object, Object>();
+                record.put("id", i);
+                record.put("ts", 1236500000000L + random.nextInt(1000000));
+                record.put("value", random.nextDouble() * 1000);
+                record.put("delta", random.nextInt(200) - 100);
+                records.add(record);
+            }
+            return records;
+        }
+    },
+    
+    /** An array of records with long text values, some needing escapes. */
+    STRINGS {
+        @Override
+        Object create(Random random) {
+            List<Object> records = new ArrayList<Object>();
+            for (int i = 0; i < 200; i++) {
+                Map<Object, Object> record = new HashMap<Object, Object>();
+                record.put("title", text(random, 40));
+                record.put("body", text(random, 400));
+                record.put("quote", "\"" + text(random, 20) + "\"\n\t</" + text(random, 5) + ">");
+                records.add(record);
+            }
+            return records;
+        }
+    },
+    
+    /** Small objects nested a few hundred levels deep. */
+    NESTED {
+        @Override
+        Object create(Random random) {
+            Object value = text(random, 8);
+            for (int i = 0; i < 500; i++) {
+                Map<Object, Object> object = new HashMap<Object, Object>();
+                object.put("level", i);
+                object.put("child", i % 2 == 0 ? value : List.of(value, i));
+                value = object;
+            }
+            return value;
+        }
+    },
+    
+    /** A single object with thousands of keys. */
+    WIDE {
+        @Override
+        Object create(Random random) {
+            Map<Object, Object> object = new HashMap<Object, Object>();
+            for (int i = 0; i < 5000; i++)
+                object.put("key" + i, i % 3 == 0 ? text(random, 10) : random.nextInt());
+            return object;
+        }
+    };
+    
+    abstract Object create(Random random);
+    
+    public Object create() {
+        return create(new Random(42));
+    }
+    
+    private static String text(Random random, int length) {
+        StringBuilder result = new StringBuilder(length);
+        for (int i = 0; i < length; i++)
+            result.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+        return result.toString();
+    }
+    
+}
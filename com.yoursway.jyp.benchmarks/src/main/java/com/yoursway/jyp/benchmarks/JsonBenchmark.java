@@ -0,0 +1,72 @@
+package com.yoursway.jyp.benchmarks;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.yoursway.jyp.JSON;
+import com.yoursway.jyp.JSON.SyntaxError;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+    
+    @Param
+    public Corpus corpus;
+    
+    private Object value;
+    
+    private String json;
+    
+    private final JSON.Decoder decoder = new JSON.Decoder();
+    
+    private final JSON.Encoder encoder = new JSON.Encoder();
+    
+    @Setup
+    public void setUp() {
+        value = corpus.create();
+        json = JSON.encode(value);
+    }
+    
+    @Benchmark
+    public Object decodeString() throws SyntaxError {
+        return JSON.decode(json);
+    }
+    
+    @Benchmark
+    public Object decodeReader() throws SyntaxError, IOException {
+        return JSON.decode(new StringReader(json));
+    }
+    
+    @Benchmark
+    public String encode() {
+        return JSON.encode(value);
+    }
+    
+    @Benchmark
+    public Object decodeReusedDecoder() throws SyntaxError {
+        return decoder.decode(json);
+    }
+    
+    @Benchmark
+    public String encodeReusedEncoder() {
+        return encoder.encode(value);
+    }
+    
+}
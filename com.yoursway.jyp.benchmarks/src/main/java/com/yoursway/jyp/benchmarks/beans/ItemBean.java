@@ -0,0 +1,35 @@
+package com.yoursway.jyp.benchmarks.beans;
+
+public class ItemBean {
+    
+    private String sku;
+    
+    private int quantity;
+    
+    private double price;
+    
+    public String getSku() {
+        return sku;
+    }
+    
+    public void setSku(String sku) {
+        this.sku = sku;
+    }
+    
+    public int getQuantity() {
+        return quantity;
+    }
+    
+    public void setQuantity(int quantity) {
+        this.quantity = quantity;
+    }
+    
+    public double getPrice() {
+        return price;
+    }
+    
+    public void setPrice(double price) {
+        this.price = price;
+    }
+    
+}
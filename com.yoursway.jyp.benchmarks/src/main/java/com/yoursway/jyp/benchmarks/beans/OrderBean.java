@@ -0,0 +1,42 @@
+package com.yoursway.jyp.benchmarks.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.yoursway.jyp.BeanEncoding;
+
+public class OrderBean {
+    
+    private final List<ItemBean> items;
+    
+    private long id;
+    
+    private String customer;
+    
+    public OrderBean(@BeanEncoding.Property("items") List<ItemBean> items) {
+        if (items == null)
+            throw new NullPointerException("items is null");
+        this.items = new ArrayList<ItemBean>(items);
+    }
+    
+    public List<ItemBean> getItems() {
+        return items;
+    }
+    
+    public long getId() {
+        return id;
+    }
+    
+    public void setId(long id) {
+        this.id = id;
+    }
+    
+    public String getCustomer() {
+        return customer;
+    }
+    
+    public void setCustomer(String customer) {
+        this.customer = customer;
+    }
+    
+}
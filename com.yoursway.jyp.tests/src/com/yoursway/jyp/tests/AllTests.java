@@ -6,7 +6,8 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses( { JsonEncodingTests.class, JsonDecodingTests.class, BeanEncodingTests.class,
-        BeanDecodingTests.class })
+        BeanDecodingTests.class, CborTests.class, OffHeapCacheTests.class, BlockGzipTests.class,
+        ArrayIndexTests.class, ColumnsTests.class, PlistTests.class, YamlTests.class })
 public class AllTests {
     
 }
@@ -0,0 +1,162 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.yoursway.jyp.ArrayIndex;
+import com.yoursway.jyp.JSON.SyntaxError;
+
+public class ArrayIndexTests {
+    
+    private Path directory;
+    
+    private Path file;
+    
+    private Path indexFile;
+    
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("jyp");
+        file = directory.resolve("data.json");
+        indexFile = directory.resolve("data.json.idx");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(indexFile);
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory);
+    }
+    
+    private void write(String content) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void elements() throws IOException, SyntaxError {
+        write(" [ {\"id\": 1, \"name\": \"a,]}\\\"\"},\n  [1, [2]], \"caf\u00e9\", null , 42.5 ,{}]\n");
+        ArrayIndex index = ArrayIndex.open(file);
+        assertEquals(6, index.size());
+        assertEquals(3, index.offset(0));
+        assertEquals(map("id", 1, "name", "a,]}\""), index.get(0));
+        assertEquals(Arrays.asList(1, Arrays.asList(2)), index.get(1));
+        assertEquals("caf\u00e9", index.get(2));
+        assertNull(index.get(3));
+        assertEquals(42.5, index.get(4));
+        assertEquals(Collections.emptyMap(), index.get(5));
+        assertTrue(Files.exists(indexFile));
+        try {
+            index.get(6);
+            fail();
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+    
+    @Test
+    public void emptyArray() throws IOException {
+        write("[ ]");
+        assertEquals(0, ArrayIndex.open(file).size());
+    }
+    
+    @Test
+    public void keys() throws IOException, SyntaxError {
+        write("[{\"id\":\"x\",\"n\":{\"id\":\"inner\"}},{\"n\":2,\"id\":7},5,{\"id\":\"x\",\"n\":3}]");
+        ArrayIndex index = ArrayIndex.open(file, "id");
+        assertEquals(2, ((Map<?, ?>) index.get("7")).get("n"));
+        assertEquals("x", ((Map<?, ?>) index.get("x")).get("id"));
+        assertTrue(((Map<?, ?>) index.get("x")).get("n") instanceof Map);
+        assertNull(index.get("inner"));
+        assertNull(index.get("5"));
+        try {
+            ArrayIndex.open(file).get("x");
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+    
+    @Test
+    public void reuse() throws IOException, SyntaxError {
+        write("[1,2,3]");
+        ArrayIndex.open(file);
+        FileTime built = Files.getLastModifiedTime(indexFile);
+        Files.setLastModifiedTime(indexFile, FileTime.fromMillis(built.toMillis() - 60000));
+        FileTime aged = Files.getLastModifiedTime(indexFile);
+        assertEquals(3, ArrayIndex.open(file).get(2));
+        assertEquals(aged, Files.getLastModifiedTime(indexFile));
+    }
+    
+    @Test
+    public void append() throws IOException, SyntaxError {
+        FileTime time = FileTime.fromMillis(1000000000000L);
+        write("[{\"id\":1},{\"id\":2}]");
+        Files.setLastModifiedTime(file, time);
+        assertEquals(2, ArrayIndex.open(file, "id").size());
+        write("[{\"id\":1},{\"id\":2},\n{\"id\":3},{\"id\":1,\"dup\":true}]");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(time.toMillis() + 1000));
+        ArrayIndex index = ArrayIndex.open(file, "id");
+        assertEquals(4, index.size());
+        assertEquals(map("id", 3), index.get(2));
+        assertEquals(map("id", 3), index.get("3"));
+        assertEquals(map("id", 1), index.get("1"));
+    }
+    
+    @Test
+    public void rewrite() throws IOException, SyntaxError {
+        write("[\"aaaa\",\"bbbb\",\"cccc\"]");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1000000000000L));
+        assertEquals(3, ArrayIndex.open(file).size());
+        write("[\"aaaa\",\"zz\",\"y\",\"xxxx\"]");
+        ArrayIndex index = ArrayIndex.open(file);
+        assertEquals(4, index.size());
+        assertEquals("zz", index.get(1));
+        assertEquals("xxxx", index.get(3));
+    }
+    
+    @Test
+    public void incomplete() throws IOException, SyntaxError {
+        write("[1, {\"a\": [2, 3]}, {\"b\": \"x");
+        ArrayIndex index = ArrayIndex.open(file);
+        assertEquals(2, index.size());
+        assertEquals(map("a", Arrays.asList(2, 3)), index.get(1));
+        write("[1, {\"a\": [2, 3]}, {\"b\": \"xyz\"}, 4]");
+        index = ArrayIndex.open(file);
+        assertEquals(4, index.size());
+        assertEquals(map("b", "xyz"), index.get(2));
+    }
+    
+    @Test
+    public void notAnArray() throws IOException {
+        for (String content : Arrays.asList("{\"a\":1}", "", "[1 2]", "[{} {}]")) {
+            write(content);
+            try {
+                ArrayIndex.open(file);
+                fail(content);
+            } catch (IOException e) {
+            }
+        }
+    }
+    
+    private static Map<String, Object> map(Object... pairs) {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < pairs.length; i += 2)
+            result.put((String) pairs[i], pairs[i + 1]);
+        return result;
+    }
+    
+}
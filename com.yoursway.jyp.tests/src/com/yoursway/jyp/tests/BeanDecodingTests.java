@@ -1,6 +1,23 @@
 package com.yoursway.jyp.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Type;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
 
 import org.junit.Test;
 
@@ -9,9 +26,20 @@ import com.yoursway.jyp.JSON;
 import com.yoursway.jyp.BeanEncoding.BeanificationException;
 import com.yoursway.jyp.JSON.SyntaxError;
 import com.yoursway.jyp.tests.beans.ArrayBean;
+import com.yoursway.jyp.tests.beans.Circle;
+import com.yoursway.jyp.tests.beans.Color;
+import com.yoursway.jyp.tests.beans.Drawing;
+import com.yoursway.jyp.tests.beans.FieldBean;
+import com.yoursway.jyp.tests.beans.GenericCollectionsBean;
 import com.yoursway.jyp.tests.beans.ImmutableBean;
+import com.yoursway.jyp.tests.beans.IntegerBoxBean;
 import com.yoursway.jyp.tests.beans.MoreComplexBean;
+import com.yoursway.jyp.tests.beans.NodeBean;
+import com.yoursway.jyp.tests.beans.RecordBean;
+import com.yoursway.jyp.tests.beans.Shape;
 import com.yoursway.jyp.tests.beans.SimpleBean;
+import com.yoursway.jyp.tests.beans.Size;
+import com.yoursway.jyp.tests.beans.Square;
 
 public class BeanDecodingTests {
     
@@ -53,4 +81,155 @@ public class BeanDecodingTests {
         assertEquals(7, bean.getChildren()[1].getBar());
     }
     
+    @Test
+    public void fieldBean() throws BeanificationException, SyntaxError {
+        FieldBean bean = BeanEncoding.beanify(JSON.decode("{\"baz\":\"six\",\"foo\":42,\"x\":11}"),
+            FieldBean.class);
+        assertEquals(42, bean.foo());
+        assertEquals("six", bean.bar());
+        assertEquals(11, bean.x());
+        assertEquals(0, bean.cached());
+    }
+    
+    @Test
+    public void fieldBeanNullPrimitive() throws SyntaxError {
+        try {
+            BeanEncoding.beanify(JSON.decode("{\"baz\":\"six\",\"foo\":42,\"x\":null}"), FieldBean.class);
+            fail();
+        } catch (BeanificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Null value for primitive field x"));
+        }
+    }
+    
+    @Test
+    public void primitiveArrayNullElement() throws SyntaxError {
+        try {
+            BeanEncoding.beanify(JSON.decode("[1,null]"), int[].class);
+            fail();
+        } catch (BeanificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Null element in a primitive array"));
+        }
+    }
+    
+    @Test
+    public void deepNesting() {
+        Map<String, Object> root = new HashMap<String, Object>();
+        Map<String, Object> node = root;
+        for (int i = 0; i < 50000; i++) {
+            Map<String, Object> child = new HashMap<String, Object>();
+            node.put("children", Arrays.asList(child));
+            node = child;
+        }
+        try {
+            BeanEncoding.beanify(root, NodeBean.class);
+            fail();
+        } catch (BeanificationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Maximum nesting depth of 1000"));
+        }
+    }
+    
+    @Test
+    public void recordBean() throws BeanificationException, SyntaxError {
+        RecordBean bean = BeanEncoding.beanify(JSON
+                .decode("{\"baz\":\"six\",\"children\":[{\"bar\":6,\"foo\":42}],\"foo\":11}"),
+            RecordBean.class);
+        assertEquals(11, bean.foo());
+        assertEquals("six", bean.bar());
+        assertEquals(1, bean.children().size());
+        assertEquals(42, bean.children().get(0).getFoo());
+    }
+    
+    @Test
+    public void genericCollectionsBean() throws BeanificationException, SyntaxError {
+        GenericCollectionsBean bean = BeanEncoding.beanify(JSON.decode("{\"tags\":[\"a\",\"b\",\"a\"],"
+                + "\"counts\":{\"y\":2,\"x\":1},\"best\":{\"bar\":6,\"foo\":42},\"colors\":{\"RED\":3},"
+                + "\"groups\":{\"g\":[{\"bar\":7,\"foo\":43}]},\"box\":{\"value\":{\"bar\":1,\"foo\":2}}}"),
+            GenericCollectionsBean.class);
+        assertEquals(2, bean.getTags().size());
+        assertTrue(bean.getCounts() instanceof TreeMap<?, ?>);
+        assertEquals("x", bean.getCounts().firstKey());
+        assertEquals(42, bean.getBest().get().getFoo());
+        assertEquals(3, (int) bean.getColors().get(Color.RED));
+        assertEquals(43, bean.getGroups().get("g").get(0).getFoo());
+        assertEquals(2, bean.getBox().getValue().getFoo());
+    }
+    
+    @Test
+    public void typeVariableBoundThroughSuperclass() throws BeanificationException, SyntaxError {
+        IntegerBoxBean bean = BeanEncoding.beanify(JSON.decode("{\"value\":42.0}"), IntegerBoxBean.class);
+        assertEquals(Integer.valueOf(42), bean.getValue());
+    }
+    
+    @Test
+    public void parameterizedType() throws BeanificationException, SyntaxError, NoSuchMethodException {
+        Type type = GenericCollectionsBean.class.getMethod("getColors").getGenericReturnType();
+        Map<?, ?> map = (Map<?, ?>) BeanEncoding.beanify(JSON.decode("{\"BLUE\":1}"), type);
+        assertTrue(map instanceof EnumMap<?, ?>);
+        assertEquals(1, map.get(Color.BLUE));
+    }
+    
+    @Test
+    public void listener() throws BeanificationException, SyntaxError {
+        BeanEncoding.Counters counters = new BeanEncoding.Counters();
+        BeanEncoding.setListener(counters);
+        try {
+            for (int i = 0; i < 3; i++)
+                BeanEncoding.beanify(JSON.decode("{\"bar\":6,\"foo\":42}"), SimpleBean.class);
+            BeanEncoding.simplify(new SimpleBean());
+        } finally {
+            BeanEncoding.setListener(null);
+        }
+        assertEquals(3, counters.getBeanifications());
+        assertEquals(1, counters.getSimplifications());
+        assertTrue(counters.getCacheHits() > 0);
+    }
+    
+    @Test
+    public void enumsAndSubtypes() throws BeanificationException, SyntaxError {
+        Drawing drawing = BeanEncoding.beanify(JSON.decode("{\"background\":\"BLUE\",\"shapes\":["
+                + "{\"kind\":\"circle\",\"radius\":1.5},"
+                + "{\"kind\":\"Square\",\"side\":2,\"size\":\"xl\"}]}"),
+            Drawing.class);
+        assertEquals(Color.BLUE, drawing.background());
+        assertEquals(new Circle(1.5), drawing.shapes().get(0));
+        Square square = (Square) drawing.shapes().get(1);
+        assertEquals(Size.EXTRA_LARGE, square.getSize());
+        assertEquals(4.0, square.area(), 0);
+        assertEquals(new Circle(2), BeanEncoding.beanify(JSON.decode("{\"kind\":\"circle\",\"radius\":2}"),
+            Circle.class));
+        String[] invalid = { "{\"kind\":\"hexagon\"}", "{\"radius\":2}",
+                "{\"kind\":\"Square\",\"size\":\"XL\"}" };
+        for (String json : invalid) {
+            try {
+                BeanEncoding.beanify(JSON.decode(json), Shape.class);
+                fail("beanification error expected for " + json);
+            } catch (BeanificationException e) {
+            }
+        }
+    }
+    
+    @Test
+    public void javaTime() throws BeanificationException {
+        assertEquals(Instant.ofEpochSecond(1709251199, 500000000), BeanEncoding.beanify(
+            "2024-03-01T01:59:59.5+02:00", Instant.class));
+        assertEquals(Instant.ofEpochMilli(1000), BeanEncoding.beanify(1000L, Instant.class));
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4), BeanEncoding.beanify("2024-01-02t03:04",
+            LocalDateTime.class));
+        assertEquals(OffsetDateTime.of(2024, 1, 2, 3, 4, 5, 0, ZoneOffset.UTC), BeanEncoding.beanify(
+            "2024-01-02T03:04:05Z", OffsetDateTime.class));
+        assertEquals(ZonedDateTime.of(2024, 7, 1, 12, 0, 0, 0, ZoneId.of("Europe/Paris")), BeanEncoding
+                .beanify("2024-07-01T12:00+02:00[Europe/Paris]", ZonedDateTime.class));
+        assertEquals(LocalDate.of(-5, 1, 1), BeanEncoding.beanify("-0005-01-01", LocalDate.class));
+        assertEquals(Duration.ofMillis(1500), BeanEncoding.beanify("PT1.5S", Duration.class));
+        for (String invalid : new String[] { "2024-02-30", "2024-1-02", "2024-01-02T03:04",
+                "2024-01-02T03:04Z01:00" }) {
+            try {
+                BeanEncoding.beanify(invalid, invalid.length() > 10 ? Instant.class : LocalDate.class);
+                fail(invalid);
+            } catch (BeanificationException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Invalid value " + invalid));
+            }
+        }
+    }
+    
 }
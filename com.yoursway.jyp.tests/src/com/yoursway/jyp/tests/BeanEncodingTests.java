@@ -1,18 +1,40 @@
 package com.yoursway.jyp.tests;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.Test;
 
 import com.yoursway.jyp.BeanEncoding;
+import com.yoursway.jyp.BeanEncoding.References;
 import com.yoursway.jyp.JSON;
 import com.yoursway.jyp.tests.beans.ArrayBean;
+import com.yoursway.jyp.tests.beans.Circle;
+import com.yoursway.jyp.tests.beans.Color;
+import com.yoursway.jyp.tests.beans.Drawing;
+import com.yoursway.jyp.tests.beans.FieldBean;
 import com.yoursway.jyp.tests.beans.ImmutableBean;
 import com.yoursway.jyp.tests.beans.MoreComplexBean;
+import com.yoursway.jyp.tests.beans.NodeBean;
+import com.yoursway.jyp.tests.beans.RecordBean;
+import com.yoursway.jyp.tests.beans.Shape;
 import com.yoursway.jyp.tests.beans.SimpleBean;
+import com.yoursway.jyp.tests.beans.Size;
+import com.yoursway.jyp.tests.beans.Square;
 
 public class BeanEncodingTests {
     
@@ -49,4 +71,133 @@ public class BeanEncodingTests {
                 .encode(BeanEncoding.simplify(bean)));
     }
     
+    @Test
+    public void fieldBean() {
+        FieldBean bean = new FieldBean(42, "six");
+        bean.updateX(11);
+        assertEquals("{\"baz\":\"six\",\"foo\":42,\"x\":11}", JSON.encode(BeanEncoding.simplify(bean)));
+    }
+    
+    @Test
+    public void recordBean() {
+        List<ImmutableBean> children = new ArrayList<ImmutableBean>();
+        children.add(new ImmutableBean(42, 6));
+        RecordBean bean = new RecordBean(11, "six", children);
+        assertEquals("{\"baz\":\"six\",\"children\":[{\"bar\":6,\"foo\":42}],\"foo\":11}", JSON
+                .encode(BeanEncoding.simplify(bean)));
+    }
+    
+    @Test
+    public void cycleDetection() {
+        NodeBean root = node("root", null);
+        node("child", root).setParent(root);
+        try {
+            BeanEncoding.simplify(root, References.FAIL_ON_CYCLES);
+            fail("cycle not detected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Cycle detected at $.children[0].parent"));
+        }
+    }
+    
+    @Test
+    public void sharedReferences() {
+        NodeBean root = node("root", null);
+        NodeBean shared = node("shared", root);
+        root.getChildren().add(shared);
+        assertEquals("{\"children\":[{\"$id\":1,\"children\":[],\"name\":\"shared\",\"parent\":null},"
+                + "{\"$ref\":1}],\"name\":\"root\",\"parent\":null}", JSON.encode(BeanEncoding.simplify(root,
+            References.SHARE)));
+    }
+    
+    @Test
+    public void sharedCycle() {
+        NodeBean root = node("root", null);
+        node("child", root).setParent(root);
+        assertEquals("{\"$id\":1,\"children\":[{\"children\":[],\"name\":\"child\",\"parent\":{\"$ref\":1}}],"
+                + "\"name\":\"root\",\"parent\":null}", JSON.encode(BeanEncoding.simplify(root,
+            References.SHARE)));
+    }
+    
+    @Test
+    public void deepNesting() {
+        List<Object> root = new ArrayList<Object>();
+        List<Object> list = root;
+        for (int i = 0; i < 50000; i++) {
+            List<Object> child = new ArrayList<Object>();
+            list.add(child);
+            list = child;
+        }
+        for (References references : new References[] { null, References.FAIL_ON_CYCLES })
+            try {
+                if (references == null)
+                    BeanEncoding.simplify(root);
+                else
+                    BeanEncoding.simplify(root, references);
+                fail();
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith("Maximum nesting depth of 1000"));
+            }
+    }
+    
+    private static NodeBean node(String name, NodeBean parent) {
+        NodeBean node = new NodeBean();
+        node.setName(name);
+        if (parent != null)
+            parent.getChildren().add(node);
+        return node;
+    }
+    
+    @Test
+    public void enumsAndSubtypes() {
+        Square square = new Square();
+        square.setSide(2);
+        square.setSize(Size.EXTRA_LARGE);
+        Drawing drawing = new Drawing(Color.RED, Arrays.<Shape> asList(new Circle(1.5), square));
+        assertEquals("{\"background\":\"RED\",\"shapes\":[{\"kind\":\"circle\",\"radius\":1.5},"
+                + "{\"kind\":\"Square\",\"side\":2,\"size\":\"xl\"}]}", JSON.encode(BeanEncoding
+                .simplify(drawing)));
+    }
+    
+    @Test
+    public void encodedCache() {
+        JSON.EncodedCache cache = new JSON.EncodedCache(1000, true, new JSON.EncodedCache.Simplifier() {
+            
+            public Object simplify(Object value) {
+                return BeanEncoding.simplify(value);
+            }
+            
+        });
+        cache.register(RecordBean.class);
+        try {
+            RecordBean bean = new RecordBean(42, "x", new ArrayList<ImmutableBean>());
+            Map<String, Object> response = new HashMap<String, Object>();
+            response.put("reference", bean);
+            response.put("copy", new RecordBean(42, "x", new ArrayList<ImmutableBean>()));
+            String expected = "{\"copy\":{\"baz\":\"x\",\"children\":[],\"foo\":42},"
+                    + "\"reference\":{\"baz\":\"x\",\"children\":[],\"foo\":42}}";
+            assertEquals(expected, JSON.encode(response));
+            assertEquals(expected, JSON.encode(response));
+            assertEquals(2, cache.hits());
+            assertEquals(2, cache.misses());
+            assertEquals(2, cache.size());
+        } finally {
+            cache.unregister(RecordBean.class);
+        }
+    }
+    
+    @Test
+    public void javaTime() {
+        assertEquals("2024-02-29T23:59:59.123Z", BeanEncoding.simplify(Instant.ofEpochSecond(1709251199,
+            123000000)));
+        assertEquals("1969-12-31T23:59:59.000001Z", BeanEncoding.simplify(Instant.ofEpochSecond(-1, 1000)));
+        assertEquals("+10000-01-01T00:00:00Z", BeanEncoding.simplify(Instant
+                .parse("+10000-01-01T00:00:00Z")));
+        assertEquals("0042-01-02", BeanEncoding.simplify(LocalDate.of(42, 1, 2)));
+        assertEquals("03:04:00", BeanEncoding.simplify(LocalTime.of(3, 4)));
+        assertEquals("2024-01-02T03:04:05.000000006-05:30", BeanEncoding.simplify(OffsetDateTime.of(2024, 1,
+            2, 3, 4, 5, 6, ZoneOffset.ofHoursMinutes(-5, -30))));
+        assertEquals("2024-07-01T12:00:00+02:00[Europe/Paris]", BeanEncoding.simplify(ZonedDateTime.of(2024,
+            7, 1, 12, 0, 0, 0, ZoneId.of("Europe/Paris"))));
+    }
+    
 }
@@ -0,0 +1,117 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.junit.Test;
+
+import com.yoursway.jyp.BlockGzip;
+import com.yoursway.jyp.JSON;
+import com.yoursway.jyp.JSON.SyntaxError;
+
+public class BlockGzipTests {
+    
+    private static List<Object> records(int count) {
+        List<Object> records = new ArrayList<Object>();
+        for (int i = 0; i < count; i++)
+            records.add(Arrays.asList(i, "record number " + i, i * 0.5));
+        return records;
+    }
+    
+    private static byte[] compress(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(new BlockGzip.Output(bytes), StandardCharsets.UTF_8);
+        JSON.encode(value, writer);
+        writer.close();
+        return bytes.toByteArray();
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        for (int n; (n = in.read(buffer)) >= 0;)
+            bytes.write(buffer, 0, n);
+        in.close();
+        return bytes.toByteArray();
+    }
+    
+    @Test
+    public void roundTrip() throws IOException, SyntaxError {
+        List<Object> records = records(20000);
+        byte[] compressed = compress(records);
+        String json = JSON.encode(records);
+        assertTrue(json.length() > 3 * BlockGzip.BLOCK_SIZE);
+        assertEquals(json, new String(readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))),
+            StandardCharsets.UTF_8));
+        Object decoded = JSON.decode(new InputStreamReader(new BlockGzip.Input(new ByteArrayInputStream(
+            compressed)), StandardCharsets.UTF_8));
+        assertEquals(json, JSON.encode(decoded));
+    }
+    
+    @Test
+    public void newlineDelimitedRecords() throws IOException, SyntaxError {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(new BlockGzip.Output(bytes), StandardCharsets.UTF_8);
+        List<Object> records = records(5000);
+        for (Object record : records) {
+            JSON.encode(record, writer);
+            writer.write('\n');
+        }
+        writer.close();
+        
+        JSON.PushParser parser = new JSON.PushParser();
+        InputStream in = new BlockGzip.Input(new ByteArrayInputStream(bytes.toByteArray()));
+        byte[] buffer = new byte[4096];
+        List<Object> decoded = new ArrayList<Object>();
+        for (int n; (n = in.read(buffer)) >= 0;) {
+            parser.feed(ByteBuffer.wrap(buffer, 0, n));
+            while (parser.hasNext())
+                decoded.add(parser.next());
+        }
+        parser.end();
+        assertEquals(JSON.encode(records), JSON.encode(decoded));
+    }
+    
+    @Test
+    public void plainGzip() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] head = compress("head");
+        bytes.write(head, 0, head.length);
+        OutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write("tail".getBytes(StandardCharsets.UTF_8));
+        gzip.close();
+        assertEquals("\"head\"tail", new String(readAll(new BlockGzip.Input(new ByteArrayInputStream(bytes
+                .toByteArray()))), StandardCharsets.UTF_8));
+    }
+    
+    @Test
+    public void corruptBlock() throws IOException {
+        byte[] compressed = compress("some text to compress");
+        compressed[20] ^= 1;
+        try {
+            readAll(new BlockGzip.Input(new ByteArrayInputStream(compressed)));
+            fail();
+        } catch (ZipException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt block"));
+        }
+    }
+    
+}
@@ -0,0 +1,162 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yoursway.jyp.BeanEncoding;
+import com.yoursway.jyp.CBOR;
+import com.yoursway.jyp.JSON;
+import com.yoursway.jyp.BeanEncoding.BeanificationException;
+import com.yoursway.jyp.CBOR.SyntaxError;
+import com.yoursway.jyp.tests.beans.ImmutableBean;
+import com.yoursway.jyp.tests.beans.MoreComplexBean;
+
+public class CborTests {
+    
+    @Test
+    public void rfcExamples() throws SyntaxError {
+        assertEncoding("1a000f4240", 1000000);
+        assertEncoding("1b000000e8d4a51000", 1000000000000L);
+        assertEncoding("3903e7", -1000);
+        assertEncoding("fa47c35000", 100000.0);
+        assertEncoding("fb3ff199999999999a", 1.1);
+        assertEncoding("6449455446", "IETF");
+        assertEncoding("62c3bc", "\u00fc");
+        assertEncoding("f6", null);
+        assertEncoding("f5", true);
+        assertEncoding("8301820203820405", Arrays.asList(1, Arrays.asList(2, 3), Arrays.asList(4, 5)));
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("a", 1);
+        map.put("b", Arrays.asList(2, 3));
+        assertEncoding("a26161016162820203", map);
+    }
+    
+    @Test
+    public void decodesNonPreferredForms() throws SyntaxError {
+        assertEquals(1.0d, CBOR.decode(bytes("f93c00")));
+        assertEquals(-4.0d, CBOR.decode(bytes("f9c400")));
+        assertEquals(new BigInteger("18446744073709551616"), CBOR.decode(bytes("c249010000000000000000")));
+        assertEquals(Arrays.asList(1, Arrays.asList(2, 3), Arrays.asList(4, 5)), CBOR
+                .decode(bytes("9f018202039f0405ffff")));
+        assertEquals("streaming", CBOR.decode(bytes("7f657374726561646d696e67ff")));
+    }
+    
+    @Test
+    public void roundTrip() throws SyntaxError, IOException {
+        List<Object> list = new ArrayList<Object>();
+        list.add(Long.MIN_VALUE);
+        list.add(Long.MAX_VALUE);
+        list.add(new BigInteger("-98765432109876543210"));
+        list.add("\u043f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00");
+        list.add(false);
+        list.add(-0.5);
+        Object decoded = CBOR.decode(new ByteArrayInputStream(CBOR.encode(list)));
+        assertEquals(list, decoded);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) CBOR.decode(CBOR.encode(new byte[] { 1, 2, 3 })));
+    }
+    
+    @Test
+    public void beans() throws SyntaxError, BeanificationException {
+        List<ImmutableBean> children = new ArrayList<ImmutableBean>();
+        children.add(new ImmutableBean(42, 6));
+        MoreComplexBean bean = new MoreComplexBean(children);
+        bean.setX(11);
+        MoreComplexBean decoded = BeanEncoding.beanify(CBOR.decode(CBOR.encode(BeanEncoding.simplify(bean))),
+            MoreComplexBean.class);
+        assertEquals(11, decoded.getX());
+        assertEquals(6, decoded.getChildren().get(0).getBar());
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void truncated() throws SyntaxError {
+        CBOR.decode(bytes("8301820203"));
+    }
+    
+    @Test
+    public void nestedTags() throws SyntaxError {
+        assertEquals(1, CBOR.decode(bytes("C6C601"), 2));
+        byte[] chained = new byte[200001];
+        Arrays.fill(chained, (byte) 0xC6);
+        chained[chained.length - 1] = 0x01;
+        try {
+            CBOR.decode(chained);
+            fail();
+        } catch (SyntaxError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Maximum nesting depth"));
+        }
+    }
+    
+    @Test
+    public void trailingData() {
+        try {
+            CBOR.decode(Arrays.copyOf(CBOR.encode(1), 3));
+            fail();
+        } catch (SyntaxError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected data after the value"));
+        }
+    }
+    
+    @Test
+    public void claimedLength() throws SyntaxError, IOException {
+        try {
+            CBOR.decode(new ByteArrayInputStream(bytes("5a7ffffff0")));
+            fail();
+        } catch (SyntaxError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected end of CBOR"));
+        }
+        byte[] large = new byte[100000];
+        large[99999] = 7;
+        assertArrayEquals(large, (byte[]) CBOR.decode(new ByteArrayInputStream(CBOR.encode(large))));
+    }
+    
+    @Test
+    public void pointer() throws SyntaxError {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("skipped", Arrays.asList("abc", new byte[1000], 1.5));
+        map.put("a/b", Arrays.asList(1, Arrays.asList(2, 3)));
+        byte[] data = CBOR.encode(map);
+        assertEquals(3, CBOR.decode(data, "/a~1b/1/1"));
+        assertEquals(1.5, CBOR.decode(data, "/skipped/2"));
+        assertEquals(null, CBOR.decode(data, "/a~1b/2"));
+        assertEquals(null, CBOR.decode(data, "/missing"));
+        byte[] indefinite = bytes("bf616182020361629f0405ffff");
+        assertEquals(Arrays.asList(4, 5), CBOR.decode(indefinite, "/b"));
+        assertEquals(5, CBOR.decode(indefinite, "/b/1"));
+        assertEquals(null, CBOR.decode(indefinite, "/b/2"));
+    }
+    
+    @Test
+    public void byteStrings() throws SyntaxError {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("data", new byte[] { 1, 2, 3 });
+        Object simplified = BeanEncoding.simplify(CBOR.decode(CBOR.encode(map)));
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) ((Map<?, ?>) simplified).get("data"));
+        assertEquals("{\"data\":\"AQID\"}", JSON.encode(simplified));
+    }
+    
+    private static void assertEncoding(String hex, Object value) throws SyntaxError {
+        assertArrayEquals(bytes(hex), CBOR.encode(value));
+        assertEquals(value, CBOR.decode(bytes(hex)));
+    }
+    
+    private static byte[] bytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++)
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return result;
+    }
+    
+}
@@ -0,0 +1,147 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.yoursway.jyp.Columns;
+import com.yoursway.jyp.Columns.Type;
+import com.yoursway.jyp.JSON.SyntaxError;
+
+public class ColumnsTests {
+    
+    private static final String SERIES = "[{\"ts\":1000,\"v\":1.5,\"host\":\"a\",\"up\":true},\n"
+            + " {\"ts\":2000,\"v\":2,\"host\":\"b\\u0062\",\"up\":false,\"extra\":[1,{\"x\":2}]},\n"
+            + " {\"host\":\"a\",\"ts\":-3000,\"v\":null},\n"
+            + " {\"ts\":9223372036854775807,\"v\":-1e3,\"host\":\"bb\"}]";
+    
+    @Test
+    public void spec() throws SyntaxError, IOException {
+        Columns.Spec spec = new Columns.Spec().column("ts", Type.LONG).column("v", Type.DOUBLE).column("host",
+                Type.STRING).column("up", Type.BOOLEAN);
+        Columns columns = Columns.decode(new StringReader(SERIES), spec);
+        assertEquals(4, columns.size());
+        assertEquals(4, columns.columns().size());
+        Columns.LongColumn ts = (Columns.LongColumn) columns.column("ts");
+        assertArrayEquals(new long[] { 1000, 2000, -3000, Long.MAX_VALUE }, ts.values());
+        Columns.DoubleColumn v = (Columns.DoubleColumn) columns.column("v");
+        assertArrayEquals(new double[] { 1.5, 2, 0, -1000 }, v.values(), 0);
+        assertTrue(v.isNull(2));
+        assertFalse(v.isNull(3));
+        assertEquals(1, v.nullCount());
+        Columns.StringColumn host = (Columns.StringColumn) columns.column("host");
+        assertArrayEquals(new int[] { 0, 1, 0, 1 }, host.codes());
+        assertEquals(Arrays.asList("a", "bb"), host.dictionary());
+        assertEquals("bb", host.getString(3));
+        Columns.BooleanColumn up = (Columns.BooleanColumn) columns.column("up");
+        assertTrue(up.getBoolean(0));
+        assertFalse(up.getBoolean(1));
+        assertNull(up.get(2));
+        assertEquals(2, up.nullCount());
+        assertNull(columns.column("extra"));
+    }
+    
+    @Test
+    public void inferred() throws SyntaxError {
+        Columns columns = Columns.decode("[{\"a\":1,\"b\":null,\"c\":\"x\"},{\"a\":2.5,\"b\":\"y\"},"
+                + "{\"d\":true,\"a\":3,\"b\":\"y\"},{}]");
+        assertEquals(4, columns.size());
+        assertEquals(Type.DOUBLE, columns.column("a").type());
+        assertEquals(Type.STRING, columns.column("b").type());
+        assertEquals(Type.STRING, columns.column("c").type());
+        assertEquals(Type.BOOLEAN, columns.column("d").type());
+        assertEquals(Arrays.asList(1.0, 2.5, 3.0, null), values(columns.column("a"), 4));
+        assertEquals(Arrays.asList(null, "y", "y", null), values(columns.column("b"), 4));
+        assertEquals(Arrays.asList("x", null, null, null), values(columns.column("c"), 4));
+        assertEquals(Arrays.asList(null, null, true, null), values(columns.column("d"), 4));
+        Columns empty = Columns.decode(" [ ] ");
+        assertEquals(0, empty.size());
+        assertTrue(empty.columns().isEmpty());
+    }
+    
+    @Test
+    public void integers() throws SyntaxError {
+        Columns columns = Columns.decode("[{\"n\":1},{\"n\":12345678901},{\"n\":null}]");
+        assertEquals(Arrays.asList(1, 12345678901L, null), values(columns.column("n"), 3));
+    }
+    
+    @Test
+    public void manyRows() throws SyntaxError {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 1000; i++) {
+            json.append(i == 0 ? "{" : ",{").append("\"i\":").append(i).append(",\"s\":\"s").append(i % 300);
+            json.append(i % 7 == 0 ? "\",\"b\":null}" : "\",\"b\":" + (i % 2 == 0) + "}");
+        }
+        Columns columns = Columns.decode(json.append("]").toString());
+        assertEquals(1000, columns.size());
+        Columns.StringColumn s = (Columns.StringColumn) columns.column("s");
+        assertEquals(300, s.dictionary().size());
+        Columns.BooleanColumn b = (Columns.BooleanColumn) columns.column("b");
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, ((Columns.LongColumn) columns.column("i")).getLong(i));
+            assertEquals("s" + (i % 300), s.getString(i));
+            assertEquals(i % 7 == 0, b.isNull(i));
+            if (i % 7 != 0)
+                assertEquals(i % 2 == 0, b.getBoolean(i));
+        }
+    }
+    
+    @Test
+    public void sparseNulls() throws SyntaxError {
+        StringBuilder json = new StringBuilder("[{\"v\":null}");
+        for (int i = 1; i <= 200; i++)
+            json.append(",{\"v\":").append(i).append("}");
+        Columns columns = Columns.decode(json.append(",{\"v\":null},{}]").toString());
+        Columns.Column v = columns.column("v");
+        assertEquals(203, columns.size());
+        assertEquals(3, v.nullCount());
+        for (int i = 0; i < 203; i++)
+            assertEquals(i == 0 || i >= 201, v.isNull(i));
+        assertEquals(200L, ((Columns.LongColumn) v).getLong(200));
+    }
+    
+    @Test
+    public void errors() {
+        Columns.Spec spec = new Columns.Spec().column("n", Type.LONG);
+        String[][] cases = { { "{}", "Columnar decoding expects an array of objects" },
+                { "[1]", "Columnar decoding expects an array of objects" },
+                { "[{\"n\":1.5}]", "Unexpected number in the LONG column n" },
+                { "[{\"n\":\"1\"}]", "Unexpected string in the LONG column n" },
+                { "[{\"n\":1,\"n\":2}]", "Duplicate key n" },
+                { "[{\"n\":[1]}]", "Columnar decoding expects flat objects, but n holds a nested value" },
+                { "[{\"n\":1} {\"n\":2}]", "Expected a ',' or ']'" },
+                { "[{\"n\":1}] x", "Unexpected text after JSON value" } };
+        for (String[] c : cases) {
+            try {
+                Columns.decode(c[0], spec);
+                fail(c[0]);
+            } catch (SyntaxError e) {
+                assertTrue(e.getMessage(), e.getMessage().startsWith(c[1]));
+            }
+        }
+        try {
+            Columns.decode("[{\"a\":\"x\"},{\"a\":1}]");
+            fail();
+        } catch (SyntaxError e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected number in the STRING column a"));
+        }
+    }
+    
+    private static List<Object> values(Columns.Column column, int size) {
+        Object[] values = new Object[size];
+        for (int i = 0; i < size; i++)
+            values[i] = column.get(i);
+        return Arrays.asList(values);
+    }
+    
+}
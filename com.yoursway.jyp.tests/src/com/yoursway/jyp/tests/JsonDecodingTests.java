@@ -1,7 +1,16 @@
 package com.yoursway.jyp.tests;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -77,4 +86,364 @@ public class JsonDecodingTests {
         assertEquals(0, ((Map<?, ?>) JSON.decode("{}")).size());
     }
     
+    @Test
+    public void nestedContainers() throws SyntaxError {
+        Map<?, ?> map = (Map<?, ?>) JSON.decode("{\"a\":[1,[],{\"b\":{}}],\"c\":[[2]]}");
+        assertEquals(2, map.size());
+        assertEquals(3, ((List<?>) map.get("a")).size());
+        assertEquals(2, ((List<?>) ((List<?>) map.get("c")).get(0)).get(0));
+    }
+    
+    @Test
+    public void deeplyNested() throws SyntaxError {
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            json.append('[');
+        for (int i = 0; i < 100000; i++)
+            json.append(']');
+        try {
+            JSON.decode(json.toString());
+            fail("nesting depth not limited");
+        } catch (SyntaxError e) {
+        }
+        Object value = JSON.decode(json.toString(), Integer.MAX_VALUE);
+        for (int i = 1; i < 100000; i++)
+            value = ((List<?>) value).get(0);
+        assertEquals(0, ((List<?>) value).size());
+    }
+    
+    @Test
+    public void reusableDecoder() throws SyntaxError, IOException {
+        JSON.Decoder decoder = new JSON.Decoder();
+        assertEquals(42, decoder.decode("42"));
+        assertEquals("abc", ((List<?>) decoder.decode("[\"abc\"]")).get(0));
+        StringBuilder longString = new StringBuilder();
+        for (int i = 0; i < 10000; i++)
+            longString.append(i % 100 == 0 ? "\\n" : "x");
+        String decoded = (String) decoder.decode(new StringReader("\"" + longString + "\""));
+        assertEquals(10000, decoded.length());
+        assertEquals('\n', decoded.charAt(9900));
+        try {
+            decoder.decode("[1,");
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+        }
+        assertEquals(2, ((Map<?, ?>) decoder.decode("{\"x\":{\"y\":1},\"z\":2}")).size());
+    }
+    
+    @Test
+    public void markableReaderPositionedAfterValue() throws SyntaxError, IOException {
+        BufferedReader reader = new BufferedReader(new StringReader("{\"a\":1}[2]"));
+        assertEquals(1, ((Map<?, ?>) JSON.decode(reader)).size());
+        assertEquals(2, ((List<?>) JSON.decode(reader)).get(0));
+    }
+    
+    @Test
+    public void pooling() throws SyntaxError {
+        JSON.setPooling(true);
+        try {
+            assertEquals(42, JSON.decode("42"));
+            assertEquals("[1,2]", JSON.encode(JSON.decode("[1,2]")));
+        } finally {
+            JSON.setPooling(false);
+        }
+    }
+    
+    @Test
+    public void pushParserByteByByte() throws SyntaxError {
+        String json = "{\"name\":\"caf\\u00e9 \u00fc\u20ac\ud83d\ude00\",\"list\":[1,-2.5e3,true,null,[]],"
+                + "\"big\":12345678901,\"escapes\":\"a\\n\\\"b\"}";
+        byte[] bytes = json.getBytes(Charset.forName("UTF-8"));
+        JSON.PushParser parser = new JSON.PushParser();
+        for (int i = 0; i < bytes.length; i++) {
+            assertFalse(parser.hasNext());
+            parser.feed(ByteBuffer.wrap(bytes, i, 1));
+        }
+        parser.end();
+        Map<?, ?> map = (Map<?, ?>) parser.next();
+        assertEquals("caf\u00e9 \u00fc\u20ac\ud83d\ude00", map.get("name"));
+        assertEquals(Arrays.asList(1, -2500d, true, null, Arrays.asList()), map.get("list"));
+        assertEquals(12345678901L, map.get("big"));
+        assertEquals("a\n\"b", map.get("escapes"));
+        assertFalse(parser.hasNext());
+    }
+    
+    @Test
+    public void pushParserValueStream() throws SyntaxError {
+        JSON.PushParser parser = new JSON.PushParser();
+        parser.feed(ByteBuffer.wrap("{\"a\":1}\n[2]\nnu".getBytes()));
+        assertEquals(1, ((Map<?, ?>) parser.next()).get("a"));
+        assertEquals(2, ((List<?>) parser.next()).get(0));
+        assertFalse(parser.hasNext());
+        parser.feed(ByteBuffer.wrap("ll\n4".getBytes()));
+        assertTrue(parser.hasNext());
+        assertEquals(null, parser.next());
+        parser.feed(ByteBuffer.wrap("2".getBytes()));
+        assertFalse(parser.hasNext()); // the number may continue
+        parser.end();
+        assertEquals(42, parser.next());
+    }
+    
+    @Test
+    public void pushParserErrors() throws SyntaxError {
+        String[] invalid = { "[1,]", "{\"a\" 1}", "[1 2]", "01", "tru ", "{a:1}", "\"\\x\"", "[1}", "true1",
+                "truefalse", "1\"a\"", "[1][2]" };
+        for (String json : invalid) {
+            try {
+                JSON.PushParser parser = new JSON.PushParser();
+                parser.feed(ByteBuffer.wrap(json.getBytes()));
+                parser.end();
+                fail("syntax error expected for " + json);
+            } catch (SyntaxError e) {
+            }
+        }
+        JSON.PushParser parser = new JSON.PushParser();
+        parser.feed(ByteBuffer.wrap("[\"abc".getBytes()));
+        try {
+            parser.end();
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+        }
+        parser.reset();
+        parser.feed(ByteBuffer.wrap("[[[".getBytes()));
+        try {
+            new JSON.PushParser(2).feed(ByteBuffer.wrap("[[[".getBytes()));
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+        }
+    }
+    
+    @Test
+    public void fractionStartingWithZero() throws SyntaxError {
+        assertEquals(0.5d, JSON.decode("0.5"));
+        assertEquals(8, JSON.decode("010"));
+    }
+    
+    @Test
+    public void strict() throws SyntaxError, IOException {
+        Map<?, ?> map = (Map<?, ?>) JSON.decodeStrict(" {\"a\": [1, -0.5, 2e3, 12345678901, true, false,"
+                + " null], \"b\\u00e9\\n\": {}, \"c\": []}\n");
+        assertEquals(Arrays.asList(1, -0.5d, 2000d, 12345678901L, true, false, null), map.get("a"));
+        assertEquals(0, ((Map<?, ?>) map.get("b\u00e9\n")).size());
+        assertEquals(0, ((List<?>) map.get("c")).size());
+        assertEquals("x", JSON.decodeStrict(new StringReader("\"x\"")));
+        
+        String[] invalid = { "", "abc", "'a'", "[1,]", "[,1]", "{\"a\"=1}", "{a:1}", "[1;2]", "(1)", "0x10",
+                "01", "1.", ".5", "-", "1e", "TRUE", "\"\\x41\"", "\"a\tb\"", "[1]x", "[1] [2]", "{\"a\":1,}",
+                "\"\\u12\"", "nul", "[1}", "1\u0000" };
+        for (String json : invalid) {
+            try {
+                JSON.decodeStrict(json);
+                fail("syntax error expected for " + json);
+            } catch (SyntaxError e) {
+            }
+            try {
+                JSON.validate(json);
+                fail("syntax error expected for " + json);
+            } catch (SyntaxError e) {
+            }
+        }
+    }
+    
+    @Test
+    public void validate() throws SyntaxError, IOException {
+        JSON.validate("{\"a\":[1,{\"b\":\"\\\"\"},[]],\"c\":-1.5E+2}");
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            json.append("[\"item ").append(i).append("\\n\",");
+        json.append("0");
+        for (int i = 0; i < 2000; i++)
+            json.append(']');
+        JSON.Decoder decoder = new JSON.Decoder(5000);
+        decoder.validate(new StringReader(json.toString()));
+        assertEquals(2, ((List<?>) decoder.decodeStrict(json.toString())).size());
+        try {
+            JSON.validate(json.toString());
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+        }
+    }
+    
+    @Test
+    public void stringViews() throws SyntaxError {
+        String json = "{\"escaped\": \"a\\nb\", \"list\": [\"x\", 1], \"route\": \"/api/users\"}";
+        Map<?, ?> map = (Map<?, ?>) JSON.decodeViews(json);
+        CharSequence route = (CharSequence) map.get("route");
+        assertFalse(route instanceof String);
+        assertTrue("/api/users".contentEquals(route));
+        assertEquals("/api/users".hashCode(), route.hashCode());
+        assertEquals("api", route.subSequence(1, 4).toString());
+        assertEquals("a\nb", map.get("escaped"));
+        assertEquals(route, ((Map<?, ?>) JSON.decodeViews(json.toCharArray())).get("route"));
+        assertEquals(json.replace(" ", ""), JSON.encode(map));
+        
+        StringBuilder big = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++)
+            big.append("\"value ").append(i).append("\",");
+        big.append("\"end\"]");
+        List<?> list = (List<?>) JSON.decodeViews(big.toString().toCharArray());
+        for (int i = 0; i < 2000; i++)
+            assertEquals("value " + i, list.get(i).toString());
+    }
+    
+    @Test
+    public void shapedMaps() throws SyntaxError, IOException {
+        String json = "[{\"b\": 1, \"a\": {\"x\": null}}, {\"b\": 2, \"a\": {}}, {\"a\": 3, \"b\": 4},"
+                + " {\"b\": 5, \"b\": 6}]";
+        List<?> list = (List<?>) JSON.decodeShaped(json);
+        assertEquals(JSON.decode(json), list);
+        assertEquals(JSON.encode(JSON.decode(json)), JSON.encode(list));
+        Map<?, ?> first = (Map<?, ?>) list.get(0), second = (Map<?, ?>) list.get(1);
+        assertEquals(Arrays.asList("b", "a"), Arrays.asList(first.keySet().toArray()));
+        assertTrue(first.keySet().iterator().next() == second.keySet().iterator().next());
+        assertEquals(2, second.get("b"));
+        assertEquals(null, first.get("c"));
+        assertFalse(first.containsKey(null));
+        assertEquals(1, ((Map<?, ?>) list.get(3)).size());
+        assertEquals(6, ((Map<?, ?>) list.get(3)).get("b"));
+        try {
+            first.remove("b");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        
+        JSON.Decoder decoder = new JSON.Decoder();
+        Map<?, ?> one = (Map<?, ?>) decoder.decodeShaped("{\"id\": 1}");
+        Map<?, ?> two = (Map<?, ?>) decoder.decodeShaped(new StringReader("{\"id\": 2}"));
+        assertTrue(one.keySet().iterator().next() == two.keySet().iterator().next());
+        
+        StringBuilder wide = new StringBuilder("{");
+        for (int i = 0; i < 100; i++)
+            wide.append(i == 0 ? "" : ",").append("\"k").append(i).append("\":").append(i);
+        String wideJson = wide.append("}").toString();
+        assertEquals(JSON.decode(wideJson), JSON.decodeShaped(wideJson));
+        StringBuilder varied = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++)
+            varied.append(i == 0 ? "{" : ",{").append("\"id\":").append(i).append(",\"k").append(i)
+                    .append("\":0}");
+        String variedJson = varied.append("]").toString();
+        assertEquals(JSON.decode(variedJson), decoder.decodeShaped(variedJson));
+        // the full shape tree is dropped for the next document
+        Map<?, ?> fresh = (Map<?, ?>) decoder.decodeShaped("{\"fresh\": 1}");
+        try {
+            fresh.remove("fresh");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+        assertEquals(JSON.decode(variedJson), decoder.decodeShaped(variedJson));
+        try {
+            new JSON.Decoder(new JSON.Limits().maxKeys(2)).decodeShaped("{\"a\":1,\"b\":2,\"c\":3}");
+            fail();
+        } catch (SyntaxError e) {
+        }
+    }
+    
+    @Test
+    public void rawPaths() throws SyntaxError {
+        String json = "{'id': 7, \"payload\": {\"a\": [1, 2.5, \"}\"]}, \"items\": [{\"data\": [true] }, "
+                + "{\"data\": null, \"x/y\": \"z\"}]}";
+        Map<?, ?> map = (Map<?, ?>) JSON.decode(json, "/payload", "/items/*/data", "/items/1/x~1y");
+        assertEquals(7, map.get("id"));
+        assertEquals(new JSON.Raw("{\"a\": [1, 2.5, \"}\"]}"), map.get("payload"));
+        List<?> items = (List<?>) map.get("items");
+        assertEquals("[true]", ((Map<?, ?>) items.get(0)).get("data").toString());
+        assertEquals("null", ((Map<?, ?>) items.get(1)).get("data").toString());
+        assertEquals("\"z\"", ((Map<?, ?>) items.get(1)).get("x/y").toString());
+        Map<?, ?> payload = (Map<?, ?>) ((JSON.Raw) map.get("payload")).decode();
+        assertEquals(2.5d, ((List<?>) payload.get("a")).get(1));
+        assertEquals("{\"id\":7,\"items\":[{\"data\":[true]},{\"data\":null,\"x/y\":\"z\"}],"
+                + "\"payload\":{\"a\": [1, 2.5, \"}\"]}}", JSON.encode(map));
+        
+        assertEquals(new JSON.Raw("[1, 2]"), JSON.decode(" [1, 2] ", ""));
+        assertEquals(1, ((List<?>) JSON.decode("[1, [2]]", "/0/0")).get(0));
+        try {
+            JSON.decode("{\"payload\": {'a': 1}}", "/payload");
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+        }
+    }
+    
+    @Test
+    public void listener() throws SyntaxError {
+        JSON.Counters counters = new JSON.Counters();
+        JSON.setListener(counters);
+        try {
+            JSON.decode("{\"a\": [1, 2.5, \"x\"], \"b\": null}");
+            JSON.decodeStrict("[1]");
+            JSON.encode(Arrays.asList(1, "x"));
+        } finally {
+            JSON.setListener(null);
+        }
+        assertEquals(2, counters.getDocumentsDecoded());
+        assertEquals(34, counters.getCharsDecoded());
+        assertEquals(8, counters.getValuesDecoded());
+        assertEquals(3, counters.getStringsDecoded());
+        assertEquals(3, counters.getNumbersDecoded());
+        assertEquals(1, counters.getDocumentsEncoded());
+        assertEquals(7, counters.getCharsEncoded());
+        assertEquals(3, counters.getValuesEncoded());
+    }
+    
+    @Test
+    public void limits() throws SyntaxError, IOException {
+        JSON.Decoder decoder = new JSON.Decoder(new JSON.Limits().maxChars(40).maxStringLength(5)
+                .maxNumberLength(4).maxKeys(2).maxValues(6).maxDepth(2).stacklessErrors(true));
+        assertEquals(2, ((Map<?, ?>) decoder.decode("{\"abcde\": 1234, \"b\": [-1.5]}")).size());
+        String[] rejected = { "[1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15]", "\"abcdef\"",
+                "'a\\nbcde'", "abcdef", "12345", "-1234", "{\"a\": 1, \"b\": 2, \"c\": 3}",
+                "[1, 2, 3, 4, 5, 6]", "[[[1]]]", "{\"abcdef\": 1}" };
+        for (String json : rejected) {
+            try {
+                decoder.decode(json);
+                fail("limit not enforced for " + json);
+            } catch (SyntaxError e) {
+                assertEquals(0, e.getStackTrace().length);
+            }
+            try {
+                decoder.decodeStrict(json.replace('\'', '"'));
+                fail("limit not enforced for " + json);
+            } catch (SyntaxError e) {
+            }
+        }
+        try {
+            decoder.decode(new StringReader("[\"" + new String(new char[5000]).replace('\0', ' ') + "\"]"));
+            fail("limit not enforced");
+        } catch (SyntaxError e) {
+        }
+    }
+    
+    @Test
+    public void errorPosition() {
+        try {
+            JSON.decodeStrict("{\n  \"a\": 1,\n  \"b\": [1 2]\n}");
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+            assertEquals(3, e.getLine());
+            assertEquals(11, e.getColumn());
+            assertEquals(23, e.getCharIndex());
+            assertEquals("Expected a ',' or ']' on character 23", e.getMessage());
+        }
+        try {
+            JSON.decode("\"\\u12x4\"");
+            fail("syntax error expected");
+        } catch (SyntaxError e) {
+        }
+    }
+    
+    @Test
+    public void collidingKeys() throws SyntaxError {
+        // "Aa" and "BB" have the same hash code, and so do all strings made of them
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < 1 << 15; i++) {
+            json.append('"');
+            for (int bit = 0; bit < 15; bit++)
+                json.append((i & (1 << bit)) != 0 ? "Aa" : "BB");
+            json.append("\":1,");
+        }
+        json.setCharAt(json.length() - 1, '}');
+        long start = System.nanoTime();
+        assertEquals(1 << 15, ((Map<?, ?>) JSON.decodeStrict(json.toString())).size());
+        assertTrue(System.nanoTime() - start < 5000000000L);
+    }
+    
 }
@@ -1,8 +1,11 @@
 package com.yoursway.jyp.tests;
 
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.fail;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -135,4 +138,81 @@ public class JsonEncodingTests {
         assertEquals("{}", JSON.encode(new HashMap<Object, Object>()));
     }
     
+    @Test
+    public void nestedContainers() {
+        Map<Object, Object> c = new HashMap<Object, Object>();
+        c.put("a", new ArrayList<Object>());
+        c.put("b", new Object[] { new HashMap<Object, Object>(), c.get("a"), 1 });
+        assertEquals("{\"a\":[],\"b\":[{},[],1]}", JSON.encode(c));
+    }
+    
+    @Test
+    public void deeplyNested() throws IOException {
+        List<Object> root = new ArrayList<Object>();
+        List<Object> list = root;
+        for (int i = 1; i < 100000; i++) {
+            List<Object> child = new ArrayList<Object>();
+            list.add(child);
+            list = child;
+        }
+        StringBuilder result = new StringBuilder();
+        try {
+            JSON.encode(root, result);
+            fail("nesting depth not limited");
+        } catch (IllegalArgumentException e) {
+        }
+        result.setLength(0);
+        JSON.encode(root, result, Integer.MAX_VALUE);
+        assertEquals(200000, result.length());
+    }
+    
+    @Test
+    public void reusableEncoder() {
+        JSON.Encoder encoder = new JSON.Encoder();
+        assertEquals("[1,\"a\"]", encoder.encode(new Object[] { 1, "a" }));
+        assertEquals("{}", encoder.encode(new HashMap<Object, Object>()));
+        assertEquals("null", encoder.encode(null));
+    }
+    
+    @Test
+    public void raw() {
+        Map<String, Object> map = new HashMap<String, Object>();
+        map.put("id", 7);
+        map.put("payload", new JSON.Raw("{\"stored\": [1, 2]}"));
+        assertEquals("{\"id\":7,\"payload\":{\"stored\": [1, 2]}}", JSON.encode(map));
+    }
+    
+    @Test
+    public void encodedCache() {
+        JSON.EncodedCache cache = new JSON.EncodedCache(20, false);
+        assertEquals("[1,2,3]", cache.get(Arrays.asList(1, 2, 3)).toString());
+        assertEquals("[1,2,3]", cache.get(Arrays.asList(1, 2, 3)).toString());
+        assertEquals(1, cache.hits());
+        assertEquals(1, cache.misses());
+        assertEquals(7, cache.chars());
+        cache.get(Arrays.asList("abcdef", "ghijkl"));
+        assertEquals(1, cache.size());
+        assertEquals(19, cache.chars());
+        cache.get(Arrays.asList("this one is too long to be cached"));
+        assertEquals(1, cache.size());
+    }
+    
+    @Test
+    public void encodedCacheRegistered() {
+        JSON.EncodedCache cache = new JSON.EncodedCache(100, true);
+        cache.register(ArrayList.class);
+        try {
+            List<Object> list = new ArrayList<Object>(Arrays.asList(1, 2));
+            Map<String, Object> map = new HashMap<String, Object>();
+            map.put("x", list);
+            assertEquals("{\"x\":[1,2]}", JSON.encode(map));
+            assertEquals("{\"x\":[1,2]}", JSON.encode(map));
+            assertEquals("[1,2]", JSON.encode(list));
+            assertEquals(2, cache.hits());
+            assertEquals(1, cache.misses());
+        } finally {
+            cache.unregister(ArrayList.class);
+        }
+    }
+    
 }
@@ -0,0 +1,96 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yoursway.jyp.JSON;
+import com.yoursway.jyp.OffHeapCache;
+import com.yoursway.jyp.JSON.SyntaxError;
+
+public class OffHeapCacheTests {
+    
+    private static final String DOCUMENT = "{\"name\":\"caf\\u00e9 \\\"du\\\" </script>\","
+            + "\"id\":12345678901,\"tags\":[\"a\",\"b\",null,true,false],\"price\":2.5,\"count\":3,"
+            + "\"nested\":{\"z\":[],\"a\":{}}}";
+    
+    @Test
+    public void roundTrip() throws SyntaxError {
+        Object decoded = JSON.decode(DOCUMENT);
+        OffHeapCache<String> cache = new OffHeapCache<String>(1024 * 1024);
+        cache.put("doc", decoded);
+        Object view = cache.get("doc");
+        assertEquals(decoded, view);
+        assertEquals(JSON.encode(decoded), JSON.encode(view));
+        assertEquals("[" + JSON.encode(decoded) + "]", JSON.encode(Collections.singletonList(view)));
+    }
+    
+    @Test
+    public void views() throws SyntaxError {
+        OffHeapCache<Integer> cache = new OffHeapCache<Integer>(1024 * 1024);
+        cache.put(1, JSON.decode(DOCUMENT));
+        cache.put(2, 1.5f);
+        Map<?, ?> map = (Map<?, ?>) cache.get(1);
+        assertEquals(6, map.size());
+        assertEquals(12345678901L, map.get("id"));
+        assertEquals(3, map.get("count"));
+        assertNull(map.get("missing"));
+        assertTrue(map.containsKey("nested"));
+        assertFalse(map.containsKey("nested2"));
+        List<?> tags = (List<?>) map.get("tags");
+        assertEquals(Arrays.asList("a", "b", null, true, false), tags);
+        assertEquals(1.5, cache.get(2));
+        assertNull(cache.get(3));
+        try {
+            map.remove("id");
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+    
+    @Test
+    public void eviction() {
+        OffHeapCache<Integer> cache = new OffHeapCache<Integer>(3 * 256, 256);
+        List<?> first = null;
+        for (int i = 0; i < 40; i++) {
+            cache.put(i, Arrays.asList("document", i));
+            if (i == 0)
+                first = (List<?>) cache.get(0);
+        }
+        assertEquals(3 * 256, cache.reservedBytes());
+        assertTrue(cache.containsKey(39));
+        assertFalse(cache.containsKey(0));
+        assertEquals(Arrays.asList("document", 39), cache.get(39));
+        try {
+            first.get(1);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.usedBytes());
+    }
+    
+    @Test
+    public void documentTooLarge() {
+        OffHeapCache<Integer> cache = new OffHeapCache<Integer>(256, 256);
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        try {
+            cache.put(1, new String(chars));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Document of 305 bytes does not fit into an arena of 256 bytes", e.getMessage());
+        }
+    }
+    
+}
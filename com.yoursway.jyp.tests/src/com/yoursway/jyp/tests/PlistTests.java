@@ -0,0 +1,258 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yoursway.jyp.BeanEncoding;
+import com.yoursway.jyp.Plist;
+import com.yoursway.jyp.BeanEncoding.BeanificationException;
+import com.yoursway.jyp.Plist.SyntaxError;
+import com.yoursway.jyp.tests.beans.ImmutableBean;
+import com.yoursway.jyp.tests.beans.MoreComplexBean;
+
+public class PlistTests {
+    
+    private static final String SIMPLE_DICT = "62706c6973743030" + "d10102" + "5161" + "1001" + "080b0d"
+            + "000000000000" + "0101" + "0000000000000003" + "0000000000000000" + "000000000000000f";
+    
+    @Test
+    public void simpleDict() throws SyntaxError {
+        Map<Object, Object> map = Collections.<Object, Object> singletonMap("a", 1);
+        assertArrayEquals(bytes(SIMPLE_DICT), Plist.encode(map));
+        assertEquals(map, Plist.decode(bytes(SIMPLE_DICT)));
+    }
+    
+    @Test
+    public void roundTrip() throws SyntaxError {
+        List<Object> list = new ArrayList<Object>();
+        list.add(Long.MIN_VALUE);
+        list.add(Long.MAX_VALUE);
+        list.add(255);
+        list.add(-1);
+        list.add(new BigInteger("18446744073709551616"));
+        list.add(new BigInteger("-98765432109876543210"));
+        list.add("\u043f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00");
+        list.add("a string longer than fifteen characters");
+        list.add(false);
+        list.add(null);
+        list.add(-0.5);
+        list.add(new Date(1234567890123L));
+        list.add(Collections.nCopies(20, Collections.singletonMap("k", "v")));
+        assertEquals(list, Plist.decode(Plist.encode(list)));
+        byte[] data = new byte[] { 1, 2, 3 };
+        assertArrayEquals(data, (byte[]) Plist.decode(Plist.encode(data)));
+    }
+    
+    @Test
+    public void repeatedValuesAreStoredOnce() throws SyntaxError {
+        List<Object> list = new ArrayList<Object>();
+        for (int i = 0; i < 100; i++) {
+            list.add("repeated string");
+            list.add(123456789L);
+            list.add(123456789);
+        }
+        byte[] data = Plist.encode(list);
+        // header, the array of 300 one-byte references, one string, one integer,
+        // three two-byte offsets and the trailer
+        assertEquals(8 + 304 + 18 + 5 + 6 + 32, data.length);
+        List<?> lazy = (List<?>) Plist.decodeLazily(ByteBuffer.wrap(data));
+        assertEquals(300, lazy.size());
+        assertEquals(123456789, lazy.get(1));
+        assertEquals(123456789, lazy.get(2));
+        assertSame(lazy.get(0), lazy.get(297));
+    }
+    
+    @Test
+    public void lazyViewsDecodeOnlyWhatIsAccessed() throws SyntaxError {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("bad", "x");
+        map.put("good", 1);
+        byte[] data = Plist.encode(map);
+        // turn the one-character string "x" into an unsupported object type
+        for (int i = 0; i < data.length - 1; i++)
+            if (data[i] == 0x51 && data[i + 1] == 'x')
+                data[i] = 0x70;
+        try {
+            Plist.decode(data);
+            fail();
+        } catch (SyntaxError e) {
+        }
+        Map<?, ?> lazy = (Map<?, ?>) Plist.decodeLazily(ByteBuffer.wrap(data));
+        assertEquals(1, lazy.get("good"));
+        assertTrue(lazy.containsKey("bad"));
+        try {
+            lazy.get("bad");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof SyntaxError);
+        }
+    }
+    
+    @Test
+    public void mappedFile() throws SyntaxError, IOException {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("name", "bundle");
+        map.put("items", Arrays.asList(1, 2.5, "three"));
+        Path file = Files.createTempFile("jyp", ".plist");
+        try {
+            Files.write(file, Plist.encode(map));
+            assertEquals(map, Plist.map(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+    
+    @Test
+    public void beans() throws SyntaxError, BeanificationException {
+        List<ImmutableBean> children = new ArrayList<ImmutableBean>();
+        children.add(new ImmutableBean(42, 6));
+        MoreComplexBean bean = new MoreComplexBean(children);
+        bean.setX(11);
+        Object lazy = Plist.decodeLazily(ByteBuffer.wrap(Plist.encode(BeanEncoding.simplify(bean))));
+        MoreComplexBean decoded = BeanEncoding.beanify(lazy, MoreComplexBean.class);
+        assertEquals(11, decoded.getX());
+        assertEquals(6, decoded.getChildren().get(0).getBar());
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void truncated() throws SyntaxError {
+        Plist.decode(Arrays.copyOf(bytes(SIMPLE_DICT), 40));
+    }
+    
+    @Test
+    public void xmlDocument() throws SyntaxError {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" "
+                + "\"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n" + "<plist version=\"1.0\">\n"
+                + "<dict>\n" + "\t<key>name</key>\n\t<string>a &amp; b</string>\n"
+                + "\t<key>count</key>\n\t<integer>-42</integer>\n"
+                + "\t<key>big</key>\n\t<integer>18446744073709551616</integer>\n"
+                + "\t<key>ratio</key>\n\t<real>0.25</real>\n" + "\t<key>enabled</key>\n\t<true/>\n"
+                + "\t<key>created</key>\n\t<date>2009-02-13T23:31:30Z</date>\n"
+                + "\t<key>blob</key>\n\t<data>\n\tAAEC\n\tAw==\n\t</data>\n"
+                + "\t<key>items</key>\n\t<array>\n\t\t<dict/>\n\t\t<array/>\n\t</array>\n" + "</dict>\n"
+                + "</plist>\n";
+        Map<?, ?> map = (Map<?, ?>) Plist.decodeXML(xml);
+        assertEquals("a & b", map.get("name"));
+        assertEquals(-42, map.get("count"));
+        assertEquals(new BigInteger("18446744073709551616"), map.get("big"));
+        assertEquals(0.25, map.get("ratio"));
+        assertEquals(true, map.get("enabled"));
+        assertEquals(new Date(1234567890000L), map.get("created"));
+        assertArrayEquals(new byte[] { 0, 1, 2, 3 }, (byte[]) map.get("blob"));
+        assertEquals(Arrays.asList(new HashMap<Object, Object>(), new ArrayList<Object>()), map.get("items"));
+    }
+    
+    @Test
+    public void xmlEncoding() {
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("b", Arrays.asList(1, "x < y"));
+        map.put("a", new byte[] { 0, 1, 2, 3 });
+        map.put("c", null);
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" "
+                + "\"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">\n" + "<plist version=\"1.0\">\n"
+                + "<dict>\n" + "\t<key>a</key>\n\t<data>AAECAw==</data>\n" + "\t<key>b</key>\n\t<array>\n"
+                + "\t\t<integer>1</integer>\n\t\t<string>x &lt; y</string>\n\t</array>\n" + "</dict>\n"
+                + "</plist>\n", Plist.encodeXML(map));
+    }
+    
+    @Test
+    public void xmlRoundTrip() throws SyntaxError, IOException {
+        List<Object> list = new ArrayList<Object>();
+        list.add(Long.MIN_VALUE);
+        list.add("\u043f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00");
+        list.add(false);
+        list.add(-0.5);
+        list.add(Double.NEGATIVE_INFINITY);
+        list.add(new Date(1234567890000L));
+        list.add(Collections.singletonMap("k", Arrays.asList("v")));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Plist.encodeXML(list, output);
+        assertEquals(list, Plist.decodeXML(new ByteArrayInputStream(output.toByteArray())));
+        byte[] data = new byte[10000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 31);
+        assertArrayEquals(data, (byte[]) Plist.decodeXML(Plist.encodeXML(data)));
+    }
+    
+    @Test
+    public void xmlBeans() throws SyntaxError, BeanificationException {
+        List<ImmutableBean> children = new ArrayList<ImmutableBean>();
+        children.add(new ImmutableBean(42, 6));
+        MoreComplexBean bean = new MoreComplexBean(children);
+        bean.setX(11);
+        Object decoded = Plist.decodeXML(Plist.encodeXML(BeanEncoding.simplify(bean)));
+        MoreComplexBean copy = BeanEncoding.beanify(decoded, MoreComplexBean.class);
+        assertEquals(11, copy.getX());
+        assertEquals(6, copy.getChildren().get(0).getBar());
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void xmlMissingKey() throws SyntaxError {
+        Plist.decodeXML("<plist><dict><string>x</string></dict></plist>");
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void xmlTooDeep() throws SyntaxError, IOException {
+        Plist.decodeXML(new StringReader("<plist><array><array><array/></array></array></plist>"), 2);
+    }
+    
+    @Test
+    public void sharedReferences() throws SyntaxError {
+        List<Object> pair = Arrays.<Object> asList(1, 1);
+        assertEquals(Arrays.asList(pair, pair), Plist.decode(chainedArrays(2)));
+        assertEquals(2, ((List<?>) Plist.decodeLazily(ByteBuffer.wrap(chainedArrays(60)))).size());
+        try {
+            Plist.decode(chainedArrays(60));
+            fail();
+        } catch (SyntaxError e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("too many shared references"));
+        }
+    }
+    
+    /**
+     * Returns a binary plist where object 0 is 1 and each following object
+     * is an array referencing the previous one twice.
+     */
+    private static byte[] chainedArrays(int arrays) {
+        StringBuilder hex = new StringBuilder("62706c6973743030" + "1001");
+        for (int i = 1; i <= arrays; i++)
+            hex.append(String.format("a2%02x%02x", i - 1, i - 1));
+        hex.append("08");
+        for (int i = 1; i <= arrays; i++)
+            hex.append(String.format("%02x", 10 + 3 * (i - 1)));
+        hex.append("000000000000" + "0101");
+        hex.append(String.format("%016x%016x%016x", arrays + 1, arrays, 10 + 3 * arrays));
+        return bytes(hex.toString());
+    }
+    
+    private static byte[] bytes(String hex) {
+        byte[] result = new byte[hex.length() / 2];
+        for (int i = 0; i < result.length; i++)
+            result[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        return result;
+    }
+    
+}
@@ -0,0 +1,202 @@
+package com.yoursway.jyp.tests;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.yoursway.jyp.BeanEncoding;
+import com.yoursway.jyp.YAML;
+import com.yoursway.jyp.BeanEncoding.BeanificationException;
+import com.yoursway.jyp.YAML.SyntaxError;
+import com.yoursway.jyp.tests.beans.ImmutableBean;
+import com.yoursway.jyp.tests.beans.MoreComplexBean;
+
+public class YamlTests {
+    
+    @Test
+    public void blockCollections() throws SyntaxError {
+        Map<?, ?> map = (Map<?, ?>) YAML.decode("# a comment\n" + "name: demo   # trailing comment\n"
+                + "spec:\n" + "  replicas: 3\n" + "  ports:\n" + "  - 80\n" + "  - 443\n" + "  containers:\n"
+                + "    - name: web\n" + "      image: nginx:1.25\n" + "    -\n" + "      name: sidecar\n"
+                + "empty:\n" + "list:\n" + "- - a\n" + "  - b\n" + "- c\n");
+        assertEquals("demo", map.get("name"));
+        assertNull(map.get("empty"));
+        assertTrue(map.containsKey("empty"));
+        Map<?, ?> spec = (Map<?, ?>) map.get("spec");
+        assertEquals(3, spec.get("replicas"));
+        assertEquals(Arrays.asList(80, 443), spec.get("ports"));
+        List<?> containers = (List<?>) spec.get("containers");
+        assertEquals("nginx:1.25", ((Map<?, ?>) containers.get(0)).get("image"));
+        assertEquals("sidecar", ((Map<?, ?>) containers.get(1)).get("name"));
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), "c"), map.get("list"));
+    }
+    
+    @Test
+    public void plainScalars() throws SyntaxError {
+        assertEquals(Arrays.asList(null, null, true, false, "yes", 12, -7, 255, 8, 3000000000L, new BigInteger(
+            "123456789012345678901234567890"), 1.5, -0.001, 1e10, Double.POSITIVE_INFINITY, "1_000", "0.5.1",
+            "http://example.com/a#b", "multi line text"), YAML.decode("- ~\n- null\n- true\n- False\n- yes\n"
+                + "- 12\n- -7\n- 0xFF\n- 0o10\n- 3000000000\n- 123456789012345678901234567890\n- 1.5\n"
+                + "- -1e-3\n- 1.0E10\n- .inf\n- 1_000\n- 0.5.1\n- http://example.com/a#b\n"
+                + "- multi line\n  text\n"));
+        assertTrue(Double.isNaN((Double) YAML.decode(".nan")));
+        assertEquals("text", YAML.decode("--- text\n..."));
+        assertNull(YAML.decode(""));
+    }
+    
+    @Test
+    public void quotedScalars() throws SyntaxError {
+        assertEquals(Arrays.asList("it's", "tab\there \u00e9 \ud83d\ude00", "folded text\nnew line", "a: b",
+            "joined", "123"), YAML.decode("- 'it''s'\n- \"tab\\there \\u00e9 \\U0001F600\"\n"
+                + "- \"folded   \n   text\n\n  new line\"\n- 'a: b'\n- \"jo\\\n  ined\"\n- !!str 123\n"));
+        Map<?, ?> map = (Map<?, ?>) YAML.decode("\"quoted key\": 1\n'other': 2\n");
+        assertEquals(1, map.get("quoted key"));
+        assertEquals(2, map.get("other"));
+    }
+    
+    @Test
+    public void blockScalars() throws SyntaxError {
+        Map<?, ?> map = (Map<?, ?>) YAML.decode("literal: |\n  line 1\n    indented\n\n  line 3\n"
+                + "folded: >\n  some\n  folded\n\n  text\n" + "strip: |-\n  x\n\n" + "keep: |+\n  x\n\n"
+                + "explicit: |2\n    four spaces\n" + "after: done\n");
+        assertEquals("line 1\n  indented\n\nline 3\n", map.get("literal"));
+        assertEquals("some folded\ntext\n", map.get("folded"));
+        assertEquals("x", map.get("strip"));
+        assertEquals("x\n\n", map.get("keep"));
+        assertEquals("  four spaces\n", map.get("explicit"));
+        assertEquals("done", map.get("after"));
+    }
+    
+    @Test
+    public void flowCollections() throws SyntaxError {
+        Map<?, ?> map = (Map<?, ?>) YAML.decode("ports: [80, 443, ]\n" + "labels: {app: web, tier: \"front\",\n"
+                + "  empty: , url: http://x/y}\n" + "nested: [[1, 2], {a: [b]}, single: pair]\n");
+        assertEquals(Arrays.asList(80, 443), map.get("ports"));
+        Map<?, ?> labels = (Map<?, ?>) map.get("labels");
+        assertEquals("web", labels.get("app"));
+        assertEquals("front", labels.get("tier"));
+        assertNull(labels.get("empty"));
+        assertEquals("http://x/y", labels.get("url"));
+        List<?> nested = (List<?>) map.get("nested");
+        assertEquals(Arrays.asList(1, 2), nested.get(0));
+        assertEquals(Arrays.asList("b"), ((Map<?, ?>) nested.get(1)).get("a"));
+        assertEquals("pair", ((Map<?, ?>) nested.get(2)).get("single"));
+    }
+    
+    @Test
+    public void aliasesShareObjects() throws SyntaxError {
+        Map<?, ?> map = (Map<?, ?>) YAML.decode("base: &base\n  cpu: 1\n  memory: 2Gi\n" + "first: *base\n"
+                + "second: [*base, &n 5, *n]\n");
+        assertSame(map.get("base"), map.get("first"));
+        List<?> second = (List<?>) map.get("second");
+        assertSame(map.get("base"), second.get(0));
+        assertEquals(5, second.get(2));
+    }
+    
+    @Test
+    public void documentStream() throws IOException {
+        String yaml = "%YAML 1.2\n---\nkind: A\n---\nkind: B\n...\n---\n# nothing\n--- [1]\n";
+        Iterator<Object> documents = YAML.documents(new StringReader(yaml));
+        List<Object> result = new ArrayList<Object>();
+        while (documents.hasNext())
+            result.add(documents.next());
+        assertEquals(4, result.size());
+        assertEquals("A", ((Map<?, ?>) result.get(0)).get("kind"));
+        assertEquals("B", ((Map<?, ?>) result.get(1)).get("kind"));
+        assertNull(result.get(2));
+        assertEquals(Arrays.asList(1), result.get(3));
+        assertFalse(YAML.documents(new StringReader("# just a comment\n")).hasNext());
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void decodeRejectsSeveralDocuments() throws SyntaxError {
+        YAML.decode("a: 1\n---\nb: 2\n");
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void badIndentation() throws SyntaxError {
+        YAML.decode("a:\n    b: 1\n  c: 2\n");
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void unknownAlias() throws SyntaxError {
+        YAML.decode("a: *missing\n");
+    }
+    
+    @Test(expected = SyntaxError.class)
+    public void tooDeep() throws SyntaxError, IOException {
+        YAML.decode(new StringReader("- - - [x]\n"), 3);
+    }
+    
+    @Test
+    public void encoding() {
+        Map<Object, Object> spec = new HashMap<Object, Object>();
+        spec.put("replicas", 3);
+        spec.put("ports", Arrays.asList(80, 443));
+        spec.put("script", "echo one\necho two\n");
+        Map<Object, Object> container = new HashMap<Object, Object>();
+        container.put("name", "web");
+        container.put("args", new ArrayList<Object>());
+        spec.put("containers", Arrays.asList(container));
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("kind", "Deployment");
+        map.put("spec", spec);
+        map.put("version", "1.0");
+        map.put("enabled", "yes");
+        map.put("note", "a: b # c");
+        map.put("data", new byte[] { 1, 2, 3 });
+        assertEquals("data: !!binary \"AQID\"\n" + "enabled: \"yes\"\n" + "kind: Deployment\n"
+                + "note: \"a: b # c\"\n" + "spec:\n" + "  containers:\n" + "  - args: []\n" + "    name: web\n"
+                + "  ports:\n" + "  - 80\n" + "  - 443\n" + "  replicas: 3\n" + "  script: |\n"
+                + "    echo one\n" + "    echo two\n" + "version: \"1.0\"\n", YAML.encode(map));
+    }
+    
+    @Test
+    public void roundTrip() throws SyntaxError {
+        List<Object> list = new ArrayList<Object>();
+        list.add(Long.MIN_VALUE);
+        list.add("\u043f\u0440\u0438\u0432\u0435\u0442 \ud83d\ude00");
+        list.add("  leading and trailing  ");
+        list.add("line\r\nbreaks\u0001");
+        list.add("two\n\n\ntrailing\n\n");
+        list.add("- not a list");
+        list.add("");
+        list.add(null);
+        list.add(-0.5);
+        list.add(Arrays.asList(Arrays.asList(), new HashMap<Object, Object>()));
+        Map<Object, Object> map = new HashMap<Object, Object>();
+        map.put("key with: colon", Arrays.asList(1, Arrays.asList(2, 3)));
+        map.put("null", "~");
+        list.add(map);
+        assertEquals(list, YAML.decode(YAML.encode(list)));
+        assertArrayEquals(new byte[] { 0, -1 }, (byte[]) YAML.decode(YAML.encode(new byte[] { 0, -1 })));
+    }
+    
+    @Test
+    public void beans() throws SyntaxError, BeanificationException {
+        List<ImmutableBean> children = new ArrayList<ImmutableBean>();
+        children.add(new ImmutableBean(42, 6));
+        MoreComplexBean bean = new MoreComplexBean(children);
+        bean.setX(11);
+        Object decoded = YAML.decode(YAML.encode(BeanEncoding.simplify(bean)));
+        MoreComplexBean copy = BeanEncoding.beanify(decoded, MoreComplexBean.class);
+        assertEquals(11, copy.getX());
+        assertEquals(6, copy.getChildren().get(0).getBar());
+    }
+    
+}
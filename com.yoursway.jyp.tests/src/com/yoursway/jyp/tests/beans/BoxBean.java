@@ -0,0 +1,15 @@
+package com.yoursway.jyp.tests.beans;
+
+public class BoxBean<T> {
+    
+    private T value;
+    
+    public T getValue() {
+        return value;
+    }
+    
+    public void setValue(T value) {
+        this.value = value;
+    }
+    
+}
@@ -0,0 +1,12 @@
+package com.yoursway.jyp.tests.beans;
+
+import com.yoursway.jyp.BeanEncoding;
+
+@BeanEncoding.TypeName("circle")
+public record Circle(double radius) implements Shape {
+    
+    public double area() {
+        return Math.PI * radius * radius;
+    }
+    
+}
@@ -0,0 +1,7 @@
+package com.yoursway.jyp.tests.beans;
+
+public enum Color {
+    
+    RED, GREEN, BLUE
+    
+}
@@ -0,0 +1,7 @@
+package com.yoursway.jyp.tests.beans;
+
+import java.util.List;
+
+public record Drawing(Color background, List<Shape> shapes) {
+    
+}
@@ -0,0 +1,44 @@
+package com.yoursway.jyp.tests.beans;
+
+import com.yoursway.jyp.BeanEncoding;
+
+@BeanEncoding.FieldAccess
+public class FieldBean {
+    
+    private final int foo;
+    
+    @BeanEncoding.Property("baz")
+    private final String bar;
+    
+    private int x;
+    
+    @BeanEncoding.Transient
+    private int cached;
+    
+    public FieldBean(int foo, String bar) {
+        this.foo = foo;
+        this.bar = bar;
+    }
+    
+    public int foo() {
+        return foo;
+    }
+    
+    public String bar() {
+        return bar;
+    }
+    
+    public int x() {
+        return x;
+    }
+    
+    public void updateX(int x) {
+        this.x = x;
+        this.cached = x * 2;
+    }
+    
+    public int cached() {
+        return cached;
+    }
+    
+}
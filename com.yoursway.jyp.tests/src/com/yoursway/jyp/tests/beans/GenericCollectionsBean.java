@@ -0,0 +1,72 @@
+package com.yoursway.jyp.tests.beans;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+
+public class GenericCollectionsBean {
+    
+    private Set<String> tags;
+    
+    private SortedMap<String, Integer> counts;
+    
+    private Optional<ImmutableBean> best;
+    
+    private EnumMap<Color, Integer> colors;
+    
+    private Map<String, List<? extends ImmutableBean>> groups;
+    
+    private BoxBean<SimpleBean> box;
+    
+    public Set<String> getTags() {
+        return tags;
+    }
+    
+    public void setTags(Set<String> tags) {
+        this.tags = tags;
+    }
+    
+    public SortedMap<String, Integer> getCounts() {
+        return counts;
+    }
+    
+    public void setCounts(SortedMap<String, Integer> counts) {
+        this.counts = counts;
+    }
+    
+    public Optional<ImmutableBean> getBest() {
+        return best;
+    }
+    
+    public void setBest(Optional<ImmutableBean> best) {
+        this.best = best;
+    }
+    
+    public EnumMap<Color, Integer> getColors() {
+        return colors;
+    }
+    
+    public void setColors(EnumMap<Color, Integer> colors) {
+        this.colors = colors;
+    }
+    
+    public Map<String, List<? extends ImmutableBean>> getGroups() {
+        return groups;
+    }
+    
+    public void setGroups(Map<String, List<? extends ImmutableBean>> groups) {
+        this.groups = groups;
+    }
+    
+    public BoxBean<SimpleBean> getBox() {
+        return box;
+    }
+    
+    public void setBox(BoxBean<SimpleBean> box) {
+        this.box = box;
+    }
+    
+}
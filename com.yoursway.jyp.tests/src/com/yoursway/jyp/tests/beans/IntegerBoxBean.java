@@ -0,0 +1,5 @@
+package com.yoursway.jyp.tests.beans;
+
+public class IntegerBoxBean extends BoxBean<Integer> {
+    
+}
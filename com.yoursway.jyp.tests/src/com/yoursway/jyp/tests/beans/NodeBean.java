@@ -0,0 +1,38 @@
+package com.yoursway.jyp.tests.beans;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class NodeBean {
+    
+    private String name;
+    
+    private NodeBean parent;
+    
+    private List<NodeBean> children = new ArrayList<NodeBean>();
+    
+    public String getName() {
+        return name;
+    }
+    
+    public void setName(String name) {
+        this.name = name;
+    }
+    
+    public NodeBean getParent() {
+        return parent;
+    }
+    
+    public void setParent(NodeBean parent) {
+        this.parent = parent;
+    }
+    
+    public List<NodeBean> getChildren() {
+        return children;
+    }
+    
+    public void setChildren(List<NodeBean> children) {
+        this.children = children;
+    }
+    
+}
@@ -0,0 +1,9 @@
+package com.yoursway.jyp.tests.beans;
+
+import java.util.List;
+
+import com.yoursway.jyp.BeanEncoding;
+
+public record RecordBean(int foo, @BeanEncoding.Property("baz") String bar, List<ImmutableBean> children) {
+    
+}
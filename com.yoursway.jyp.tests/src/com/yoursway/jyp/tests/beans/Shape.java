@@ -0,0 +1,10 @@
+package com.yoursway.jyp.tests.beans;
+
+import com.yoursway.jyp.BeanEncoding;
+
+@BeanEncoding.Polymorphic(property = "kind", subtypes = { Circle.class, Square.class })
+public interface Shape {
+    
+    double area();
+    
+}
@@ -0,0 +1,9 @@
+package com.yoursway.jyp.tests.beans;
+
+import com.yoursway.jyp.BeanEncoding;
+
+public enum Size {
+    
+    SMALL, @BeanEncoding.Property("xl") EXTRA_LARGE
+    
+}
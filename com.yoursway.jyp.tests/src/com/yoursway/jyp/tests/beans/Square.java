@@ -0,0 +1,29 @@
+package com.yoursway.jyp.tests.beans;
+
+public class Square implements Shape {
+    
+    private int side;
+    
+    private Size size;
+    
+    public int getSide() {
+        return side;
+    }
+    
+    public void setSide(int side) {
+        this.side = side;
+    }
+    
+    public Size getSize() {
+        return size;
+    }
+    
+    public void setSize(Size size) {
+        this.size = size;
+    }
+    
+    public double area() {
+        return side * side;
+    }
+    
+}
@@ -0,0 +1,519 @@
+package com.yoursway.jyp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import com.yoursway.jyp.JSON.SyntaxError;
+
+/**
+ * Random access to the elements of a large file holding one JSON array.
+ * The byte offset of every element, and optionally the element index for
+ * every value of a chosen key field, are kept in a sidecar index file that
+ * is built in one pass over the memory-mapped data and reused as long as the
+ * data file keeps its size and modification time. When the file has only
+ * been appended to (the array grew), just the new elements are scanned. An
+ * array that is still being written is indexed up to its last complete
+ * element.
+ * {@link #get(long)} and {@link #get(String)} decode a single element with
+ * {@link JSON#decode(String)}.
+ * <p>
+ * The scan checks structure only (brackets, braces and strings), so a
+ * malformed element is reported when it is decoded. Thread-safe once open.
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class ArrayIndex {
+    
+    private static final long MAGIC = 0x4a59504958303031L; // "JYPIX001"
+    
+    private static final int SEGMENT_SHIFT = 30;
+    
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    
+    /** The bytes before the resume position whose CRC tells an append from a rewrite. */
+    private static final int TAIL_SIZE = 4096;
+    
+    private final Path file;
+    
+    private final String keyField;
+    
+    private final MappedByteBuffer[] segments;
+    
+    private final long fileSize;
+    
+    private final long count;
+    
+    private final ByteBuffer offsets;
+    
+    /** (hash, element index) pairs sorted by hash */
+    private final ByteBuffer keys;
+    
+    private final long keyCount;
+    
+    /** Opens the index of the given file, kept next to it with an <code>.idx</code> suffix. */
+    public static ArrayIndex open(Path file) throws IOException {
+        return open(file, null);
+    }
+    
+    /**
+     * Opens the index of the given file that can also look elements up by
+     * the value of the given field, e.g. <code>"id"</code>.
+     */
+    public static ArrayIndex open(Path file, String keyField) throws IOException {
+        return open(file, file.resolveSibling(file.getFileName() + ".idx"), keyField);
+    }
+    
+    /**
+     * Opens the given index of the given file, building or updating it if
+     * it is missing or out of date.
+     */
+    public static ArrayIndex open(Path file, Path indexFile, String keyField) throws IOException {
+        ArrayIndex index = new ArrayIndex(file, keyField);
+        Header header = Header.read(indexFile);
+        if (header == null || !header.matches(keyField) || !index.isCurrent(header))
+            index.build(indexFile, index.canResume(header) ? header : null);
+        return index.load(indexFile);
+    }
+    
+    private ArrayIndex(Path file, String keyField) throws IOException {
+        this.file = file;
+        this.keyField = keyField;
+        this.segments = map(file);
+        this.fileSize = size(segments);
+        this.count = 0;
+        this.offsets = null;
+        this.keys = null;
+        this.keyCount = 0;
+    }
+    
+    private ArrayIndex(ArrayIndex data, Header header, ByteBuffer index) {
+        this.file = data.file;
+        this.keyField = data.keyField;
+        this.segments = data.segments;
+        this.fileSize = data.fileSize;
+        this.count = header.count;
+        this.keyCount = header.keyCount;
+        this.offsets = slice(index, header.length, (int) (8 * count));
+        this.keys = slice(index, header.length + (int) (8 * count), (int) (16 * keyCount));
+    }
+    
+    /** Returns the number of elements in the array. */
+    public long size() {
+        return count;
+    }
+    
+    /** Returns the byte offset of the given element in the file. */
+    public long offset(long index) {
+        if (index < 0 || index >= count)
+            throw new IndexOutOfBoundsException("index " + index + ", size " + count);
+        return offsets.getLong((int) (8 * index));
+    }
+    
+    /** Decodes the given element of the array. */
+    public Object get(long index) throws SyntaxError {
+        long start = offset(index), end = skipValue(start, null, null);
+        if (end > fileSize)
+            throw new IllegalStateException(file + " has changed since it was indexed");
+        return JSON.decode(text(start, end));
+    }
+    
+    /**
+     * Decodes the first element that is an object whose key field holds the
+     * given value (compared as a string), or returns <code>null</code>.
+     */
+    public Object get(String key) throws SyntaxError {
+        if (keyField == null)
+            throw new IllegalStateException("The index has no key field");
+        long hash = hash(key);
+        long low = 0, high = keyCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (keys.getLong((int) (16 * middle)) < hash)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        for (long i = low; i < keyCount && keys.getLong((int) (16 * i)) == hash; i++) {
+            Object element = get(keys.getLong((int) (16 * i + 8)));
+            if (element instanceof Map<?, ?>
+                    && key.equals(String.valueOf(((Map<?, ?>) element).get(keyField))))
+                return element;
+        }
+        return null;
+    }
+    
+    private boolean isCurrent(Header header) throws IOException {
+        return header.fileSize == fileSize && header.modified == Files.getLastModifiedTime(file).toMillis();
+    }
+    
+    /** Checks that the file only grew since it was indexed, by the bytes before the resume position. */
+    private boolean canResume(Header header) {
+        if (header == null || !header.matches(keyField) || fileSize <= header.fileSize)
+            return false;
+        return header.tailCrc == tailCrc(header.resume);
+    }
+    
+    private long tailCrc(long resume) {
+        long start = Math.max(0, resume - TAIL_SIZE);
+        CRC32 crc = new CRC32();
+        crc.update(bytes(start, resume));
+        return crc.getValue();
+    }
+    
+    /**
+     * Scans the file, starting where the given previous index stopped if
+     * there is one, and writes a new index.
+     */
+    private void build(Path indexFile, Header previous) throws IOException {
+        Path temporary = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        try {
+            build(indexFile, temporary, previous);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+    
+    private void build(Path indexFile, Path temporary, Header previous) throws IOException {
+        long[] keyTable = new long[16];
+        long elements = 0, keyed = 0, resume;
+        Header header = new Header(keyField);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files
+                .newOutputStream(temporary)))) {
+            Header.write(out, header); // a placeholder of the same length, rewritten below
+            if (previous != null) {
+                ByteBuffer old = mapIndex(indexFile);
+                elements = previous.count;
+                keyed = previous.keyCount;
+                for (long i = 0; i < elements; i++)
+                    out.writeLong(old.getLong(previous.length + (int) (8 * i)));
+                keyTable = new long[(int) Math.max(16, 2 * keyed)];
+                int keysStart = previous.length + (int) (8 * elements);
+                for (int i = 0; i < 2 * keyed; i++)
+                    keyTable[i] = old.getLong(keysStart + 8 * i);
+                resume = previous.resume;
+            } else {
+                long bracket = skipWhitespace(0);
+                if (bracket == fileSize || byteAt(bracket) != '[')
+                    throw new IOException(file + " does not hold a JSON array");
+                resume = bracket + 1;
+            }
+            long[] keyRange = (keyField != null ? new long[2] : null);
+            byte[] keyBytes = (keyField != null ? keyField.getBytes(StandardCharsets.UTF_8) : null);
+            for (;;) {
+                // the array may still be being written, so stop after the last complete element
+                // and pick up from there next time
+                long position = skipWhitespace(resume);
+                if (position == fileSize || byteAt(position) == ']')
+                    break;
+                if (elements > 0) {
+                    if (byteAt(position) != ',')
+                        throw new IOException("Comma or ] expected at byte " + position + " of " + file);
+                    position = skipWhitespace(position + 1);
+                }
+                if (keyRange != null)
+                    keyRange[0] = keyRange[1] = -1;
+                long end = skipValue(position, keyRange, keyBytes);
+                if (end > fileSize)
+                    break;
+                out.writeLong(position);
+                if (keyRange != null && keyRange[1] >= 0) {
+                    if (2 * keyed == keyTable.length)
+                        keyTable = Arrays.copyOf(keyTable, keyTable.length * 2);
+                    keyTable[(int) (2 * keyed)] = keyHash(keyRange[0], keyRange[1]);
+                    keyTable[(int) (2 * keyed + 1)] = elements;
+                    keyed++;
+                }
+                elements++;
+                resume = end;
+            }
+            sortPairs(keyTable, (int) keyed);
+            for (int i = 0; i < 2 * keyed; i++)
+                out.writeLong(keyTable[i]);
+        }
+        header.fileSize = fileSize;
+        header.modified = Files.getLastModifiedTime(file).toMillis();
+        header.resume = resume;
+        header.tailCrc = tailCrc(resume);
+        header.count = elements;
+        header.keyCount = keyed;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Header.write(new DataOutputStream(bytes), header);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()), 0);
+        }
+        Files.move(temporary, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private ArrayIndex load(Path indexFile) throws IOException {
+        Header header = Header.read(indexFile);
+        if (header == null)
+            throw new IOException("Cannot read the index " + indexFile);
+        return new ArrayIndex(this, header, mapIndex(indexFile));
+    }
+    
+    /**
+     * The fixed part of the index file, followed by the element offsets and
+     * the key table.
+     */
+    private static final class Header {
+        
+        final String keyField;
+        
+        long fileSize, modified, resume, tailCrc, count, keyCount;
+        
+        /** The size of the header in bytes. */
+        int length;
+        
+        Header(String keyField) {
+            this.keyField = keyField;
+        }
+        
+        boolean matches(String keyField) {
+            return (this.keyField == null ? keyField == null : this.keyField.equals(keyField));
+        }
+        
+        static void write(DataOutputStream out, Header header) throws IOException {
+            out.writeLong(MAGIC);
+            out.writeLong(header.fileSize);
+            out.writeLong(header.modified);
+            out.writeLong(header.resume);
+            out.writeLong(header.tailCrc);
+            out.writeLong(header.count);
+            out.writeLong(header.keyCount);
+            byte[] key = (header.keyField != null ? header.keyField.getBytes(StandardCharsets.UTF_8) : null);
+            out.writeInt(key != null ? key.length : -1);
+            if (key != null)
+                out.write(key);
+        }
+        
+        /** Returns the header of the given index file, or <code>null</code> if there is no valid one. */
+        static Header read(Path indexFile) throws IOException {
+            if (!Files.isRegularFile(indexFile))
+                return null;
+            ByteBuffer buffer = mapIndex(indexFile);
+            if (buffer.capacity() < 60 || buffer.getLong(0) != MAGIC)
+                return null;
+            int keyLength = buffer.getInt(56);
+            if (keyLength > buffer.capacity() - 60)
+                return null;
+            String keyField = null;
+            if (keyLength >= 0) {
+                byte[] key = new byte[keyLength];
+                buffer.get(60, key);
+                keyField = new String(key, StandardCharsets.UTF_8);
+            }
+            Header header = new Header(keyField);
+            header.fileSize = buffer.getLong(8);
+            header.modified = buffer.getLong(16);
+            header.resume = buffer.getLong(24);
+            header.tailCrc = buffer.getLong(32);
+            header.count = buffer.getLong(40);
+            header.keyCount = buffer.getLong(48);
+            header.length = 60 + Math.max(keyLength, 0);
+            if (header.count < 0 || header.keyCount < 0
+                    || header.length + 8 * header.count + 16 * header.keyCount != buffer.capacity())
+                return null;
+            return header;
+        }
+        
+    }
+    
+    private static ByteBuffer mapIndex(Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException("Index " + indexFile + " is too large");
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+    
+    private static MappedByteBuffer[] map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int count = (int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+            MappedByteBuffer[] segments = new MappedByteBuffer[count];
+            for (int i = 0; i < segments.length; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_SIZE, size
+                        - start));
+            }
+            return segments;
+        }
+    }
+    
+    private static long size(MappedByteBuffer[] segments) {
+        if (segments.length == 0)
+            return 0;
+        return ((long) (segments.length - 1) << SEGMENT_SHIFT) + segments[segments.length - 1].capacity();
+    }
+    
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        return buffer.duplicate().position(offset).limit(offset + length).slice();
+    }
+    
+    private byte byteAt(long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & (SEGMENT_SIZE - 1)));
+    }
+    
+    private byte[] bytes(long start, long end) {
+        byte[] result = new byte[(int) (end - start)];
+        int done = 0;
+        while (done < result.length) {
+            long position = start + done;
+            MappedByteBuffer segment = segments[(int) (position >>> SEGMENT_SHIFT)];
+            int offset = (int) (position & (SEGMENT_SIZE - 1));
+            int n = Math.min(result.length - done, segment.capacity() - offset);
+            segment.get(offset, result, done, n);
+            done += n;
+        }
+        return result;
+    }
+    
+    private String text(long start, long end) {
+        if (end - start > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Element at byte " + start + " is too large");
+        return new String(bytes(start, end), StandardCharsets.UTF_8);
+    }
+    
+    private long skipWhitespace(long position) {
+        while (position < fileSize) {
+            byte b = byteAt(position);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r')
+                break;
+            position++;
+        }
+        return position;
+    }
+    
+    /**
+     * Returns the end of the value starting at the given position, or a
+     * position past the end of the file if the value is incomplete. If the
+     * value is an object with the given key, the range of the key's value is
+     * stored into <code>keyRange</code>.
+     */
+    private long skipValue(long position, long[] keyRange, byte[] key) {
+        int depth = 0;
+        do {
+            if (position >= fileSize)
+                return fileSize + 1;
+            byte b = byteAt(position);
+            switch (b) {
+            case '{':
+            case '[':
+                depth++;
+                position++;
+                break;
+            case '}':
+            case ']':
+            case ',':
+                if (depth == 1 && key != null && keyRange[0] >= 0 && keyRange[1] < 0)
+                    keyRange[1] = position;
+                if (b != ',')
+                    depth--;
+                position++;
+                break;
+            case '"':
+                long end = skipString(position);
+                if (depth == 1 && key != null && keyRange[0] < 0 && end <= fileSize
+                        && matches(position + 1, end - 1, key)) {
+                    long colon = skipWhitespace(end);
+                    if (colon < fileSize && byteAt(colon) == ':')
+                        keyRange[0] = skipWhitespace(colon + 1);
+                }
+                position = end;
+                break;
+            default:
+                position++;
+                if (depth == 0) {
+                    // a number or a literal, which may still be incomplete at the end of the file
+                    while (position < fileSize && isScalarByte(byteAt(position)))
+                        position++;
+                    if (position == fileSize)
+                        return fileSize + 1;
+                }
+            }
+        } while (depth > 0);
+        return position;
+    }
+    
+    private static boolean isScalarByte(byte b) {
+        return b != ',' && b != ']' && b != '}' && b != ' ' && b != '\t' && b != '\n' && b != '\r';
+    }
+    
+    /** Returns the position after the closing quote of the string at the given position. */
+    private long skipString(long quote) {
+        long position = quote + 1;
+        while (position < fileSize) {
+            byte b = byteAt(position);
+            if (b == '"')
+                return position + 1;
+            position += (b == '\\' ? 2 : 1);
+        }
+        return fileSize + 1;
+    }
+    
+    private boolean matches(long start, long end, byte[] key) {
+        if (end - start != key.length)
+            return false;
+        for (int i = 0; i < key.length; i++)
+            if (byteAt(start + i) != key[i])
+                return false;
+        return true;
+    }
+    
+    /** Hashes the key value in the given range the way {@link #get(String)} hashes the looked up key. */
+    private long keyHash(long start, long end) throws IOException {
+        while (end > start && isWhitespace(byteAt(end - 1)))
+            end--;
+        try {
+            return hash(String.valueOf(JSON.decode(text(start, end))));
+        } catch (SyntaxError e) {
+            throw new IOException("Malformed key value at byte " + start + " of " + file, e);
+        }
+    }
+    
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+    
+    /** 64-bit FNV-1a over the chars, as string hash codes collide too easily for large files. */
+    private static long hash(String s) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            hash ^= s.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+    
+    /** Sorts the (hash, index) pairs by hash, keeping pairs with equal hashes in order. */
+    private static void sortPairs(long[] table, int count) {
+        long[] buffer = new long[2 * count];
+        for (int width = 1; width < count; width *= 2) {
+            for (int low = 0; low < count; low += 2 * width) {
+                int middle = Math.min(low + width, count), high = Math.min(low + 2 * width, count);
+                int i = low, j = middle, k = low;
+                while (k < high) {
+                    int from = (j >= high || (i < middle && table[2 * i] <= table[2 * j]) ? i++ : j++);
+                    buffer[2 * k] = table[2 * from];
+                    buffer[2 * k + 1] = table[2 * from + 1];
+                    k++;
+                }
+            }
+            System.arraycopy(buffer, 0, table, 0, 2 * count);
+        }
+    }
+    
+}
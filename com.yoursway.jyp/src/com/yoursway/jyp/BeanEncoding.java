@@ -1,26 +1,69 @@
 package com.yoursway.jyp;
 
+import static java.lang.annotation.ElementType.FIELD;
 import static java.lang.annotation.ElementType.METHOD;
 import static java.lang.annotation.ElementType.PARAMETER;
+import static java.lang.annotation.ElementType.TYPE;
 
 import java.beans.IntrospectionException;
 import java.lang.annotation.Annotation;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
 import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
 import java.lang.reflect.Member;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.RecordComponent;
 import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.lang.reflect.WildcardType;
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalAmount;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 /**
  * Represents the given bean (which may also be a collection) using a restricted
@@ -32,20 +75,69 @@ import java.util.Map;
  */
 public class BeanEncoding {
     
+    /**
+     * The limit on nesting of maps, lists and beans in <code>simplify</code>
+     * and <code>beanify</code>, which recurse: deeper values fail instead of
+     * overflowing the stack.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    
     @Retention(RetentionPolicy.RUNTIME)
-    @Target( { METHOD })
+    @Target( { METHOD, FIELD })
     public @interface Transient {
         
     }
     
     @Retention(RetentionPolicy.RUNTIME)
-    @Target( { PARAMETER, METHOD })
+    @Target( { PARAMETER, METHOD, FIELD })
     public @interface Property {
         
         String value();
         
     }
     
+    /**
+     * Makes the annotated class read and write its instance fields directly
+     * instead of going through getters and setters. Static, <code>transient</code>
+     * and {@link Transient} fields are skipped. Final fields are bound through
+     * the property constructor, or, when there is none, through a constructor
+     * whose parameter types match the final fields in declaration order.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target( { TYPE })
+    public @interface FieldAccess {
+        
+    }
+    
+    /**
+     * Marks a class or interface whose subtypes are told apart by a type
+     * name property: simplifying an instance of a listed subtype adds the
+     * property, and beanifying into the annotated type creates the subtype it
+     * names. A subtype is named by its {@link TypeName} annotation or, without
+     * one, by its simple class name.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target( { TYPE })
+    public @interface Polymorphic {
+        
+        /** The property holding the type name. */
+        String property() default "type";
+        
+        Class<?>[] subtypes();
+        
+    }
+    
+    /**
+     * Sets the name of a {@link Polymorphic} subtype.
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target( { TYPE })
+    public @interface TypeName {
+        
+        String value();
+        
+    }
+    
     public static class BeanificationException extends Exception {
         private static final long serialVersionUID = 1L;
         
@@ -59,75 +151,880 @@ public class BeanEncoding {
         
     }
     
+    private static final class FieldProperty {
+        
+        final String name;
+        
+        final Field field;
+        
+        final VarHandle handle;
+        
+        FieldProperty(String name, Field field, VarHandle handle) {
+            this.name = name;
+            this.field = field;
+            this.handle = handle;
+        }
+        
+        boolean isFinal() {
+            return Modifier.isFinal(field.getModifiers());
+        }
+        
+    }
+    
+    private static final ClassValue<Map<String, FieldProperty>> FIELD_PROPERTIES =
+        new ClassValue<Map<String, FieldProperty>>() {
+        
+        @Override
+        protected Map<String, FieldProperty> computeValue(Class<?> klass) {
+            return findPropertyFields(klass);
+        }
+        
+    };
+    
+    private static final class RecordModel {
+        
+        final String[] names;
+        
+        final Type[] types;
+        
+        final boolean[] transients;
+        
+        final Object[] defaults;
+        
+        final MethodHandle[] accessors;
+        
+        final MethodHandle constructor;
+        
+        final Map<String, Integer> indexByName;
+        
+        RecordModel(Class<?> klass) {
+            RecordComponent[] components = klass.getRecordComponents();
+            int count = components.length;
+            names = new String[count];
+            types = new Type[count];
+            transients = new boolean[count];
+            defaults = new Object[count];
+            accessors = new MethodHandle[count];
+            indexByName = new HashMap<String, Integer>(count * 2);
+            Class<?>[] parameterTypes = new Class<?>[count];
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(klass, MethodHandles.lookup());
+                for (int i = 0; i < count; i++) {
+                    RecordComponent component = components[i];
+                    Method accessor = component.getAccessor();
+                    Property annotation = accessor.getAnnotation(Property.class);
+                    names[i] = (annotation == null ? component.getName() : annotation.value());
+                    types[i] = component.getGenericType();
+                    transients[i] = accessor.isAnnotationPresent(Transient.class);
+                    parameterTypes[i] = component.getType();
+                    if (parameterTypes[i].isPrimitive())
+                        defaults[i] = Array.get(Array.newInstance(parameterTypes[i], 1), 0);
+                    accessors[i] = lookup.unreflect(accessor).asType(
+                        MethodType.methodType(Object.class, Object.class));
+                    indexByName.put(names[i], i);
+                }
+                MethodHandle canonical = lookup.findConstructor(klass, MethodType.methodType(void.class,
+                    parameterTypes));
+                constructor = canonical.asType(canonical.type().generic()).asSpreader(Object[].class, count);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot access record " + klass.getName(), e);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("No canonical constructor found for " + klass.getName(),
+                        e);
+            }
+        }
+        
+    }
+    
+    private static final ClassValue<RecordModel> RECORD_MODELS = new ClassValue<RecordModel>() {
+        
+        @Override
+        protected RecordModel computeValue(Class<?> klass) {
+            return new RecordModel(klass);
+        }
+        
+    };
+    
+    /**
+     * The names of the constants of an enum, which are their {@link Property}
+     * names if annotated and their Java names otherwise.
+     */
+    private static final class EnumModel {
+        
+        final Object[] constants;
+        
+        final String[] names;
+        
+        final Map<String, Object> constantsByName = new HashMap<String, Object>();
+        
+        EnumModel(Class<?> klass) {
+            constants = klass.getEnumConstants();
+            names = new String[constants.length];
+            for (int i = 0; i < constants.length; i++) {
+                String name = ((Enum<?>) constants[i]).name();
+                try {
+                    Property property = klass.getField(name).getAnnotation(Property.class);
+                    if (property != null)
+                        name = property.value();
+                } catch (NoSuchFieldException e) {
+                    throw new AssertionError(e);
+                }
+                names[i] = name;
+                if (constantsByName.put(name, constants[i]) != null)
+                    throw new IllegalArgumentException("Duplicate constant name " + name + " in "
+                            + klass.getName());
+            }
+        }
+        
+    }
+    
+    private static final ClassValue<EnumModel> ENUM_MODELS = new ClassValue<EnumModel>() {
+        
+        @Override
+        protected EnumModel computeValue(Class<?> klass) {
+            return new EnumModel(klass);
+        }
+        
+    };
+    
+    /**
+     * The subtypes of a {@link Polymorphic} type by name, or no subtypes for
+     * any other type.
+     */
+    private static final class SubtypeTable {
+        
+        final String property;
+        
+        final Map<String, Class<?>> subtypesByName = new HashMap<String, Class<?>>();
+        
+        SubtypeTable(Class<?> klass) {
+            Polymorphic polymorphic = klass.getAnnotation(Polymorphic.class);
+            if (polymorphic == null) {
+                property = null;
+                return;
+            }
+            property = polymorphic.property();
+            for (Class<?> subtype : polymorphic.subtypes()) {
+                if (!klass.isAssignableFrom(subtype))
+                    throw new IllegalArgumentException(subtype.getName() + " listed as a subtype of "
+                            + klass.getName() + " does not extend it");
+                if (subtypesByName.put(typeName(subtype), subtype) != null)
+                    throw new IllegalArgumentException("Duplicate type name " + typeName(subtype) + " in "
+                            + klass.getName());
+            }
+        }
+        
+    }
+    
+    private static final ClassValue<SubtypeTable> SUBTYPE_TABLES = new ClassValue<SubtypeTable>() {
+        
+        @Override
+        protected SubtypeTable computeValue(Class<?> klass) {
+            return new SubtypeTable(klass);
+        }
+        
+    };
+    
+    private static final String[] NO_TYPE_TAG = new String[0];
+    
+    /**
+     * The type name property and value to add when simplifying each class,
+     * found among the {@link Polymorphic} types it is listed in.
+     */
+    private static final ClassValue<String[]> TYPE_TAGS = new ClassValue<String[]>() {
+        
+        @Override
+        protected String[] computeValue(Class<?> klass) {
+            List<Class<?>> supertypes = new ArrayList<Class<?>>();
+            supertypes.add(klass);
+            for (int i = 0; i < supertypes.size(); i++) {
+                Class<?> type = supertypes.get(i);
+                Polymorphic polymorphic = type.getAnnotation(Polymorphic.class);
+                if (polymorphic != null && Arrays.asList(polymorphic.subtypes()).contains(klass))
+                    return new String[] { polymorphic.property(), typeName(klass) };
+                if (type.getSuperclass() != null)
+                    supertypes.add(type.getSuperclass());
+                supertypes.addAll(Arrays.asList(type.getInterfaces()));
+            }
+            return NO_TYPE_TAG;
+        }
+        
+    };
+    
+    private static String typeName(Class<?> klass) {
+        TypeName name = klass.getAnnotation(TypeName.class);
+        return (name != null ? name.value() : klass.getSimpleName());
+    }
+    
+    /**
+     * Writes and reads the ISO-8601 forms of <code>java.time</code> values
+     * without going through <code>DateTimeFormatter</code>. Timestamps in a
+     * batch of records mostly fall on a few dates, so the date part is kept
+     * in two small direct-mapped caches: one by epoch day for writing and one
+     * by the packed year, month and day for reading. Entries are immutable
+     * and replaced whole, so the caches need no locking. Years outside
+     * 0000-9999 and forms the fast parser does not know are left to the
+     * <code>toString</code> and <code>parse</code> methods of the value class.
+     */
+    private static final class IsoTime {
+        
+        private static final int CACHE_SIZE = 64;
+        
+        private static final class DateEntry {
+            
+            final long epochDay;
+            
+            /** <code>year * 10000 + month * 100 + day</code> */
+            final int packed;
+            
+            final LocalDate date;
+            
+            final String text;
+            
+            DateEntry(LocalDate date) {
+                this.date = date;
+                epochDay = date.toEpochDay();
+                packed = date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth();
+                StringBuilder builder = new StringBuilder(10);
+                appendDate(builder, date);
+                text = builder.toString();
+            }
+            
+        }
+        
+        /** The epoch days of 0000-01-01 and 9999-12-31. */
+        private static final long FIRST_EPOCH_DAY = -719528, LAST_EPOCH_DAY = 2932896;
+        
+        private static final DateEntry[] FORMATTED = new DateEntry[CACHE_SIZE];
+        
+        private static final DateEntry[] PARSED = new DateEntry[CACHE_SIZE];
+        
+        static boolean handles(Class<?> klass) {
+            return klass == Instant.class || klass == LocalDate.class || klass == LocalDateTime.class
+                    || klass == LocalTime.class || klass == OffsetDateTime.class
+                    || klass == ZonedDateTime.class || klass == Duration.class || klass == Period.class
+                    || klass == ZoneId.class || klass == ZoneOffset.class;
+        }
+        
+        /**
+         * Returns the ISO-8601 form of the given value, or <code>null</code>
+         * if it is not one of the <code>java.time</code> types handled here.
+         */
+        static String format(Object value) {
+            if (value instanceof Instant) {
+                Instant instant = (Instant) value;
+                DateEntry day = formattedDay(Math.floorDiv(instant.getEpochSecond(), 86400));
+                if (day == null)
+                    return instant.toString();
+                StringBuilder builder = new StringBuilder(30).append(day.text).append('T');
+                appendTime(builder, Math.floorMod(instant.getEpochSecond(), 86400), instant.getNano());
+                return builder.append('Z').toString();
+            }
+            if (value instanceof LocalDate) {
+                LocalDate date = (LocalDate) value;
+                if (!fits(date))
+                    return date.toString();
+                return appendDate(new StringBuilder(10), date).toString();
+            }
+            if (value instanceof LocalDateTime) {
+                LocalDateTime dateTime = (LocalDateTime) value;
+                if (!fits(dateTime.toLocalDate()))
+                    return dateTime.toString();
+                return appendDateTime(new StringBuilder(29), dateTime).toString();
+            }
+            if (value instanceof LocalTime) {
+                LocalTime time = (LocalTime) value;
+                return appendTime(new StringBuilder(18), time.toSecondOfDay(), time.getNano()).toString();
+            }
+            if (value instanceof OffsetDateTime) {
+                OffsetDateTime dateTime = (OffsetDateTime) value;
+                if (!fits(dateTime.toLocalDate()))
+                    return dateTime.toString();
+                return appendDateTime(new StringBuilder(35), dateTime.toLocalDateTime())
+                        .append(dateTime.getOffset().getId()).toString();
+            }
+            if (value instanceof ZonedDateTime) {
+                ZonedDateTime dateTime = (ZonedDateTime) value;
+                if (!fits(dateTime.toLocalDate()))
+                    return dateTime.toString();
+                StringBuilder builder = appendDateTime(new StringBuilder(60), dateTime.toLocalDateTime())
+                        .append(dateTime.getOffset().getId());
+                if (!(dateTime.getZone() instanceof ZoneOffset))
+                    builder.append('[').append(dateTime.getZone().getId()).append(']');
+                return builder.toString();
+            }
+            if (value instanceof Duration || value instanceof Period)
+                return value.toString();
+            if (value instanceof ZoneId)
+                return ((ZoneId) value).getId();
+            return null;
+        }
+        
+        /**
+         * Parses the ISO-8601 form of a value of the given class, which
+         * {@link #handles(Class)} must accept.
+         */
+        static Object parse(String s, Class<?> klass) throws BeanificationException {
+            try {
+                Object result = parseFast(s, klass);
+                if (result != null)
+                    return result;
+                if (klass == Instant.class)
+                    return Instant.parse(s);
+                if (klass == LocalDate.class)
+                    return LocalDate.parse(s);
+                if (klass == LocalDateTime.class)
+                    return LocalDateTime.parse(s);
+                if (klass == LocalTime.class)
+                    return LocalTime.parse(s);
+                if (klass == OffsetDateTime.class)
+                    return OffsetDateTime.parse(s);
+                if (klass == ZonedDateTime.class)
+                    return ZonedDateTime.parse(s);
+                if (klass == Duration.class)
+                    return Duration.parse(s);
+                if (klass == Period.class)
+                    return Period.parse(s);
+                if (klass == ZoneOffset.class)
+                    return ZoneOffset.of(s);
+                return ZoneId.of(s);
+            } catch (DateTimeException e) {
+                throw new BeanificationException("Invalid value " + s, klass, e);
+            }
+        }
+        
+        /**
+         * Handles the common ISO-8601 forms with four-digit years, returning
+         * <code>null</code> for anything else.
+         */
+        private static Object parseFast(String s, Class<?> klass) {
+            int length = s.length();
+            if (klass == LocalTime.class) {
+                long nanoOfDay = parseTime(s, 0, length);
+                return (nanoOfDay < 0 ? null : LocalTime.ofNanoOfDay(nanoOfDay));
+            }
+            if (klass != Instant.class && klass != LocalDate.class && klass != LocalDateTime.class
+                    && klass != OffsetDateTime.class && klass != ZonedDateTime.class)
+                return null;
+            DateEntry day = parsedDay(s);
+            if (day == null)
+                return null;
+            if (klass == LocalDate.class)
+                return (length == 10 ? day.date : null);
+            if (length < 16 || (s.charAt(10) != 'T' && s.charAt(10) != 't'))
+                return null;
+            int timeEnd = 11;
+            while (timeEnd < length && "Zz+-[".indexOf(s.charAt(timeEnd)) < 0)
+                timeEnd++;
+            long nanoOfDay = parseTime(s, 11, timeEnd);
+            if (nanoOfDay < 0)
+                return null;
+            if (klass == LocalDateTime.class && timeEnd != length)
+                return null;
+            if (klass == LocalDateTime.class)
+                return LocalDateTime.of(day.date, LocalTime.ofNanoOfDay(nanoOfDay));
+            int offsetEnd = s.indexOf('[', timeEnd);
+            if (offsetEnd < 0)
+                offsetEnd = length;
+            else if (klass != ZonedDateTime.class || s.charAt(length - 1) != ']')
+                return null;
+            int offsetSeconds = parseOffset(s, timeEnd, offsetEnd);
+            if (offsetSeconds == Integer.MIN_VALUE)
+                return null;
+            if (klass == Instant.class)
+                return Instant.ofEpochSecond(day.epochDay * 86400 + nanoOfDay / 1000000000 - offsetSeconds,
+                        nanoOfDay % 1000000000);
+            LocalDateTime dateTime = LocalDateTime.of(day.date, LocalTime.ofNanoOfDay(nanoOfDay));
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds(offsetSeconds);
+            if (klass == OffsetDateTime.class)
+                return OffsetDateTime.of(dateTime, offset);
+            if (offsetEnd == length)
+                return ZonedDateTime.of(dateTime, offset);
+            return ZonedDateTime.ofLocal(dateTime, ZoneId.of(s.substring(offsetEnd + 1, length - 1)), offset);
+        }
+        
+        private static boolean fits(LocalDate date) {
+            return date.getYear() >= 0 && date.getYear() <= 9999;
+        }
+        
+        private static DateEntry formattedDay(long epochDay) {
+            int index = (int) epochDay & (CACHE_SIZE - 1);
+            DateEntry entry = FORMATTED[index];
+            if (entry != null && entry.epochDay == epochDay)
+                return entry;
+            if (epochDay < FIRST_EPOCH_DAY || epochDay > LAST_EPOCH_DAY)
+                return null;
+            return FORMATTED[index] = new DateEntry(LocalDate.ofEpochDay(epochDay));
+        }
+        
+        /**
+         * Returns the date the string starts with in <code>yyyy-mm-dd</code>
+         * form, or <code>null</code> if it does not start with a valid one.
+         */
+        private static DateEntry parsedDay(String s) {
+            if (s.length() < 10 || s.charAt(4) != '-' || s.charAt(7) != '-')
+                return null;
+            int year = digits(s, 0, 4), month = digits(s, 5, 2), day = digits(s, 8, 2);
+            if (year < 0 || month < 0 || day < 0)
+                return null;
+            int packed = year * 10000 + month * 100 + day;
+            int index = packed & (CACHE_SIZE - 1);
+            DateEntry entry = PARSED[index];
+            if (entry != null && entry.packed == packed)
+                return entry;
+            if (month < 1 || month > 12 || day < 1 || day > 31)
+                return null;
+            try {
+                return PARSED[index] = new DateEntry(LocalDate.of(year, month, day));
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+        
+        /**
+         * Parses <code>hh:mm[:ss[.fraction]]</code>, returning the nanosecond
+         * of the day, or <code>-1</code> if malformed.
+         */
+        private static long parseTime(String s, int start, int end) {
+            int length = end - start;
+            if ((length != 5 && length != 8 && (length < 10 || length > 18)) || s.charAt(start + 2) != ':')
+                return -1;
+            int hour = digits(s, start, 2), minute = digits(s, start + 3, 2), second = 0, nano = 0;
+            if (length > 5) {
+                if (s.charAt(start + 5) != ':')
+                    return -1;
+                second = digits(s, start + 6, 2);
+            }
+            if (length > 8) {
+                if (s.charAt(start + 8) != '.')
+                    return -1;
+                nano = digits(s, start + 9, length - 9);
+                for (int i = length - 9; i < 9 && nano >= 0; i++)
+                    nano *= 10;
+            }
+            if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59 || nano < 0)
+                return -1;
+            return (hour * 3600 + minute * 60 + second) * 1000000000L + nano;
+        }
+        
+        /**
+         * Parses <code>Z</code>, <code>+hh:mm</code> or
+         * <code>+hh:mm:ss</code>, returning the offset in seconds, or
+         * <code>Integer.MIN_VALUE</code> if malformed.
+         */
+        private static int parseOffset(String s, int start, int end) {
+            int length = end - start;
+            if (length == 1 && (s.charAt(start) == 'Z' || s.charAt(start) == 'z'))
+                return 0;
+            if ((length != 6 && length != 9) || (s.charAt(start) != '+' && s.charAt(start) != '-')
+                    || s.charAt(start + 3) != ':' || (length == 9 && s.charAt(start + 6) != ':'))
+                return Integer.MIN_VALUE;
+            int sign = (s.charAt(start) == '-' ? -1 : 1);
+            int hours = digits(s, start + 1, 2), minutes = digits(s, start + 4, 2);
+            int seconds = (length == 9 ? digits(s, start + 7, 2) : 0);
+            if (hours < 0 || hours > 18 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59)
+                return Integer.MIN_VALUE;
+            int total = hours * 3600 + minutes * 60 + seconds;
+            return (total > 18 * 3600 ? Integer.MIN_VALUE : sign * total);
+        }
+        
+        /**
+         * Returns the value of the given number of decimal digits, or
+         * <code>-1</code> if any of them is not a digit.
+         */
+        private static int digits(String s, int start, int count) {
+            int value = 0;
+            for (int i = start; i < start + count; i++) {
+                char c = s.charAt(i);
+                if (c < '0' || c > '9')
+                    return -1;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+        
+        private static StringBuilder appendDateTime(StringBuilder builder, LocalDateTime dateTime) {
+            appendDate(builder, dateTime.toLocalDate()).append('T');
+            return appendTime(builder, dateTime.toLocalTime().toSecondOfDay(), dateTime.getNano());
+        }
+        
+        private static StringBuilder appendDate(StringBuilder builder, LocalDate date) {
+            appendDigits(builder, date.getYear(), 4).append('-');
+            appendDigits(builder, date.getMonthValue(), 2).append('-');
+            return appendDigits(builder, date.getDayOfMonth(), 2);
+        }
+        
+        /**
+         * Appends <code>hh:mm:ss</code> followed by the fraction of the second
+         * in groups of three digits, if there is one.
+         */
+        private static StringBuilder appendTime(StringBuilder builder, int secondOfDay, int nano) {
+            appendDigits(builder, secondOfDay / 3600, 2).append(':');
+            appendDigits(builder, secondOfDay / 60 % 60, 2).append(':');
+            appendDigits(builder, secondOfDay % 60, 2);
+            if (nano == 0)
+                return builder;
+            builder.append('.');
+            if (nano % 1000000 == 0)
+                return appendDigits(builder, nano / 1000000, 3);
+            if (nano % 1000 == 0)
+                return appendDigits(builder, nano / 1000, 6);
+            return appendDigits(builder, nano, 9);
+        }
+        
+        private static StringBuilder appendDigits(StringBuilder builder, int value, int width) {
+            int divisor = 1;
+            for (int i = 1; i < width; i++)
+                divisor *= 10;
+            for (; divisor > 0; divisor /= 10)
+                builder.append((char) ('0' + value / divisor % 10));
+            return builder;
+        }
+        
+    }
+    
+    /**
+     * Selects how {@link BeanEncoding#simplify(Object, References)} treats
+     * objects that are reachable more than once.
+     */
+    public enum References {
+        
+        /**
+         * Objects are simplified every time they are referenced, and an object
+         * that (indirectly) contains itself fails with an
+         * <code>IllegalArgumentException</code> naming the path to it.
+         */
+        FAIL_ON_CYCLES,
+        
+        /**
+         * A bean or map is simplified once; every later reference to it is
+         * replaced with <code>{"$ref": id}</code>, and its simplified form gets
+         * an <code>"$id": id</code> entry. Cycles through beans and maps are
+         * encoded the same way; a list containing itself still fails.
+         */
+        SHARE
+        
+    }
+    
+    private static final class ReferenceTracker {
+        
+        private final boolean share;
+        
+        private final Map<Object, Map<Object, Object>> simplified =
+            new IdentityHashMap<Object, Map<Object, Object>>();
+        
+        private final Map<Object, Object> onPath = new IdentityHashMap<Object, Object>();
+        
+        private final List<Object> path = new ArrayList<Object>();
+        
+        private int lastId;
+        
+        ReferenceTracker(boolean share) {
+            this.share = share;
+        }
+        
+        /**
+         * Returns a reference to the already simplified form of the given
+         * object, or <code>null</code> if it has to be simplified now.
+         */
+        Object enter(Object bean) {
+            if (share) {
+                Map<Object, Object> map = simplified.get(bean);
+                if (map != null)
+                    return reference(map);
+            }
+            if (onPath.put(bean, bean) != null)
+                throw new IllegalArgumentException("Cycle detected at " + pathString() + " (bean "
+                        + bean.getClass().getName() + ")");
+            return null;
+        }
+        
+        void leave(Object bean) {
+            onPath.remove(bean);
+        }
+        
+        @SuppressWarnings("unchecked")
+        void register(Object bean, Map<?, ?> map) {
+            if (share)
+                simplified.put(bean, (Map<Object, Object>) map);
+        }
+        
+        private Object reference(Map<Object, Object> map) {
+            Object id = map.get("$id");
+            if (id == null) {
+                id = ++lastId;
+                map.put("$id", id);
+            }
+            return Collections.singletonMap("$ref", id);
+        }
+        
+        private String pathString() {
+            StringBuilder result = new StringBuilder("$");
+            for (Object segment : path)
+                if (segment instanceof Integer)
+                    result.append('[').append(segment).append(']');
+                else
+                    result.append('.').append(segment);
+            return result.toString();
+        }
+        
+    }
+    
+    /**
+     * Receives the statistics of {@link BeanEncoding#simplify} and
+     * {@link BeanEncoding#beanify} calls, see {@link BeanEncoding#setListener}.
+     * Called on the calling thread, so implementations must be thread-safe
+     * and quick.
+     */
+    public interface Listener {
+        
+        /** Called after each successful <code>simplify</code> call. */
+        void simplified(Class<?> beanClass, long nanos);
+        
+        /** Called after each successful <code>beanify</code> call. */
+        void beanified(Type type, long nanos);
+        
+        /**
+         * Called for each lookup of a type in the cache of conversion plans,
+         * which are built with reflection on a miss.
+         */
+        void cacheLookup(Type type, boolean hit);
+        
+    }
+    
+    /**
+     * A {@link Listener} that adds everything up, for a metrics system to
+     * poll.
+     */
+    public static class Counters implements Listener {
+        
+        private final LongAdder simplifications = new LongAdder();
+        
+        private final LongAdder nanosSimplifying = new LongAdder();
+        
+        private final LongAdder beanifications = new LongAdder();
+        
+        private final LongAdder nanosBeanifying = new LongAdder();
+        
+        private final LongAdder cacheHits = new LongAdder();
+        
+        private final LongAdder cacheMisses = new LongAdder();
+        
+        public void simplified(Class<?> beanClass, long nanos) {
+            simplifications.increment();
+            nanosSimplifying.add(nanos);
+        }
+        
+        public void beanified(Type type, long nanos) {
+            beanifications.increment();
+            nanosBeanifying.add(nanos);
+        }
+        
+        public void cacheLookup(Type type, boolean hit) {
+            (hit ? cacheHits : cacheMisses).increment();
+        }
+        
+        public long getSimplifications() {
+            return simplifications.sum();
+        }
+        
+        public long getNanosSimplifying() {
+            return nanosSimplifying.sum();
+        }
+        
+        public long getBeanifications() {
+            return beanifications.sum();
+        }
+        
+        public long getNanosBeanifying() {
+            return nanosBeanifying.sum();
+        }
+        
+        public long getCacheHits() {
+            return cacheHits.sum();
+        }
+        
+        public long getCacheMisses() {
+            return cacheMisses.sum();
+        }
+        
+    }
+    
+    private static volatile Listener listener;
+    
+    /**
+     * Sets the listener to report the statistics to, or <code>null</code>
+     * (the default) to stop reporting.
+     */
+    public static void setListener(Listener listener) {
+        BeanEncoding.listener = listener;
+    }
+    
+    /**
+     * Recorded by JDK Flight Recorder for each top-level <code>simplify</code>
+     * call when the <code>com.yoursway.jyp.Simplify</code> event is enabled;
+     * costs nothing otherwise.
+     */
+    @Name("com.yoursway.jyp.Simplify")
+    @Label("Bean Simplify")
+    @Category("JYP")
+    @StackTrace(false)
+    static final class SimplifyEvent extends Event {
+        
+        @Label("Bean Class")
+        Class<?> beanClass;
+        
+    }
+    
+    /**
+     * Recorded by JDK Flight Recorder for each top-level <code>beanify</code>
+     * call when the <code>com.yoursway.jyp.Beanify</code> event is enabled.
+     */
+    @Name("com.yoursway.jyp.Beanify")
+    @Label("Bean Beanify")
+    @Category("JYP")
+    @StackTrace(false)
+    static final class BeanifyEvent extends Event {
+        
+        @Label("Type")
+        String type;
+        
+        @Label("Bean Class")
+        Class<?> beanClass;
+        
+    }
+    
     public static Object simplify(Object bean) {
-        if (bean == null || bean instanceof CharSequence || bean instanceof Number || bean instanceof Boolean)
+        return simplifyRoot(bean, null);
+    }
+    
+    /**
+     * Like {@link #simplify(Object)}, but tracks object identity to deal with
+     * cyclic graphs and shared sub-objects, see {@link References}.
+     */
+    public static Object simplify(Object bean, References references) {
+        return simplifyRoot(bean, new ReferenceTracker(references == References.SHARE));
+    }
+    
+    private static Object simplifyRoot(Object bean, ReferenceTracker tracker) {
+        SimplifyEvent event = new SimplifyEvent();
+        event.begin();
+        Listener listener = BeanEncoding.listener;
+        long start = (listener != null ? System.nanoTime() : 0);
+        Object result = simplify(bean, tracker, 0);
+        if (event.shouldCommit()) {
+            event.beanClass = (bean == null ? null : bean.getClass());
+            event.commit();
+        }
+        if (listener != null)
+            listener.simplified(bean == null ? null : bean.getClass(), System.nanoTime() - start);
+        return result;
+    }
+    
+    private static Object simplify(Object bean, ReferenceTracker tracker, int depth) {
+        if (bean == null || bean instanceof CharSequence || bean instanceof Number || bean instanceof Boolean
+                || bean instanceof byte[])
             return bean;
         if (bean instanceof Character)
             return bean.toString();
         if (bean instanceof Date)
             return ((Date) bean).getTime();
+        if (bean instanceof TemporalAccessor || bean instanceof TemporalAmount || bean instanceof ZoneId) {
+            String text = IsoTime.format(bean);
+            if (text != null)
+                return text;
+        }
+        if (bean instanceof Enum<?>)
+            return ENUM_MODELS.get(((Enum<?>) bean).getDeclaringClass()).names[((Enum<?>) bean).ordinal()];
+        if (tracker == null)
+            return simplifyComposite(bean, null, depth);
+        Object reference = tracker.enter(bean);
+        if (reference != null)
+            return reference;
+        Object result = simplifyComposite(bean, tracker, depth);
+        tracker.leave(bean);
+        return result;
+    }
+    
+    private static Object simplifyChild(Object value, Object segment, ReferenceTracker tracker, int depth) {
+        if (tracker == null)
+            return simplify(value, (ReferenceTracker) null, depth);
+        tracker.path.add(segment);
+        Object result = simplify(value, tracker, depth);
+        tracker.path.remove(tracker.path.size() - 1);
+        return result;
+    }
+    
+    private static Object simplifyComposite(Object bean, ReferenceTracker tracker, int depth) {
+        if (depth == DEFAULT_MAX_DEPTH)
+            throw new IllegalArgumentException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH + " exceeded");
+        depth++;
         if (bean instanceof Map<?, ?>)
-            return simplifyMap((Map<?, ?>) bean);
+            return simplifyMap((Map<?, ?>) bean, tracker, depth);
         if (bean instanceof Iterable<?>)
-            return simplifyIterable((Iterable<?>) bean);
-        if (bean.getClass().isArray())
-            return simplifyIterable(Arrays.asList((Object[]) bean));
+            return simplifyIterable((Iterable<?>) bean, tracker, depth);
+        if (bean instanceof Object[])
+            return simplifyIterable(Arrays.asList((Object[]) bean), tracker, depth);
+        if (bean.getClass().isArray()) {
+            List<Object> elements = new ArrayList<Object>(Array.getLength(bean));
+            for (int i = 0; i < Array.getLength(bean); i++)
+                elements.add(Array.get(bean, i));
+            return simplifyIterable(elements, tracker, depth);
+        }
+        if (bean instanceof Record)
+            return tagType(bean, simplifyRecord((Record) bean, tracker, depth));
         try {
-            return simplifyBean(bean);
+            return tagType(bean, simplifyBean(bean, tracker, depth));
         } catch (IntrospectionException e) {
             throw new IllegalArgumentException("Cannot introspect bean " + bean.getClass().getName(), e);
         }
     }
     
-    private static Object beanify(Object value, Type type) throws BeanificationException {
-        if (type instanceof Class<?>)
-            return beanify(value, (Class<?>) type);
-        if (type instanceof ParameterizedType) {
-            ParameterizedType parameterizedType = (ParameterizedType) type;
-            Type rawType = parameterizedType.getRawType();
-            if (rawType instanceof Class<?>) {
-                Class<?> klass = (Class<?>) rawType;
-                if (klass == Collection.class || klass == List.class)
-                    return beanifyList(value, parameterizedType.getActualTypeArguments()[0]);
-                if (klass == Map.class)
-                    return beanifyMap(value, parameterizedType.getActualTypeArguments()[0], parameterizedType
-                            .getActualTypeArguments()[1]);
-                else
-                    return beanify(value, klass);
-            }
-        }
-        throw new IllegalArgumentException("Unsupported type: " + type);
+    private static Map<String, Object> tagType(Object bean, Map<String, Object> map) {
+        String[] tag = TYPE_TAGS.get(bean.getClass());
+        if (tag != NO_TYPE_TAG)
+            map.put(tag[0], tag[1]);
+        return map;
     }
     
-    private static List<Object> beanifyList(Object value, Type elementType) throws BeanificationException {
-        if (value == null)
-            return null;
-        
-        if (!(value instanceof Collection<?>))
-            throw new BeanificationException("Expected a collection", List.class);
-        Collection<?> source = (Collection<?>) value;
-        List<Object> result = new ArrayList<Object>(source.size());
-        for (Object item : source)
-            result.add(beanify(item, elementType));
+    /**
+     * Converts the given simplified value into an instance of the given type,
+     * which may be a parameterized collection, map, <code>Optional</code> or
+     * generic bean type, e.g. <code>Map&lt;String, List&lt;SomeBean&gt;&gt;</code>.
+     * The conversion plan for each type is computed once and cached.
+     */
+    public static Object beanify(Object value, Type type) throws BeanificationException {
+        BeanifyEvent event = new BeanifyEvent();
+        event.begin();
+        Listener listener = BeanEncoding.listener;
+        long start = (listener != null ? System.nanoTime() : 0);
+        Object result = adapterFor(type).beanify(value, 0);
+        beanified(event, listener, start, type);
         return result;
     }
     
-    private static Map<Object, Object> beanifyMap(Object value, Type keyType, Type valueType)
-            throws BeanificationException {
-        if (value == null)
-            return null;
-        
-        if (!(value instanceof Map<?, ?>))
-            throw new BeanificationException("Expected a map", List.class);
-        Map<?, ?> source = (Map<?, ?>) value;
-        Map<Object, Object> result = new HashMap<Object, Object>(source.size());
-        for (Map.Entry<?, ?> entry : source.entrySet())
-            result.put(beanify(entry.getKey(), keyType), beanify(entry.getValue(), valueType));
+    public static <T> T beanify(Object value, Class<T> klass) throws BeanificationException {
+        BeanifyEvent event = new BeanifyEvent();
+        event.begin();
+        Listener listener = BeanEncoding.listener;
+        long start = (listener != null ? System.nanoTime() : 0);
+        T result = beanifyValue(value, klass, 0);
+        beanified(event, listener, start, klass);
         return result;
     }
     
+    private static void beanified(BeanifyEvent event, Listener listener, long start, Type type) {
+        if (event.shouldCommit()) {
+            event.type = type.getTypeName();
+            event.beanClass = erasure(type);
+            event.commit();
+        }
+        if (listener != null)
+            listener.beanified(type, System.nanoTime() - start);
+    }
+    
     @SuppressWarnings("unchecked")
-    public static <T> T beanify(Object value, Class<T> klass) throws BeanificationException {
+    private static <T> T beanifyValue(Object value, Class<T> klass, int depth) throws BeanificationException {
         if (value == null)
             return null;
         
@@ -136,26 +1033,23 @@ public class BeanEncoding {
         
         // handle primitive types
         if (klass == int.class)
-            return (T) beanify(value, Integer.class);
+            return (T) beanifyValue(value, Integer.class, depth);
         if (klass == long.class)
-            return (T) beanify(value, Long.class);
+            return (T) beanifyValue(value, Long.class, depth);
         if (klass == float.class)
-            return (T) beanify(value, Float.class);
+            return (T) beanifyValue(value, Float.class, depth);
         if (klass == double.class)
-            return (T) beanify(value, Double.class);
+            return (T) beanifyValue(value, Double.class, depth);
         if (klass == byte.class)
-            return (T) beanify(value, Byte.class);
+            return (T) beanifyValue(value, Byte.class, depth);
         if (klass == short.class)
-            return (T) beanify(value, Short.class);
+            return (T) beanifyValue(value, Short.class, depth);
         if (klass == char.class)
-            return (T) beanify(value, Character.class);
+            return (T) beanifyValue(value, Character.class, depth);
         
         // handle arrays
-        if (klass.isArray()) {
-            List<Object> list = beanifyList(value, klass.getComponentType());
-            Object[] result = (Object[]) Array.newInstance(klass.getComponentType(), list.size());
-            return (T) list.toArray(result);
-        }
+        if (klass.isArray())
+            return (T) adapterFor(klass).beanify(value, depth);
         
         // special handling for some types
         if (Number.class.isAssignableFrom(klass) && value instanceof Number) {
@@ -178,6 +1072,10 @@ public class BeanEncoding {
         }
         if (klass == Date.class && value instanceof Number)
             return (T) new Date(((Number) value).longValue());
+        if (klass == Instant.class && value instanceof Number)
+            return (T) Instant.ofEpochMilli(((Number) value).longValue());
+        if (value instanceof CharSequence && IsoTime.handles(klass))
+            return (T) IsoTime.parse(value.toString(), klass);
         if (klass == String.class)
             return (T) value.toString();
         if (klass == Character.class) {
@@ -187,42 +1085,161 @@ public class BeanEncoding {
                         + " chars", klass);
             return (T) (Character) s.charAt(0);
         }
+        if (klass.isEnum())
+            return (T) beanifyEnum(value, klass);
         
-        if (value instanceof Map<?, ?>)
-            return beanifyBean(klass, new HashMap<Object, Object>((Map<?, ?>) value));
+        return beanifyObject(value, klass, klass, depth);
+    }
+    
+    /**
+     * Returns the depth of the values inside a map or list at the given
+     * depth, failing past {@link #DEFAULT_MAX_DEPTH} instead of overflowing
+     * the stack.
+     */
+    private static int nested(int depth, Class<?> klass) throws BeanificationException {
+        if (depth == DEFAULT_MAX_DEPTH)
+            throw new BeanificationException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH + " exceeded",
+                    klass);
+        return depth + 1;
+    }
+    
+    private static Object beanifyEnum(Object value, Class<?> klass) throws BeanificationException {
+        Object constant = ENUM_MODELS.get(klass).constantsByName.get(value.toString());
+        if (constant == null)
+            throw new BeanificationException("Unknown constant " + value, klass);
+        return constant;
+    }
+    
+    private static <T> T beanifyObject(Object value, Class<T> klass, Type context, int depth)
+            throws BeanificationException {
+        if (value instanceof Map<?, ?>) {
+            depth = nested(depth, klass);
+            SubtypeTable table = SUBTYPE_TABLES.get(klass);
+            String[] tag = TYPE_TAGS.get(klass);
+            if (table.property != null || tag != NO_TYPE_TAG)
+                return beanifyTyped(klass, (Map<?, ?>) value, table, tag, depth);
+            if (klass.isRecord())
+                return beanifyRecord(klass, context, (Map<?, ?>) value, depth);
+            return beanifyBean(klass, context, new HashMap<Object, Object>((Map<?, ?>) value), depth);
+        }
         
         throw new BeanificationException("Incompatible value " + value.getClass().getName(), klass);
     }
     
-    private static <T> T beanifyBean(Class<T> klass, Map<Object, Object> map) throws BeanificationException {
+    /**
+     * Beanifies a map into a {@link Polymorphic} type, or into one of its
+     * subtypes, which the type name property is dropped from.
+     */
+    private static <T> T beanifyTyped(Class<T> klass, Map<?, ?> map, SubtypeTable table, String[] tag,
+            int depth) throws BeanificationException {
+        Class<?> subtype = klass;
+        String property = tag.length > 0 ? tag[0] : null;
+        if (table.property != null) {
+            property = table.property;
+            Object name = map.get(property);
+            if (name != null) {
+                subtype = table.subtypesByName.get(name.toString());
+                if (subtype == null)
+                    throw new BeanificationException("Unknown type name " + name, klass);
+            } else if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers())) {
+                throw new BeanificationException("Missing type name property " + property, klass);
+            }
+        }
+        Map<Object, Object> properties = new HashMap<Object, Object>(map);
+        properties.remove(property);
+        if (subtype.isRecord())
+            return klass.cast(beanifyRecord(subtype, subtype, properties, depth));
+        return klass.cast(beanifyBean(subtype, subtype, properties, depth));
+    }
+    
+    private static <T> T beanifyBean(Class<T> klass, Type context, Map<Object, Object> map, int depth)
+            throws BeanificationException {
+        if (klass.isAnnotationPresent(FieldAccess.class))
+            return beanifyFieldBean(klass, context, map, depth);
         Constructor<T> constructor = chooseConstructor(klass);
-        String[] constructorPropertyNames = parameterPropertyNames(constructor);
+        T bean = instantiate(klass, context, constructor, parameterPropertyNames(constructor), map, depth);
+        
+        Map<String, Member> setterByProperty = findPropertySetters(klass);
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = beanifyValue(entry.getKey(), String.class, depth);
+            Member member = setterByProperty.get(key);
+            if (member == null)
+                throw new BeanificationException("No setter found for property " + key, klass);
+            if (member instanceof Method)
+                setUsingMethod(klass, context, bean, key, entry.getValue(), (Method) member, depth);
+        }
+        return bean;
+    }
+    
+    private static <T> T beanifyRecord(Class<T> klass, Type context, Map<?, ?> map, int depth)
+            throws BeanificationException {
+        RecordModel model = RECORD_MODELS.get(klass);
+        Object[] arguments = new Object[model.names.length];
+        boolean[] assigned = new boolean[arguments.length];
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = beanifyValue(entry.getKey(), String.class, depth);
+            Integer index = model.indexByName.get(key);
+            if (index == null)
+                throw new BeanificationException("No record component found for property " + key, klass);
+            arguments[index] = adapterFor(model.types[index], context).beanify(entry.getValue(), depth);
+            assigned[index] = true;
+        }
+        for (int i = 0; i < arguments.length; i++)
+            if (!assigned[i]) {
+                if (!model.transients[i])
+                    throw new BeanificationException("Missing value for record component " + model.names[i],
+                            klass);
+                arguments[i] = model.defaults[i];
+            }
+        try {
+            return klass.cast(model.constructor.invokeExact(arguments));
+        } catch (Throwable e) {
+            throw new BeanificationException("Error creating record instance", klass, e);
+        }
+    }
+    
+    private static <T> T beanifyFieldBean(Class<T> klass, Type context, Map<Object, Object> map,
+            int depth) throws BeanificationException {
+        Map<String, FieldProperty> properties = FIELD_PROPERTIES.get(klass);
+        Constructor<T> constructor = chooseFieldConstructor(klass, properties);
+        String[] constructorPropertyNames = (isPropertyConstructor(constructor)
+                ? parameterPropertyNames(constructor) : finalFieldNames(properties));
+        T bean = instantiate(klass, context, constructor, constructorPropertyNames, map, depth);
+        
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            String key = beanifyValue(entry.getKey(), String.class, depth);
+            FieldProperty property = properties.get(key);
+            if (property == null)
+                throw new BeanificationException("No field found for property " + key, klass);
+            if (property.isFinal())
+                throw new BeanificationException("Final field " + property.field.getName()
+                        + " is not bound by the constructor", klass);
+            Object value = adapterFor(property.field.getGenericType(), context).beanify(entry.getValue(),
+                depth);
+            if (value == null && property.field.getType().isPrimitive())
+                throw new BeanificationException("Null value for primitive field " + property.field.getName(),
+                        klass);
+            property.handle.set(bean, value);
+        }
+        return bean;
+    }
+    
+    private static <T> T instantiate(Class<T> klass, Type context, Constructor<T> constructor,
+            String[] constructorPropertyNames, Map<Object, Object> map, int depth)
+            throws BeanificationException {
         Object[] arguments = new Object[constructorPropertyNames.length];
         Type[] parameterTypes = constructor.getGenericParameterTypes();
         for (int i = 0; i < arguments.length; i++) {
             String property = constructorPropertyNames[i];
             if (!map.containsKey(property))
                 throw new BeanificationException("Missing value for constructor property " + property, klass);
-            arguments[i] = beanify(map.remove(property), parameterTypes[i]);
+            arguments[i] = adapterFor(parameterTypes[i], context).beanify(map.remove(property), depth);
         }
-        T bean;
-        
         try {
-            bean = constructor.newInstance(arguments);
+            return constructor.newInstance(arguments);
         } catch (Throwable e) {
             throw new BeanificationException("Error creating bean instance", klass, e);
         }
-        
-        Map<String, Member> setterByProperty = findPropertySetters(klass);
-        for (Map.Entry<?, ?> entry : map.entrySet()) {
-            String key = beanify(entry.getKey(), String.class);
-            Member member = setterByProperty.get(key);
-            if (member == null)
-                throw new BeanificationException("No setter found for property " + key, klass);
-            if (member instanceof Method)
-                setUsingMethod(klass, bean, key, entry.getValue(), (Method) member);
-        }
-        return bean;
     }
     
     private static <T> Map<String, Member> findPropertySetters(Class<T> klass) {
@@ -277,12 +1294,43 @@ public class BeanEncoding {
         return getterByProperty;
     }
     
-    private static <T> void setUsingMethod(Class<T> klass, T bean, String key, Object rawValue, Method method)
-            throws BeanificationException {
+    private static Map<String, FieldProperty> findPropertyFields(Class<?> klass) {
+        LinkedList<Class<?>> hierarchy = new LinkedList<Class<?>>();
+        for (Class<?> c = klass; c != null && c != Object.class; c = c.getSuperclass())
+            hierarchy.addFirst(c);
+        Map<String, FieldProperty> fieldByProperty = new LinkedHashMap<String, FieldProperty>();
+        for (Class<?> c : hierarchy) {
+            MethodHandles.Lookup lookup;
+            try {
+                lookup = MethodHandles.privateLookupIn(c, MethodHandles.lookup());
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Cannot access fields of " + c.getName(), e);
+            }
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || field.isAnnotationPresent(Transient.class))
+                    continue;
+                Property annotation = field.getAnnotation(Property.class);
+                String propertyName = (annotation == null ? field.getName() : annotation.value());
+                try {
+                    fieldByProperty.put(propertyName, new FieldProperty(propertyName, field, lookup
+                            .unreflectVarHandle(field)));
+                } catch (IllegalAccessException e) {
+                    throw new IllegalArgumentException("Cannot access field " + field.getName() + " of "
+                            + c.getName(), e);
+                }
+            }
+        }
+        return fieldByProperty;
+    }
+    
+    private static <T> void setUsingMethod(Class<T> klass, Type context, T bean, String key, Object rawValue,
+            Method method, int depth) throws BeanificationException {
         Type[] setterParameterTypes = method.getGenericParameterTypes();
         if (setterParameterTypes.length != 1)
             throw new BeanificationException("Unsuitable setter signature for property " + key, klass);
-        Object value = beanify(rawValue, setterParameterTypes[0]);
+        Object value = adapterFor(setterParameterTypes[0], context).beanify(rawValue, depth);
         try {
             method.invoke(bean, value);
         } catch (Throwable e) {
@@ -320,13 +1368,16 @@ public class BeanEncoding {
                 .toUpperCase(methodName.charAt(2)));
     }
     
+    @SuppressWarnings("unchecked")
     private static <T> Constructor<T> chooseConstructor(Class<T> klass) {
         Constructor<T> propertyConstructor = null, defaultConstructor = null;
-        for (Constructor<T> constructor : klass.getConstructors())
+        for (Constructor<?> candidate : klass.getConstructors()) {
+            Constructor<T> constructor = (Constructor<T>) candidate;
             if (isPropertyConstructor(constructor))
                 propertyConstructor = constructor;
             else if (constructor.getParameterTypes().length == 0)
                 defaultConstructor = constructor;
+        }
         if (propertyConstructor == null && defaultConstructor == null)
             throw new IllegalArgumentException("No suitable deserialization constructor found for "
                     + klass.getName());
@@ -335,6 +1386,40 @@ public class BeanEncoding {
         return propertyConstructor;
     }
     
+    @SuppressWarnings("unchecked")
+    private static <T> Constructor<T> chooseFieldConstructor(Class<T> klass,
+            Map<String, FieldProperty> properties) {
+        List<Type> finalFieldTypes = new ArrayList<Type>();
+        for (FieldProperty property : properties.values())
+            if (property.isFinal())
+                finalFieldTypes.add(property.field.getGenericType());
+        Constructor<T> propertyConstructor = null, fieldConstructor = null, defaultConstructor = null;
+        for (Constructor<?> candidate : klass.getDeclaredConstructors()) {
+            Constructor<T> constructor = (Constructor<T>) candidate;
+            if (isPropertyConstructor(constructor))
+                propertyConstructor = constructor;
+            else if (Arrays.asList(constructor.getGenericParameterTypes()).equals(finalFieldTypes))
+                fieldConstructor = constructor;
+            else if (constructor.getParameterTypes().length == 0)
+                defaultConstructor = constructor;
+        }
+        Constructor<T> constructor = (propertyConstructor != null ? propertyConstructor
+                : fieldConstructor != null ? fieldConstructor : defaultConstructor);
+        if (constructor == null)
+            throw new IllegalArgumentException("No suitable deserialization constructor found for "
+                    + klass.getName());
+        constructor.setAccessible(true);
+        return constructor;
+    }
+    
+    private static String[] finalFieldNames(Map<String, FieldProperty> properties) {
+        List<String> names = new ArrayList<String>();
+        for (FieldProperty property : properties.values())
+            if (property.isFinal())
+                names.add(property.name);
+        return names.toArray(new String[names.size()]);
+    }
+    
     private static <T> boolean isPropertyConstructor(Constructor<T> constructor) {
         boolean anyAnnotated = false, allAnnotated = true;
         for (Annotation[] annotations : constructor.getParameterAnnotations()) {
@@ -366,23 +1451,32 @@ public class BeanEncoding {
         return names;
     }
     
-    private static List<Object> simplifyIterable(Iterable<?> bean) {
+    private static List<Object> simplifyIterable(Iterable<?> bean, ReferenceTracker tracker, int depth) {
         List<Object> result = new ArrayList<Object>();
         for (Object value : bean)
-            result.add(simplify(value));
+            result.add(simplifyChild(value, result.size(), tracker, depth));
         return result;
     }
     
-    private static Map<Object, Object> simplifyMap(Map<?, ?> bean) {
+    private static Map<Object, Object> simplifyMap(Map<?, ?> bean, ReferenceTracker tracker, int depth) {
         Map<Object, Object> result = new HashMap<Object, Object>();
-        for (Map.Entry<?, ?> entry : bean.entrySet())
-            result.put(simplify(entry.getKey()), entry.getValue());
+        if (tracker != null)
+            tracker.register(bean, result);
+        for (Map.Entry<?, ?> entry : bean.entrySet()) {
+            Object key = simplify(entry.getKey(), tracker, depth);
+            result.put(key, simplifyChild(entry.getValue(), key, tracker, depth));
+        }
         return result;
     }
     
-    private static Map<String, Object> simplifyBean(Object bean) throws IntrospectionException {
+    private static Map<String, Object> simplifyBean(Object bean, ReferenceTracker tracker, int depth)
+            throws IntrospectionException {
+        if (bean.getClass().isAnnotationPresent(FieldAccess.class))
+            return simplifyFieldBean(bean, tracker, depth);
         Map<String, Member> getters = findPropertyGetters(bean.getClass());
         Map<String, Object> map = new HashMap<String, Object>();
+        if (tracker != null)
+            tracker.register(bean, map);
         for (Map.Entry<String, Member> entry : getters.entrySet()) {
             String key = entry.getKey();
             Member member = entry.getValue();
@@ -393,12 +1487,41 @@ public class BeanEncoding {
                 value = getUsingMethod(bean, key, member);
             } else
                 throw new AssertionError("Unreachable");
-            map.put(key, simplify(value));
+            map.put(key, simplifyChild(value, key, tracker, depth));
             
         }
         return map;
     }
     
+    private static Map<String, Object> simplifyRecord(Record bean, ReferenceTracker tracker, int depth) {
+        RecordModel model = RECORD_MODELS.get(bean.getClass());
+        Map<String, Object> map = new HashMap<String, Object>(model.names.length * 2);
+        if (tracker != null)
+            tracker.register(bean, map);
+        for (int i = 0; i < model.names.length; i++) {
+            if (model.transients[i])
+                continue;
+            Object value;
+            try {
+                value = (Object) model.accessors[i].invokeExact((Object) bean);
+            } catch (Throwable e) {
+                throw new IllegalArgumentException("Error reading property " + model.names[i]
+                        + " from record " + bean.getClass().getName(), e);
+            }
+            map.put(model.names[i], simplifyChild(value, model.names[i], tracker, depth));
+        }
+        return map;
+    }
+    
+    private static Map<String, Object> simplifyFieldBean(Object bean, ReferenceTracker tracker, int depth) {
+        Map<String, Object> map = new HashMap<String, Object>();
+        if (tracker != null)
+            tracker.register(bean, map);
+        for (FieldProperty property : FIELD_PROPERTIES.get(bean.getClass()).values())
+            map.put(property.name, simplifyChild(property.handle.get(bean), property.name, tracker, depth));
+        return map;
+    }
+    
     private static Object getUsingMethod(Object bean, String key, Member member) {
         Method method = (Method) member;
         try {
@@ -409,4 +1532,535 @@ public class BeanEncoding {
         }
     }
     
+    private static abstract class TypeAdapter {
+        
+        abstract Object beanify(Object value, int depth) throws BeanificationException;
+        
+    }
+    
+    private static final class ClassAdapter extends TypeAdapter {
+        
+        private final Class<?> klass;
+        
+        ClassAdapter(Class<?> klass) {
+            this.klass = klass;
+        }
+        
+        @Override
+        Object beanify(Object value, int depth) throws BeanificationException {
+            return beanifyValue(value, klass, depth);
+        }
+        
+    }
+    
+    private static final class GenericBeanAdapter extends TypeAdapter {
+        
+        private final Class<?> klass;
+        
+        private final Type context;
+        
+        GenericBeanAdapter(Class<?> klass, Type context) {
+            this.klass = klass;
+            this.context = context;
+        }
+        
+        @Override
+        Object beanify(Object value, int depth) throws BeanificationException {
+            if (value == null || klass.isInstance(value))
+                return value;
+            return beanifyObject(value, klass, context, depth);
+        }
+        
+    }
+    
+    private static final class ArrayAdapter extends TypeAdapter {
+        
+        private final Class<?> componentClass;
+        
+        private final TypeAdapter componentAdapter;
+        
+        ArrayAdapter(Class<?> componentClass, TypeAdapter componentAdapter) {
+            this.componentClass = componentClass;
+            this.componentAdapter = componentAdapter;
+        }
+        
+        @Override
+        Object beanify(Object value, int depth) throws BeanificationException {
+            if (value == null)
+                return null;
+            if (!(value instanceof Collection<?>))
+                throw new BeanificationException("Expected a collection", List.class);
+            depth = nested(depth, List.class);
+            Collection<?> source = (Collection<?>) value;
+            Object result = Array.newInstance(componentClass, source.size());
+            int index = 0;
+            for (Object item : source) {
+                Object element = componentAdapter.beanify(item, depth);
+                if (element == null && componentClass.isPrimitive())
+                    throw new BeanificationException("Null element in a primitive array", componentClass);
+                try {
+                    Array.set(result, index++, element);
+                } catch (IllegalArgumentException e) {
+                    throw new BeanificationException("Invalid array element", componentClass, e);
+                }
+            }
+            return result;
+        }
+        
+    }
+    
+    private static final class CollectionAdapter extends TypeAdapter {
+        
+        private final Class<?> implementation;
+        
+        private final TypeAdapter elementAdapter;
+        
+        CollectionAdapter(Class<?> implementation, TypeAdapter elementAdapter) {
+            this.implementation = implementation;
+            this.elementAdapter = elementAdapter;
+        }
+        
+        @Override
+        Object beanify(Object value, int depth) throws BeanificationException {
+            if (value == null)
+                return null;
+            if (!(value instanceof Collection<?>))
+                throw new BeanificationException("Expected a collection", implementation);
+            depth = nested(depth, implementation);
+            Collection<?> source = (Collection<?>) value;
+            Collection<Object> result = newCollection(source.size());
+            for (Object item : source)
+                result.add(elementAdapter.beanify(item, depth));
+            return result;
+        }
+        
+        @SuppressWarnings("unchecked")
+        private Collection<Object> newCollection(int size) throws BeanificationException {
+            if (implementation == ArrayList.class)
+                return new ArrayList<Object>(size);
+            if (implementation == LinkedHashSet.class)
+                return new LinkedHashSet<Object>(size * 4 / 3 + 1);
+            if (implementation == TreeSet.class)
+                return new TreeSet<Object>();
+            try {
+                return (Collection<Object>) implementation.getConstructor().newInstance();
+            } catch (Throwable e) {
+                throw new BeanificationException("Error creating collection instance", implementation, e);
+            }
+        }
+        
+    }
+    
+    private static final class MapAdapter extends TypeAdapter {
+        
+        private final Class<?> implementation;
+        
+        private final Class<?> enumKeyClass;
+        
+        private final TypeAdapter keyAdapter;
+        
+        private final TypeAdapter valueAdapter;
+        
+        MapAdapter(Class<?> implementation, Class<?> enumKeyClass, TypeAdapter keyAdapter,
+                TypeAdapter valueAdapter) {
+            this.implementation = implementation;
+            this.enumKeyClass = enumKeyClass;
+            this.keyAdapter = keyAdapter;
+            this.valueAdapter = valueAdapter;
+        }
+        
+        @Override
+        Object beanify(Object value, int depth) throws BeanificationException {
+            if (value == null)
+                return null;
+            if (!(value instanceof Map<?, ?>))
+                throw new BeanificationException("Expected a map", implementation);
+            depth = nested(depth, implementation);
+            Map<?, ?> source = (Map<?, ?>) value;
+            Map<Object, Object> result = newMap(source.size());
+            for (Map.Entry<?, ?> entry : source.entrySet())
+                result.put(keyAdapter.beanify(entry.getKey(), depth), valueAdapter.beanify(entry.getValue(),
+                    depth));
+            return result;
+        }
+        
+        @SuppressWarnings( { "unchecked", "rawtypes" })
+        private Map<Object, Object> newMap(int size) throws BeanificationException {
+            if (implementation == HashMap.class)
+                return new HashMap<Object, Object>(size * 4 / 3 + 1);
+            if (implementation == LinkedHashMap.class)
+                return new LinkedHashMap<Object, Object>(size * 4 / 3 + 1);
+            if (implementation == TreeMap.class)
+                return new TreeMap<Object, Object>();
+            if (implementation == EnumMap.class)
+                return new EnumMap(enumKeyClass);
+            try {
+                return (Map<Object, Object>) implementation.getConstructor().newInstance();
+            } catch (Throwable e) {
+                throw new BeanificationException("Error creating map instance", implementation, e);
+            }
+        }
+        
+    }
+    
+    private static final class OptionalAdapter extends TypeAdapter {
+        
+        private final TypeAdapter valueAdapter;
+        
+        OptionalAdapter(TypeAdapter valueAdapter) {
+            this.valueAdapter = valueAdapter;
+        }
+        
+        @Override
+        Object beanify(Object value, int depth) throws BeanificationException {
+            if (value instanceof Optional<?>)
+                value = ((Optional<?>) value).orElse(null);
+            return Optional.ofNullable(valueAdapter.beanify(value, depth));
+        }
+        
+    }
+    
+    /**
+     * Adapters are cached per type in the class value of the type's owner (see
+     * {@link #owner(Type)}), so that an unloaded class loader takes its entries
+     * along instead of being pinned by a static map.
+     */
+    private static final ClassValue<Map<Type, TypeAdapter>> ADAPTERS =
+        new ClassValue<Map<Type, TypeAdapter>>() {
+        
+        @Override
+        protected Map<Type, TypeAdapter> computeValue(Class<?> klass) {
+            return new ConcurrentHashMap<Type, TypeAdapter>();
+        }
+        
+    };
+    
+    private static final ClassValue<Map<Type, Map<Type, TypeAdapter>>> CONTEXT_ADAPTERS =
+        new ClassValue<Map<Type, Map<Type, TypeAdapter>>>() {
+        
+        @Override
+        protected Map<Type, Map<Type, TypeAdapter>> computeValue(Class<?> klass) {
+            return new ConcurrentHashMap<Type, Map<Type, TypeAdapter>>();
+        }
+        
+    };
+    
+    private static TypeAdapter adapterFor(Type type) {
+        Map<Type, TypeAdapter> adapters = ADAPTERS.get(owner(type));
+        TypeAdapter adapter = adapters.get(type);
+        Listener listener = BeanEncoding.listener;
+        if (listener != null)
+            listener.cacheLookup(type, adapter != null);
+        if (adapter == null) {
+            adapter = createAdapter(type);
+            adapters.put(type, adapter);
+        }
+        return adapter;
+    }
+    
+    /**
+     * Returns the adapter for a property type declared by the bean class of the
+     * given context, binding the type variables the property type refers to.
+     */
+    private static TypeAdapter adapterFor(Type type, Type context) {
+        if (type instanceof Class<?>)
+            return adapterFor(type);
+        Map<Type, Map<Type, TypeAdapter>> contexts = CONTEXT_ADAPTERS.get(owner(context));
+        Map<Type, TypeAdapter> adapters = contexts.get(context);
+        if (adapters == null) {
+            adapters = new ConcurrentHashMap<Type, TypeAdapter>();
+            contexts.put(context, adapters);
+        }
+        TypeAdapter adapter = adapters.get(type);
+        if (adapter == null) {
+            adapter = adapterFor(resolveType(type, typeBindings(context)));
+            adapters.put(type, adapter);
+        }
+        return adapter;
+    }
+    
+    /**
+     * Picks the class mentioned by the given type whose class loader is the
+     * most specific one; all the other classes the type mentions are visible
+     * from it, so it lives at least as long as any of them. For
+     * <code>Map&lt;String, SomeBean&gt;</code> this is <code>SomeBean</code>.
+     */
+    private static Class<?> owner(Type type) {
+        if (type instanceof Class<?>)
+            return (Class<?>) type;
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> owner = erasure(parameterizedType);
+            if (parameterizedType.getOwnerType() != null)
+                owner = narrower(owner, owner(parameterizedType.getOwnerType()));
+            for (Type argument : parameterizedType.getActualTypeArguments())
+                owner = narrower(owner, owner(argument));
+            return owner;
+        }
+        if (type instanceof GenericArrayType)
+            return owner(((GenericArrayType) type).getGenericComponentType());
+        if (type instanceof WildcardType) {
+            WildcardType wildcardType = (WildcardType) type;
+            Class<?> owner = owner(wildcardType.getUpperBounds()[0]);
+            for (Type bound : wildcardType.getLowerBounds())
+                owner = narrower(owner, owner(bound));
+            return owner;
+        }
+        if (type instanceof TypeVariable<?>) {
+            // the bounds may refer back to the variable, so go by its declaration
+            Object declaration = ((TypeVariable<?>) type).getGenericDeclaration();
+            if (declaration instanceof Class<?>)
+                return (Class<?>) declaration;
+            return ((Member) declaration).getDeclaringClass();
+        }
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+    
+    private static Class<?> narrower(Class<?> a, Class<?> b) {
+        ClassLoader ancestor = a.getClassLoader();
+        for (ClassLoader loader = b.getClassLoader(); loader != null; loader = loader.getParent())
+            if (loader == ancestor)
+                return b;
+        return (ancestor == null ? b : a);
+    }
+    
+    private static TypeAdapter createAdapter(Type type) {
+        if (type instanceof Class<?>) {
+            Class<?> klass = (Class<?>) type;
+            if (klass.isArray())
+                return new ArrayAdapter(klass.getComponentType(), adapterFor(klass.getComponentType()));
+            return new ClassAdapter(klass);
+        }
+        if (type instanceof GenericArrayType) {
+            Type componentType = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayAdapter(erasure(componentType), adapterFor(componentType));
+        }
+        if (type instanceof WildcardType || type instanceof TypeVariable<?>)
+            return adapterFor(resolveType(type, Collections.<TypeVariable<?>, Type> emptyMap()));
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Class<?> klass = erasure(parameterizedType);
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            if (klass == Optional.class)
+                return new OptionalAdapter(adapterFor(arguments[0]));
+            if (Collection.class.isAssignableFrom(klass) || klass == Iterable.class)
+                return new CollectionAdapter(collectionImplementation(klass), adapterFor(arguments[0]));
+            if (Map.class.isAssignableFrom(klass)) {
+                Class<?> enumKeyClass = erasure(arguments[0]);
+                if (!enumKeyClass.isEnum())
+                    enumKeyClass = null;
+                if (klass == EnumMap.class && enumKeyClass == null)
+                    throw new IllegalArgumentException("EnumMap requires an enum key type: " + type);
+                return new MapAdapter(mapImplementation(klass), enumKeyClass, adapterFor(arguments[0]),
+                        adapterFor(arguments[1]));
+            }
+            return new GenericBeanAdapter(klass, parameterizedType);
+        }
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+    
+    private static Class<?> collectionImplementation(Class<?> klass) {
+        if (klass.isAssignableFrom(ArrayList.class))
+            return ArrayList.class;
+        if (klass.isAssignableFrom(LinkedHashSet.class))
+            return LinkedHashSet.class;
+        if (klass.isAssignableFrom(TreeSet.class))
+            return TreeSet.class;
+        if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers()))
+            throw new IllegalArgumentException("No default implementation for collection type "
+                    + klass.getName());
+        return klass;
+    }
+    
+    private static Class<?> mapImplementation(Class<?> klass) {
+        if (klass.isAssignableFrom(HashMap.class))
+            return HashMap.class;
+        if (klass.isAssignableFrom(LinkedHashMap.class))
+            return LinkedHashMap.class;
+        if (klass.isAssignableFrom(TreeMap.class))
+            return TreeMap.class;
+        if (klass.isInterface() || Modifier.isAbstract(klass.getModifiers()))
+            throw new IllegalArgumentException("No default implementation for map type " + klass.getName());
+        return klass;
+    }
+    
+    private static Class<?> erasure(Type type) {
+        if (type instanceof Class<?>)
+            return (Class<?>) type;
+        if (type instanceof ParameterizedType)
+            return erasure(((ParameterizedType) type).getRawType());
+        if (type instanceof GenericArrayType)
+            return Array.newInstance(erasure(((GenericArrayType) type).getGenericComponentType()), 0)
+                    .getClass();
+        if (type instanceof WildcardType)
+            return erasure(((WildcardType) type).getUpperBounds()[0]);
+        if (type instanceof TypeVariable<?>)
+            return erasure(((TypeVariable<?>) type).getBounds()[0]);
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+    
+    private static final ClassValue<Map<Type, Map<TypeVariable<?>, Type>>> TYPE_BINDINGS =
+        new ClassValue<Map<Type, Map<TypeVariable<?>, Type>>>() {
+        
+        @Override
+        protected Map<Type, Map<TypeVariable<?>, Type>> computeValue(Class<?> klass) {
+            return new ConcurrentHashMap<Type, Map<TypeVariable<?>, Type>>();
+        }
+        
+    };
+    
+    /**
+     * Collects the values of the type variables of the given type and all its
+     * supertypes, e.g. for <code>class IntBox extends Box&lt;Integer&gt;</code>
+     * the type variable of <code>Box</code> is bound to <code>Integer</code>.
+     */
+    private static Map<TypeVariable<?>, Type> typeBindings(Type context) {
+        Map<Type, Map<TypeVariable<?>, Type>> cache = TYPE_BINDINGS.get(owner(context));
+        Map<TypeVariable<?>, Type> bindings = cache.get(context);
+        if (bindings == null) {
+            bindings = new HashMap<TypeVariable<?>, Type>();
+            collectTypeBindings(context, bindings);
+            cache.put(context, bindings);
+        }
+        return bindings;
+    }
+    
+    private static void collectTypeBindings(Type type, Map<TypeVariable<?>, Type> bindings) {
+        Class<?> klass = erasure(type);
+        if (type instanceof ParameterizedType) {
+            TypeVariable<?>[] variables = klass.getTypeParameters();
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            for (int i = 0; i < variables.length; i++)
+                if (!bindings.containsKey(variables[i]))
+                    bindings.put(variables[i], resolveType(arguments[i], bindings));
+        }
+        if (klass.getGenericSuperclass() != null)
+            collectTypeBindings(klass.getGenericSuperclass(), bindings);
+        for (Type superinterface : klass.getGenericInterfaces())
+            collectTypeBindings(superinterface, bindings);
+    }
+    
+    private static Type resolveType(Type type, Map<TypeVariable<?>, Type> bindings) {
+        if (type instanceof Class<?>)
+            return type;
+        if (type instanceof TypeVariable<?>) {
+            Type bound = bindings.get(type);
+            return (bound != null ? bound : erasure(type));
+        }
+        if (type instanceof WildcardType) {
+            WildcardType wildcardType = (WildcardType) type;
+            if (wildcardType.getLowerBounds().length > 0)
+                return Object.class;
+            return resolveType(wildcardType.getUpperBounds()[0], bindings);
+        }
+        if (type instanceof GenericArrayType) {
+            Type componentType = resolveType(((GenericArrayType) type).getGenericComponentType(), bindings);
+            if (componentType instanceof Class<?>)
+                return Array.newInstance((Class<?>) componentType, 0).getClass();
+            return new ResolvedGenericArrayType(componentType);
+        }
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            Type[] arguments = parameterizedType.getActualTypeArguments();
+            Type[] resolved = null;
+            for (int i = 0; i < arguments.length; i++) {
+                Type argument = resolveType(arguments[i], bindings);
+                if (argument != arguments[i]) {
+                    if (resolved == null)
+                        resolved = arguments.clone();
+                    resolved[i] = argument;
+                }
+            }
+            if (resolved == null)
+                return type;
+            return new ResolvedParameterizedType(parameterizedType.getOwnerType(), parameterizedType
+                    .getRawType(), resolved);
+        }
+        throw new IllegalArgumentException("Unsupported type: " + type);
+    }
+    
+    private static final class ResolvedParameterizedType implements ParameterizedType {
+        
+        private final Type ownerType;
+        
+        private final Type rawType;
+        
+        private final Type[] actualTypeArguments;
+        
+        ResolvedParameterizedType(Type ownerType, Type rawType, Type[] actualTypeArguments) {
+            this.ownerType = ownerType;
+            this.rawType = rawType;
+            this.actualTypeArguments = actualTypeArguments;
+        }
+        
+        public Type getOwnerType() {
+            return ownerType;
+        }
+        
+        public Type getRawType() {
+            return rawType;
+        }
+        
+        public Type[] getActualTypeArguments() {
+            return actualTypeArguments.clone();
+        }
+        
+        // compatible with the JDK implementation, so that both can be used as cache keys
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ParameterizedType))
+                return false;
+            ParameterizedType that = (ParameterizedType) obj;
+            return Objects.equals(ownerType, that.getOwnerType())
+                    && Objects.equals(rawType, that.getRawType())
+                    && Arrays.equals(actualTypeArguments, that.getActualTypeArguments());
+        }
+        
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(actualTypeArguments) ^ Objects.hashCode(ownerType)
+                    ^ Objects.hashCode(rawType);
+        }
+        
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(((Class<?>) rawType).getName()).append('<');
+            for (int i = 0; i < actualTypeArguments.length; i++)
+                result.append(i == 0 ? "" : ", ").append(actualTypeArguments[i].getTypeName());
+            return result.append('>').toString();
+        }
+        
+    }
+    
+    private static final class ResolvedGenericArrayType implements GenericArrayType {
+        
+        private final Type genericComponentType;
+        
+        ResolvedGenericArrayType(Type genericComponentType) {
+            this.genericComponentType = genericComponentType;
+        }
+        
+        public Type getGenericComponentType() {
+            return genericComponentType;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof GenericArrayType
+                    && Objects.equals(genericComponentType, ((GenericArrayType) obj)
+                            .getGenericComponentType());
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(genericComponentType);
+        }
+        
+        @Override
+        public String toString() {
+            return genericComponentType.getTypeName() + "[]";
+        }
+        
+    }
+    
 }
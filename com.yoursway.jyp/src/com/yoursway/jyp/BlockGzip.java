@@ -0,0 +1,409 @@
+package com.yoursway.jyp;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads and writes block-compressed gzip streams in the BGZF layout: the
+ * data is cut into blocks of at most {@link #BLOCK_SIZE} bytes, each stored
+ * as an independent gzip member whose header records its compressed size.
+ * The result is still a standard gzip file, but the blocks can be
+ * compressed and decompressed on a thread pool, which is what
+ * {@link Output} and {@link Input} do, keeping the blocks in order. Encoding
+ * and decoding JSON through them takes the compression off the thread that
+ * runs the encoder or tokenizer:
+ * 
+ * <pre>
+ * Writer writer = new OutputStreamWriter(new BlockGzip.Output(file), StandardCharsets.UTF_8);
+ * JSON.encode(value, writer);
+ * writer.close();
+ * </pre>
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class BlockGzip {
+    
+    /** The largest number of uncompressed bytes in a block, as in BGZF. */
+    public static final int BLOCK_SIZE = 0xff00;
+    
+    private static final int HEADER_SIZE = 18;
+    
+    private static final int TRAILER_SIZE = 8;
+    
+    /** Compressed blocks are limited by the 16-bit size field of the header. */
+    private static final int MAX_MEMBER_SIZE = 0x10000;
+    
+    private static final byte[] HEADER = { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B',
+            'C', 2, 0 };
+    
+    private static int defaultPending() {
+        return 2 * Runtime.getRuntime().availableProcessors();
+    }
+    
+    /**
+     * Compresses everything written into it in blocks on the given executor.
+     * At most the given number of blocks are compressed or waiting to be
+     * written at a time. {@link #flush()} ends the current block early, so
+     * flushing often makes the output larger. Closing writes an empty block,
+     * which BGZF readers expect at the end. Not thread-safe.
+     */
+    public static final class Output extends OutputStream {
+        
+        private final OutputStream out;
+        
+        private final ExecutorService executor;
+        
+        private final int level;
+        
+        private final int maxPending;
+        
+        private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        
+        private byte[] buffer = new byte[BLOCK_SIZE];
+        
+        private int count;
+        
+        private boolean closed;
+        
+        public Output(OutputStream out) {
+            this(out, ForkJoinPool.commonPool(), Deflater.DEFAULT_COMPRESSION, defaultPending());
+        }
+        
+        public Output(OutputStream out, ExecutorService executor, int level, int maxPending) {
+            if (maxPending < 1)
+                throw new IllegalArgumentException("maxPending must be positive");
+            this.out = out;
+            this.executor = executor;
+            this.level = level;
+            this.maxPending = maxPending;
+        }
+        
+        @Override
+        public void write(int b) throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+            if (count == BLOCK_SIZE)
+                submit();
+            buffer[count++] = (byte) b;
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+            while (len > 0) {
+                if (count == BLOCK_SIZE)
+                    submit();
+                int n = Math.min(len, BLOCK_SIZE - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+        
+        private void submit() throws IOException {
+            if (closed)
+                throw new IOException("Stream closed");
+            pending.add(executor.submit(new Deflate(buffer, count, level)));
+            buffer = new byte[BLOCK_SIZE];
+            count = 0;
+            while (pending.size() > maxPending)
+                out.write(result(pending.poll()));
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            if (count > 0)
+                submit();
+            while (!pending.isEmpty())
+                out.write(result(pending.poll()));
+            out.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            if (closed)
+                return;
+            try {
+                if (count > 0)
+                    submit();
+                submit();
+                flush();
+            } finally {
+                closed = true;
+                for (Future<byte[]> future : pending)
+                    future.cancel(false);
+                out.close();
+            }
+        }
+        
+    }
+    
+    /**
+     * Decompresses a gzip stream, reading ahead and inflating up to the
+     * given number of BGZF blocks on the given executor. A member without the
+     * BGZF header (e.g. from the <code>gzip</code> tool) cannot be found
+     * without inflating the ones before it, so from the first such member on
+     * the rest of the stream is decompressed sequentially with
+     * <code>GZIPInputStream</code>. Not thread-safe.
+     */
+    public static final class Input extends InputStream {
+        
+        private final InputStream in;
+        
+        private final ExecutorService executor;
+        
+        private final int maxPending;
+        
+        private final ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        
+        private byte[] block = new byte[0];
+        
+        private int position;
+        
+        private boolean eof;
+        
+        private InputStream sequential;
+        
+        public Input(InputStream in) {
+            this(in, ForkJoinPool.commonPool(), defaultPending());
+        }
+        
+        public Input(InputStream in, ExecutorService executor, int maxPending) {
+            if (maxPending < 1)
+                throw new IllegalArgumentException("maxPending must be positive");
+            this.in = in;
+            this.executor = executor;
+            this.maxPending = maxPending;
+        }
+        
+        @Override
+        public int read() throws IOException {
+            if (position < block.length)
+                return block[position++] & 0xff;
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0 ? -1 : b[0] & 0xff);
+        }
+        
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return 0;
+            while (position == block.length) {
+                if (!nextBlock())
+                    return (sequential != null ? sequential.read(b, off, len) : -1);
+            }
+            int n = Math.min(len, block.length - position);
+            System.arraycopy(block, position, b, off, n);
+            position += n;
+            return n;
+        }
+        
+        @Override
+        public int available() throws IOException {
+            return block.length - position;
+        }
+        
+        private boolean nextBlock() throws IOException {
+            while (!eof && pending.size() < maxPending)
+                readMember();
+            Future<byte[]> next = pending.poll();
+            if (next == null)
+                return false;
+            block = result(next);
+            position = 0;
+            return true;
+        }
+        
+        private void readMember() throws IOException {
+            byte[] header = new byte[HEADER_SIZE];
+            int n = readFully(in, header, 0, HEADER_SIZE);
+            if (n == 0) {
+                eof = true;
+                return;
+            }
+            if (!isBlockHeader(header, n)) {
+                eof = true;
+                InputStream rest = new SequenceInputStream(new ByteArrayInputStream(header, 0, n), in);
+                sequential = new GZIPInputStream(rest);
+                return;
+            }
+            int size = ((header[16] & 0xff) | (header[17] & 0xff) << 8) + 1;
+            if (size < HEADER_SIZE + TRAILER_SIZE)
+                throw new ZipException("Invalid block size " + size);
+            byte[] member = Arrays.copyOf(header, size);
+            if (readFully(in, member, HEADER_SIZE, size - HEADER_SIZE) < size - HEADER_SIZE)
+                throw new EOFException("Unexpected end of block");
+            pending.add(executor.submit(new Inflate(member)));
+        }
+        
+        @Override
+        public void close() throws IOException {
+            eof = true;
+            for (Future<byte[]> future : pending)
+                future.cancel(false);
+            pending.clear();
+            if (sequential != null)
+                sequential.close();
+            in.close();
+        }
+        
+    }
+    
+    /**
+     * Checks for a gzip header with exactly one extra subfield, the BGZF
+     * block size.
+     */
+    private static boolean isBlockHeader(byte[] header, int length) {
+        return length == HEADER_SIZE && header[0] == HEADER[0] && header[1] == HEADER[1] && header[2] == 8
+                && header[3] == 4 && header[10] == 6 && header[11] == 0 && header[12] == 'B'
+                && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+    
+    private static int readFully(InputStream in, byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int n = in.read(b, off + total, len - total);
+            if (n < 0)
+                break;
+            total += n;
+        }
+        return total;
+    }
+    
+    private static byte[] result(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a block");
+        } catch (ExecutionException e) {
+            // ForkJoinPool wraps checked exceptions in a RuntimeException
+            for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause())
+                if (cause instanceof IOException)
+                    throw (IOException) cause;
+            throw new IOException(e.getCause());
+        }
+    }
+    
+    /** Compresses one block into a complete gzip member. */
+    private static final class Deflate implements Callable<byte[]> {
+        
+        private final byte[] data;
+        
+        private final int length;
+        
+        private final int level;
+        
+        Deflate(byte[] data, int length, int level) {
+            this.data = data;
+            this.length = length;
+            this.level = level;
+        }
+        
+        public byte[] call() throws IOException {
+            Deflater deflater = new Deflater(level, true);
+            byte[] member = new byte[MAX_MEMBER_SIZE];
+            int size;
+            try {
+                deflater.setInput(data, 0, length);
+                deflater.finish();
+                size = HEADER_SIZE;
+                while (!deflater.finished()) {
+                    if (size == MAX_MEMBER_SIZE - TRAILER_SIZE)
+                        throw new IOException("Block does not fit into a BGZF member");
+                    size += deflater.deflate(member, size, MAX_MEMBER_SIZE - TRAILER_SIZE - size);
+                }
+            } finally {
+                deflater.end();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+            System.arraycopy(HEADER, 0, member, 0, HEADER.length);
+            putShort(member, HEADER.length, size + TRAILER_SIZE - 1);
+            putInt(member, size, (int) crc.getValue());
+            putInt(member, size + 4, length);
+            return Arrays.copyOf(member, size + TRAILER_SIZE);
+        }
+        
+    }
+    
+    /** Decompresses one BGZF member, checking its size and CRC. */
+    private static final class Inflate implements Callable<byte[]> {
+        
+        private final byte[] member;
+        
+        Inflate(byte[] member) {
+            this.member = member;
+        }
+        
+        public byte[] call() throws IOException {
+            int trailer = member.length - TRAILER_SIZE;
+            int length = getInt(member, trailer + 4);
+            if (length < 0 || length > MAX_MEMBER_SIZE)
+                throw new ZipException("Corrupt block: invalid size " + length);
+            byte[] data = new byte[length];
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(member, HEADER_SIZE, trailer - HEADER_SIZE);
+                int size = 0;
+                while (size < data.length && !inflater.finished()) {
+                    int n = inflater.inflate(data, size, data.length - size);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    size += n;
+                }
+                // the end of the deflate stream may still be pending, but no more data
+                if (!inflater.finished() && inflater.inflate(new byte[1]) > 0)
+                    size++;
+                if (size != data.length || !inflater.finished())
+                    throw new ZipException("Corrupt block: size does not match");
+            } catch (DataFormatException e) {
+                throw new ZipException("Corrupt block: " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            if ((int) crc.getValue() != getInt(member, trailer))
+                throw new ZipException("Corrupt block: CRC does not match");
+            return data;
+        }
+        
+    }
+    
+    private static void putShort(byte[] b, int off, int value) {
+        b[off] = (byte) value;
+        b[off + 1] = (byte) (value >>> 8);
+    }
+    
+    private static void putInt(byte[] b, int off, int value) {
+        putShort(b, off, value);
+        putShort(b, off + 2, value >>> 16);
+    }
+    
+    private static int getInt(byte[] b, int off) {
+        return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16
+                | (b[off + 3] & 0xff) << 24;
+    }
+    
+}
@@ -0,0 +1,791 @@
+package com.yoursway.jyp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Encodes and decodes CBOR (Concise Binary Object Representation, RFC 8949),
+ * using the same data model as the JSON class: <code>null</code>,
+ * <code>Boolean</code>, <code>String</code>, <code>Number</code>s,
+ * <code>Map</code> and <code>List</code>, plus <code>byte[]</code> for CBOR
+ * byte strings. Strings and containers are length-prefixed, so decoding
+ * allocates them with the right size upfront.
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class CBOR {
+    
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    
+    public static class SyntaxError extends Exception {
+        private static final long serialVersionUID = 1L;
+        
+        public SyntaxError(String s, long byteIndex) {
+            super(s + " on byte " + byteIndex);
+        }
+        
+    }
+    
+    private static final int UNSIGNED = 0 << 5;
+    private static final int NEGATIVE = 1 << 5;
+    private static final int BYTES = 2 << 5;
+    private static final int TEXT = 3 << 5;
+    private static final int ARRAY = 4 << 5;
+    private static final int MAP = 5 << 5;
+    private static final int TAG = 6 << 5;
+    private static final int SIMPLE = 7 << 5;
+    
+    private static final int FALSE = SIMPLE | 20;
+    private static final int TRUE = SIMPLE | 21;
+    private static final int NULL = SIMPLE | 22;
+    private static final int UNDEFINED = SIMPLE | 23;
+    private static final int HALF = SIMPLE | 25;
+    private static final int SINGLE = SIMPLE | 26;
+    private static final int DOUBLE = SIMPLE | 27;
+    private static final int BREAK = SIMPLE | 31;
+    
+    private static final int INDEFINITE = 31;
+    
+    private static final int TAG_POSITIVE_BIGNUM = 2;
+    private static final int TAG_NEGATIVE_BIGNUM = 3;
+    private static final int TAG_DECIMAL_FRACTION = 4;
+    
+    private static final BigInteger MAX_UNSIGNED_LONG = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+    
+    public static byte[] encode(Object value) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            encode(value, result);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result.toByteArray();
+    }
+    
+    public static void encode(Object value, OutputStream output) throws IOException {
+        CBOREncoder encoder = new CBOREncoder(output);
+        encoder.encode(value, 0);
+        encoder.flush();
+    }
+    
+    public static Object decode(byte[] data) throws SyntaxError {
+        return decode(data, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decode(byte[] data, int maxDepth) throws SyntaxError {
+        try {
+            return new CBORDecoder(data, null, maxDepth).decodeDocument();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * Decodes the value at the given JSON Pointer (RFC 6901), e.g.
+     * <code>"/items/0/name"</code>, without building anything else: strings
+     * on the way are skipped by their length, and containers by their item
+     * headers. Returns <code>null</code> if there is no such value. The part
+     * of the data after the value is not checked.
+     */
+    public static Object decode(byte[] data, String pointer) throws SyntaxError {
+        if (pointer.length() > 0 && pointer.charAt(0) != '/')
+            throw new IllegalArgumentException("JSON Pointer must start with a slash: " + pointer);
+        try {
+            return new CBORDecoder(data, null, DEFAULT_MAX_DEPTH).decodeAt(pointer);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * Decodes the single value the given stream holds, reading it to the
+     * end.
+     */
+    public static Object decode(InputStream input) throws SyntaxError, IOException {
+        return decode(input, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decode(InputStream input, int maxDepth) throws SyntaxError, IOException {
+        return new CBORDecoder(new byte[8192], input, maxDepth).decodeDocument();
+    }
+    
+    static final class CBOREncoder {
+        
+        private final OutputStream output;
+        
+        private final byte[] buffer = new byte[8192];
+        
+        private int position;
+        
+        CBOREncoder(OutputStream output) {
+            this.output = output;
+        }
+        
+        void flush() throws IOException {
+            output.write(buffer, 0, position);
+            position = 0;
+        }
+        
+        private void ensure(int count) throws IOException {
+            if (position + count > buffer.length)
+                flush();
+        }
+        
+        private void write(int b) throws IOException {
+            if (position == buffer.length)
+                flush();
+            buffer[position++] = (byte) b;
+        }
+        
+        private void writeHeader(int major, long argument) throws IOException {
+            ensure(9);
+            if (argument >= 0 && argument < 24) {
+                buffer[position++] = (byte) (major | argument);
+            } else if (argument >= 0 && argument <= 0xFF) {
+                buffer[position++] = (byte) (major | 24);
+                buffer[position++] = (byte) argument;
+            } else if (argument >= 0 && argument <= 0xFFFF) {
+                buffer[position++] = (byte) (major | 25);
+                buffer[position++] = (byte) (argument >> 8);
+                buffer[position++] = (byte) argument;
+            } else if (argument >= 0 && argument <= 0xFFFFFFFFL) {
+                buffer[position++] = (byte) (major | 26);
+                writeInt((int) argument);
+            } else {
+                // negative arguments stand for unsigned values of 2^63 and above
+                buffer[position++] = (byte) (major | 27);
+                writeInt((int) (argument >>> 32));
+                writeInt((int) argument);
+            }
+        }
+        
+        private void writeInt(int value) {
+            buffer[position++] = (byte) (value >> 24);
+            buffer[position++] = (byte) (value >> 16);
+            buffer[position++] = (byte) (value >> 8);
+            buffer[position++] = (byte) value;
+        }
+        
+        private void writeBytes(byte[] bytes, int offset, int length) throws IOException {
+            if (length > buffer.length - position) {
+                flush();
+                if (length > buffer.length) {
+                    output.write(bytes, offset, length);
+                    return;
+                }
+            }
+            System.arraycopy(bytes, offset, buffer, position, length);
+            position += length;
+        }
+        
+        void encode(Object value, int depth) throws IOException {
+            if (depth > DEFAULT_MAX_DEPTH)
+                throw new IllegalArgumentException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH
+                        + " exceeded");
+            if (value == null)
+                write(NULL);
+            else if (value instanceof CharSequence)
+                encodeString((CharSequence) value);
+            else if (value instanceof Character)
+                encodeString(value.toString());
+            else if (value instanceof Boolean)
+                write(((Boolean) value).booleanValue() ? TRUE : FALSE);
+            else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte)
+                encodeLong(((Number) value).longValue());
+            else if (value instanceof Float)
+                encodeSingle((Float) value);
+            else if (value instanceof Double)
+                encodeDouble((Double) value);
+            else if (value instanceof BigInteger)
+                encodeBigInteger((BigInteger) value);
+            else if (value instanceof BigDecimal)
+                encodeBigDecimal((BigDecimal) value);
+            else if (value instanceof Number)
+                encodeDouble(((Number) value).doubleValue());
+            else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeHeader(BYTES, bytes.length);
+                writeBytes(bytes, 0, bytes.length);
+            } else if (value instanceof Map<?, ?>)
+                encodeMap((Map<?, ?>) value, depth);
+            else if (value instanceof List<?>) {
+                List<?> list = (List<?>) value;
+                writeHeader(ARRAY, list.size());
+                for (Object item : list)
+                    encode(item, depth + 1);
+            } else if (value instanceof Iterable<?>) {
+                write(ARRAY | INDEFINITE);
+                for (Object item : (Iterable<?>) value)
+                    encode(item, depth + 1);
+                write(BREAK);
+            } else if (value.getClass().isArray()) {
+                Object[] array = (Object[]) value;
+                writeHeader(ARRAY, array.length);
+                for (Object item : array)
+                    encode(item, depth + 1);
+            } else {
+                throw new IllegalArgumentException("Cannot encode complex types into CBOR: "
+                        + value.getClass().getName());
+            }
+        }
+        
+        private void encodeLong(long value) throws IOException {
+            if (value >= 0)
+                writeHeader(UNSIGNED, value);
+            else
+                writeHeader(NEGATIVE, -1 - value);
+        }
+        
+        private void encodeBigInteger(BigInteger value) throws IOException {
+            if (value.bitLength() < 64) {
+                encodeLong(value.longValue());
+                return;
+            }
+            boolean negative = value.signum() < 0;
+            BigInteger magnitude = (negative ? value.negate().subtract(BigInteger.ONE) : value);
+            if (magnitude.compareTo(MAX_UNSIGNED_LONG) <= 0) {
+                writeHeader(negative ? NEGATIVE : UNSIGNED, magnitude.longValue());
+                return;
+            }
+            byte[] bytes = magnitude.toByteArray();
+            int offset = (bytes[0] == 0 ? 1 : 0);
+            writeHeader(TAG, negative ? TAG_NEGATIVE_BIGNUM : TAG_POSITIVE_BIGNUM);
+            writeHeader(BYTES, bytes.length - offset);
+            writeBytes(bytes, offset, bytes.length - offset);
+        }
+        
+        private void encodeBigDecimal(BigDecimal value) throws IOException {
+            writeHeader(TAG, TAG_DECIMAL_FRACTION);
+            writeHeader(ARRAY, 2);
+            encodeLong(-value.scale());
+            encodeBigInteger(value.unscaledValue());
+        }
+        
+        private void encodeSingle(float value) throws IOException {
+            ensure(5);
+            buffer[position++] = (byte) SINGLE;
+            writeInt(Float.floatToIntBits(value));
+        }
+        
+        private void encodeDouble(double value) throws IOException {
+            // use the shorter form when no precision is lost
+            if ((double) (float) value == value || Double.isNaN(value)) {
+                encodeSingle((float) value);
+                return;
+            }
+            long bits = Double.doubleToLongBits(value);
+            ensure(9);
+            buffer[position++] = (byte) DOUBLE;
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+        }
+        
+        private void encodeString(CharSequence string) throws IOException {
+            int length = string.length();
+            writeHeader(TEXT, utf8Length(string, length));
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c < 0x80) {
+                    write(c);
+                } else if (c < 0x800) {
+                    ensure(2);
+                    buffer[position++] = (byte) (0xC0 | (c >> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(string.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                    ensure(4);
+                    buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else {
+                    if (Character.isSurrogate(c))
+                        c = '?'; // unpaired surrogate, same as String.getBytes
+                    ensure(3);
+                    buffer[position++] = (byte) (0xE0 | (c >> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+        }
+        
+        private static int utf8Length(CharSequence string, int length) {
+            int result = length;
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c >= 0x80) {
+                    if (c < 0x800)
+                        result += 1;
+                    else if (Character.isHighSurrogate(c) && i + 1 < length
+                            && Character.isLowSurrogate(string.charAt(i + 1))) {
+                        result += 2;
+                        i++;
+                    } else if (Character.isSurrogate(c))
+                        ; // encoded as '?'
+                    else
+                        result += 2;
+                }
+            }
+            return result;
+        }
+        
+        private void encodeMap(Map<?, ?> map, int depth) throws IOException {
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>(map.entrySet());
+            try {
+                Collections.sort(entries, ENTRY_KEY_COMPARATOR);
+            } catch (ClassCastException e) {
+                // uncomparable, go unsorted
+            }
+            writeHeader(MAP, entries.size());
+            for (Map.Entry<?, ?> entry : entries) {
+                encode(entry.getKey(), depth + 1);
+                encode(entry.getValue(), depth + 1);
+            }
+        }
+        
+    }
+    
+    static final class CBORDecoder {
+        
+        private byte[] buffer;
+        
+        private int position;
+        
+        private int limit;
+        
+        private final InputStream input;
+        
+        /** The offset of buffer[0] in the input, for error messages. */
+        private long offset;
+        
+        private final int maxDepth;
+        
+        CBORDecoder(byte[] buffer, InputStream input, int maxDepth) {
+            this.buffer = buffer;
+            this.input = input;
+            this.limit = (input == null ? buffer.length : 0);
+            this.maxDepth = maxDepth;
+        }
+        
+        Object decodeDocument() throws SyntaxError, IOException {
+            if (!available(1))
+                throw new SyntaxError("CBOR is empty", 0);
+            Object value = decode(0);
+            if (value == BREAK_MARKER)
+                throw error("Unexpected break");
+            if (available(1))
+                throw error("Unexpected data after the value");
+            return value;
+        }
+        
+        Object decodeAt(String pointer) throws SyntaxError, IOException {
+            int depth = 0;
+            for (int start = 1; start <= pointer.length(); depth++) {
+                int end = pointer.indexOf('/', start);
+                if (end < 0)
+                    end = pointer.length();
+                String segment = pointer.substring(start, end).replace("~1", "/").replace("~0", "~");
+                start = end + 1;
+                if (!enter(segment, depth))
+                    return null;
+            }
+            return decodeItem(depth);
+        }
+        
+        /**
+         * Positions the decoder at the value of the given key or index of the
+         * container that comes next, skipping the items before it. Returns
+         * false if the value is not a container or has no such item.
+         */
+        private boolean enter(String segment, int depth) throws SyntaxError, IOException {
+            if (depth == maxDepth)
+                throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+            require(1);
+            int initial = buffer[position++] & 0xFF;
+            while ((initial & 0xE0) == TAG) {
+                readArgument(initial & 0x1F);
+                require(1);
+                initial = buffer[position++] & 0xFF;
+            }
+            int major = initial & 0xE0;
+            int info = initial & 0x1F;
+            if (major != ARRAY && major != MAP)
+                return false;
+            long count = (info == INDEFINITE ? Long.MAX_VALUE : readLength(info));
+            if (major == ARRAY) {
+                long index;
+                try {
+                    index = Long.parseLong(segment);
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+                if (index < 0 || index >= count)
+                    return false;
+                for (long i = 0; i < index; i++)
+                    if (!skip(depth + 1))
+                        return false;
+                if (info != INDEFINITE)
+                    return true;
+                // make sure the break did not end the array right here
+                require(1);
+                return (buffer[position] & 0xFF) != BREAK;
+            }
+            for (long i = 0; i < count; i++) {
+                Object key = decode(depth + 1);
+                if (key == BREAK_MARKER)
+                    return false;
+                if (segment.equals(String.valueOf(key)))
+                    return true;
+                if (!skip(depth + 1))
+                    throw error("Unexpected break");
+            }
+            return false;
+        }
+        
+        /**
+         * Moves past the next item without decoding it. Returns false if the
+         * item is the break ending an indefinite-length container.
+         */
+        private boolean skip(int depth) throws SyntaxError, IOException {
+            require(1);
+            int initial = buffer[position++] & 0xFF;
+            int major = initial & 0xE0;
+            int info = initial & 0x1F;
+            switch (major) {
+            case UNSIGNED:
+            case NEGATIVE:
+                readArgument(info);
+                return true;
+            case BYTES:
+            case TEXT:
+                if (info != INDEFINITE) {
+                    skipBytes(readArgument(info));
+                    return true;
+                }
+                for (;;) {
+                    require(1);
+                    int chunk = buffer[position++] & 0xFF;
+                    if (chunk == BREAK)
+                        return true;
+                    if ((chunk & 0xE0) != major || (chunk & 0x1F) == INDEFINITE)
+                        throw error("Invalid chunk in an indefinite-length string");
+                    skipBytes(readArgument(chunk & 0x1F));
+                }
+            case ARRAY:
+            case MAP: {
+                if (depth == maxDepth)
+                    throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+                int items = (major == MAP ? 2 : 1);
+                if (info == INDEFINITE) {
+                    while (skip(depth + 1))
+                        for (int i = 1; i < items; i++)
+                            skipItem(depth + 1);
+                    return true;
+                }
+                long count = readLength(info);
+                for (long i = 0; i < count * items; i++)
+                    skipItem(depth + 1);
+                return true;
+            }
+            case TAG:
+                if (depth == maxDepth)
+                    throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+                readArgument(info);
+                skipItem(depth + 1);
+                return true;
+            default:
+                return decodeSimple(initial) != BREAK_MARKER;
+            }
+        }
+        
+        private void skipItem(int depth) throws SyntaxError, IOException {
+            if (!skip(depth))
+                throw error("Unexpected break");
+        }
+        
+        /** Skips the given number of bytes, at once when the whole input is in the buffer. */
+        private void skipBytes(long count) throws SyntaxError, IOException {
+            if (count < 0)
+                throw error("Length too large: " + Long.toUnsignedString(count));
+            while (count > 0) {
+                require(1);
+                int chunk = (int) Math.min(count, limit - position);
+                position += chunk;
+                count -= chunk;
+            }
+        }
+        
+        private SyntaxError error(String message) {
+            return new SyntaxError(message, offset + position);
+        }
+        
+        /**
+         * Makes sure the buffer holds at least count unread bytes, reading more
+         * from the input if needed.
+         */
+        private boolean available(int count) throws IOException {
+            if (limit - position >= count)
+                return true;
+            if (input == null)
+                return false;
+            if (count > buffer.length)
+                buffer = Arrays.copyOf(buffer, Math.max(count, buffer.length * 2));
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            offset += position;
+            limit -= position;
+            position = 0;
+            while (limit < count) {
+                int read = input.read(buffer, limit, buffer.length - limit);
+                if (read < 0)
+                    return false;
+                limit += read;
+            }
+            return true;
+        }
+        
+        private void require(int count) throws SyntaxError, IOException {
+            if (!available(count))
+                throw error("Unexpected end of CBOR");
+        }
+        
+        private long readArgument(int info) throws SyntaxError, IOException {
+            if (info < 24)
+                return info;
+            switch (info) {
+            case 24:
+                require(1);
+                return buffer[position++] & 0xFF;
+            case 25:
+                require(2);
+                return ((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF);
+            case 26:
+                require(4);
+                return readInt() & 0xFFFFFFFFL;
+            case 27:
+                require(8);
+                return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+            default:
+                throw error("Invalid additional information " + info);
+            }
+        }
+        
+        private int readInt() {
+            return ((buffer[position++] & 0xFF) << 24) | ((buffer[position++] & 0xFF) << 16)
+                    | ((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF);
+        }
+        
+        private int readLength(int info) throws SyntaxError, IOException {
+            long length = readArgument(info);
+            if (length < 0 || length > Integer.MAX_VALUE - 8)
+                throw error("Length too large: " + Long.toUnsignedString(length));
+            return (int) length;
+        }
+        
+        /**
+         * Limits collection pre-sizing by the remaining input when it is known,
+         * so a bogus length cannot make us allocate a huge table.
+         */
+        private int capacityFor(int count) {
+            return (input == null ? Math.min(count, limit - position) : Math.min(count, 1024));
+        }
+        
+        private Object decode(int depth) throws SyntaxError, IOException {
+            require(1);
+            int initial = buffer[position++] & 0xFF;
+            int major = initial & 0xE0;
+            int info = initial & 0x1F;
+            switch (major) {
+            case UNSIGNED: {
+                long value = readArgument(info);
+                if (value >= 0 && value <= Integer.MAX_VALUE)
+                    return (int) value;
+                if (value >= 0)
+                    return value;
+                return new BigInteger(Long.toUnsignedString(value));
+            }
+            case NEGATIVE: {
+                long value = readArgument(info);
+                if (value >= 0 && value <= Integer.MAX_VALUE)
+                    return (int) (-1 - value);
+                if (value >= 0)
+                    return -1 - value;
+                return new BigInteger(Long.toUnsignedString(value)).negate().subtract(BigInteger.ONE);
+            }
+            case BYTES:
+                return (info == INDEFINITE ? readIndefiniteBytes(BYTES) : readBytes(readLength(info)));
+            case TEXT:
+                if (info == INDEFINITE)
+                    return new String(readIndefiniteBytes(TEXT), StandardCharsets.UTF_8);
+                int length = readLength(info);
+                if (length > buffer.length)
+                    return new String(readBytes(length), StandardCharsets.UTF_8);
+                require(length);
+                String string = new String(buffer, position, length, StandardCharsets.UTF_8);
+                position += length;
+                return string;
+            case ARRAY: {
+                if (depth == maxDepth)
+                    throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+                if (info == INDEFINITE) {
+                    List<Object> list = new ArrayList<Object>();
+                    for (Object item; (item = decode(depth + 1)) != BREAK_MARKER;)
+                        list.add(item);
+                    return list;
+                }
+                int count = readLength(info);
+                List<Object> list = new ArrayList<Object>(capacityFor(count));
+                for (int i = 0; i < count; i++)
+                    list.add(decodeItem(depth + 1));
+                return list;
+            }
+            case MAP: {
+                if (depth == maxDepth)
+                    throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+                if (info == INDEFINITE) {
+                    Map<Object, Object> map = new HashMap<Object, Object>();
+                    for (Object key; (key = decode(depth + 1)) != BREAK_MARKER;)
+                        map.put(key, decodeItem(depth + 1));
+                    return map;
+                }
+                int count = readLength(info);
+                Map<Object, Object> map = new HashMap<Object, Object>(capacityFor(count) * 4 / 3 + 1);
+                for (int i = 0; i < count; i++) {
+                    Object key = decodeItem(depth + 1);
+                    map.put(key, decodeItem(depth + 1));
+                }
+                return map;
+            }
+            case TAG:
+                return decodeTagged(readArgument(info), depth);
+            default:
+                return decodeSimple(initial);
+            }
+        }
+        
+        private Object decodeItem(int depth) throws SyntaxError, IOException {
+            Object value = decode(depth);
+            if (value == BREAK_MARKER)
+                throw error("Unexpected break");
+            return value;
+        }
+        
+        private byte[] readBytes(int length) throws SyntaxError, IOException {
+            if (length <= buffer.length || input == null) {
+                require(length);
+                byte[] bytes = Arrays.copyOfRange(buffer, position, position + length);
+                position += length;
+                return bytes;
+            }
+            // the length is only claimed by the input, so grow the result as the bytes arrive
+            byte[] bytes = new byte[buffer.length];
+            int count = 0;
+            while (count < length) {
+                require(1);
+                int chunk = Math.min(length - count, limit - position);
+                if (count + chunk > bytes.length)
+                    bytes = Arrays.copyOf(bytes, Math.min(length, Math.max(count + chunk, bytes.length * 2)));
+                System.arraycopy(buffer, position, bytes, count, chunk);
+                position += chunk;
+                count += chunk;
+            }
+            return bytes;
+        }
+        
+        private byte[] readIndefiniteBytes(int major) throws SyntaxError, IOException {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            for (;;) {
+                require(1);
+                int initial = buffer[position++] & 0xFF;
+                if (initial == BREAK)
+                    return result.toByteArray();
+                if ((initial & 0xE0) != major || (initial & 0x1F) == INDEFINITE)
+                    throw error("Invalid chunk in an indefinite-length string");
+                result.write(readBytes(readLength(initial & 0x1F)));
+            }
+        }
+        
+        private Object decodeTagged(long tag, int depth) throws SyntaxError, IOException {
+            // a tag nests its value like a one-element array, so chained tags count towards the depth
+            if (depth == maxDepth)
+                throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+            Object value = decodeItem(depth + 1);
+            if ((tag == TAG_POSITIVE_BIGNUM || tag == TAG_NEGATIVE_BIGNUM) && value instanceof byte[]) {
+                BigInteger magnitude = new BigInteger(1, (byte[]) value);
+                return (tag == TAG_POSITIVE_BIGNUM ? magnitude : magnitude.negate().subtract(BigInteger.ONE));
+            }
+            if (tag == TAG_DECIMAL_FRACTION && value instanceof List<?> && ((List<?>) value).size() == 2) {
+                List<?> parts = (List<?>) value;
+                Object exponent = parts.get(0), mantissa = parts.get(1);
+                if (exponent instanceof Integer && mantissa instanceof Number)
+                    return new BigDecimal(new BigInteger(mantissa.toString()), -(Integer) exponent);
+            }
+            // other tags carry no meaning in our data model
+            return value;
+        }
+        
+        private Object decodeSimple(int initial) throws SyntaxError, IOException {
+            switch (initial) {
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case NULL:
+            case UNDEFINED:
+                return null;
+            case HALF:
+                require(2);
+                return (double) halfToFloat(((buffer[position++] & 0xFF) << 8) | (buffer[position++] & 0xFF));
+            case SINGLE:
+                require(4);
+                return (double) Float.intBitsToFloat(readInt());
+            case DOUBLE:
+                require(8);
+                return Double.longBitsToDouble(((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL));
+            case BREAK:
+                return BREAK_MARKER;
+            default:
+                throw error("Unsupported simple value " + (initial & 0x1F));
+            }
+        }
+        
+        private static float halfToFloat(int half) {
+            int exponent = (half >> 10) & 0x1F;
+            int mantissa = half & 0x3FF;
+            float value;
+            if (exponent == 0)
+                value = mantissa * 0x1p-24f;
+            else if (exponent == 31)
+                value = (mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN);
+            else
+                value = (mantissa + 1024) * (float) Math.pow(2, exponent - 25);
+            return ((half & 0x8000) != 0 ? -value : value);
+        }
+        
+    }
+    
+    private static final Object BREAK_MARKER = new Object();
+    
+    private final static Comparator<Map.Entry<?, ?>> ENTRY_KEY_COMPARATOR = new Comparator<Entry<?, ?>>() {
+        
+        @SuppressWarnings("unchecked")
+        public int compare(Entry<?, ?> o1, Entry<?, ?> o2) {
+            return ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+        }
+    };
+    
+}
@@ -0,0 +1,655 @@
+package com.yoursway.jyp;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.yoursway.jyp.JSON.SyntaxError;
+
+/**
+ * An array of flat JSON objects (records) decoded into one column per key:
+ * numbers into <code>long[]</code> or <code>double[]</code>, booleans into
+ * a bitmap, and strings into dictionary codes, with a bitmap of the nulls
+ * per column. The records are read straight into the columns, without
+ * building a <code>Map</code> or boxing a value per record, which takes a
+ * fraction of the memory of {@link JSON#decode(String)} for long series of
+ * small records:
+ * 
+ * <pre>
+ * Columns columns = Columns.decode(json, new Columns.Spec().column(&quot;ts&quot;, Columns.Type.LONG)
+ *         .column(&quot;v&quot;, Columns.Type.DOUBLE).column(&quot;host&quot;, Columns.Type.STRING));
+ * long[] ts = ((Columns.LongColumn) columns.column(&quot;ts&quot;)).values();
+ * </pre>
+ * 
+ * With a {@link Spec}, only the given keys are kept and a value of another
+ * type is a <code>SyntaxError</code>. Without one, there is a column for
+ * every key found, typed by its values: a column of integers becomes a
+ * column of doubles when a fraction shows up, and a column that only ever
+ * holds nulls is a <code>LONG</code> column. A key missing from a record is
+ * a null.
+ * <p>
+ * Only standard JSON is accepted, and the values must be strings, numbers,
+ * booleans or nulls.
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class Columns {
+    
+    public enum Type {
+        LONG, DOUBLE, BOOLEAN, STRING
+    }
+    
+    /** The columns to decode. */
+    public static final class Spec {
+        
+        final List<String> names = new ArrayList<String>();
+        
+        final List<Type> types = new ArrayList<Type>();
+        
+        public Spec column(String name, Type type) {
+            if (names.contains(name))
+                throw new IllegalArgumentException("Duplicate column " + name);
+            names.add(name);
+            types.add(type);
+            return this;
+        }
+        
+    }
+    
+    private final List<Column> columns;
+    
+    private final int size;
+    
+    private Columns(List<Column> columns, int size) {
+        this.columns = Collections.unmodifiableList(columns);
+        this.size = size;
+    }
+    
+    /** Decodes the given array, with a column for every key. */
+    public static Columns decode(String string) throws SyntaxError {
+        return decode(string, null);
+    }
+    
+    /** Decodes the given array into the given columns, or into inferred ones if the spec is null. */
+    public static Columns decode(String string, Spec spec) throws SyntaxError {
+        JSON.Scanner scanner = new JSON.Scanner(string);
+        try {
+            return new Reading(scanner, spec).read();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        } finally {
+            scanner.release();
+        }
+    }
+    
+    /** Decodes the array read from the given reader, see {@link #decode(String, Spec)}. */
+    public static Columns decode(Reader reader, Spec spec) throws SyntaxError, IOException {
+        JSON.Scanner scanner = new JSON.Scanner(reader);
+        try {
+            return new Reading(scanner, spec).read();
+        } finally {
+            scanner.release();
+        }
+    }
+    
+    /** Returns the number of records. */
+    public int size() {
+        return size;
+    }
+    
+    /** Returns the columns, in the order of the spec or of the first appearance of their keys. */
+    public List<Column> columns() {
+        return columns;
+    }
+    
+    /** Returns the column of the given key, or <code>null</code> if there is none. */
+    public Column column(String name) {
+        for (Column column : columns)
+            if (column.name.equals(name))
+                return column;
+        return null;
+    }
+    
+    /**
+     * The values of one key. The arrays returned by the subclasses have
+     * exactly one element per record, and hold zero (or false) for nulls.
+     */
+    public static abstract class Column {
+        
+        final String name;
+        
+        int size;
+        
+        /** Values that are not null, so that an all-null inferred column can change its type. */
+        int present;
+        
+        /** A bit per record, allocated with the first null */
+        long[] nulls;
+        
+        Column(String name) {
+            this.name = name;
+        }
+        
+        public String name() {
+            return name;
+        }
+        
+        public abstract Type type();
+        
+        public boolean isNull(int row) {
+            check(row);
+            return nulls != null && (nulls[row >>> 6] & (1L << row)) != 0;
+        }
+        
+        /** Returns the number of nulls. */
+        public int nullCount() {
+            return size - present;
+        }
+        
+        /** Returns the given value boxed, as {@link JSON#decode(String)} would, or <code>null</code>. */
+        public abstract Object get(int row);
+        
+        void check(int row) {
+            if (row < 0 || row >= size)
+                throw new IndexOutOfBoundsException("row " + row + ", size " + size);
+        }
+        
+        void addNull() {
+            if (nulls == null)
+                nulls = new long[(size >>> 6) + 1];
+            else if (size >>> 6 >= nulls.length)
+                nulls = Arrays.copyOf(nulls, Math.max(nulls.length * 2, (size >>> 6) + 1));
+            nulls[size >>> 6] |= 1L << size;
+            grow();
+            size++;
+        }
+        
+        /** Takes over the rows of the given all-null column. */
+        void fillFrom(Column other) {
+            while (size < other.size)
+                addNull();
+        }
+        
+        /** Adds a number, or returns false if the column does not hold such numbers. */
+        boolean addNumber(CharSequence text) {
+            return false;
+        }
+        
+        boolean addString(CharSequence text) {
+            return false;
+        }
+        
+        boolean addBoolean(boolean value) {
+            return false;
+        }
+        
+        /** Makes room for the value of the row at <code>size</code>. */
+        abstract void grow();
+        
+        /** Trims the arrays to the number of records. */
+        void trim() {
+            if (nulls != null)
+                nulls = Arrays.copyOf(nulls, (size + 63) >>> 6);
+        }
+        
+    }
+    
+    public static final class LongColumn extends Column {
+        
+        long[] values = new long[16];
+        
+        LongColumn(String name) {
+            super(name);
+        }
+        
+        @Override
+        public Type type() {
+            return Type.LONG;
+        }
+        
+        public long getLong(int row) {
+            check(row);
+            return values[row];
+        }
+        
+        public long[] values() {
+            return values;
+        }
+        
+        @Override
+        public Object get(int row) {
+            if (isNull(row))
+                return null;
+            long value = values[row];
+            return (value == (int) value ? (Object) (int) value : (Object) value);
+        }
+        
+        @Override
+        boolean addNumber(CharSequence text) {
+            int length = text.length(), i = (text.charAt(0) == '-' ? 1 : 0);
+            if (length - i > 18)
+                return addParsed(JSON.parseNumber(text));
+            long value = 0;
+            for (; i < length; i++) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9')
+                    return false;
+                value = value * 10 + (c - '0');
+            }
+            add(text.charAt(0) == '-' ? -value : value);
+            return true;
+        }
+        
+        private boolean addParsed(Number number) {
+            if (number instanceof Double)
+                return false;
+            add(number.longValue());
+            return true;
+        }
+        
+        private void add(long value) {
+            grow();
+            values[size++] = value;
+            present++;
+        }
+        
+        @Override
+        void grow() {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+        }
+        
+        @Override
+        void trim() {
+            super.trim();
+            values = Arrays.copyOf(values, size);
+        }
+        
+    }
+    
+    public static final class DoubleColumn extends Column {
+        
+        double[] values = new double[16];
+        
+        DoubleColumn(String name) {
+            super(name);
+        }
+        
+        /** Converts a column of integers that has met a fraction. */
+        DoubleColumn(LongColumn column) {
+            super(column.name);
+            values = new double[column.values.length];
+            for (int i = 0; i < column.size; i++)
+                values[i] = column.values[i];
+            size = column.size;
+            present = column.present;
+            nulls = column.nulls;
+        }
+        
+        @Override
+        public Type type() {
+            return Type.DOUBLE;
+        }
+        
+        public double getDouble(int row) {
+            check(row);
+            return values[row];
+        }
+        
+        public double[] values() {
+            return values;
+        }
+        
+        @Override
+        public Object get(int row) {
+            return (isNull(row) ? null : (Object) values[row]);
+        }
+        
+        @Override
+        boolean addNumber(CharSequence text) {
+            grow();
+            values[size++] = Double.parseDouble(text.toString());
+            present++;
+            return true;
+        }
+        
+        @Override
+        void grow() {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+        }
+        
+        @Override
+        void trim() {
+            super.trim();
+            values = Arrays.copyOf(values, size);
+        }
+        
+    }
+    
+    public static final class BooleanColumn extends Column {
+        
+        /** A bit per record */
+        long[] bits = new long[1];
+        
+        BooleanColumn(String name) {
+            super(name);
+        }
+        
+        @Override
+        public Type type() {
+            return Type.BOOLEAN;
+        }
+        
+        public boolean getBoolean(int row) {
+            check(row);
+            return (bits[row >>> 6] & (1L << row)) != 0;
+        }
+        
+        @Override
+        public Object get(int row) {
+            return (isNull(row) ? null : (Object) getBoolean(row));
+        }
+        
+        @Override
+        boolean addBoolean(boolean value) {
+            grow();
+            if (value)
+                bits[size >>> 6] |= 1L << size;
+            size++;
+            present++;
+            return true;
+        }
+        
+        @Override
+        void grow() {
+            if (size >>> 6 == bits.length)
+                bits = Arrays.copyOf(bits, bits.length * 2);
+        }
+        
+        @Override
+        void trim() {
+            super.trim();
+            bits = Arrays.copyOf(bits, (size + 63) >>> 6);
+        }
+        
+    }
+    
+    /**
+     * Strings as codes into a dictionary of the distinct values, in the order
+     * of their first appearance. Nulls have the code -1.
+     */
+    public static final class StringColumn extends Column {
+        
+        int[] codes = new int[16];
+        
+        String[] dictionary = new String[16];
+        
+        int distinct;
+        
+        /** Open addressing table of code + 1, 0 for empty slots */
+        private int[] table = new int[32];
+        
+        StringColumn(String name) {
+            super(name);
+        }
+        
+        @Override
+        public Type type() {
+            return Type.STRING;
+        }
+        
+        public String getString(int row) {
+            check(row);
+            int code = codes[row];
+            return (code < 0 ? null : dictionary[code]);
+        }
+        
+        public int[] codes() {
+            return codes;
+        }
+        
+        public List<String> dictionary() {
+            return Collections.unmodifiableList(Arrays.asList(dictionary).subList(0, distinct));
+        }
+        
+        @Override
+        public Object get(int row) {
+            return getString(row);
+        }
+        
+        @Override
+        void addNull() {
+            super.addNull();
+            codes[size - 1] = -1;
+        }
+        
+        @Override
+        boolean addString(CharSequence text) {
+            grow();
+            codes[size++] = code(text);
+            present++;
+            return true;
+        }
+        
+        /** Looks the text up in the dictionary, adding it if it is new. */
+        private int code(CharSequence text) {
+            int hash = 0, length = text.length();
+            for (int i = 0; i < length; i++)
+                hash = 31 * hash + text.charAt(i);
+            int mask = table.length - 1;
+            for (int slot = mix(hash) & mask;; slot = (slot + 1) & mask) {
+                int entry = table[slot];
+                if (entry == 0)
+                    break;
+                String string = dictionary[entry - 1];
+                if (string.hashCode() == hash && string.contentEquals(text))
+                    return entry - 1;
+            }
+            if (distinct == dictionary.length)
+                dictionary = Arrays.copyOf(dictionary, distinct * 2);
+            dictionary[distinct++] = text.toString();
+            if (2 * distinct > table.length) {
+                table = new int[table.length * 2];
+                for (int code = 0; code < distinct; code++)
+                    insert(code, dictionary[code].hashCode());
+            } else {
+                insert(distinct - 1, hash);
+            }
+            return distinct - 1;
+        }
+        
+        private void insert(int code, int hash) {
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            while (table[slot] != 0)
+                slot = (slot + 1) & mask;
+            table[slot] = code + 1;
+        }
+        
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+        
+        @Override
+        void grow() {
+            if (size == codes.length)
+                codes = Arrays.copyOf(codes, size * 2);
+        }
+        
+        @Override
+        void trim() {
+            super.trim();
+            codes = Arrays.copyOf(codes, size);
+            dictionary = Arrays.copyOf(dictionary, distinct);
+            table = null;
+        }
+        
+    }
+    
+    private static Column create(String name, Type type) {
+        switch (type) {
+        case LONG:
+            return new LongColumn(name);
+        case DOUBLE:
+            return new DoubleColumn(name);
+        case BOOLEAN:
+            return new BooleanColumn(name);
+        default:
+            return new StringColumn(name);
+        }
+    }
+    
+    /** The state of decoding one array. */
+    private static final class Reading {
+        
+        private final JSON.Scanner scanner;
+        
+        private final boolean inferring;
+        
+        private final List<Column> columns = new ArrayList<Column>();
+        
+        private int rows;
+        
+        Reading(JSON.Scanner scanner, Spec spec) {
+            this.scanner = scanner;
+            this.inferring = (spec == null);
+            if (spec != null)
+                for (int i = 0; i < spec.names.size(); i++)
+                    columns.add(create(spec.names.get(i), spec.types.get(i)));
+        }
+        
+        Columns read() throws SyntaxError, IOException {
+            if (scanner.readClean() != '[')
+                throw scanner.error("Columnar decoding expects an array of objects");
+            if (scanner.peekClean() == ']') {
+                scanner.read();
+            } else {
+                for (;;) {
+                    if (scanner.readClean() != '{')
+                        throw scanner.error("Columnar decoding expects an array of objects");
+                    readRecord();
+                    int c = scanner.readClean();
+                    if (c == ']')
+                        break;
+                    if (c != ',')
+                        throw scanner.error("Expected a ',' or ']'");
+                }
+            }
+            if (scanner.readClean() != -1)
+                throw scanner.error("Unexpected text after JSON value");
+            for (Column column : columns)
+                column.trim();
+            return new Columns(columns, rows);
+        }
+        
+        private void readRecord() throws SyntaxError, IOException {
+            int c = scanner.readClean();
+            for (int key = 0; c != '}'; key++) {
+                if (c != '"')
+                    throw scanner.error("A JSON object key must be a string");
+                CharSequence name = scanner.text(c);
+                int index = find(name, key);
+                if (index < 0 && inferring) {
+                    index = columns.size();
+                    columns.add(new LongColumn(name.toString()));
+                }
+                if (scanner.readClean() != ':')
+                    throw scanner.error("Expected a ':' after a key");
+                c = scanner.readClean();
+                if (index < 0)
+                    scanner.skipValue(c);
+                else
+                    readValue(index, c);
+                c = scanner.readClean();
+                if (c == ',')
+                    c = scanner.readClean();
+                else if (c != '}')
+                    throw scanner.error("Expected a ',' or '}'");
+            }
+            rows++;
+            for (Column column : columns)
+                while (column.size < rows)
+                    column.addNull();
+        }
+        
+        /**
+         * Finds the column of the given key, trying the column at the key's
+         * position first, since records usually list their keys in the same
+         * order.
+         */
+        private int find(CharSequence key, int position) {
+            int count = columns.size();
+            for (int i = 0; i < count; i++) {
+                int index = (position + i) % count;
+                if (columns.get(index).name.contentEquals(key))
+                    return index;
+            }
+            return -1;
+        }
+        
+        private void readValue(int index, int c) throws SyntaxError, IOException {
+            Column column = columns.get(index);
+            if (column.size > rows)
+                throw scanner.error("Duplicate key " + column.name);
+            while (column.size < rows)
+                column.addNull();
+            CharSequence text = null;
+            boolean added;
+            Type type;
+            switch (c) {
+            case '"':
+                text = scanner.text(c);
+                added = column.addString(text);
+                type = Type.STRING;
+                break;
+            case 't':
+            case 'f':
+                scanner.expectWord(c == 't' ? "true" : "false");
+                added = column.addBoolean(c == 't');
+                type = Type.BOOLEAN;
+                break;
+            case 'n':
+                scanner.expectWord("null");
+                column.addNull();
+                return;
+            case '{':
+            case '[':
+                throw scanner.error("Columnar decoding expects flat objects, but " + column.name
+                        + " holds a nested value");
+            case -1:
+                throw scanner.error("Unexpected end of JSON");
+            default:
+                if (c != '-' && (c < '0' || c > '9'))
+                    throw scanner.error("Unexpected character '" + (char) c + "'");
+                text = scanner.text(c);
+                added = column.addNumber(text);
+                type = Type.DOUBLE;
+                if (!added && inferring && column instanceof LongColumn) {
+                    // integers so far, and now a fraction
+                    column = new DoubleColumn((LongColumn) column);
+                    columns.set(index, column);
+                    added = column.addNumber(text);
+                }
+            }
+            if (added)
+                return;
+            if (!inferring || column.present > 0)
+                throw scanner.error("Unexpected " + (type == Type.DOUBLE ? "number" : type.name()
+                        .toLowerCase()) + " in the " + column.type() + " column " + column.name);
+            // an inferred column that has only held nulls so far
+            Column typed = create(column.name, type);
+            typed.fillFrom(column);
+            columns.set(index, typed);
+            if (type == Type.STRING)
+                typed.addString(text);
+            else
+                typed.addBoolean(c == 't');
+        }
+        
+    }
+    
+}
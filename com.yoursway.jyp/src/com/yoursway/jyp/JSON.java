@@ -1,17 +1,39 @@
 package com.yoursway.jyp;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.io.StringReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
 
 /**
  * Encodes and decodes JSON (JavaScript Object Notation).
@@ -20,69 +42,1872 @@ import java.util.Map.Entry;
  */
 public class JSON {
     
+    /**
+     * The default limit on nesting of arrays and objects. Neither encoding nor
+     * decoding recurses, so deeper documents can be handled by passing a
+     * larger limit explicitly.
+     */
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    
     public static class SyntaxError extends Exception {
         private static final long serialVersionUID = 1L;
         
-        public SyntaxError(String s, int charIndex) {
-            super(s + " on character " + charIndex);
+        private final String reason;
+        
+        private final int charIndex;
+        
+        /** The input string or char array, to find the line and column in. */
+        private transient Object input;
+        
+        private int line = -1, column = -1;
+        
+        public SyntaxError(String s, int charIndex) {
+            super(s + " on character " + charIndex);
+            this.reason = s;
+            this.charIndex = charIndex;
+        }
+        
+        /**
+         * Creates an error whose message, line and column are only computed
+         * when asked for, and which optionally skips capturing the stack
+         * trace, as rejecting hostile input should be cheap.
+         */
+        SyntaxError(String s, int charIndex, Object input, boolean stackless) {
+            super(null, null, false, !stackless);
+            this.reason = s;
+            this.charIndex = charIndex;
+            this.input = input;
+        }
+        
+        @Override
+        public String getMessage() {
+            String message = super.getMessage();
+            return (message != null ? message : reason + " on character " + charIndex);
+        }
+        
+        /** Returns the number of characters read before the error was found. */
+        public int getCharIndex() {
+            return charIndex;
+        }
+        
+        /**
+         * Returns the 1-based line of the last character read, or -1 if the
+         * input was not a string or char array.
+         */
+        public int getLine() {
+            computeLineAndColumn();
+            return line;
+        }
+        
+        /**
+         * Returns the 1-based column of the last character read, or -1 if the
+         * input was not a string or char array.
+         */
+        public int getColumn() {
+            computeLineAndColumn();
+            return column;
+        }
+        
+        private void computeLineAndColumn() {
+            if (line >= 0 || input == null)
+                return;
+            CharSequence text = (input instanceof char[] ? CharBuffer.wrap((char[]) input)
+                    : (CharSequence) input);
+            int offset = Math.min(Math.max(charIndex - 1, 0), text.length());
+            int lineStart = 0;
+            line = 1;
+            for (int i = 0; i < offset; i++) {
+                if (text.charAt(i) == '\n') {
+                    line++;
+                    lineStart = i + 1;
+                }
+            }
+            column = offset - lineStart + 1;
+            input = null;
+        }
+        
+    }
+    
+    /**
+     * Limits on the resources a {@link Decoder} may spend on a document, for
+     * decoding untrusted input. Exceeding a limit fails decoding with a
+     * <code>SyntaxError</code>. Everything is unlimited by default except for
+     * the nesting depth, which is {@link JSON#DEFAULT_MAX_DEPTH}.
+     * 
+     * Decoded objects are <code>HashMap</code>s with string keys, which keep
+     * colliding keys in balanced trees, so crafted keys sharing a hash code
+     * cost <i>O(log n)</i> per lookup rather than <i>O(n)</i>; limiting the
+     * number of keys bounds that cost further.
+     */
+    public static final class Limits {
+        
+        int maxDepth = DEFAULT_MAX_DEPTH;
+        
+        int maxChars = Integer.MAX_VALUE;
+        
+        int maxStringLength = Integer.MAX_VALUE;
+        
+        int maxNumberLength = Integer.MAX_VALUE;
+        
+        int maxKeys = Integer.MAX_VALUE;
+        
+        int maxValues = Integer.MAX_VALUE;
+        
+        boolean stacklessErrors;
+        
+        public Limits maxDepth(int maxDepth) {
+            this.maxDepth = maxDepth;
+            return this;
+        }
+        
+        /** Limits the length of the whole document. */
+        public Limits maxChars(int maxChars) {
+            this.maxChars = maxChars;
+            return this;
+        }
+        
+        /** Limits the length of each string and object key, after unescaping. */
+        public Limits maxStringLength(int maxStringLength) {
+            this.maxStringLength = maxStringLength;
+            return this;
+        }
+        
+        /** Limits the number of characters in each number. */
+        public Limits maxNumberLength(int maxNumberLength) {
+            this.maxNumberLength = maxNumberLength;
+            return this;
+        }
+        
+        /** Limits the number of keys in each object. */
+        public Limits maxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+            return this;
+        }
+        
+        /**
+         * Limits the total number of values in the document, counting each
+         * array and object and each value in them; this bounds the number of
+         * objects allocated.
+         */
+        public Limits maxValues(int maxValues) {
+            this.maxValues = maxValues;
+            return this;
+        }
+        
+        /**
+         * Makes the syntax errors skip capturing the stack trace, which is
+         * most of the cost of rejecting a document. The decoder's stack is of
+         * no use for telling what is wrong with the input anyway.
+         */
+        public Limits stacklessErrors(boolean stacklessErrors) {
+            this.stacklessErrors = stacklessErrors;
+            return this;
+        }
+        
+        Limits copy() {
+            return new Limits().maxDepth(maxDepth).maxChars(maxChars).maxStringLength(maxStringLength)
+                    .maxNumberLength(maxNumberLength).maxKeys(maxKeys).maxValues(maxValues).stacklessErrors(
+                            stacklessErrors);
+        }
+        
+    }
+    
+    /**
+     * A reusable JSON encoder. Keeps its output buffer and nesting stack
+     * between calls, so encoding many small values through one instance does
+     * not allocate anything but the resulting strings. Not thread-safe.
+     */
+    public static final class Encoder {
+        
+        private final int maxDepth;
+        
+        private StringBuilder buffer = new StringBuilder(256);
+        
+        private Iterator<?>[] iterators = new Iterator<?>[8];
+        
+        private boolean[] objects = new boolean[8];
+        
+        private boolean busy;
+        
+        public Encoder() {
+            this(DEFAULT_MAX_DEPTH);
+        }
+        
+        public Encoder(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+        
+        public String encode(Object value) {
+            return encode(value, true);
+        }
+        
+        /**
+         * Encodes the value, taking the value itself from its registered
+         * {@link EncodedCache} only if <code>cachedRoot</code> is set; the
+         * cache uses this to encode its misses.
+         */
+        private String encode(Object value, boolean cachedRoot) {
+            StringBuilder result = buffer;
+            result.setLength(0);
+            try {
+                write(value, result, maxDepth, cachedRoot);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+            String string = result.toString();
+            if (result.capacity() > MAX_RETAINED_BUFFER)
+                buffer = new StringBuilder(256);
+            return string;
+        }
+        
+        public void encode(Object value, Appendable result) throws IOException {
+            write(value, result, maxDepth);
+        }
+        
+        void write(Object value, Appendable result, int maxDepth) throws IOException {
+            write(value, result, maxDepth, true);
+        }
+        
+        private void write(Object value, Appendable result, int maxDepth, boolean cachedRoot)
+                throws IOException {
+            if (busy)
+                throw new IllegalStateException("Encoder is already in use");
+            busy = true;
+            EncodeEvent event = new EncodeEvent();
+            event.begin();
+            Listener listener = JSON.listener;
+            long start = (listener != null ? System.nanoTime() : 0);
+            int initialLength = (result instanceof CharSequence ? ((CharSequence) result).length() : 0);
+            int depth = 0, deepest = 0, values = 0;
+            boolean cached = encodedCaches;
+            try {
+                for (;;) {
+                    values++;
+                    Iterator<?> iterator = null;
+                    boolean object = false;
+                    if (cached && value != null && (cachedRoot || values > 1)) {
+                        EncodedCache cache = ENCODED_CACHES.get(value.getClass()).get();
+                        if (cache != null)
+                            value = cache.get(value);
+                    }
+                    if (value instanceof Encodable) {
+                        ((Encodable) value).encode(result, maxDepth - depth);
+                    } else if (value instanceof Map<?, ?>) {
+                        result.append('{');
+                        iterator = sortedEntries((Map<?, ?>) value).iterator();
+                        object = true;
+                    } else if (value instanceof Iterable<?>) {
+                        result.append('[');
+                        iterator = ((Iterable<?>) value).iterator();
+                    } else if (value instanceof Object[]) {
+                        result.append('[');
+                        iterator = Arrays.asList((Object[]) value).iterator();
+                    } else
+                        encodeScalar(value, result);
+                    
+                    if (iterator != null) {
+                        if (depth == maxDepth)
+                            throw new IllegalArgumentException("Maximum nesting depth of " + maxDepth
+                                    + " exceeded");
+                        if (depth == iterators.length) {
+                            iterators = Arrays.copyOf(iterators, depth * 2);
+                            objects = Arrays.copyOf(objects, depth * 2);
+                        }
+                        iterators[depth] = iterator;
+                        objects[depth] = object;
+                        depth++;
+                        deepest = Math.max(deepest, depth);
+                        if (iterator.hasNext()) {
+                            value = nextElement(iterator, object, result, maxDepth);
+                            continue;
+                        }
+                    }
+                    
+                    // close the containers that have no more elements and find the next value
+                    for (;;) {
+                        if (depth == 0) {
+                            long chars = (result instanceof CharSequence ? ((CharSequence) result).length()
+                                    - initialLength : -1);
+                            if (event.shouldCommit()) {
+                                event.chars = chars;
+                                event.values = values;
+                                event.depth = deepest;
+                                event.commit();
+                            }
+                            if (listener != null)
+                                listener.encoded(chars, values, System.nanoTime() - start);
+                            return;
+                        }
+                        iterator = iterators[depth - 1];
+                        if (iterator.hasNext()) {
+                            result.append(',');
+                            value = nextElement(iterator, objects[depth - 1], result, maxDepth);
+                            break;
+                        }
+                        result.append(objects[depth - 1] ? '}' : ']');
+                        iterators[--depth] = null;
+                    }
+                }
+            } finally {
+                Arrays.fill(iterators, 0, depth, null);
+                busy = false;
+            }
+        }
+        
+        private static Object nextElement(Iterator<?> iterator, boolean object, Appendable result,
+                int maxDepth) throws IOException {
+            if (!object)
+                return iterator.next();
+            Map.Entry<?, ?> entry = (Map.Entry<?, ?>) iterator.next();
+            Object key = entry.getKey();
+            if (key instanceof Map<?, ?> || key instanceof Iterable<?>
+                    || (key != null && key.getClass().isArray()))
+                new Encoder().write(key, result, maxDepth);
+            else
+                encodeScalar(key, result);
+            result.append(':');
+            return entry.getValue();
+        }
+        
+    }
+    
+    /**
+     * A reusable JSON decoder. Keeps its input buffer, string buffer and
+     * nesting stack between calls, so decoding many small documents through
+     * one instance only allocates the decoded values. Not thread-safe.
+     */
+    public static final class Decoder {
+        
+        private final int maxDepth;
+        
+        private final Limits limits;
+        
+        private final JSONTokener tokenizer = new JSONTokener();
+        
+        private boolean busy;
+        
+        static final int LENIENT = 0;
+        
+        static final int STRICT = 1;
+        
+        static final int VALIDATE = 2;
+        
+        static final int VIEWS = 3;
+        
+        static final int SHAPED = 4;
+        
+        private static final String[] MODE_NAMES = { "lenient", "strict", "validate", "views", "shaped" };
+        
+        public Decoder() {
+            this(DEFAULT_MAX_DEPTH);
+        }
+        
+        public Decoder(int maxDepth) {
+            this.maxDepth = maxDepth;
+            this.limits = null;
+        }
+        
+        /**
+         * Creates a decoder that enforces the given limits. Later changes to
+         * the limits do not affect it.
+         */
+        public Decoder(Limits limits) {
+            this.limits = limits.copy();
+            this.maxDepth = limits.maxDepth;
+        }
+        
+        public Object decode(String string) throws SyntaxError {
+            return read(string, maxDepth, LENIENT);
+        }
+        
+        public Object decode(Reader reader) throws SyntaxError, IOException {
+            return read(reader, maxDepth, LENIENT);
+        }
+        
+        /** Decodes capturing some values as raw JSON, see {@link JSON#decode(String, String...)}. */
+        public Object decode(String string, String... rawPaths) throws SyntaxError {
+            return read(string, maxDepth, LENIENT, rawPaths);
+        }
+        
+        /** Decodes standard JSON only, see {@link JSON#decodeStrict(String)}. */
+        public Object decodeStrict(String string) throws SyntaxError {
+            return read(string, maxDepth, STRICT);
+        }
+        
+        /** Decodes standard JSON only, see {@link JSON#decodeStrict(String)}. */
+        public Object decodeStrict(Reader reader) throws SyntaxError, IOException {
+            return read(reader, maxDepth, STRICT);
+        }
+        
+        /** Decodes with string views into the input, see {@link JSON#decodeViews(String)}. */
+        public Object decodeViews(String string) throws SyntaxError {
+            return read(string, maxDepth, VIEWS);
+        }
+        
+        /** Decodes with string views into the input, see {@link JSON#decodeViews(String)}. */
+        public Object decodeViews(char[] chars) throws SyntaxError {
+            if (busy)
+                throw new IllegalStateException("Decoder is already in use");
+            busy = true;
+            try {
+                tokenizer.reset(chars, maxDepth);
+                tokenizer.limit(limits);
+                return parse(VIEWS);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            } finally {
+                tokenizer.release();
+                busy = false;
+            }
+        }
+        
+        /**
+         * Decodes objects into maps with shared shapes, see
+         * {@link JSON#decodeShaped(String)}. The shapes are kept for the
+         * following documents.
+         */
+        public Object decodeShaped(String string) throws SyntaxError {
+            return read(string, maxDepth, SHAPED);
+        }
+        
+        /** Decodes objects into maps with shared shapes, see {@link JSON#decodeShaped(String)}. */
+        public Object decodeShaped(Reader reader) throws SyntaxError, IOException {
+            return read(reader, maxDepth, SHAPED);
+        }
+        
+        /** Checks the input without decoding it, see {@link JSON#validate(String)}. */
+        public void validate(String string) throws SyntaxError {
+            read(string, maxDepth, VALIDATE);
+        }
+        
+        /** Checks the input without decoding it, see {@link JSON#validate(String)}. */
+        public void validate(Reader reader) throws SyntaxError, IOException {
+            read(reader, maxDepth, VALIDATE);
+        }
+        
+        Object read(String string, int maxDepth, int mode) throws SyntaxError {
+            return read(string, maxDepth, mode, null);
+        }
+        
+        Object read(String string, int maxDepth, int mode, String[] rawPaths) throws SyntaxError {
+            if (busy)
+                throw new IllegalStateException("Decoder is already in use");
+            busy = true;
+            try {
+                tokenizer.reset(string, maxDepth, mode == VIEWS);
+                tokenizer.limit(limits);
+                if (rawPaths != null)
+                    tokenizer.captureRaw(rawPaths);
+                if (mode == SHAPED)
+                    tokenizer.shareShapes();
+                return parse(mode);
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            } finally {
+                tokenizer.release();
+                busy = false;
+            }
+        }
+        
+        Object read(Reader reader, int maxDepth, int mode) throws SyntaxError, IOException {
+            if (busy)
+                throw new IllegalStateException("Decoder is already in use");
+            busy = true;
+            try {
+                tokenizer.reset(reader, maxDepth);
+                tokenizer.limit(limits);
+                if (mode == SHAPED)
+                    tokenizer.shareShapes();
+                Object value = parse(mode);
+                if (mode == LENIENT || mode == SHAPED)
+                    tokenizer.unread();
+                return value;
+            } finally {
+                tokenizer.release();
+                busy = false;
+            }
+        }
+        
+        private Object parse(int mode) throws SyntaxError, IOException {
+            DecodeEvent event = new DecodeEvent();
+            event.begin();
+            Listener listener = JSON.listener;
+            long start = (listener != null ? System.nanoTime() : 0);
+            Object value;
+            if (mode == LENIENT || mode == VIEWS || mode == SHAPED)
+                value = tokenizer.nextValue();
+            else
+                value = tokenizer.nextStrictValue(mode == STRICT);
+            if (event.shouldCommit()) {
+                event.chars = tokenizer.index;
+                event.values = tokenizer.values;
+                event.depth = tokenizer.deepest;
+                event.mode = MODE_NAMES[mode];
+                event.commit();
+            }
+            if (listener != null)
+                listener.decoded(tokenizer.index, tokenizer.values, tokenizer.strings, tokenizer.numbers,
+                        System.nanoTime() - start);
+            return value;
+        }
+        
+    }
+    
+    /**
+     * A non-blocking JSON parser for input that arrives in chunks, e.g. from
+     * NIO channels. Bytes (UTF-8) are pushed in with {@link #feed(ByteBuffer)}
+     * as they come; the parser keeps its state between calls, even in the
+     * middle of a string, escape sequence, number or multi-byte character,
+     * and never blocks. Each top-level value becomes available through
+     * {@link #next()} as soon as it is complete, so a stream of
+     * whitespace-separated values (like newline-delimited JSON) can be
+     * consumed one value at a time.
+     * 
+     * Unlike the other decoding methods, only standard JSON is accepted. After
+     * a <code>SyntaxError</code>, call {@link #reset()} before feeding more
+     * input. Not thread-safe.
+     */
+    public static final class PushParser {
+        
+        private static final int VALUE = 0;
+        private static final int VALUE_OR_END = 1;
+        private static final int KEY = 2;
+        private static final int KEY_OR_END = 3;
+        private static final int COLON = 4;
+        private static final int COMMA_OR_END = 5;
+        private static final int STRING = 6;
+        private static final int ESCAPE = 7;
+        private static final int UNICODE = 8;
+        private static final int NUMBER = 9;
+        private static final int LITERAL = 10;
+        /** After a top-level value, which must be followed by whitespace. */
+        private static final int SEPARATOR = 11;
+        
+        private final int maxDepth;
+        
+        private int state = VALUE;
+        
+        private Object[] containers = new Object[8];
+        
+        private String[] keys = new String[8];
+        
+        private int depth;
+        
+        /** The text of the current string or number. */
+        private final StringBuilder text = new StringBuilder();
+        
+        private boolean readingKey;
+        
+        /** The value of a <code>\\u</code> escape read so far, and its digit count. */
+        private int unicode, unicodeDigits;
+        
+        /** A multi-byte UTF-8 character read so far, and the number of bytes it still needs. */
+        private int codePoint, continuationBytes;
+        
+        private String literal;
+        
+        private int literalMatched;
+        
+        private int position;
+        
+        private final ArrayDeque<Object> values = new ArrayDeque<Object>();
+        
+        public PushParser() {
+            this(DEFAULT_MAX_DEPTH);
+        }
+        
+        public PushParser(int maxDepth) {
+            this.maxDepth = maxDepth;
+        }
+        
+        /**
+         * Parses all remaining bytes of the given buffer. Values completed by
+         * these bytes become available through {@link #next()}.
+         */
+        public void feed(ByteBuffer input) throws SyntaxError {
+            while (input.hasRemaining()) {
+                int b = input.get() & 0xFF;
+                if (state == STRING && continuationBytes == 0 && b >= 0x20 && b < 0x80 && b != '"'
+                        && b != '\\')
+                    text.append((char) b); // fast path for plain ASCII string content
+                else
+                    process(b);
+                position++;
+            }
+        }
+        
+        /**
+         * Tells the parser that the input is over, which completes a number at
+         * the very end of it.
+         * 
+         * @throws SyntaxError
+         *             if the input ends in the middle of a value
+         */
+        public void end() throws SyntaxError {
+            if (state == NUMBER)
+                completeNumber();
+            if (state != VALUE && state != SEPARATOR || depth > 0)
+                throw new SyntaxError("Unexpected end of input", position);
+        }
+        
+        public boolean hasNext() {
+            return !values.isEmpty();
+        }
+        
+        /** Returns the next completed top-level value. */
+        public Object next() {
+            if (values.isEmpty())
+                throw new NoSuchElementException();
+            Object value = values.removeFirst();
+            return (value == NULL ? null : value);
+        }
+        
+        /** Discards all state, including values not yet taken, to start over. */
+        public void reset() {
+            state = VALUE;
+            Arrays.fill(containers, 0, depth, null);
+            Arrays.fill(keys, 0, depth, null);
+            depth = 0;
+            text.setLength(0);
+            continuationBytes = 0;
+            position = 0;
+            values.clear();
+        }
+        
+        private SyntaxError error(String message) {
+            return new SyntaxError(message, position);
+        }
+        
+        private void process(int b) throws SyntaxError {
+            switch (state) {
+            case STRING:
+                readStringByte(b);
+                return;
+            case ESCAPE:
+                readEscape(b);
+                return;
+            case UNICODE:
+                int digit = Character.digit(b, 16);
+                if (digit < 0)
+                    throw error("Invalid \\u escape");
+                unicode = (unicode << 4) | digit;
+                if (++unicodeDigits == 4) {
+                    text.append((char) unicode);
+                    state = STRING;
+                }
+                return;
+            case NUMBER:
+                if (b >= '0' && b <= '9' || b == '.' || b == 'e' || b == 'E' || b == '+' || b == '-') {
+                    text.append((char) b);
+                    return;
+                }
+                completeNumber();
+                break; // the byte after the number is processed below
+            case LITERAL:
+                if (b != literal.charAt(literalMatched++))
+                    throw error("Invalid literal, expected " + literal);
+                if (literalMatched == literal.length())
+                    complete(literal.equals("true") ? Boolean.TRUE : literal.equals("false") ? Boolean.FALSE
+                            : null);
+                return;
+            }
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                if (state == SEPARATOR)
+                    state = VALUE;
+                return;
+            }
+            switch (state) {
+            case SEPARATOR:
+                throw error("Expected whitespace between top-level values");
+            case VALUE:
+            case VALUE_OR_END:
+                if (b == ']' && state == VALUE_OR_END) {
+                    completeContainer();
+                    return;
+                }
+                startValue(b);
+                return;
+            case KEY:
+            case KEY_OR_END:
+                if (b == '}' && state == KEY_OR_END) {
+                    completeContainer();
+                    return;
+                }
+                if (b != '"')
+                    throw error("Expected a string key");
+                startString(true);
+                return;
+            case COLON:
+                if (b != ':')
+                    throw error("Expected ':'");
+                state = VALUE;
+                return;
+            case COMMA_OR_END:
+                boolean object = (containers[depth - 1] instanceof Map<?, ?>);
+                if (b == ',')
+                    state = (object ? KEY : VALUE);
+                else if (b == (object ? '}' : ']'))
+                    completeContainer();
+                else
+                    throw error("Expected ',' or '" + (object ? '}' : ']') + "'");
+                return;
+            }
+        }
+        
+        private void startValue(int b) throws SyntaxError {
+            switch (b) {
+            case '{':
+                push(new HashMap<Object, Object>());
+                state = KEY_OR_END;
+                return;
+            case '[':
+                push(new ArrayList<Object>());
+                state = VALUE_OR_END;
+                return;
+            case '"':
+                startString(false);
+                return;
+            case 't':
+                startLiteral("true");
+                return;
+            case 'f':
+                startLiteral("false");
+                return;
+            case 'n':
+                startLiteral("null");
+                return;
+            default:
+                if (b == '-' || b >= '0' && b <= '9') {
+                    text.setLength(0);
+                    text.append((char) b);
+                    state = NUMBER;
+                    return;
+                }
+                throw error("Unexpected character '" + (char) b + "'");
+            }
+        }
+        
+        private void startLiteral(String expected) {
+            literal = expected;
+            literalMatched = 1;
+            state = LITERAL;
+        }
+        
+        private void startString(boolean key) {
+            text.setLength(0);
+            readingKey = key;
+            state = STRING;
+        }
+        
+        private void readStringByte(int b) throws SyntaxError {
+            if (continuationBytes > 0) {
+                if ((b & 0xC0) == 0x80) {
+                    codePoint = (codePoint << 6) | (b & 0x3F);
+                    if (--continuationBytes == 0)
+                        text.appendCodePoint(Character.isValidCodePoint(codePoint) ? codePoint : 0xFFFD);
+                    return;
+                }
+                continuationBytes = 0;
+                text.append('\uFFFD');
+            }
+            if (b == '"') {
+                String string = text.toString();
+                if (readingKey) {
+                    keys[depth - 1] = string;
+                    state = COLON;
+                } else {
+                    complete(string);
+                }
+            } else if (b == '\\') {
+                state = ESCAPE;
+            } else if (b < 0x20) {
+                throw error("Unescaped control character in string");
+            } else if (b < 0x80) {
+                text.append((char) b);
+            } else if (b >= 0xC2 && b <= 0xF4) {
+                continuationBytes = (b >= 0xF0 ? 3 : b >= 0xE0 ? 2 : 1);
+                codePoint = b & (0x3F >> continuationBytes);
+            } else {
+                text.append('\uFFFD');
+            }
+        }
+        
+        private void readEscape(int b) throws SyntaxError {
+            state = STRING;
+            switch (b) {
+            case '"':
+            case '\\':
+            case '/':
+                text.append((char) b);
+                return;
+            case 'b':
+                text.append('\b');
+                return;
+            case 'f':
+                text.append('\f');
+                return;
+            case 'n':
+                text.append('\n');
+                return;
+            case 'r':
+                text.append('\r');
+                return;
+            case 't':
+                text.append('\t');
+                return;
+            case 'u':
+                unicode = unicodeDigits = 0;
+                state = UNICODE;
+                return;
+            default:
+                throw error("Invalid escape sequence");
+            }
+        }
+        
+        private void completeNumber() throws SyntaxError {
+            Object number = parseNumber(text);
+            if (number == null)
+                throw error("Invalid number " + text);
+            complete(number);
+        }
+        
+        private void push(Object container) throws SyntaxError {
+            if (depth == maxDepth)
+                throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+            if (depth == containers.length) {
+                containers = Arrays.copyOf(containers, depth * 2);
+                keys = Arrays.copyOf(keys, depth * 2);
+            }
+            containers[depth++] = container;
+        }
+        
+        private void completeContainer() {
+            Object container = containers[--depth];
+            containers[depth] = null;
+            keys[depth] = null;
+            complete(container);
+        }
+        
+        @SuppressWarnings("unchecked")
+        private void complete(Object value) {
+            if (text.capacity() > MAX_RETAINED_BUFFER)
+                text.trimToSize();
+            if (depth == 0) {
+                values.addLast(value == null ? NULL : value);
+                state = SEPARATOR;
+                return;
+            }
+            Object container = containers[depth - 1];
+            if (container instanceof List<?>)
+                ((List<Object>) container).add(value);
+            else
+                ((Map<Object, Object>) container).put(keys[depth - 1], value);
+            state = COMMA_OR_END;
+        }
+        
+    }
+    
+    /**
+     * The strict scanner of the tokenizer, for the other decoders in this
+     * package that read JSON without building maps and lists, like
+     * {@link Columns}. Reads one value of standard JSON from a string or a
+     * reader. Not thread-safe.
+     */
+    static final class Scanner {
+        
+        private final JSONTokener tokenizer = new JSONTokener();
+        
+        Scanner(String string) {
+            tokenizer.reset(string, DEFAULT_MAX_DEPTH, false);
+        }
+        
+        Scanner(Reader reader) {
+            tokenizer.reset(reader, DEFAULT_MAX_DEPTH);
+        }
+        
+        /** Returns the next character, or -1 at the end of input. */
+        int read() throws IOException, SyntaxError {
+            return tokenizer.read();
+        }
+        
+        /** Returns the next character that is not whitespace, or -1 at the end of input. */
+        int readClean() throws IOException, SyntaxError {
+            return tokenizer.readClean();
+        }
+        
+        /** Skips whitespace and returns the next character without reading it. */
+        int peekClean() throws IOException, SyntaxError {
+            return tokenizer.peekClean();
+        }
+        
+        /**
+         * Reads a string (the opening quote given as c) or a number starting
+         * with c into a buffer that stays valid until the next call.
+         */
+        CharSequence text(int c) throws IOException, SyntaxError {
+            return tokenizer.strictText(c);
+        }
+        
+        /** Checks the rest of the given word, whose first character has been read. */
+        void expectWord(String word) throws IOException, SyntaxError {
+            tokenizer.expectWord(word);
+        }
+        
+        /** Skips a value starting with c. */
+        void skipValue(int c) throws IOException, SyntaxError {
+            tokenizer.strictValue(c, false);
+        }
+        
+        /** Returns an error at the current position. */
+        SyntaxError error(String message) {
+            return tokenizer.error(message);
+        }
+        
+        /** Drops the references to the input. */
+        void release() {
+            tokenizer.release();
+        }
+        
+    }
+    
+    /** Stands for a null top-level value in queues that do not allow nulls. */
+    private static final Object NULL = new Object();
+    
+    /**
+     * Parses a number in standard JSON syntax into an Integer, a Long or a
+     * Double, or returns <code>null</code> if the text is not such a number.
+     */
+    static Number parseNumber(CharSequence text) {
+        int length = text.length(), i = 0;
+        if (i < length && text.charAt(i) == '-')
+            i++;
+        int digitsStart = i;
+        while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+            i++;
+        int digits = i - digitsStart;
+        if (digits == 0 || digits > 1 && text.charAt(digitsStart) == '0')
+            return null;
+        boolean integer = true;
+        if (i < length && text.charAt(i) == '.') {
+            integer = false;
+            int fractionStart = ++i;
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+                i++;
+            if (i == fractionStart)
+                return null;
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            integer = false;
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-'))
+                i++;
+            int exponentStart = i;
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+                i++;
+            if (i == exponentStart)
+                return null;
+        }
+        if (i != length)
+            return null;
+        String string = text.toString();
+        if (integer && digits <= 18) {
+            long value = Long.parseLong(string);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+                return (int) value;
+            return value;
+        }
+        if (integer && digits == 19) {
+            try {
+                return Long.parseLong(string);
+            } catch (NumberFormatException e) {
+                // too large, go with a double as the lenient decoder does
+            }
+        }
+        return Double.parseDouble(string);
+    }
+    
+    /**
+     * Buffers that grew larger than this (in chars) while handling a huge
+     * document are dropped rather than kept for reuse.
+     */
+    static final int MAX_RETAINED_BUFFER = 64 * 1024;
+    
+    private static volatile boolean pooling;
+    
+    private static final ThreadLocal<Encoder> ENCODERS = new ThreadLocal<Encoder>();
+    
+    private static final ThreadLocal<Decoder> DECODERS = new ThreadLocal<Decoder>();
+    
+    private static final MethodHandle IS_VIRTUAL = findIsVirtual();
+    
+    /**
+     * Makes the static <code>encode</code> and <code>decode</code> methods
+     * reuse one {@link Encoder} and one {@link Decoder} per platform thread.
+     * Virtual threads are cheap and numerous, so they never get pooled
+     * instances. Pooling is disabled by default.
+     */
+    public static void setPooling(boolean enabled) {
+        pooling = enabled;
+    }
+    
+    /**
+     * Receives the statistics of every document encoded or decoded by this
+     * class (except by {@link PushParser}), see {@link JSON#setListener}.
+     * Called on the thread that did the work right after it is done, so
+     * implementations must be thread-safe and quick.
+     */
+    public interface Listener {
+        
+        /**
+         * @param chars
+         *            the number of characters read
+         * @param values
+         *            the number of values decoded, counting each array and
+         *            object and each value in them
+         * @param strings
+         *            the number of strings created, including object keys
+         * @param numbers
+         *            the number of numbers created
+         * @param nanos
+         *            the time taken
+         */
+        void decoded(long chars, long values, long strings, long numbers, long nanos);
+        
+        /**
+         * @param chars
+         *            the number of characters written, or -1 if the output was
+         *            not a <code>CharSequence</code>
+         * @param values
+         *            the number of values encoded, counting each array and
+         *            object and each value in them
+         * @param nanos
+         *            the time taken
+         */
+        void encoded(long chars, long values, long nanos);
+        
+    }
+    
+    /**
+     * A {@link Listener} that adds everything up, for a metrics system to
+     * poll. Documents that failed to decode are not counted.
+     */
+    public static class Counters implements Listener {
+        
+        private final LongAdder documentsDecoded = new LongAdder();
+        
+        private final LongAdder charsDecoded = new LongAdder();
+        
+        private final LongAdder valuesDecoded = new LongAdder();
+        
+        private final LongAdder stringsDecoded = new LongAdder();
+        
+        private final LongAdder numbersDecoded = new LongAdder();
+        
+        private final LongAdder nanosDecoding = new LongAdder();
+        
+        private final LongAdder documentsEncoded = new LongAdder();
+        
+        private final LongAdder charsEncoded = new LongAdder();
+        
+        private final LongAdder valuesEncoded = new LongAdder();
+        
+        private final LongAdder nanosEncoding = new LongAdder();
+        
+        public void decoded(long chars, long values, long strings, long numbers, long nanos) {
+            documentsDecoded.increment();
+            charsDecoded.add(chars);
+            valuesDecoded.add(values);
+            stringsDecoded.add(strings);
+            numbersDecoded.add(numbers);
+            nanosDecoding.add(nanos);
+        }
+        
+        public void encoded(long chars, long values, long nanos) {
+            documentsEncoded.increment();
+            if (chars > 0)
+                charsEncoded.add(chars);
+            valuesEncoded.add(values);
+            nanosEncoding.add(nanos);
+        }
+        
+        public long getDocumentsDecoded() {
+            return documentsDecoded.sum();
+        }
+        
+        public long getCharsDecoded() {
+            return charsDecoded.sum();
+        }
+        
+        public long getValuesDecoded() {
+            return valuesDecoded.sum();
+        }
+        
+        public long getStringsDecoded() {
+            return stringsDecoded.sum();
+        }
+        
+        public long getNumbersDecoded() {
+            return numbersDecoded.sum();
+        }
+        
+        public long getNanosDecoding() {
+            return nanosDecoding.sum();
+        }
+        
+        public long getDocumentsEncoded() {
+            return documentsEncoded.sum();
+        }
+        
+        /** Only counts the output written to strings and other <code>CharSequence</code>s. */
+        public long getCharsEncoded() {
+            return charsEncoded.sum();
+        }
+        
+        public long getValuesEncoded() {
+            return valuesEncoded.sum();
+        }
+        
+        public long getNanosEncoding() {
+            return nanosEncoding.sum();
+        }
+        
+    }
+    
+    private static volatile Listener listener;
+    
+    /**
+     * Sets the listener to report the statistics of each document to, or
+     * <code>null</code> (the default) to stop reporting.
+     */
+    public static void setListener(Listener listener) {
+        JSON.listener = listener;
+    }
+    
+    /**
+     * Recorded by JDK Flight Recorder for each decoded document when the
+     * <code>com.yoursway.jyp.JSONDecode</code> event is enabled; costs
+     * nothing otherwise.
+     */
+    @Name("com.yoursway.jyp.JSONDecode")
+    @Label("JSON Decode")
+    @Category("JYP")
+    @StackTrace(false)
+    static final class DecodeEvent extends Event {
+        
+        @Label("Characters")
+        long chars;
+        
+        @Label("Values")
+        long values;
+        
+        @Label("Depth")
+        int depth;
+        
+        @Label("Mode")
+        String mode;
+        
+    }
+    
+    /**
+     * Recorded by JDK Flight Recorder for each encoded document when the
+     * <code>com.yoursway.jyp.JSONEncode</code> event is enabled.
+     */
+    @Name("com.yoursway.jyp.JSONEncode")
+    @Label("JSON Encode")
+    @Category("JYP")
+    @StackTrace(false)
+    static final class EncodeEvent extends Event {
+        
+        @Label("Characters")
+        long chars;
+        
+        @Label("Values")
+        long values;
+        
+        @Label("Depth")
+        int depth;
+        
+    }
+    
+    private static Encoder encoder() {
+        if (pooling && !isVirtualThread()) {
+            Encoder encoder = ENCODERS.get();
+            if (encoder == null) {
+                encoder = new Encoder();
+                ENCODERS.set(encoder);
+            }
+            if (!encoder.busy)
+                return encoder;
+        }
+        return new Encoder();
+    }
+    
+    private static Decoder decoder() {
+        if (pooling && !isVirtualThread()) {
+            Decoder decoder = DECODERS.get();
+            if (decoder == null) {
+                decoder = new Decoder();
+                DECODERS.set(decoder);
+            }
+            if (!decoder.busy)
+                return decoder;
+        }
+        return new Decoder();
+    }
+    
+    private static MethodHandle findIsVirtual() {
+        try {
+            return MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual",
+                MethodType.methodType(boolean.class));
+        } catch (NoSuchMethodException e) {
+            return null; // no virtual threads before Java 21
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+    }
+    
+    private static boolean isVirtualThread() {
+        if (IS_VIRTUAL == null)
+            return false;
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(Thread.currentThread());
+        } catch (Throwable e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    public static String encode(Object value) {
+        return encoder().encode(value);
+    }
+    
+    public static void encode(Object value, StringBuilder result) {
+        try {
+            encode(value, (Appendable) result);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    public static void encode(Object value, Appendable result) throws IOException {
+        encode(value, result, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static void encode(Object value, Appendable result, int maxDepth) throws IOException {
+        encoder().write(value, result, maxDepth);
+    }
+    
+    static void encodeScalar(Object value, Appendable result) throws IOException {
+        if (value == null)
+            result.append("null");
+        else if (value instanceof Raw)
+            result.append(((Raw) value).json);
+        else if (value instanceof CharSequence)
+            encodeString((CharSequence) value, result);
+        else if (value instanceof Character)
+            encodeString(value.toString(), result);
+        else if (value instanceof Float)
+            result.append(encodeFloat((Float) value));
+        else if (value instanceof Double)
+            result.append(encodeDouble((Double) value));
+        else if (value instanceof Number)
+            result.append(encodeNumber((Number) value));
+        else if (value instanceof Boolean)
+            result.append(encodeBoolean((Boolean) value));
+        else if (value instanceof byte[])
+            result.append('"').append(Base64.getEncoder().encodeToString((byte[]) value)).append('"');
+        else {
+            throw new IllegalArgumentException("Cannot encode complex types into JSON: "
+                    + value.getClass().getName());
+        }
+    }
+    
+    public static Object decode(String string) throws SyntaxError {
+        return decode(string, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decode(String string, int maxDepth) throws SyntaxError {
+        return decoder().read(string, maxDepth, Decoder.LENIENT);
+    }
+    
+    public static Object decode(Reader reader) throws SyntaxError, IOException {
+        return decode(reader, DEFAULT_MAX_DEPTH);
+    }
+    
+    /**
+     * Decodes like {@link #decode(String)}, except that the values at the
+     * given paths are not decoded but returned as {@link Raw} slices of the
+     * input, which {@link #encode(Object)} writes back as they are. This
+     * saves decoding and re-encoding opaque payloads that are only passed
+     * through. The captured values are checked to be standard JSON.
+     * 
+     * Paths are JSON Pointers (RFC 6901), e.g. <code>"/payload"</code> or
+     * <code>"/items/0/data"</code>, with <code>*</code> standing for any key or
+     * array index, as in <code>"/items/&#42;/data"</code>; the empty path
+     * captures the whole document.
+     */
+    public static Object decode(String string, String... rawPaths) throws SyntaxError {
+        return decoder().read(string, DEFAULT_MAX_DEPTH, Decoder.LENIENT, rawPaths);
+    }
+    
+    public static Object decode(Reader reader, int maxDepth) throws SyntaxError, IOException {
+        return decoder().read(reader, maxDepth, Decoder.LENIENT);
+    }
+    
+    /**
+     * Decodes standard (RFC 8259) JSON only. Single quotes, unquoted words,
+     * comments, hex and octal numbers, <code>=</code> and <code>;</code>
+     * separators, trailing commas and other forms accepted by
+     * {@link #decode(String)} are syntax errors, and so is anything but
+     * whitespace after the value. Being simpler, this is also faster than
+     * {@link #decode(String)}.
+     */
+    public static Object decodeStrict(String string) throws SyntaxError {
+        return decodeStrict(string, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decodeStrict(String string, int maxDepth) throws SyntaxError {
+        return decoder().read(string, maxDepth, Decoder.STRICT);
+    }
+    
+    /**
+     * Decodes standard JSON only, see {@link #decodeStrict(String)}. The
+     * reader is read to the end.
+     */
+    public static Object decodeStrict(Reader reader) throws SyntaxError, IOException {
+        return decodeStrict(reader, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decodeStrict(Reader reader, int maxDepth) throws SyntaxError, IOException {
+        return decoder().read(reader, maxDepth, Decoder.STRICT);
+    }
+    
+    /**
+     * Checks that the string is a single standard JSON value, like
+     * {@link #decodeStrict(String)} does, but without building any strings,
+     * numbers, maps or lists.
+     * 
+     * @throws SyntaxError
+     *             if the string is not valid JSON
+     */
+    public static void validate(String string) throws SyntaxError {
+        decoder().read(string, DEFAULT_MAX_DEPTH, Decoder.VALIDATE);
+    }
+    
+    public static void validate(Reader reader) throws SyntaxError, IOException {
+        decoder().read(reader, DEFAULT_MAX_DEPTH, Decoder.VALIDATE);
+    }
+    
+    /**
+     * Decodes like {@link #decode(String)}, except that string values without
+     * escape sequences are returned as <code>CharSequence</code> views into
+     * the input rather than copied into new strings. A view turns into a
+     * <code>String</code> only when <code>toString()</code> is called (and
+     * then remembers it), so routing or filtering on a few fields of a large
+     * document, or re-encoding it, avoids copying the rest. Object keys are
+     * always strings.
+     * 
+     * Views keep the whole input reachable. They are equal to other views
+     * with the same characters, and have the same hash code as the equal
+     * string; use <code>String.contentEquals</code> to compare them to
+     * strings.
+     */
+    public static Object decodeViews(String string) throws SyntaxError {
+        return decoder().read(string, DEFAULT_MAX_DEPTH, Decoder.VIEWS);
+    }
+    
+    /**
+     * Decodes with string views into the given array, see
+     * {@link #decodeViews(String)}. The array must not be modified while the
+     * views are in use.
+     */
+    public static Object decodeViews(char[] chars) throws SyntaxError {
+        return decoder().decodeViews(chars);
+    }
+    
+    /**
+     * Decodes like {@link #decode(String)}, except that each object is a
+     * read-only map holding just an array of its values, and shares its keys
+     * and the table for looking them up with all the other objects that have
+     * the same keys in the same order, like hidden classes in JavaScript
+     * engines do. An array of records of the same structure then costs one
+     * array per record instead of a hash table, an entry per key and a
+     * string per key. Iteration follows the order of the keys in the input.
+     * 
+     * A {@link Decoder} keeps its shapes between documents; they are dropped
+     * once there are more than a few thousand. Objects with many keys, and
+     * objects that would need a new shape when there are too many, are
+     * decoded into <code>HashMap</code>s.
+     */
+    public static Object decodeShaped(String string) throws SyntaxError {
+        return decoder().read(string, DEFAULT_MAX_DEPTH, Decoder.SHAPED);
+    }
+    
+    /** Decodes objects into maps with shared shapes, see {@link #decodeShaped(String)}. */
+    public static Object decodeShaped(Reader reader) throws SyntaxError, IOException {
+        return decoder().read(reader, DEFAULT_MAX_DEPTH, Decoder.SHAPED);
+    }
+    
+    /**
+     * A value that writes its own JSON text, e.g. a view of a document kept
+     * in encoded form, which the encoder then does not look into. Checked
+     * before <code>Map</code> and <code>Iterable</code>.
+     */
+    interface Encodable {
+        
+        /** Appends the JSON text of this value, nesting at most maxDepth levels. */
+        void encode(Appendable result, int maxDepth) throws IOException;
+        
+    }
+    
+    /**
+     * A piece of already encoded JSON, e.g. a document stored verbatim in a
+     * database, that {@link JSON#encode(Object)} copies to the output as is.
+     * The text is not checked, so a malformed one makes the output malformed.
+     * Also returned by {@link JSON#decode(String, String...)} for the
+     * captured values.
+     */
+    public static final class Raw {
+        
+        final String json;
+        
+        public Raw(String json) {
+            if (json == null)
+                throw new NullPointerException("json is null");
+            this.json = json;
+        }
+        
+        /** Decodes the JSON text. */
+        public Object decode() throws SyntaxError {
+            return JSON.decode(json);
+        }
+        
+        /** Returns the JSON text. */
+        @Override
+        public String toString() {
+            return json;
+        }
+        
+        @Override
+        public int hashCode() {
+            return json.hashCode();
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Raw && ((Raw) obj).json.equals(json);
         }
         
     }
     
-    public static String encode(Object value) {
-        StringBuilder result = new StringBuilder();
-        encode(value, result);
-        return result.toString();
+    /**
+     * A size-bounded cache of the encoded form of values that never change,
+     * e.g. reference tables embedded in many responses. {@link #get(Object)}
+     * returns the value as a {@link Raw}, which {@link JSON#encode(Object)}
+     * copies to the output instead of walking the value again. Values of a
+     * {@link #register(Class) registered} class are looked up by the encoder
+     * automatically, so they can be put into documents as they are.
+     * <p>
+     * Values are keyed either by identity, holding them weakly, or by
+     * <code>equals</code>, holding them strongly; the least recently used
+     * entries are evicted when the cached text exceeds the given number of
+     * chars. Values that are not maps, lists or scalars (e.g. beans) are
+     * converted by the given {@link Simplifier} before encoding. Thread-safe.
+     */
+    public static final class EncodedCache {
+        
+        /**
+         * Converts values into something JSON can encode, e.g. with
+         * <code>BeanEncoding.simplify</code>.
+         */
+        public interface Simplifier {
+            
+            Object simplify(Object value);
+            
+        }
+        
+        private final long maxChars;
+        
+        private final boolean byIdentity;
+        
+        private final Simplifier simplifier;
+        
+        private final LinkedHashMap<Object, Raw> entries = new LinkedHashMap<Object, Raw>(16, 0.75f, true);
+        
+        private final ReferenceQueue<Object> collected = new ReferenceQueue<Object>();
+        
+        private long chars;
+        
+        private long hits;
+        
+        private long misses;
+        
+        public EncodedCache(long maxChars, boolean byIdentity) {
+            this(maxChars, byIdentity, null);
+        }
+        
+        public EncodedCache(long maxChars, boolean byIdentity, Simplifier simplifier) {
+            this.maxChars = maxChars;
+            this.byIdentity = byIdentity;
+            this.simplifier = simplifier;
+        }
+        
+        /**
+         * Returns the encoded form of the given value, encoding it if it is
+         * not cached yet.
+         */
+        public Raw get(Object value) {
+            Object key = (byIdentity ? new IdentityKey(value, null) : value);
+            synchronized (this) {
+                expunge();
+                Raw raw = entries.get(key);
+                if (raw != null) {
+                    hits++;
+                    return raw;
+                }
+                misses++;
+            }
+            Object simplified = (simplifier != null ? simplifier.simplify(value) : value);
+            Raw raw = new Raw(encoder().encode(simplified, false));
+            int length = raw.json.length();
+            if (length > maxChars)
+                return raw;
+            synchronized (this) {
+                if (byIdentity)
+                    key = new IdentityKey(value, collected);
+                Raw previous = entries.put(key, raw);
+                if (previous != null)
+                    chars -= previous.json.length();
+                chars += length;
+                Iterator<Raw> iterator = entries.values().iterator();
+                while (chars > maxChars) {
+                    chars -= iterator.next().json.length();
+                    iterator.remove();
+                }
+            }
+            return raw;
+        }
+        
+        /**
+         * Makes {@link JSON#encode(Object)} take instances of exactly the given
+         * class from this cache. A class can be registered with one cache at a
+         * time.
+         */
+        public void register(Class<?> klass) {
+            ENCODED_CACHES.get(klass).set(this);
+            encodedCaches = true;
+        }
+        
+        public void unregister(Class<?> klass) {
+            ENCODED_CACHES.get(klass).compareAndSet(this, null);
+        }
+        
+        public synchronized void clear() {
+            entries.clear();
+            chars = 0;
+        }
+        
+        public synchronized int size() {
+            expunge();
+            return entries.size();
+        }
+        
+        /** Returns the number of cached chars. */
+        public synchronized long chars() {
+            return chars;
+        }
+        
+        public synchronized long hits() {
+            return hits;
+        }
+        
+        public synchronized long misses() {
+            return misses;
+        }
+        
+        private void expunge() {
+            for (Reference<?> reference; (reference = collected.poll()) != null;) {
+                Raw raw = entries.remove(reference);
+                if (raw != null)
+                    chars -= raw.json.length();
+            }
+        }
+        
+        /**
+         * Compares referents by identity. Keys stored in the cache are weak
+         * references registered with the queue, lookup keys are not.
+         */
+        private static final class IdentityKey extends WeakReference<Object> {
+            
+            private final int hash;
+            
+            IdentityKey(Object referent, ReferenceQueue<Object> queue) {
+                super(referent, queue);
+                hash = System.identityHashCode(referent);
+            }
+            
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+            
+            @Override
+            public boolean equals(Object obj) {
+                if (this == obj)
+                    return true;
+                if (!(obj instanceof IdentityKey))
+                    return false;
+                Object referent = get();
+                return referent != null && referent == ((IdentityKey) obj).get();
+            }
+            
+        }
+        
     }
     
-    public static void encode(Object value, StringBuilder result) {
-        try {
-            encode(value, (Appendable) result);
-        } catch (IOException e) {
-            throw new AssertionError(e);
+    /** The cache registered for each class, kept with the class so that it does not pin its loader. */
+    private static final ClassValue<AtomicReference<EncodedCache>> ENCODED_CACHES =
+        new ClassValue<AtomicReference<EncodedCache>>() {
+        
+        @Override
+        protected AtomicReference<EncodedCache> computeValue(Class<?> klass) {
+            return new AtomicReference<EncodedCache>();
         }
-    }
+        
+    };
     
-    public static void encode(Object value, Appendable result) throws IOException {
-        if (value == null)
-            result.append("null");
-        else if (value instanceof CharSequence)
-            encodeString((CharSequence) value, result);
-        else if (value instanceof Character)
-            encodeString(value.toString(), result);
-        else if (value instanceof Float)
-            result.append(encodeFloat((Float) value));
-        else if (value instanceof Double)
-            result.append(encodeDouble((Double) value));
-        else if (value instanceof Number)
-            result.append(encodeNumber((Number) value));
-        else if (value instanceof Boolean)
-            result.append(encodeBoolean((Boolean) value));
-        else if (value instanceof Map<?, ?>)
-            encodeMap((Map<?, ?>) value, result);
-        else if (value instanceof Iterable<?>)
-            encodeArray((Iterable<?>) value, result);
-        else if (value.getClass().isArray()) {
-            Object[] array = (Object[]) value;
-            encodeArray(Arrays.asList(array), result);
-        } else {
-            throw new IllegalArgumentException("Cannot encode complex types into JSON: "
-                    + value.getClass().getName());
+    /** Set once any class is registered, so that encoding skips the lookup until then. */
+    private static volatile boolean encodedCaches;
+    
+    /**
+     * A string value decoded by {@link JSON#decodeViews(String)}: a range of
+     * the input string or array.
+     */
+    static final class StringView implements CharSequence {
+        
+        private final String string;
+        
+        private final char[] chars;
+        
+        private final int offset;
+        
+        private final int length;
+        
+        private String value;
+        
+        private int hash;
+        
+        StringView(String string, char[] chars, int offset, int length) {
+            this.string = string;
+            this.chars = chars;
+            this.offset = offset;
+            this.length = length;
+        }
+        
+        public int length() {
+            return length;
+        }
+        
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            return (chars != null ? chars[offset + index] : string.charAt(offset + index));
+        }
+        
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+            return new StringView(string, chars, offset + start, end - start);
+        }
+        
+        @Override
+        public String toString() {
+            if (value == null)
+                value = (chars != null ? new String(chars, offset, length) : string.substring(offset, offset
+                        + length));
+            return value;
+        }
+        
+        @Override
+        public int hashCode() {
+            int h = hash;
+            if (h == 0) {
+                for (int i = 0; i < length; i++)
+                    h = 31 * h + charAt(i);
+                hash = h;
+            }
+            return h;
         }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof StringView))
+                return false;
+            StringView other = (StringView) obj;
+            if (other.length != length)
+                return false;
+            for (int i = 0; i < length; i++)
+                if (charAt(i) != other.charAt(i))
+                    return false;
+            return true;
+        }
+        
     }
     
-    public static Object decode(String string) throws SyntaxError {
-        StringReader reader = new StringReader(string);
-        try {
-            return decode(reader);
-        } catch (IOException e) {
-            throw new AssertionError(e);
+    /**
+     * The keys of the objects decoded by {@link JSON#decodeShaped(String)},
+     * in the order of the input, with a table of their slots. Shapes form a
+     * tree rooted at the shape without keys: each key read moves an object
+     * to the child shape that has the key added. Only the decoder that owns
+     * the tree adds children; the keys and the table never change.
+     */
+    static final class Shape {
+        
+        static final int MAX_KEYS = 64;
+        
+        final String[] keys;
+        
+        /** Open addressing table of slot + 1 by key hash, 0 for empty entries */
+        private final int[] table;
+        
+        /** The first child, kept apart since most shapes have only one */
+        private String firstKey;
+        
+        private Shape firstChild;
+        
+        private HashMap<String, Shape> children;
+        
+        Shape() {
+            this(new String[0]);
+        }
+        
+        private Shape(String[] keys) {
+            this.keys = keys;
+            this.table = new int[Integer.highestOneBit(Math.max(1, keys.length) * 2) * 2];
+            int mask = table.length - 1;
+            for (int slot = 0; slot < keys.length; slot++) {
+                int i = mix(keys[slot].hashCode()) & mask;
+                while (table[i] != 0)
+                    i = (i + 1) & mask;
+                table[i] = slot + 1;
+            }
+        }
+        
+        int size() {
+            return keys.length;
+        }
+        
+        /** Returns the slot of the given key, or -1 if it is not there. */
+        int slot(Object key) {
+            if (key == null)
+                return -1;
+            int mask = table.length - 1;
+            for (int i = mix(key.hashCode()) & mask;; i = (i + 1) & mask) {
+                int entry = table[i];
+                if (entry == 0)
+                    return -1;
+                if (keys[entry - 1].equals(key))
+                    return entry - 1;
+            }
+        }
+        
+        /** Returns the child with the given key added, or <code>null</code> if it has not been made yet. */
+        Shape child(String key) {
+            if (key.equals(firstKey))
+                return firstChild;
+            return (children != null ? children.get(key) : null);
+        }
+        
+        /** Makes the child with the given key, which must not be in this shape, added. */
+        Shape addChild(String key) {
+            String[] childKeys = Arrays.copyOf(keys, keys.length + 1);
+            childKeys[keys.length] = key;
+            Shape child = new Shape(childKeys);
+            if (firstKey == null) {
+                firstKey = key;
+                firstChild = child;
+            } else {
+                if (children == null)
+                    children = new HashMap<String, Shape>();
+                children.put(key, child);
+            }
+            return child;
+        }
+        
+        Map<Object, Object> toMap(Object[] values) {
+            Map<Object, Object> map = new HashMap<Object, Object>();
+            for (int i = 0; i < keys.length; i++)
+                map.put(keys[i], values[i]);
+            return map;
         }
+        
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+        
     }
     
-    public static Object decode(Reader reader) throws SyntaxError, IOException {
-        JSONTokener tokenizer = new JSONTokener(reader);
-        return tokenizer.nextValue();
+    /** An object decoded by {@link JSON#decodeShaped(String)}: its shape and its own values. */
+    static final class ShapedMap extends AbstractMap<Object, Object> {
+        
+        private final Shape shape;
+        
+        private final Object[] values;
+        
+        ShapedMap(Shape shape, Object[] values) {
+            this.shape = shape;
+            this.values = values;
+        }
+        
+        @Override
+        public int size() {
+            return values.length;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return shape.slot(key) >= 0;
+        }
+        
+        @Override
+        public Object get(Object key) {
+            int slot = shape.slot(key);
+            return (slot >= 0 ? values[slot] : null);
+        }
+        
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Entry<Object, Object>>() {
+                
+                @Override
+                public int size() {
+                    return values.length;
+                }
+                
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    return new Iterator<Entry<Object, Object>>() {
+                        
+                        private int next;
+                        
+                        public boolean hasNext() {
+                            return next < values.length;
+                        }
+                        
+                        public Entry<Object, Object> next() {
+                            if (next >= values.length)
+                                throw new NoSuchElementException();
+                            int slot = next++;
+                            return new SimpleImmutableEntry<Object, Object>(shape.keys[slot], values[slot]);
+                        }
+                        
+                    };
+                }
+                
+            };
+        }
+        
     }
     
     private static void encodeString(CharSequence string, Appendable sb) throws IOException {
@@ -130,39 +1955,14 @@ public class JSON {
         sb.append('"');
     }
     
-    private static void encodeArray(Iterable<?> iterable, Appendable result) throws IOException {
-        result.append('[');
-        boolean first = true;
-        for (Object value : iterable) {
-            if (first)
-                first = false;
-            else
-                result.append(',');
-            encode(value, result);
-        }
-        result.append(']');
-    }
-    
-    private static void encodeMap(Map<?, ?> map, Appendable result) throws IOException {
-        result.append('{');
-        boolean first = true;
+    private static List<Map.Entry<?, ?>> sortedEntries(Map<?, ?> map) {
         List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>(map.entrySet());
         try {
             Collections.sort(entries, ENTRY_KEY_COMPARATOR);
         } catch (ClassCastException e) {
             // uncomparable, go unsorted
         }
-        for (Map.Entry<?, ?> entry : entries) {
-            if (first)
-                first = false;
-            else
-                result.append(',');
-            encode(entry.getKey(), result);
-            result.append(':');
-            encode(entry.getValue(), result);
-            
-        }
-        result.append('}');
+        return entries;
     }
     
     private static String encodeBoolean(boolean value) {
@@ -185,49 +1985,283 @@ public class JSON {
         return encodeNumber(n);
     }
     
-    private static String encodeNumber(Number n) {
-        return chopTrailingDecimalZeros(n.toString());
+    private static String encodeNumber(Number n) {
+        return chopTrailingDecimalZeros(n.toString());
+    }
+    
+    private static String chopTrailingDecimalZeros(String s) {
+        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
+            while (s.endsWith("0"))
+                s = s.substring(0, s.length() - 1);
+            if (s.endsWith("."))
+                s = s.substring(0, s.length() - 1);
+        }
+        return s;
+    }
+    
+    final static Comparator<Map.Entry<?, ?>> ENTRY_KEY_COMPARATOR = new Comparator<Entry<?, ?>>() {
+        
+        @SuppressWarnings("unchecked")
+        public int compare(Entry<?, ?> o1, Entry<?, ?> o2) {
+            return ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+        }
+    };
+    
+}
+
+/**
+ * A JSONTokener takes a source string and extracts characters and tokens from
+ * it.
+ * 
+ * @author JSON.org
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ * @version 2008-09-18
+ */
+class JSONTokener {
+    
+    int index;
+    private char lastChar;
+    private boolean useLastChar;
+    
+    /*
+     * The input is read in chunks into buffer, either from reader or, when
+     * decoding a string, from string starting at stringOffset.
+     */
+    private final char[] buffer = new char[4096];
+    private int position;
+    private int limit;
+    private Reader reader;
+    private String string;
+    private char[] chars;
+    private int stringOffset;
+    private boolean views;
+    
+    /*
+     * Statistics of the value being decoded, for JSON.Listener and JFR events.
+     */
+    int values;
+    int strings;
+    int numbers;
+    int deepest;
+    
+    /*
+     * The paths of values to capture as JSON.Raw: the segments of each path,
+     * and the array index each segment stands for (-1 if none).
+     */
+    private String[][] rawPaths;
+    private int[][] rawIndices;
+    
+    private StringBuilder text = new StringBuilder();
+    
+    private int maxDepth;
+    
+    /*
+     * The limits other than maxDepth, see JSON.Limits; filled counts the
+     * characters read into the buffer so far.
+     */
+    private int maxChars;
+    private int maxStringLength;
+    private int maxNumberLength;
+    private int maxKeys;
+    private int maxValues;
+    private boolean stacklessErrors;
+    private long filled;
+    
+    /*
+     * The stack of arrays and objects being parsed. For objects, closers holds
+     * '}' and keys holds the key of the value being parsed; for arrays,
+     * closers holds the expected closing bracket.
+     */
+    private int depth;
+    private Object[] containers = new Object[16];
+    private String[] keys = new String[16];
+    private char[] closers = new char[16];
+    
+    /*
+     * With shared shapes (see JSON.decodeShaped), an object on the stack has
+     * its shape so far in shapes and its values in slots instead of a map in
+     * containers; the slot arrays are reused for the following objects. The
+     * shape tree is kept between documents until it grows past MAX_SHAPES.
+     */
+    private static final int MAX_SHAPES = 4096;
+    private boolean shareShapes;
+    private JSON.Shape rootShape;
+    private int shapeCount;
+    private JSON.Shape[] shapes = new JSON.Shape[16];
+    private Object[][] slots = new Object[16][];
+    
+    void reset(Reader reader, int maxDepth) {
+        reset(maxDepth);
+        this.reader = reader;
+    }
+    
+    /**
+     * @param views
+     *            whether to return strings without escapes as views into the
+     *            input, see {@link JSON#decodeViews(String)}
+     */
+    void reset(String string, int maxDepth, boolean views) {
+        reset(maxDepth);
+        this.string = string;
+        this.views = views;
+    }
+    
+    /**
+     * Applies the given limits, if any, to the input set by the last reset.
+     */
+    void limit(JSON.Limits limits) throws JSON.SyntaxError {
+        if (limits == null)
+            return;
+        maxDepth = limits.maxDepth;
+        maxChars = limits.maxChars;
+        maxStringLength = limits.maxStringLength;
+        maxNumberLength = limits.maxNumberLength;
+        maxKeys = limits.maxKeys;
+        maxValues = limits.maxValues;
+        stacklessErrors = limits.stacklessErrors;
+        int length = (string != null ? string.length() : chars != null ? chars.length : 0);
+        if (length > maxChars)
+            throw error("Document is longer than " + maxChars + " characters");
+    }
+    
+    JSON.SyntaxError error(String message) {
+        return new JSON.SyntaxError(message, index, (string != null ? string : chars), stacklessErrors);
+    }
+    
+    /**
+     * Makes the next value decoded from a string capture the values at the
+     * given paths, see {@link JSON#decode(String, String...)}.
+     */
+    void captureRaw(String[] paths) {
+        rawPaths = new String[paths.length][];
+        rawIndices = new int[paths.length][];
+        for (int i = 0; i < paths.length; i++) {
+            String path = paths[i];
+            if (path.length() > 0 && path.charAt(0) != '/')
+                throw new IllegalArgumentException("Path must start with '/': " + path);
+            String[] segments = (path.length() == 0 ? new String[0] : path.substring(1).split("/", -1));
+            int[] indices = new int[segments.length];
+            for (int j = 0; j < segments.length; j++) {
+                String segment = segments[j].replace("~1", "/").replace("~0", "~");
+                segments[j] = segment;
+                indices[j] = arrayIndex(segment);
+            }
+            rawPaths[i] = segments;
+            rawIndices[i] = indices;
+        }
+    }
+    
+    private static int arrayIndex(String segment) {
+        int length = segment.length();
+        if (length == 0 || length > 9 || length > 1 && segment.charAt(0) == '0')
+            return -1;
+        int index = 0;
+        for (int i = 0; i < length; i++) {
+            char c = segment.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            index = index * 10 + (c - '0');
+        }
+        return index;
+    }
+    
+    /** Decodes the given array with string views into it. */
+    void reset(char[] chars, int maxDepth) {
+        reset(maxDepth);
+        this.chars = chars;
+        this.views = true;
+    }
+    
+    private void reset(int maxDepth) {
+        this.maxDepth = maxDepth;
+        this.index = 0;
+        this.lastChar = 0;
+        this.useLastChar = false;
+        this.position = 0;
+        this.limit = 0;
+        this.stringOffset = 0;
+        this.depth = 0;
+        this.views = false;
+        this.maxChars = Integer.MAX_VALUE;
+        this.maxStringLength = Integer.MAX_VALUE;
+        this.maxNumberLength = Integer.MAX_VALUE;
+        this.maxKeys = Integer.MAX_VALUE;
+        this.maxValues = Integer.MAX_VALUE;
+        this.stacklessErrors = false;
+        this.filled = 0;
+        this.values = 0;
+        this.strings = 0;
+        this.numbers = 0;
+        this.deepest = 0;
+        this.rawPaths = null;
+        this.rawIndices = null;
+        this.shareShapes = false;
+    }
+    
+    /** Makes the value decoded after the last reset build objects with shared shapes. */
+    void shareShapes() {
+        shareShapes = true;
+        if (rootShape == null || shapeCount >= MAX_SHAPES) {
+            rootShape = new JSON.Shape();
+            shapeCount = 1;
+        }
+    }
+    
+    /**
+     * Drops all references to the input and to the partially decoded values.
+     */
+    void release() {
+        reader = null;
+        string = null;
+        chars = null;
+        Arrays.fill(containers, 0, depth, null);
+        Arrays.fill(keys, 0, depth, null);
+        Arrays.fill(shapes, 0, depth, null);
+        Arrays.fill(slots, 0, depth, null);
+        depth = 0;
+        if (text.capacity() > JSON.MAX_RETAINED_BUFFER)
+            text = new StringBuilder();
     }
     
-    private static String chopTrailingDecimalZeros(String s) {
-        if (s.indexOf('.') > 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
-            while (s.endsWith("0"))
-                s = s.substring(0, s.length() - 1);
-            if (s.endsWith("."))
-                s = s.substring(0, s.length() - 1);
+    /**
+     * Gives the characters read ahead into the buffer back to the reader, if
+     * it supports marks, so that the reader is positioned right after the
+     * decoded value (and the lookahead character that ended it, if any).
+     */
+    void unread() throws IOException {
+        if (reader != null && reader.markSupported() && limit > 0) {
+            reader.reset();
+            reader.skip(useLastChar ? position - 1 : position);
         }
-        return s;
     }
     
-    final static Comparator<Map.Entry<?, ?>> ENTRY_KEY_COMPARATOR = new Comparator<Entry<?, ?>>() {
-        
-        @SuppressWarnings("unchecked")
-        public int compare(Entry<?, ?> o1, Entry<?, ?> o2) {
-            return ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+    private boolean fill() throws IOException, JSON.SyntaxError {
+        int count;
+        if (string != null) {
+            count = Math.min(buffer.length, string.length() - stringOffset);
+            if (count <= 0)
+                return false;
+            string.getChars(stringOffset, stringOffset + count, buffer, 0);
+            stringOffset += count;
+        } else if (chars != null) {
+            count = Math.min(buffer.length, chars.length - stringOffset);
+            if (count <= 0)
+                return false;
+            System.arraycopy(chars, stringOffset, buffer, 0, count);
+            stringOffset += count;
+        } else {
+            if (reader.markSupported())
+                reader.mark(buffer.length);
+            count = reader.read(buffer, 0, buffer.length);
+            if (count <= 0)
+                return false;
+            filled += count;
+            if (filled > maxChars)
+                throw error("Document is longer than " + maxChars + " characters");
         }
-    };
-    
-}
-
-/**
- * A JSONTokener takes a source string and extracts characters and tokens from
- * it.
- * 
- * @author JSON.org
- * @author Andrey Tarantsov <andreyvit@gmail.com>
- * @version 2008-09-18
- */
-class JSONTokener {
-    
-    private int index;
-    private Reader reader;
-    private char lastChar;
-    private boolean useLastChar;
-    
-    JSONTokener(Reader reader) {
-        this.reader = reader.markSupported() ? reader : new BufferedReader(reader);
-        this.useLastChar = false;
-        this.index = 0;
+        position = 0;
+        limit = count;
+        return true;
     }
     
     /**
@@ -248,7 +2282,7 @@ class JSONTokener {
      * 
      * @return The next character, or 0 if past the end of the source string.
      */
-    private char next() throws IOException {
+    private char next() throws IOException, JSON.SyntaxError {
         if (this.useLastChar) {
             this.useLastChar = false;
             if (this.lastChar != 0) {
@@ -256,15 +2290,18 @@ class JSONTokener {
             }
             return this.lastChar;
         }
-        int c = this.reader.read();
-        
-        if (c <= 0) { // End of stream
+        if (position == limit && !fill()) { // End of stream
+            this.lastChar = 0;
+            return 0;
+        }
+        char c = buffer[position++];
+        if (c == 0) {
             this.lastChar = 0;
             return 0;
         }
         this.index += 1;
-        this.lastChar = (char) c;
-        return this.lastChar;
+        this.lastChar = c;
+        return c;
     }
     
     /**
@@ -275,30 +2312,14 @@ class JSONTokener {
      * @return A string of n characters.
      */
     private String next(int n) throws IOException, JSON.SyntaxError {
-        if (n == 0) {
-            return "";
-        }
-        
-        char[] buffer = new char[n];
-        int pos = 0;
-        
-        if (this.useLastChar) {
-            this.useLastChar = false;
-            buffer[0] = this.lastChar;
-            pos = 1;
-        }
-        
-        int len;
-        while ((pos < n) && ((len = reader.read(buffer, pos, n - pos)) != -1)) {
-            pos += len;
+        char[] chars = new char[n];
+        for (int i = 0; i < n; i++) {
+            char c = next();
+            if (c == 0)
+                throw error("Unexpected end of JSON string");
+            chars[i] = c;
         }
-        this.index += pos;
-        
-        if (pos < n)
-            throw new JSON.SyntaxError("Unexpected end of JSON string", index);
-        
-        this.lastChar = buffer[n - 1];
-        return new String(buffer);
+        return new String(chars);
     }
     
     /**
@@ -306,7 +2327,7 @@ class JSONTokener {
      * 
      * @return A character, or 0 if there are no more characters.
      */
-    private char nextClean() throws IOException {
+    private char nextClean() throws IOException, JSON.SyntaxError {
         for (;;) {
             char c = next();
             if (c == 0 || c > ' ') {
@@ -328,15 +2349,35 @@ class JSONTokener {
      *             Unterminated string.
      */
     private String nextString(char quote) throws IOException, JSON.SyntaxError {
+        // fast path: the whole string is in the buffer and has no escapes
+        if (!useLastChar) {
+            int end = position;
+            char c = 0;
+            while (end < limit && (c = buffer[end]) != quote && c != '\\' && c != '\n' && c != '\r' && c != 0)
+                end++;
+            if (end < limit && c == quote) {
+                if (end - position > maxStringLength)
+                    throw error("String is longer than " + maxStringLength + " characters");
+                String result = new String(buffer, position, end - position);
+                index += end + 1 - position;
+                position = end + 1;
+                lastChar = quote;
+                return result;
+            }
+        }
+        
         char c;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = text;
+        sb.setLength(0);
         for (;;) {
+            if (sb.length() > maxStringLength)
+                throw error("String is longer than " + maxStringLength + " characters");
             c = next();
             switch (c) {
             case 0:
             case '\n':
             case '\r':
-                throw new JSON.SyntaxError("Unterminated string", index);
+                throw error("Unterminated string");
             case '\\':
                 c = next();
                 switch (c) {
@@ -356,10 +2397,10 @@ class JSONTokener {
                     sb.append('\r');
                     break;
                 case 'u':
-                    sb.append((char) Integer.parseInt(next(4), 16));
+                    sb.append((char) parseHex(next(4)));
                     break;
                 case 'x':
-                    sb.append((char) Integer.parseInt(next(2), 16));
+                    sb.append((char) parseHex(next(2)));
                     break;
                 default:
                     sb.append(c);
@@ -374,151 +2415,627 @@ class JSONTokener {
         }
     }
     
-    private Map<Object, Object> nextObject() throws JSON.SyntaxError, IOException {
-        String key;
-        Map<Object, Object> result = new HashMap<Object, Object>();
-        
-        if (nextClean() != '{') {
-            throw new JSON.SyntaxError("A JSON object must begin with '{'", index);
+    private int parseHex(String digits) throws JSON.SyntaxError {
+        try {
+            return Integer.parseInt(digits, 16);
+        } catch (NumberFormatException e) {
+            throw error("Invalid escape sequence");
         }
-        for (;;) {
-            char c = nextClean();
-            switch (c) {
-            case 0:
-                throw new JSON.SyntaxError("Unexpected end of JSON: unterminated object, '}' expected", index);
-            case '}':
-                return result;
-            default:
-                back();
-                key = nextValue().toString();
-            }
-            
-            // The key is followed by ':'. We will also tolerate '=' or '=>'.
-            c = nextClean();
-            if (c == '=') {
-                if (next() != '>') {
-                    back();
-                }
-            } else if (c != ':') {
-                throw new JSON.SyntaxError("Expected a ':' after a key", index);
-            }
-            result.put(key, nextValue());
-            
-            /*
-             * Pairs are separated by ','. We will also tolerate ';'.
-             */
-
-            switch (nextClean()) {
-            case ';':
-            case ',':
-                if (nextClean() == '}') {
-                    return result;
-                }
-                back();
-                break;
-            case '}':
+    }
+    
+    /**
+     * Returns the characters up to the next close quote as a view into the
+     * input, if they are all in the buffer and have no escapes, or as a
+     * String otherwise.
+     */
+    private CharSequence nextStringView(char quote) throws IOException, JSON.SyntaxError {
+        if (!useLastChar) {
+            int end = position;
+            char c = 0;
+            while (end < limit && (c = buffer[end]) != quote && c != '\\' && c != '\n' && c != '\r' && c != 0)
+                end++;
+            if (end < limit && c == quote && end - position <= maxStringLength) {
+                // buffer[0] is at stringOffset - limit in the input
+                CharSequence result = new JSON.StringView(string, chars, stringOffset - limit + position, end
+                        - position);
+                index += end + 1 - position;
+                position = end + 1;
+                lastChar = quote;
                 return result;
-            default:
-                throw new JSON.SyntaxError("Expected a ',' or '}'", index);
             }
         }
-        
+        return nextString(quote);
     }
     
-    private List<Object> nextArray() throws JSON.SyntaxError, IOException {
-        List<Object> result = new ArrayList<Object>();
-        
-        char c = nextClean();
-        char q;
-        if (c == '[') {
-            q = ']';
-        } else if (c == '(') {
-            q = ')';
-        } else {
-            throw new JSON.SyntaxError("A JSON array must start with '['", index);
+    private void push(Object container, char closer) throws JSON.SyntaxError {
+        if (depth == maxDepth)
+            throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+            keys = Arrays.copyOf(keys, depth * 2);
+            closers = Arrays.copyOf(closers, depth * 2);
+            shapes = Arrays.copyOf(shapes, depth * 2);
+            slots = Arrays.copyOf(slots, depth * 2);
         }
-        if (nextClean() == ']') {
-            return result;
+        containers[depth] = container;
+        closers[depth] = closer;
+        depth++;
+        if (depth > deepest)
+            deepest = depth;
+    }
+    
+    private void count(Object value) throws JSON.SyntaxError {
+        if (++values > maxValues)
+            throw error("Document has more than " + maxValues + " values");
+        if (value instanceof CharSequence)
+            strings++;
+        else if (value instanceof Number)
+            numbers++;
+    }
+    
+    private Object pop() {
+        Object container = containers[--depth];
+        containers[depth] = null;
+        keys[depth] = null;
+        JSON.Shape shape = shapes[depth];
+        if (shape != null) {
+            shapes[depth] = null;
+            Object[] values = slots[depth];
+            container = new JSON.ShapedMap(shape, Arrays.copyOf(values, shape.size()));
+            Arrays.fill(values, 0, shape.size(), null);
         }
-        back();
-        for (;;) {
-            if (nextClean() == ',') {
-                back();
-                result.add(null);
+        return container;
+    }
+    
+    /** Starts an object with shared shapes, see {@link JSON#decodeShaped(String)}. */
+    private void pushShaped() throws JSON.SyntaxError {
+        push(null, '}');
+        shapes[depth - 1] = rootShape;
+        if (slots[depth - 1] == null)
+            slots[depth - 1] = new Object[8];
+    }
+    
+    /**
+     * Adds a value under the current key to the object with shared shapes at
+     * the given level, moving it to the next shape, or turning it into a
+     * plain map if there are too many keys or shapes. Returns the number of
+     * keys in the object.
+     */
+    private int putShaped(int top, Object value) {
+        JSON.Shape shape = shapes[top];
+        String key = keys[top];
+        JSON.Shape next = shape.child(key);
+        int slot = shape.size();
+        if (next == null) {
+            int existing = shape.slot(key);
+            if (existing >= 0) {
+                // a duplicate key, the last value wins as with HashMap
+                next = shape;
+                slot = existing;
+            } else if (shapeCount < MAX_SHAPES && slot < JSON.Shape.MAX_KEYS) {
+                next = shape.addChild(key);
+                shapeCount++;
             } else {
-                back();
-                result.add(nextValue());
-            }
-            c = nextClean();
-            switch (c) {
-            case ';':
-            case ',':
-                if (nextClean() == ']') {
-                    return result;
-                }
-                back();
-                break;
-            case ']':
-            case ')':
-                if (q != c) {
-                    throw new JSON.SyntaxError(("Expected a '" + new Character(q) + "'"), index);
-                }
-                return result;
-            default:
-                throw new JSON.SyntaxError("Expected a ',' or ']'", index);
+                Map<Object, Object> map = shape.toMap(slots[top]);
+                Arrays.fill(slots[top], 0, slot, null);
+                map.put(key, value);
+                shapes[top] = null;
+                containers[top] = map;
+                return map.size();
             }
         }
-        
+        Object[] values = slots[top];
+        if (slot == values.length)
+            slots[top] = values = Arrays.copyOf(values, slot * 2);
+        values[slot] = value;
+        shapes[top] = next;
+        return next.size();
     }
     
     /**
-     * Get the next value. The value can be a Boolean, Double, Integer,
-     * JSONArray, JSONObject, Long, or String, or the JSONObject.NULL object.
-     * 
-     * @throws JSONException
-     *             If syntax error.
-     * 
-     * @return An object.
+     * Reads an object key followed by ':' into the top stack frame. We will
+     * also tolerate '=' or '=>' after the key.
      */
-    public Object nextValue() throws JSON.SyntaxError, IOException {
+    private void nextKey() throws JSON.SyntaxError, IOException {
         char c = nextClean();
-        String s;
-        
         switch (c) {
         case 0:
-            throw new JSON.SyntaxError("JSON is empty", index);
+            throw error("Unexpected end of JSON: unterminated object, '}' expected");
         case '"':
         case '\'':
-            return nextString(c);
+            keys[depth - 1] = nextString(c);
+            strings++;
+            break;
         case '{':
-            back();
-            return nextObject();
         case '[':
         case '(':
-            back();
-            return nextArray();
+            throw error("A JSON object key must be a string");
+        default:
+            String s = accumulateUnquotedText(c);
+            if (s.equals("")) {
+                throw error("Missing value");
+            }
+            keys[depth - 1] = String.valueOf(parseJsonWord(s));
+            strings++;
         }
         
-        /*
-         * Handle unquoted text. This could be the values true, false, or null,
-         * or it can be a number. An implementation (such as this one) is
-         * allowed to also accept non-standard forms.
-         * 
-         * Accumulate characters until we reach the end of the text or a
-         * formatting character.
-         */
-
-        s = accumulateUnquotedText(c);
-        if (s.equals("")) {
-            throw new JSON.SyntaxError("Missing value", index);
+        c = nextClean();
+        if (c == '=') {
+            if (next() != '>') {
+                back();
+            }
+        } else if (c != ':') {
+            throw error("Expected a ':' after a key");
+        }
+    }
+    
+    /**
+     * Get the next value. The value can be a Boolean, Double, Integer, Long,
+     * String, List, Map or null. Nested arrays and objects are parsed using an
+     * explicit stack rather than recursion, so deeply nested input fails with a
+     * SyntaxError once it exceeds the maximum depth.
+     * 
+     * @throws JSON.SyntaxError
+     *             If syntax error.
+     * 
+     * @return An object.
+     */
+    @SuppressWarnings("unchecked")
+    public Object nextValue() throws JSON.SyntaxError, IOException {
+        int base = depth;
+        Object value;
+        parsing: for (;;) {
+            char c = nextClean();
+            if (rawPaths != null && c != 0 && atRawPath()) {
+                value = nextRaw(c);
+            } else {
+                switch (c) {
+                case 0:
+                    if (depth == base)
+                        throw error("JSON is empty");
+                    throw error("Unexpected end of JSON: value expected");
+                case '"':
+                case '\'':
+                    value = (views ? nextStringView(c) : nextString(c));
+                    break;
+                case '{':
+                    if (shareShapes)
+                        pushShaped();
+                    else
+                        push(new HashMap<Object, Object>(), '}');
+                    if (nextClean() == '}') {
+                        value = pop();
+                        break;
+                    }
+                    back();
+                    nextKey();
+                    continue parsing;
+                case '[':
+                case '(':
+                    push(new ArrayList<Object>(), c == '[' ? ']' : ')');
+                    c = nextClean();
+                    if (c == ']') {
+                        value = pop();
+                        break;
+                    }
+                    back();
+                    if (c != ',')
+                        continue parsing;
+                    value = null;
+                    break;
+                default:
+                    /*
+                     * Handle unquoted text. This could be the values true, false, or
+                     * null, or it can be a number. An implementation (such as this
+                     * one) is allowed to also accept non-standard forms.
+                     * 
+                     * Accumulate characters until we reach the end of the text or a
+                     * formatting character.
+                     */
+                    String s = accumulateUnquotedText(c);
+                    if (s.equals("")) {
+                        throw error("Missing value");
+                    }
+                    value = parseJsonWord(s);
+                }
+            }
+            
+            // add the value to its container, closing the containers that end here
+            for (;;) {
+                count(value);
+                if (depth == base)
+                    return value;
+                int top = depth - 1;
+                if (closers[top] == '}') {
+                    int size;
+                    if (shapes[top] != null) {
+                        size = putShaped(top, value);
+                    } else {
+                        Map<Object, Object> map = (Map<Object, Object>) containers[top];
+                        map.put(keys[top], value);
+                        size = map.size();
+                    }
+                    if (size > maxKeys)
+                        throw error("Object has more than " + maxKeys + " keys");
+                    
+                    /*
+                     * Pairs are separated by ','. We will also tolerate ';'.
+                     */
+                    switch (nextClean()) {
+                    case ';':
+                    case ',':
+                        if (nextClean() == '}') {
+                            value = pop();
+                            continue;
+                        }
+                        back();
+                        nextKey();
+                        continue parsing;
+                    case '}':
+                        value = pop();
+                        continue;
+                    default:
+                        throw error("Expected a ',' or '}'");
+                    }
+                } else {
+                    ((List<Object>) containers[top]).add(value);
+                    c = nextClean();
+                    switch (c) {
+                    case ';':
+                    case ',':
+                        c = nextClean();
+                        if (c == ']') {
+                            value = pop();
+                            continue;
+                        }
+                        back();
+                        if (c != ',')
+                            continue parsing;
+                        value = null;
+                        continue;
+                    case ']':
+                    case ')':
+                        if (closers[top] != c) {
+                            throw error("Expected a '" + closers[top] + "'");
+                        }
+                        value = pop();
+                        continue;
+                    default:
+                        throw error("Expected a ',' or ']'");
+                    }
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the next value like {@link #nextValue()}, but accepts nothing but
+     * RFC 8259 JSON followed by whitespace up to the end of input. When build
+     * is false, only checks the syntax and returns <code>null</code>.
+     */
+    Object nextStrictValue(boolean build) throws JSON.SyntaxError, IOException {
+        Object value = strictValue(readClean(), build);
+        if (readClean() != -1)
+            throw error("Unexpected text after JSON value");
+        return value;
+    }
+    
+    /**
+     * Reads a standard JSON value starting with the given character, leaving
+     * the input right after it.
+     */
+    @SuppressWarnings("unchecked")
+    Object strictValue(int c, boolean build) throws JSON.SyntaxError, IOException {
+        int base = depth;
+        Object value;
+        parsing: for (;; c = readClean()) {
+            switch (c) {
+            case '"':
+                value = strictString(build);
+                break;
+            case '{':
+                push(build ? new HashMap<Object, Object>() : null, '}');
+                c = readClean();
+                if (c == '}') {
+                    value = pop();
+                    break;
+                }
+                strictKey(c, build);
+                continue parsing;
+            case '[':
+                push(build ? new ArrayList<Object>() : null, ']');
+                if (peekClean() == ']') {
+                    read();
+                    value = pop();
+                    break;
+                }
+                continue parsing;
+            case 't':
+                expectWord("true");
+                value = Boolean.TRUE;
+                break;
+            case 'f':
+                expectWord("false");
+                value = Boolean.FALSE;
+                break;
+            case 'n':
+                expectWord("null");
+                value = null;
+                break;
+            case -1:
+                throw error(depth == 0 ? "JSON is empty" : "Unexpected end of JSON");
+            default:
+                if (c != '-' && (c < '0' || c > '9'))
+                    throw error("Unexpected character '" + (char) c + "'");
+                value = strictNumber(c, build);
+            }
+            
+            // add the value to its container, closing the containers that end here
+            for (;;) {
+                count(value);
+                if (depth == base)
+                    return value;
+                int top = depth - 1;
+                c = readClean();
+                if (closers[top] == '}') {
+                    if (build) {
+                        Map<Object, Object> map = (Map<Object, Object>) containers[top];
+                        map.put(keys[top], value);
+                        if (map.size() > maxKeys)
+                            throw error("Object has more than " + maxKeys + " keys");
+                    }
+                    if (c == ',') {
+                        strictKey(readClean(), build);
+                        continue parsing;
+                    } else if (c == '}') {
+                        value = pop();
+                    } else {
+                        throw error("Expected a ',' or '}'");
+                    }
+                } else {
+                    if (build)
+                        ((List<Object>) containers[top]).add(value);
+                    if (c == ',')
+                        continue parsing;
+                    else if (c == ']')
+                        value = pop();
+                    else
+                        throw error("Expected a ',' or ']'");
+                }
+            }
+        }
+    }
+    
+    /*
+     * The strict scanner reads the buffer directly, without the lenient
+     * lookahead of next() and back(), and reports the end of input as -1
+     * rather than treating a 0 char as the end.
+     */
+    
+    int read() throws IOException, JSON.SyntaxError {
+        if (position == limit && !fill())
+            return -1;
+        index++;
+        return buffer[position++];
+    }
+    
+    int readClean() throws IOException, JSON.SyntaxError {
+        for (;;) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
         }
-        return parseJsonWord(s);
     }
     
-    private String accumulateUnquotedText(char c) throws IOException {
+    private int peek() throws IOException, JSON.SyntaxError {
+        if (position == limit && !fill())
+            return -1;
+        return buffer[position];
+    }
+    
+    int peekClean() throws IOException, JSON.SyntaxError {
+        for (;;) {
+            int c = peek();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t')
+                return c;
+            read();
+        }
+    }
+    
+    void expectWord(String word) throws IOException, JSON.SyntaxError {
+        for (int i = 1; i < word.length(); i++)
+            if (read() != word.charAt(i))
+                throw error("Invalid literal, expected " + word);
+    }
+    
+    private void strictKey(int c, boolean build) throws IOException, JSON.SyntaxError {
+        if (c != '"')
+            throw error("A JSON object key must be a string");
+        String key = strictString(build);
+        if (build) {
+            keys[depth - 1] = key;
+            strings++;
+        }
+        if (readClean() != ':')
+            throw error("Expected a ':' after a key");
+    }
+    
+    private String strictString(boolean build) throws IOException, JSON.SyntaxError {
+        // fast path: the rest of the string is in the buffer and has no escapes
+        int end = position;
+        char c = 0;
+        while (end < limit && (c = buffer[end]) != '"' && c != '\\' && c >= ' ')
+            end++;
+        if (end < limit && c == '"') {
+            if (end - position > maxStringLength)
+                throw error("String is longer than " + maxStringLength + " characters");
+            String result = (build ? new String(buffer, position, end - position) : null);
+            index += end + 1 - position;
+            position = end + 1;
+            return result;
+        }
+        strictEscapedString(build);
+        return (build ? text.toString() : null);
+    }
+    
+    /**
+     * Reads a standard JSON string or number starting with the given
+     * character into the text buffer and returns the buffer, which stays
+     * valid until the next string or number is read. Lets the caller look at
+     * the text without allocating a <code>String</code>.
+     */
+    CharSequence strictText(int c) throws IOException, JSON.SyntaxError {
+        StringBuilder sb = text;
+        if (c != '"') {
+            strictNumber(c, false);
+            return sb;
+        }
+        int end = position;
+        char ch = 0;
+        while (end < limit && (ch = buffer[end]) != '"' && ch != '\\' && ch >= ' ')
+            end++;
+        if (end < limit && ch == '"' && end - position <= maxStringLength) {
+            sb.setLength(0);
+            sb.append(buffer, position, end - position);
+            index += end + 1 - position;
+            position = end + 1;
+            return sb;
+        }
+        strictEscapedString(true);
+        return sb;
+    }
+    
+    /** Reads the rest of a string into the text buffer (if build is true). */
+    private void strictEscapedString(boolean build) throws IOException, JSON.SyntaxError {
+        StringBuilder sb = text;
+        sb.setLength(0);
+        for (int length = 0;; length++) {
+            if (length > maxStringLength)
+                throw error("String is longer than " + maxStringLength + " characters");
+            int ch = read();
+            if (ch == '"')
+                return;
+            if (ch < ' ')
+                throw error(ch < 0 ? "Unterminated string" : "Unescaped control character");
+            if (ch == '\\') {
+                ch = read();
+                switch (ch) {
+                case '"':
+                case '\\':
+                case '/':
+                    break;
+                case 'b':
+                    ch = '\b';
+                    break;
+                case 't':
+                    ch = '\t';
+                    break;
+                case 'n':
+                    ch = '\n';
+                    break;
+                case 'f':
+                    ch = '\f';
+                    break;
+                case 'r':
+                    ch = '\r';
+                    break;
+                case 'u':
+                    ch = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0)
+                            throw error("Invalid \\u escape");
+                        ch = (ch << 4) | digit;
+                    }
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+                }
+            }
+            if (build)
+                sb.append((char) ch);
+        }
+    }
+    
+    private Number strictNumber(int c, boolean build) throws IOException, JSON.SyntaxError {
+        StringBuilder sb = text;
+        sb.setLength(0);
+        sb.append((char) c);
+        if (c == '-') {
+            c = read();
+            if (c < '0' || c > '9')
+                throw error("Invalid number");
+            sb.append((char) c);
+        }
+        if (c != '0')
+            appendDigits(sb);
+        if (peek() == '.') {
+            sb.append((char) read());
+            if (appendDigits(sb) == 0)
+                throw error("Invalid number");
+        }
+        c = peek();
+        if (c == 'e' || c == 'E') {
+            sb.append((char) read());
+            c = peek();
+            if (c == '+' || c == '-')
+                sb.append((char) read());
+            if (appendDigits(sb) == 0)
+                throw error("Invalid number");
+        }
+        return (build ? JSON.parseNumber(sb) : null);
+    }
+    
+    private int appendDigits(StringBuilder sb) throws IOException, JSON.SyntaxError {
+        int count = 0;
+        for (int c = peek(); c >= '0' && c <= '9'; c = peek()) {
+            if (sb.length() == maxNumberLength)
+                throw error("Number is longer than " + maxNumberLength + " characters");
+            sb.append((char) read());
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Checks whether the value about to be read is at one of the paths to
+     * capture as raw JSON.
+     */
+    private boolean atRawPath() {
+        paths: for (int p = 0; p < rawPaths.length; p++) {
+            String[] segments = rawPaths[p];
+            if (segments.length != depth)
+                continue;
+            for (int i = 0; i < depth; i++) {
+                if (segments[i].equals("*"))
+                    continue;
+                // the value being read at level i is the next key or the next element
+                if (closers[i] == '}' ? !segments[i].equals(keys[i])
+                        : rawIndices[p][i] != ((List<?>) containers[i]).size())
+                    continue paths;
+            }
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Skips a standard JSON value starting with the given character and
+     * returns its text.
+     */
+    private JSON.Raw nextRaw(char c) throws JSON.SyntaxError, IOException {
+        int start = index - 1;
+        strictValue(c, false);
+        return new JSON.Raw(string.substring(start, index));
+    }
+    
+    private String accumulateUnquotedText(char c) throws IOException, JSON.SyntaxError {
         String s;
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = text;
+        sb.setLength(0);
         while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0) {
+            if (sb.length() == maxStringLength)
+                throw error("Unquoted text is longer than " + maxStringLength + " characters");
             sb.append(c);
             c = next();
         }
@@ -557,21 +3074,23 @@ class JSONTokener {
          * conventions are non-standard. A JSON parser is free to accept
          * non-JSON forms as long as it accepts all correct JSON forms.
          */
-
+        
         char b = s.charAt(0);
         if ((b >= '0' && b <= '9') || b == '.' || b == '-' || b == '+') {
+            if (s.length() > maxNumberLength)
+                throw error("Number is longer than " + maxNumberLength + " characters");
             if (b == '0') {
                 if (s.length() > 2 && (s.charAt(1) == 'x' || s.charAt(1) == 'X')) {
                     try {
                         return new Integer(Integer.parseInt(s.substring(2), 16));
                     } catch (Exception e) {
-                        throw new JSON.SyntaxError("Unparsable hex integer: " + s, index);
+                        throw error("Unparsable hex integer: " + s);
                     }
-                } else {
+                } else if (s.indexOf('.') < 0 && s.indexOf('e') < 0 && s.indexOf('E') < 0) {
                     try {
                         return new Integer(Integer.parseInt(s, 8));
                     } catch (Exception e) {
-                        throw new JSON.SyntaxError("Unparsable oct integer: " + s, index);
+                        throw error("Unparsable oct integer: " + s);
                     }
                 }
             }
@@ -584,7 +3103,7 @@ class JSONTokener {
                     try {
                         return new Double(s);
                     } catch (NumberFormatException g) {
-                        throw new JSON.SyntaxError("Unparsable number: " + s, index);
+                        throw error("Unparsable number: " + s);
                     }
                 }
             }
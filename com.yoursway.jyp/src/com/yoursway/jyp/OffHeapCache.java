@@ -0,0 +1,757 @@
+package com.yoursway.jyp;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * A cache of JSON documents (as decoded by {@link JSON#decode(String)}) kept
+ * outside the Java heap, so that a large cache does not add to garbage
+ * collection pauses. Documents are stored in a compact binary layout in
+ * direct buffers of a fixed size (arenas), and {@link #get(Object)} returns
+ * read-only <code>Map</code> and <code>List</code> views that decode their
+ * elements on access. {@link JSON#encode(Object)} writes the views by copying
+ * the stored strings and numbers directly, and produces the same text as for
+ * the original document.
+ * <p>
+ * When the arenas are full, the least recently used documents are evicted
+ * until an arena has no documents left; the arena is then reset and reused,
+ * so memory is reclaimed a whole arena at a time without help from the
+ * garbage collector. Views of an evicted document stay readable until its
+ * arena is reused, and throw <code>IllegalStateException</code> after that.
+ * <p>
+ * The cache itself is thread-safe; views may be read from any thread.
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class OffHeapCache<K> {
+    
+    public static final int DEFAULT_ARENA_SIZE = 64 * 1024 * 1024;
+    
+    // value tags; strings are followed by a length and the chars or bytes, numbers and raw values
+    // by a string holding their JSON text, containers by a count and a table of offsets
+    private static final byte NULL = 0;
+    private static final byte FALSE = 1;
+    private static final byte TRUE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte DOUBLE = 5;
+    private static final byte NUMBER = 6;
+    private static final byte RAW = 7;
+    /** ASCII that needs no escaping in JSON */
+    private static final byte PLAIN = 8;
+    private static final byte ASCII = 9;
+    private static final byte UTF16 = 10;
+    private static final byte ARRAY = 11;
+    private static final byte OBJECT = 12;
+    
+    private final int arenaSize;
+    
+    private final int maxArenas;
+    
+    private final LinkedHashMap<K, Document> documents = new LinkedHashMap<K, Document>(16, 0.75f, true);
+    
+    private final List<Arena> arenas = new ArrayList<Arena>();
+    
+    private final ArrayDeque<Arena> freeArenas = new ArrayDeque<Arena>();
+    
+    private Arena current;
+    
+    private long usedBytes;
+    
+    private final Writer writer = new Writer();
+    
+    public OffHeapCache(long maxBytes) {
+        this(maxBytes, (int) Math.min(maxBytes, DEFAULT_ARENA_SIZE));
+    }
+    
+    /**
+     * Creates a cache of at most <code>maxBytes / arenaSize</code> arenas of
+     * the given size, which is also the largest document size.
+     */
+    public OffHeapCache(long maxBytes, int arenaSize) {
+        if (arenaSize <= 0 || maxBytes < arenaSize)
+            throw new IllegalArgumentException("Cannot fit an arena of " + arenaSize + " bytes into "
+                    + maxBytes + " bytes");
+        this.arenaSize = arenaSize;
+        this.maxArenas = (int) Math.min(Integer.MAX_VALUE, maxBytes / arenaSize);
+    }
+    
+    /**
+     * Stores the given document, replacing any document stored under the
+     * same key. Accepts the same values as {@link JSON#encode(Object)}, except
+     * that map keys must be strings.
+     * 
+     * @throws IllegalArgumentException
+     *             if the document contains values that cannot be stored or
+     *             does not fit into an arena
+     */
+    public synchronized void put(K key, Object document) {
+        writer.reset();
+        writer.write(document, 0);
+        int length = writer.out.position();
+        if (length > arenaSize)
+            throw new IllegalArgumentException("Document of " + length
+                    + " bytes does not fit into an arena of " + arenaSize + " bytes");
+        remove(key);
+        Document stored = allocate(length);
+        stored.arena.buffer.put(stored.offset, writer.out.array(), 0, length);
+        writer.release();
+        documents.put(key, stored);
+        usedBytes += length;
+    }
+    
+    /**
+     * Returns a view of the document stored under the given key:
+     * a read-only <code>Map</code> or <code>List</code>, or the value itself
+     * for a scalar document. Returns <code>null</code> if there is no such
+     * document.
+     */
+    public synchronized Object get(K key) {
+        Document document = documents.get(key);
+        return (document == null ? null : document.value(document.offset));
+    }
+    
+    public synchronized boolean containsKey(K key) {
+        return documents.containsKey(key);
+    }
+    
+    public synchronized void remove(K key) {
+        Document document = documents.remove(key);
+        if (document != null)
+            release(document);
+    }
+    
+    /**
+     * Removes all documents and drops the arenas, which makes all views
+     * unreadable.
+     */
+    public synchronized void clear() {
+        documents.clear();
+        for (Arena arena : arenas)
+            invalidate(arena);
+        arenas.clear();
+        freeArenas.clear();
+        current = null;
+        usedBytes = 0;
+    }
+    
+    /** Returns the number of documents. */
+    public synchronized int size() {
+        return documents.size();
+    }
+    
+    /** Returns the number of bytes taken by the stored documents. */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+    
+    /** Returns the number of bytes taken by the arenas allocated so far. */
+    public synchronized long reservedBytes() {
+        return (long) arenas.size() * arenaSize;
+    }
+    
+    private Document allocate(int length) {
+        while (current == null || current.top + length > arenaSize) {
+            Arena next = freeArenas.poll();
+            if (next == null && arenas.size() < maxArenas) {
+                next = new Arena(arenaSize);
+                arenas.add(next);
+            }
+            if (next != null)
+                current = next;
+            else
+                evictEldest();
+        }
+        Document document = new Document(current, current.top, length);
+        current.top += length;
+        current.documents++;
+        return document;
+    }
+    
+    private void evictEldest() {
+        Iterator<Document> iterator = documents.values().iterator();
+        Document eldest = iterator.next();
+        iterator.remove();
+        release(eldest);
+    }
+    
+    private void release(Document document) {
+        usedBytes -= document.length;
+        Arena arena = document.arena;
+        if (--arena.documents > 0)
+            return;
+        invalidate(arena);
+        arena.top = 0;
+        if (arena != current)
+            freeArenas.add(arena);
+    }
+    
+    /**
+     * Bumps the generation of the arena before its bytes are overwritten.
+     * Together with the fence in {@link Document#check()} this is a seqlock:
+     * the fence keeps the new bytes from becoming visible before the new
+     * generation, so a reader that saw them also sees the generation change.
+     */
+    private static void invalidate(Arena arena) {
+        arena.generation++;
+        VarHandle.storeStoreFence();
+    }
+    
+    private static final class Arena {
+        
+        final ByteBuffer buffer;
+        
+        int top;
+        
+        int documents;
+        
+        /** Incremented whenever the arena is reset, which invalidates the views into it. */
+        volatile int generation;
+        
+        Arena(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+        
+    }
+    
+    /**
+     * A stored document. Reading it is optimistic: the arena generation is
+     * checked after the bytes are read, so a read that raced with the arena
+     * being reused is reported as such rather than returning garbage.
+     */
+    private static final class Document {
+        
+        final Arena arena;
+        
+        final ByteBuffer buffer;
+        
+        final int offset;
+        
+        final int length;
+        
+        final int generation;
+        
+        Document(Arena arena, int offset, int length) {
+            this.arena = arena;
+            this.buffer = arena.buffer;
+            this.offset = offset;
+            this.length = length;
+            this.generation = arena.generation;
+        }
+        
+        void check() {
+            VarHandle.loadLoadFence();
+            if (arena.generation != generation)
+                throw new IllegalStateException("The document has been evicted from the cache");
+        }
+        
+        /** Returns the given failure, or the eviction if the read raced with one. */
+        RuntimeException failed(RuntimeException e) {
+            check();
+            return e;
+        }
+        
+        Object value(int position) {
+            switch (buffer.get(position)) {
+            case NULL:
+                return null;
+            case FALSE:
+                return Boolean.FALSE;
+            case TRUE:
+                return Boolean.TRUE;
+            case INT:
+                return buffer.getInt(position + 1);
+            case LONG:
+                return buffer.getLong(position + 1);
+            case DOUBLE:
+                return buffer.getDouble(position + 1);
+            case NUMBER:
+                return JSON.parseNumber(string(position + 1));
+            case RAW:
+                return new JSON.Raw(string(position + 1));
+            case PLAIN:
+            case ASCII:
+            case UTF16:
+                return string(position);
+            case ARRAY:
+                return new ListView(this, position);
+            case OBJECT:
+                return new MapView(this, position);
+            default:
+                check();
+                throw new IllegalStateException("Corrupt document");
+            }
+        }
+        
+        /**
+         * Reads the length of the string, array or object at the given
+         * position, checking that it fits into the document, so that a read
+         * racing with the arena being reused never allocates or loops over a
+         * garbage length.
+         */
+        private int length(int position) {
+            int width;
+            switch (buffer.get(position)) {
+            case UTF16:
+                width = 2;
+                break;
+            case ARRAY:
+                width = 4;
+                break;
+            case OBJECT:
+                width = 8;
+                break;
+            default:
+                width = 1;
+            }
+            int length = buffer.getInt(position + 1);
+            if (length < 0 || position + 5 + (long) width * length > offset + this.length) {
+                check();
+                throw new IllegalStateException("Corrupt document");
+            }
+            return length;
+        }
+        
+        String string(int position) {
+            int length = length(position);
+            if (buffer.get(position) == UTF16) {
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++)
+                    chars[i] = buffer.getChar(position + 5 + 2 * i);
+                return new String(chars);
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(position + 5, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        
+        /** Compares the string at the given position with the given one, char by char. */
+        int compare(int position, String key) {
+            int length = length(position), n = Math.min(length, key.length());
+            boolean utf16 = (buffer.get(position) == UTF16);
+            for (int i = 0; i < n; i++) {
+                char c = (utf16 ? buffer.getChar(position + 5 + 2 * i) : (char) buffer.get(position + 5 + i));
+                if (c != key.charAt(i))
+                    return c - key.charAt(i);
+            }
+            return length - key.length();
+        }
+        
+        int count(int position) {
+            return length(position);
+        }
+        
+        /** Returns the position of the given element of an array. */
+        int element(int position, int index) {
+            return offset + buffer.getInt(position + 5 + 4 * index);
+        }
+        
+        /** Returns the position of the given key of an object; its value follows in the table. */
+        int key(int position, int index) {
+            return offset + buffer.getInt(position + 5 + 8 * index);
+        }
+        
+        int member(int position, int index) {
+            return offset + buffer.getInt(position + 9 + 8 * index);
+        }
+        
+        void encode(int position, Appendable result, int maxDepth) throws IOException {
+            byte tag = buffer.get(position);
+            switch (tag) {
+            case NULL:
+                result.append("null");
+                break;
+            case FALSE:
+                result.append("false");
+                break;
+            case TRUE:
+                result.append("true");
+                break;
+            case INT:
+                result.append(Integer.toString(buffer.getInt(position + 1)));
+                break;
+            case LONG:
+                result.append(Long.toString(buffer.getLong(position + 1)));
+                break;
+            case DOUBLE:
+                JSON.encodeScalar(buffer.getDouble(position + 1), result);
+                break;
+            case NUMBER:
+            case RAW:
+                copy(position + 1, result);
+                break;
+            case PLAIN:
+                result.append('"');
+                copy(position, result);
+                result.append('"');
+                break;
+            case ASCII:
+            case UTF16:
+                JSON.encodeScalar(string(position), result);
+                break;
+            case ARRAY:
+            case OBJECT:
+                if (maxDepth == 0)
+                    throw new IllegalArgumentException("Maximum nesting depth exceeded");
+                result.append(tag == ARRAY ? '[' : '{');
+                for (int i = 0, count = count(position); i < count; i++) {
+                    if (i > 0)
+                        result.append(',');
+                    if (tag == ARRAY) {
+                        encode(element(position, i), result, maxDepth - 1);
+                    } else {
+                        encode(key(position, i), result, maxDepth - 1);
+                        result.append(':');
+                        encode(member(position, i), result, maxDepth - 1);
+                    }
+                }
+                result.append(tag == ARRAY ? ']' : '}');
+                break;
+            default:
+                check();
+                throw new IllegalStateException("Corrupt document");
+            }
+        }
+        
+        /** Appends the chars of the string at the given position as they are. */
+        private void copy(int position, Appendable result) throws IOException {
+            int length = length(position);
+            if (buffer.get(position) == UTF16) {
+                for (int i = 0; i < length; i++)
+                    result.append(buffer.getChar(position + 5 + 2 * i));
+            } else {
+                for (int i = 0; i < length; i++)
+                    result.append((char) buffer.get(position + 5 + i));
+            }
+        }
+        
+    }
+    
+    private static final class ListView extends AbstractList<Object> implements RandomAccess,
+            JSON.Encodable {
+        
+        private final Document document;
+        
+        private final int position;
+        
+        private final int size;
+        
+        ListView(Document document, int position) {
+            this.document = document;
+            this.position = position;
+            this.size = document.count(position);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+            try {
+                Object value = document.value(document.element(position, index));
+                document.check();
+                return value;
+            } catch (RuntimeException e) {
+                throw document.failed(e);
+            }
+        }
+        
+        public void encode(Appendable result, int maxDepth) throws IOException {
+            try {
+                document.encode(position, result, maxDepth);
+                document.check();
+            } catch (RuntimeException e) {
+                throw document.failed(e);
+            }
+        }
+        
+    }
+    
+    private static final class MapView extends AbstractMap<String, Object> implements JSON.Encodable {
+        
+        private final Document document;
+        
+        private final int position;
+        
+        private final int size;
+        
+        MapView(Document document, int position) {
+            this.document = document;
+            this.position = position;
+            this.size = document.count(position);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        /** Returns the index of the given key in the sorted key table, or -1. */
+        private int indexOf(Object key) {
+            if (!(key instanceof String))
+                return -1;
+            int low = 0, high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int comparison = document.compare(document.key(position, middle), (String) key);
+                if (comparison < 0)
+                    low = middle + 1;
+                else if (comparison > 0)
+                    high = middle - 1;
+                else
+                    return middle;
+            }
+            return -1;
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            try {
+                boolean found = indexOf(key) >= 0;
+                document.check();
+                return found;
+            } catch (RuntimeException e) {
+                throw document.failed(e);
+            }
+        }
+        
+        @Override
+        public Object get(Object key) {
+            try {
+                int index = indexOf(key);
+                Object value = (index < 0 ? null : document.value(document.member(position, index)));
+                document.check();
+                return value;
+            } catch (RuntimeException e) {
+                throw document.failed(e);
+            }
+        }
+        
+        @Override
+        public Set<Map.Entry<String, Object>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Object>>() {
+                
+                @Override
+                public int size() {
+                    return size;
+                }
+                
+                @Override
+                public Iterator<Map.Entry<String, Object>> iterator() {
+                    return new Iterator<Map.Entry<String, Object>>() {
+                        
+                        private int index;
+                        
+                        public boolean hasNext() {
+                            return index < size;
+                        }
+                        
+                        public Map.Entry<String, Object> next() {
+                            if (index >= size)
+                                throw new NoSuchElementException();
+                            try {
+                                Map.Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(
+                                        document.string(document.key(position, index)), document
+                                                .value(document.member(position, index)));
+                                document.check();
+                                index++;
+                                return entry;
+                            } catch (RuntimeException e) {
+                                throw document.failed(e);
+                            }
+                        }
+                        
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                        
+                    };
+                }
+                
+            };
+        }
+        
+        public void encode(Appendable result, int maxDepth) throws IOException {
+            try {
+                document.encode(position, result, maxDepth);
+                document.check();
+            } catch (RuntimeException e) {
+                throw document.failed(e);
+            }
+        }
+        
+    }
+    
+    private static final Comparator<Map.Entry<String, Object>> KEY_COMPARATOR =
+        new Comparator<Map.Entry<String, Object>>() {
+            
+            public int compare(Map.Entry<String, Object> o1, Map.Entry<String, Object> o2) {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+            
+        };
+    
+    /**
+     * Lays a document out into a heap buffer, which is then copied into an
+     * arena in one go. Offsets are relative to the start of the document.
+     */
+    private static final class Writer {
+        
+        private static final int INITIAL_SIZE = 4096;
+        
+        ByteBuffer out = ByteBuffer.allocate(INITIAL_SIZE);
+        
+        void reset() {
+            out.clear();
+        }
+        
+        /** Drops a buffer that grew large while laying out a huge document. */
+        void release() {
+            if (out.capacity() > JSON.MAX_RETAINED_BUFFER)
+                out = ByteBuffer.allocate(INITIAL_SIZE);
+        }
+        
+        private void ensure(int bytes) {
+            if (out.remaining() >= bytes)
+                return;
+            long capacity = Math.max(out.capacity() * 2L, (long) out.position() + bytes);
+            if (capacity > Integer.MAX_VALUE)
+                throw new IllegalArgumentException("Document is too large");
+            ByteBuffer larger = ByteBuffer.allocate((int) capacity);
+            out.flip();
+            larger.put(out);
+            out = larger;
+        }
+        
+        void write(Object value, int depth) {
+            ensure(9);
+            if (value == null) {
+                out.put(NULL);
+            } else if (value instanceof Boolean) {
+                out.put(((Boolean) value) ? TRUE : FALSE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                out.put(INT).putInt(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                out.put(LONG).putLong((Long) value);
+            } else if (value instanceof Double && Double.isFinite((Double) value)) {
+                out.put(DOUBLE).putDouble((Double) value);
+            } else if (value instanceof Number) {
+                StringBuilder text = new StringBuilder();
+                try {
+                    JSON.encodeScalar(value, text);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+                out.put(NUMBER);
+                writeString(text);
+            } else if (value instanceof JSON.Raw) {
+                out.put(RAW);
+                writeString(((JSON.Raw) value).json);
+            } else if (value instanceof CharSequence) {
+                writeString((CharSequence) value);
+            } else if (value instanceof Character) {
+                writeString(value.toString());
+            } else if (value instanceof Map<?, ?>) {
+                writeObject((Map<?, ?>) value, depth + 1);
+            } else if (value instanceof Iterable<?>) {
+                List<Object> elements = new ArrayList<Object>();
+                for (Object element : (Iterable<?>) value)
+                    elements.add(element);
+                writeArray(elements, depth + 1);
+            } else if (value.getClass().isArray()) {
+                writeArray(Arrays.asList((Object[]) value), depth + 1);
+            } else {
+                throw new IllegalArgumentException("Cannot store complex types: "
+                        + value.getClass().getName());
+            }
+        }
+        
+        private void checkDepth(int depth) {
+            if (depth > JSON.DEFAULT_MAX_DEPTH)
+                throw new IllegalArgumentException("Maximum nesting depth of " + JSON.DEFAULT_MAX_DEPTH
+                        + " exceeded");
+        }
+        
+        private void writeArray(List<?> elements, int depth) {
+            checkDepth(depth);
+            int start = out.position(), count = elements.size();
+            ensure(5 + 4 * count);
+            out.put(ARRAY).putInt(count);
+            out.position(out.position() + 4 * count);
+            for (int i = 0; i < count; i++) {
+                out.putInt(start + 5 + 4 * i, out.position());
+                write(elements.get(i), depth);
+            }
+        }
+        
+        private void writeObject(Map<?, ?> map, int depth) {
+            checkDepth(depth);
+            List<Map.Entry<String, Object>> entries = new ArrayList<Map.Entry<String, Object>>(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                if (!(entry.getKey() instanceof CharSequence))
+                    throw new IllegalArgumentException("Cannot store non-string key " + entry.getKey());
+                entries.add(new AbstractMap.SimpleImmutableEntry<String, Object>(entry.getKey().toString(),
+                        entry.getValue()));
+            }
+            Collections.sort(entries, KEY_COMPARATOR);
+            int start = out.position(), count = entries.size();
+            ensure(5 + 8 * count);
+            out.put(OBJECT).putInt(count);
+            out.position(out.position() + 8 * count);
+            for (int i = 0; i < count; i++) {
+                out.putInt(start + 5 + 8 * i, out.position());
+                writeString(entries.get(i).getKey());
+                out.putInt(start + 9 + 8 * i, out.position());
+                write(entries.get(i).getValue(), depth);
+            }
+        }
+        
+        private void writeString(CharSequence string) {
+            int length = string.length();
+            boolean ascii = true, plain = true;
+            char previous = 0;
+            for (int i = 0; i < length && ascii; i++) {
+                char c = string.charAt(i);
+                if (c >= 0x80)
+                    ascii = false;
+                else if (c < ' ' || c == '"' || c == '\\' || (c == '/' && previous == '<'))
+                    plain = false;
+                previous = c;
+            }
+            if (!ascii) {
+                ensure(5 + 2 * length);
+                out.put(UTF16).putInt(length);
+                for (int i = 0; i < length; i++)
+                    out.putChar(string.charAt(i));
+                return;
+            }
+            ensure(5 + length);
+            out.put(plain ? PLAIN : ASCII).putInt(length);
+            for (int i = 0; i < length; i++)
+                out.put((byte) string.charAt(i));
+        }
+        
+    }
+    
+}
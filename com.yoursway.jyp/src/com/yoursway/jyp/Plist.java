@@ -0,0 +1,1246 @@
+package com.yoursway.jyp;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+/**
+ * Reads and writes binary property lists (<code>bplist00</code>), using the
+ * same data model as the JSON class, plus <code>byte[]</code> for plist data
+ * and <code>Date</code> for plist dates. Sets are read as lists, UIDs as
+ * integers.
+ * 
+ * A binary plist ends with a table of object offsets, so any object can be
+ * read without looking at the others. {@link #decode(byte[])} builds the whole
+ * tree at once, while {@link #map(Path)} and {@link #decodeLazily(ByteBuffer)}
+ * return read-only views which decode objects only when they are accessed.
+ * 
+ * The writer stores each distinct string, number, date and data value once, no
+ * matter how many times it occurs in the tree.
+ * 
+ * XML property lists are handled by {@link #decodeXML(Reader)} and
+ * {@link #encodeXML(Object, Writer)}, which stream the document through StAX.
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class Plist {
+    
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    
+    public static class SyntaxError extends Exception {
+        private static final long serialVersionUID = 1L;
+        
+        public SyntaxError(String s, long byteIndex) {
+            super(s + " on byte " + byteIndex);
+        }
+        
+        public SyntaxError(String s, int line, int column) {
+            super(s + " on line " + line + ", column " + column);
+        }
+        
+        SyntaxError(XMLStreamException cause) {
+            super(cause.getMessage(), cause);
+        }
+        
+    }
+    
+    private static final byte[] MAGIC = "bplist00".getBytes(StandardCharsets.US_ASCII);
+    
+    private static final int TRAILER_SIZE = 32;
+    
+    /** How many times larger than its input an eagerly decoded binary plist may get. */
+    private static final long MAX_EXPANSION = 64;
+    
+    private static final int NULL = 0x00;
+    private static final int FALSE = 0x08;
+    private static final int TRUE = 0x09;
+    private static final int INT = 0x1;
+    private static final int REAL = 0x2;
+    private static final int DATE = 0x33;
+    private static final int DATA = 0x4;
+    private static final int ASCII = 0x5;
+    private static final int UTF16 = 0x6;
+    private static final int UID = 0x8;
+    private static final int ARRAY = 0xA;
+    private static final int SET = 0xC;
+    private static final int DICT = 0xD;
+    
+    /** Plist dates count seconds from 2001-01-01 00:00:00 UTC. */
+    private static final long EPOCH_MILLIS = 978307200000L;
+    
+    private static final BigInteger MIN_INT128 = BigInteger.ONE.shiftLeft(127).negate();
+    private static final BigInteger MAX_INT128 = BigInteger.ONE.shiftLeft(127).subtract(BigInteger.ONE);
+    
+    public static byte[] encode(Object value) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            encode(value, result);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result.toByteArray();
+    }
+    
+    public static void encode(Object value, OutputStream output) throws IOException {
+        PlistWriter writer = new PlistWriter();
+        writer.add(value, 0);
+        writer.write(output);
+    }
+    
+    public static Object decode(byte[] data) throws SyntaxError {
+        return decode(data, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decode(byte[] data, int maxDepth) throws SyntaxError {
+        return new PlistReader(ByteBuffer.wrap(data), false, maxDepth).root();
+    }
+    
+    /**
+     * Returns the top object of the given binary plist, with dictionaries and
+     * arrays represented by read-only views that decode their items on first
+     * access. Each object is decoded at most once, so repeated lookups are
+     * cheap. The views read from the given buffer, so it must not change while
+     * they are in use, and, like the rest of the decoded model, they should not
+     * be shared between threads without synchronization.
+     * 
+     * Only the trailer is validated upfront; if an object turns out to be
+     * malformed when it is accessed, an <code>IllegalStateException</code>
+     * with a <code>SyntaxError</code> cause is thrown.
+     */
+    public static Object decodeLazily(ByteBuffer data) throws SyntaxError {
+        return new PlistReader(data.slice(), true, DEFAULT_MAX_DEPTH).root();
+    }
+    
+    /**
+     * Memory-maps the given binary plist file and returns its top object as
+     * described in {@link #decodeLazily(ByteBuffer)}, so only the pages holding
+     * the objects you access are ever read from disk.
+     */
+    public static Object map(Path file) throws SyntaxError, IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return decodeLazily(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            channel.close();
+        }
+    }
+    
+    public static String encodeXML(Object value) {
+        StringWriter result = new StringWriter();
+        try {
+            encodeXML(value, result);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result.toString();
+    }
+    
+    /**
+     * Writes the given value as an XML property list in UTF-8. XML plists have
+     * no null, so <code>null</code> dictionary values are left out, and
+     * <code>null</code>s anywhere else are rejected. Dates are written with
+     * a precision of one second, as other plist readers expect.
+     */
+    public static void encodeXML(Object value, OutputStream output) throws IOException {
+        try {
+            XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(output, "UTF-8");
+            new XMLPlistWriter(writer).writeDocument(value);
+        } catch (XMLStreamException e) {
+            throw ioException(e);
+        }
+    }
+    
+    public static void encodeXML(Object value, Writer output) throws IOException {
+        try {
+            new XMLPlistWriter(XML_OUTPUT_FACTORY.createXMLStreamWriter(output)).writeDocument(value);
+        } catch (XMLStreamException e) {
+            throw ioException(e);
+        }
+    }
+    
+    public static Object decodeXML(String xml) throws SyntaxError {
+        try {
+            return decodeXML(new StringReader(xml));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    /**
+     * Reads an XML property list, producing the same kind of maps and lists as
+     * {@link JSON#decode(String)}. The document is streamed, so memory use is
+     * proportional to the decoded result rather than to the document, and
+     * <code>&lt;data&gt;</code> is base64-decoded straight into the resulting
+     * <code>byte[]</code>.
+     */
+    public static Object decodeXML(InputStream input) throws SyntaxError, IOException {
+        return decodeXML(input, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decodeXML(InputStream input, int maxDepth) throws SyntaxError, IOException {
+        XMLStreamReader reader;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+        } catch (XMLStreamException e) {
+            throw new SyntaxError(e);
+        }
+        return new XMLPlistReader(reader, maxDepth).readDocument();
+    }
+    
+    public static Object decodeXML(Reader input) throws SyntaxError, IOException {
+        return decodeXML(input, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decodeXML(Reader input, int maxDepth) throws SyntaxError, IOException {
+        XMLStreamReader reader;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(input);
+        } catch (XMLStreamException e) {
+            throw new SyntaxError(e);
+        }
+        return new XMLPlistReader(reader, maxDepth).readDocument();
+    }
+    
+    private static IOException ioException(XMLStreamException e) {
+        if (e.getNestedException() instanceof IOException)
+            return (IOException) e.getNestedException();
+        return new IOException(e.getMessage(), e);
+    }
+    
+    
+    static final class PlistReader {
+        
+        private final ByteBuffer data;
+        
+        private final boolean lazy;
+        
+        private final int maxDepth;
+        
+        private final int offsetSize;
+        
+        private final int refSize;
+        
+        private final int objectCount;
+        
+        private final int topObject;
+        
+        /** Where the offset table starts, which is also where objects end. */
+        private final int offsetTable;
+        
+        /**
+         * Objects decoded so far, by reference. In eager mode containers are
+         * not cached, so that the caller gets a separate copy of each.
+         */
+        private final Object[] objects;
+        
+        /**
+         * How many more references and data bytes eager decoding may copy.
+         * Copying containers per reference means that a plist whose arrays
+         * each reference the previous one twice expands exponentially, so
+         * the copies are limited to a multiple of the input size.
+         */
+        private long budget;
+        
+        PlistReader(ByteBuffer data, boolean lazy, int maxDepth) throws SyntaxError {
+            this.data = data;
+            this.lazy = lazy;
+            this.maxDepth = maxDepth;
+            int length = data.limit();
+            if (length < MAGIC.length + 1 + TRAILER_SIZE)
+                throw new SyntaxError("Binary plist is too short", length);
+            for (int i = 0; i < MAGIC.length; i++)
+                if (data.get(i) != MAGIC[i])
+                    throw new SyntaxError("Not a bplist00 binary plist", i);
+            int trailer = length - TRAILER_SIZE;
+            offsetSize = data.get(trailer + 6) & 0xFF;
+            refSize = data.get(trailer + 7) & 0xFF;
+            long count = data.getLong(trailer + 8);
+            long top = data.getLong(trailer + 16);
+            long table = data.getLong(trailer + 24);
+            if (offsetSize < 1 || offsetSize > 8 || refSize < 1 || refSize > 8)
+                throw new SyntaxError("Invalid offset or reference size", trailer + 6);
+            if (count < 1 || table < MAGIC.length + 1 || table > trailer
+                    || count > (trailer - table) / offsetSize)
+                throw new SyntaxError("Invalid offset table", trailer + 8);
+            if (top < 0 || top >= count)
+                throw new SyntaxError("Invalid top object " + top, trailer + 16);
+            objectCount = (int) count;
+            topObject = (int) top;
+            offsetTable = (int) table;
+            objects = new Object[objectCount];
+            budget = MAX_EXPANSION * length;
+        }
+        
+        Object root() throws SyntaxError {
+            return object(topObject, 0);
+        }
+        
+        private SyntaxError error(String message, long position) {
+            return new SyntaxError(message, position);
+        }
+        
+        private long readUnsigned(int position, int size) {
+            long result = 0;
+            for (int i = 0; i < size; i++)
+                result = (result << 8) | (data.get(position + i) & 0xFF);
+            return result;
+        }
+        
+        private void require(int position, long length) throws SyntaxError {
+            if (length < 0 || length > offsetTable - position)
+                throw error("Object extends past the end of the object area", position);
+        }
+        
+        private int offsetOf(int ref) throws SyntaxError {
+            long offset = readUnsigned(offsetTable + ref * offsetSize, offsetSize);
+            if (offset < MAGIC.length || offset >= offsetTable)
+                throw error("Invalid offset of object " + ref, offsetTable + ref * offsetSize);
+            return (int) offset;
+        }
+        
+        int ref(int position) throws SyntaxError {
+            long ref = readUnsigned(position, refSize);
+            if (ref < 0 || ref >= objectCount)
+                throw error("Invalid object reference " + ref, position);
+            return (int) ref;
+        }
+        
+        /** The number of items, bytes or characters in the object at the given offset. */
+        private int count(int offset) throws SyntaxError {
+            int info = data.get(offset) & 0x0F;
+            if (info != 0x0F)
+                return info;
+            require(offset, 2);
+            int marker = data.get(offset + 1) & 0xFF;
+            int size = 1 << (marker & 0x0F);
+            if ((marker >> 4) != INT || size > 8)
+                throw error("Invalid object count", offset + 1);
+            require(offset + 2, size);
+            long count = readUnsigned(offset + 2, size);
+            if (count < 0 || count > Integer.MAX_VALUE)
+                throw error("Object count too large", offset + 1);
+            return (int) count;
+        }
+        
+        /** The size of the marker and count preceding the contents of the object. */
+        private int headerSize(int offset) {
+            if ((data.get(offset) & 0x0F) != 0x0F)
+                return 1;
+            return 2 + (1 << (data.get(offset + 1) & 0x0F));
+        }
+        
+        Object object(int ref, int depth) throws SyntaxError {
+            Object result = objects[ref];
+            if (result != null)
+                return result;
+            int offset = offsetOf(ref);
+            int type = (data.get(offset) & 0xFF) >> 4;
+            if (type == ARRAY || type == SET || type == DICT) {
+                if (lazy) {
+                    result = (type == DICT ? new LazyMap(this, offset) : new LazyList(this, offset));
+                    objects[ref] = result;
+                    return result;
+                }
+                if (depth == maxDepth)
+                    throw error("Maximum nesting depth of " + maxDepth + " exceeded", offset);
+                return (type == DICT ? readDict(offset, depth) : readArray(offset, depth));
+            }
+            result = readScalar(offset);
+            if (!(result instanceof byte[])) // mutable, so every occurrence gets its own copy
+                objects[ref] = result;
+            else if (!lazy)
+                spend(((byte[]) result).length, offset);
+            return result;
+        }
+        
+        /** Reads the object referenced at the given position, for the lazy views. */
+        Object referencedObject(int position) {
+            try {
+                return object(ref(position), 0);
+            } catch (SyntaxError e) {
+                throw new IllegalStateException("Malformed binary plist", e);
+            }
+        }
+        
+        private List<Object> readArray(int offset, int depth) throws SyntaxError {
+            int count = count(offset);
+            int refs = offset + headerSize(offset);
+            require(refs, (long) count * refSize);
+            spend(count, offset);
+            List<Object> list = new ArrayList<Object>(count);
+            for (int i = 0; i < count; i++)
+                list.add(object(ref(refs + i * refSize), depth + 1));
+            return list;
+        }
+        
+        private Map<Object, Object> readDict(int offset, int depth) throws SyntaxError {
+            int count = count(offset);
+            int keys = offset + headerSize(offset);
+            require(keys, 2L * count * refSize);
+            spend(2L * count, offset);
+            int values = keys + count * refSize;
+            Map<Object, Object> map = new HashMap<Object, Object>(count * 4 / 3 + 1);
+            for (int i = 0; i < count; i++) {
+                Object key = object(ref(keys + i * refSize), depth + 1);
+                map.put(key, object(ref(values + i * refSize), depth + 1));
+            }
+            return map;
+        }
+        
+        private void spend(long amount, int offset) throws SyntaxError {
+            budget -= amount;
+            if (budget < 0)
+                throw error("Binary plist expands to more than " + MAX_EXPANSION
+                        + " times its size, too many shared references", offset);
+        }
+        
+        private Object readScalar(int offset) throws SyntaxError {
+            int marker = data.get(offset) & 0xFF;
+            int type = marker >> 4;
+            switch (type) {
+            case 0:
+                if (marker == NULL)
+                    return null;
+                if (marker == FALSE)
+                    return Boolean.FALSE;
+                if (marker == TRUE)
+                    return Boolean.TRUE;
+                break;
+            case INT: {
+                int size = 1 << (marker & 0x0F);
+                require(offset + 1, size);
+                if (size < 8)
+                    return normalize(readUnsigned(offset + 1, size));
+                if (size == 8)
+                    return normalize(data.getLong(offset + 1));
+                if (size == 16)
+                    return normalize(new BigInteger(bytes(offset + 1, 16)));
+                break;
+            }
+            case REAL:
+                if (marker == (REAL << 4 | 2)) {
+                    require(offset + 1, 4);
+                    return (double) data.getFloat(offset + 1);
+                }
+                if (marker == (REAL << 4 | 3)) {
+                    require(offset + 1, 8);
+                    return data.getDouble(offset + 1);
+                }
+                break;
+            case 3:
+                if (marker == DATE) {
+                    require(offset + 1, 8);
+                    return new Date(EPOCH_MILLIS + Math.round(data.getDouble(offset + 1) * 1000));
+                }
+                break;
+            case DATA: {
+                int count = count(offset);
+                int start = offset + headerSize(offset);
+                require(start, count);
+                return bytes(start, count);
+            }
+            case ASCII: {
+                int count = count(offset);
+                int start = offset + headerSize(offset);
+                require(start, count);
+                return string(start, count, StandardCharsets.US_ASCII);
+            }
+            case UTF16: {
+                int count = count(offset);
+                int start = offset + headerSize(offset);
+                require(start, 2L * count);
+                return string(start, 2 * count, StandardCharsets.UTF_16BE);
+            }
+            case UID: {
+                int size = (marker & 0x0F) + 1;
+                require(offset + 1, size);
+                return normalize(readUnsigned(offset + 1, size));
+            }
+            }
+            throw error("Unsupported object type 0x" + Integer.toHexString(marker), offset);
+        }
+        
+        private byte[] bytes(int position, int length) {
+            byte[] result = new byte[length];
+            data.get(position, result);
+            return result;
+        }
+        
+        private String string(int position, int length, Charset charset) {
+            if (data.hasArray())
+                return new String(data.array(), data.arrayOffset() + position, length, charset);
+            return new String(bytes(position, length), charset);
+        }
+        
+        private static Object normalize(long value) {
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+                return (int) value;
+            return value;
+        }
+        
+        private static Object normalize(BigInteger value) {
+            if (value.bitLength() < 64)
+                return normalize(value.longValue());
+            return value;
+        }
+        
+    }
+    
+    private static final class LazyList extends AbstractList<Object> implements RandomAccess {
+        
+        private final PlistReader reader;
+        
+        private final int refs;
+        
+        private final int size;
+        
+        LazyList(PlistReader reader, int offset) throws SyntaxError {
+            this.reader = reader;
+            this.size = reader.count(offset);
+            this.refs = offset + reader.headerSize(offset);
+            reader.require(refs, (long) size * reader.refSize);
+        }
+        
+        @Override
+        public Object get(int index) {
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+            return reader.referencedObject(refs + index * reader.refSize);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+    }
+    
+    private static final class LazyMap extends AbstractMap<Object, Object> {
+        
+        private final PlistReader reader;
+        
+        private final int keys;
+        
+        private final int values;
+        
+        private final int size;
+        
+        /** Maps each key to its position, built on the first lookup. */
+        private Map<Object, Integer> index;
+        
+        LazyMap(PlistReader reader, int offset) throws SyntaxError {
+            this.reader = reader;
+            this.size = reader.count(offset);
+            this.keys = offset + reader.headerSize(offset);
+            reader.require(keys, 2L * size * reader.refSize);
+            this.values = keys + size * reader.refSize;
+        }
+        
+        private Object key(int i) {
+            return reader.referencedObject(keys + i * reader.refSize);
+        }
+        
+        private Object value(int i) {
+            return reader.referencedObject(values + i * reader.refSize);
+        }
+        
+        private Map<Object, Integer> index() {
+            if (index == null) {
+                Map<Object, Integer> result = new HashMap<Object, Integer>(size * 4 / 3 + 1);
+                for (int i = 0; i < size; i++)
+                    result.put(key(i), i);
+                index = result;
+            }
+            return index;
+        }
+        
+        @Override
+        public Object get(Object key) {
+            Integer i = index().get(key);
+            return (i == null ? null : value(i));
+        }
+        
+        @Override
+        public boolean containsKey(Object key) {
+            return index().containsKey(key);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Entry<Object, Object>>() {
+                
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    return new Iterator<Entry<Object, Object>>() {
+                        
+                        private int next = 0;
+                        
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+                        
+                        public Entry<Object, Object> next() {
+                            if (next >= size)
+                                throw new NoSuchElementException();
+                            int i = next++;
+                            return new SimpleImmutableEntry<Object, Object>(key(i), value(i));
+                        }
+                    };
+                }
+                
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        
+    }
+    
+    static final class PlistWriter {
+        
+        /** Objects in reference order; containers are replaced by their child references. */
+        private final List<Object> objects = new ArrayList<Object>();
+        
+        /** Marks which entries of objects are dictionaries (the rest of int[]s are arrays). */
+        private final List<Boolean> dicts = new ArrayList<Boolean>();
+        
+        /** Reference of each distinct scalar written so far, keyed by its normalized value. */
+        private final Map<Object, Integer> uniques = new HashMap<Object, Integer>();
+        
+        int add(Object value, int depth) {
+            if (depth > DEFAULT_MAX_DEPTH)
+                throw new IllegalArgumentException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH
+                        + " exceeded");
+            if (value instanceof Map<?, ?>)
+                return addDict((Map<?, ?>) value, depth);
+            if (value instanceof Iterable<?>)
+                return addArray((Iterable<?>) value, depth);
+            if (value != null && value.getClass().isArray() && !(value instanceof byte[]))
+                return addArray(Arrays.asList((Object[]) value), depth);
+            Object scalar = scalar(value);
+            Object key = (scalar instanceof byte[] ? ByteBuffer.wrap((byte[]) scalar) : scalar);
+            Integer existing = uniques.get(key);
+            if (existing != null)
+                return existing;
+            int ref = reserve(false);
+            objects.set(ref, scalar);
+            uniques.put(key, ref);
+            return ref;
+        }
+        
+        private int reserve(boolean dict) {
+            objects.add(null);
+            dicts.add(dict);
+            return objects.size() - 1;
+        }
+        
+        /**
+         * Brings numbers to the few types we distinguish when writing, so that
+         * equal values share an object no matter what type they came in.
+         */
+        private static Object scalar(Object value) {
+            if (value == null || value instanceof String || value instanceof Boolean
+                    || value instanceof Double || value instanceof Float || value instanceof Long
+                    || value instanceof Date || value instanceof byte[])
+                return value;
+            if (value instanceof CharSequence || value instanceof Character)
+                return value.toString();
+            if (value instanceof Integer || value instanceof Short || value instanceof Byte)
+                return ((Number) value).longValue();
+            if (value instanceof BigInteger) {
+                BigInteger integer = (BigInteger) value;
+                if (integer.bitLength() < 64)
+                    return integer.longValue();
+                if (integer.compareTo(MIN_INT128) < 0 || integer.compareTo(MAX_INT128) > 0)
+                    throw new IllegalArgumentException("Integer too large for a plist: " + integer);
+                return integer;
+            }
+            if (value instanceof BigDecimal || value instanceof Number)
+                return ((Number) value).doubleValue();
+            throw new IllegalArgumentException("Cannot encode complex types into plists: "
+                    + value.getClass().getName());
+        }
+        
+        private int addArray(Iterable<?> iterable, int depth) {
+            int ref = reserve(false);
+            List<Integer> items = new ArrayList<Integer>();
+            for (Object item : iterable)
+                items.add(add(item, depth + 1));
+            int[] refs = new int[items.size()];
+            for (int i = 0; i < refs.length; i++)
+                refs[i] = items.get(i);
+            objects.set(ref, refs);
+            return ref;
+        }
+        
+        private int addDict(Map<?, ?> map, int depth) {
+            int ref = reserve(true);
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>(map.entrySet());
+            try {
+                Collections.sort(entries, ENTRY_KEY_COMPARATOR);
+            } catch (ClassCastException e) {
+                // uncomparable, go unsorted
+            }
+            int count = entries.size();
+            int[] refs = new int[2 * count];
+            for (int i = 0; i < count; i++) {
+                Map.Entry<?, ?> entry = entries.get(i);
+                if (!(entry.getKey() instanceof CharSequence))
+                    throw new IllegalArgumentException("Plist dictionary keys must be strings: "
+                            + entry.getKey());
+                refs[i] = add(entry.getKey(), depth + 1);
+                refs[count + i] = add(entry.getValue(), depth + 1);
+            }
+            objects.set(ref, refs);
+            return ref;
+        }
+        
+        void write(OutputStream output) throws IOException {
+            int count = objects.size();
+            int refSize = bytesFor(count - 1);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+            long[] offsets = new long[count];
+            out.write(MAGIC);
+            for (int ref = 0; ref < count; ref++) {
+                offsets[ref] = out.size();
+                Object value = objects.get(ref);
+                if (value instanceof int[]) {
+                    int[] refs = (int[]) value;
+                    boolean dict = dicts.get(ref);
+                    writeHeader(out, dict ? DICT : ARRAY, dict ? refs.length / 2 : refs.length);
+                    for (int child : refs)
+                        writeSized(out, child, refSize);
+                } else {
+                    writeScalar(out, value);
+                }
+            }
+            long offsetTable = out.size();
+            int offsetSize = bytesFor(offsets[count - 1]);
+            for (long offset : offsets)
+                writeSized(out, offset, offsetSize);
+            out.write(new byte[6]);
+            out.writeByte(offsetSize);
+            out.writeByte(refSize);
+            out.writeLong(count);
+            out.writeLong(0);
+            out.writeLong(offsetTable);
+            out.flush();
+        }
+        
+        private static int bytesFor(long value) {
+            if (value <= 0xFF)
+                return 1;
+            if (value <= 0xFFFF)
+                return 2;
+            if (value <= 0xFFFFFFFFL)
+                return 4;
+            return 8;
+        }
+        
+        private static void writeSized(DataOutputStream out, long value, int size) throws IOException {
+            for (int shift = 8 * (size - 1); shift >= 0; shift -= 8)
+                out.writeByte((int) (value >>> shift));
+        }
+        
+        private static void writeHeader(DataOutputStream out, int type, int count) throws IOException {
+            if (count < 0x0F) {
+                out.writeByte(type << 4 | count);
+            } else {
+                out.writeByte(type << 4 | 0x0F);
+                writeInteger(out, count);
+            }
+        }
+        
+        private static void writeInteger(DataOutputStream out, long value) throws IOException {
+            // as in Apple's writer, only 8-byte integers are signed
+            int size = (value < 0 ? 8 : bytesFor(value));
+            out.writeByte(INT << 4 | Integer.numberOfTrailingZeros(size));
+            writeSized(out, value, size);
+        }
+        
+        private static void writeScalar(DataOutputStream out, Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NULL);
+            } else if (value instanceof Boolean) {
+                out.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+            } else if (value instanceof Long) {
+                writeInteger(out, (Long) value);
+            } else if (value instanceof BigInteger) {
+                byte[] bytes = ((BigInteger) value).toByteArray();
+                out.writeByte(INT << 4 | 4);
+                int pad = 16 - bytes.length;
+                for (int i = 0; i < pad; i++)
+                    out.writeByte(bytes[0] < 0 ? 0xFF : 0);
+                out.write(bytes);
+            } else if (value instanceof Float) {
+                out.writeByte(REAL << 4 | 2);
+                out.writeFloat((Float) value);
+            } else if (value instanceof Double) {
+                out.writeByte(REAL << 4 | 3);
+                out.writeDouble((Double) value);
+            } else if (value instanceof Date) {
+                out.writeByte(DATE);
+                out.writeDouble((((Date) value).getTime() - EPOCH_MILLIS) / 1000.0);
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[]) value;
+                writeHeader(out, DATA, bytes.length);
+                out.write(bytes);
+            } else {
+                String string = (String) value;
+                if (isAscii(string)) {
+                    writeHeader(out, ASCII, string.length());
+                    out.writeBytes(string);
+                } else {
+                    writeHeader(out, UTF16, string.length());
+                    out.writeChars(string);
+                }
+            }
+        }
+        
+        private static boolean isAscii(String string) {
+            for (int i = 0, length = string.length(); i < length; i++)
+                if (string.charAt(i) >= 0x80)
+                    return false;
+            return true;
+        }
+        
+    }
+    
+    static final class XMLPlistReader {
+        
+        private final XMLStreamReader reader;
+        
+        private final int maxDepth;
+        
+        private final List<Object> containers = new ArrayList<Object>();
+        
+        /** The pending <code>&lt;key&gt;</code> of each open dictionary. */
+        private final List<String> keys = new ArrayList<String>();
+        
+        XMLPlistReader(XMLStreamReader reader, int maxDepth) {
+            this.reader = reader;
+            this.maxDepth = maxDepth;
+        }
+        
+        Object readDocument() throws SyntaxError, IOException {
+            try {
+                try {
+                    return read();
+                } finally {
+                    reader.close();
+                }
+            } catch (XMLStreamException e) {
+                if (e.getNestedException() instanceof IOException)
+                    throw (IOException) e.getNestedException();
+                throw new SyntaxError(e);
+            }
+        }
+        
+        private SyntaxError error(String message) {
+            Location location = reader.getLocation();
+            return new SyntaxError(message, location.getLineNumber(), location.getColumnNumber());
+        }
+        
+        private Object read() throws SyntaxError, XMLStreamException {
+            boolean seenPlist = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT) {
+                    String name = reader.getLocalName();
+                    if (!name.equals("dict") && !name.equals("array"))
+                        throw error("Empty plist");
+                    int top = containers.size() - 1;
+                    if (keys.get(top) != null)
+                        throw error("Missing value for key " + keys.get(top));
+                    keys.remove(top);
+                    Object value = containers.remove(top);
+                    if (add(value))
+                        return value;
+                    continue;
+                }
+                if (event == XMLStreamConstants.CHARACTERS && !reader.isWhiteSpace())
+                    throw error("Unexpected text");
+                if (event != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                String name = reader.getLocalName();
+                if (name.equals("plist") && !seenPlist && containers.isEmpty()) {
+                    seenPlist = true;
+                } else if (name.equals("dict") || name.equals("array")) {
+                    if (containers.size() == maxDepth)
+                        throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+                    containers.add(name.equals("dict") ? new HashMap<Object, Object>()
+                            : new ArrayList<Object>());
+                    keys.add(null);
+                } else if (name.equals("key")) {
+                    int top = containers.size() - 1;
+                    if (top < 0 || !(containers.get(top) instanceof Map<?, ?>))
+                        throw error("Unexpected <key> outside of <dict>");
+                    if (keys.get(top) != null)
+                        throw error("Missing value for key " + keys.get(top));
+                    keys.set(top, reader.getElementText());
+                } else {
+                    Object value = readScalar(name);
+                    if (add(value))
+                        return value;
+                }
+            }
+            throw error("Unexpected end of plist");
+        }
+        
+        /**
+         * Adds the value to the innermost open container, or returns
+         * <code>true</code> if it is the top object.
+         */
+        @SuppressWarnings("unchecked")
+        private boolean add(Object value) throws SyntaxError {
+            int top = containers.size() - 1;
+            if (top < 0)
+                return true;
+            Object container = containers.get(top);
+            if (container instanceof List<?>) {
+                ((List<Object>) container).add(value);
+            } else {
+                String key = keys.get(top);
+                if (key == null)
+                    throw error("Missing <key> in <dict>");
+                ((Map<Object, Object>) container).put(key, value);
+                keys.set(top, null);
+            }
+            return false;
+        }
+        
+        private Object readScalar(String name) throws SyntaxError, XMLStreamException {
+            if (name.equals("string"))
+                return reader.getElementText();
+            if (name.equals("data"))
+                return readData();
+            if (name.equals("true") || name.equals("false")) {
+                reader.getElementText();
+                return Boolean.valueOf(name.equals("true"));
+            }
+            String text = reader.getElementText().trim();
+            try {
+                if (name.equals("integer"))
+                    return parseInteger(text);
+                if (name.equals("real"))
+                    return parseReal(text);
+                if (name.equals("date"))
+                    return Date.from(Instant.parse(text));
+            } catch (NumberFormatException e) {
+                throw error("Invalid <" + name + "> " + text);
+            } catch (DateTimeParseException e) {
+                throw error("Invalid <date> " + text);
+            }
+            throw error("Unsupported element <" + name + ">");
+        }
+        
+        private static Object parseInteger(String text) {
+            if (text.indexOf('x') < 0 && text.indexOf('X') < 0) {
+                if (text.length() < 19)
+                    return PlistReader.normalize(Long.parseLong(text));
+                return PlistReader.normalize(new BigInteger(text));
+            }
+            BigInteger value;
+            if (text.startsWith("0x") || text.startsWith("0X"))
+                value = new BigInteger(text.substring(2), 16);
+            else if (text.startsWith("-0x") || text.startsWith("-0X"))
+                value = new BigInteger(text.substring(3), 16).negate();
+            else
+                value = new BigInteger(text);
+            return PlistReader.normalize(value);
+        }
+        
+        private static Double parseReal(String text) {
+            if (text.equalsIgnoreCase("nan"))
+                return Double.NaN;
+            if (text.equalsIgnoreCase("inf") || text.equalsIgnoreCase("+inf")
+                    || text.equalsIgnoreCase("infinity") || text.equalsIgnoreCase("+infinity"))
+                return Double.POSITIVE_INFINITY;
+            if (text.equalsIgnoreCase("-inf") || text.equalsIgnoreCase("-infinity"))
+                return Double.NEGATIVE_INFINITY;
+            return Double.parseDouble(text);
+        }
+        
+        /**
+         * Decodes base64 text as it arrives from the parser, without building a
+         * string out of it.
+         */
+        private byte[] readData() throws SyntaxError, XMLStreamException {
+            byte[] result = new byte[64];
+            int length = 0;
+            int bits = 0, count = 0;
+            boolean padding = false;
+            for (;;) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.END_ELEMENT)
+                    break;
+                if (event == XMLStreamConstants.START_ELEMENT)
+                    throw error("Unexpected element inside <data>");
+                if (event != XMLStreamConstants.CHARACTERS && event != XMLStreamConstants.CDATA
+                        && event != XMLStreamConstants.SPACE)
+                    continue;
+                char[] text = reader.getTextCharacters();
+                int start = reader.getTextStart();
+                int end = start + reader.getTextLength();
+                int needed = length + (end - start) / 4 * 3 + 3;
+                if (needed > result.length)
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, needed));
+                for (int i = start; i < end; i++) {
+                    char c = text[i];
+                    if (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+                        continue;
+                    int value = (c < 128 ? BASE64_VALUES[c] : -1);
+                    if (c == '=') {
+                        padding = true;
+                        continue;
+                    }
+                    if (value < 0 || padding)
+                        throw error("Invalid base64 character '" + c + "' in <data>");
+                    bits = (bits << 6) | value;
+                    if (++count == 4) {
+                        result[length++] = (byte) (bits >> 16);
+                        result[length++] = (byte) (bits >> 8);
+                        result[length++] = (byte) bits;
+                        bits = count = 0;
+                    }
+                }
+            }
+            if (count == 1)
+                throw error("Truncated base64 in <data>");
+            if (count == 2) {
+                result[length++] = (byte) (bits >> 4);
+            } else if (count == 3) {
+                result[length++] = (byte) (bits >> 10);
+                result[length++] = (byte) (bits >> 2);
+            }
+            return Arrays.copyOf(result, length);
+        }
+        
+    }
+    
+    static final class XMLPlistWriter {
+        
+        private final XMLStreamWriter writer;
+        
+        private final char[] buffer = new char[4096];
+        
+        XMLPlistWriter(XMLStreamWriter writer) {
+            this.writer = writer;
+        }
+        
+        void writeDocument(Object value) throws XMLStreamException {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeCharacters("\n");
+            writer.writeDTD("<!DOCTYPE plist PUBLIC \"-//Apple//DTD PLIST 1.0//EN\" "
+                    + "\"http://www.apple.com/DTDs/PropertyList-1.0.dtd\">");
+            writer.writeCharacters("\n");
+            writer.writeStartElement("plist");
+            writer.writeAttribute("version", "1.0");
+            writer.writeCharacters("\n");
+            write(value, 0);
+            writer.writeEndElement();
+            writer.writeCharacters("\n");
+            writer.writeEndDocument();
+            writer.flush();
+        }
+        
+        private void indent(int depth) throws XMLStreamException {
+            for (int i = 0; i < depth; i++)
+                buffer[i] = '\t';
+            writer.writeCharacters(buffer, 0, depth);
+        }
+        
+        private void element(String name, String text) throws XMLStreamException {
+            writer.writeStartElement(name);
+            writer.writeCharacters(text);
+            writer.writeEndElement();
+        }
+        
+        private void write(Object value, int depth) throws XMLStreamException {
+            if (depth > DEFAULT_MAX_DEPTH)
+                throw new IllegalArgumentException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH
+                        + " exceeded");
+            indent(depth);
+            if (value == null)
+                throw new IllegalArgumentException("XML plists cannot contain null");
+            else if (value instanceof CharSequence || value instanceof Character)
+                element("string", value.toString());
+            else if (value instanceof Boolean)
+                writer.writeEmptyElement(value.toString());
+            else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                    || value instanceof Byte || value instanceof BigInteger)
+                element("integer", value.toString());
+            else if (value instanceof Number)
+                element("real", formatReal(((Number) value).doubleValue()));
+            else if (value instanceof Date)
+                element("date", DateTimeFormatter.ISO_INSTANT.format(((Date) value).toInstant()
+                        .truncatedTo(ChronoUnit.SECONDS)));
+            else if (value instanceof byte[])
+                writeData((byte[]) value);
+            else if (value instanceof Map<?, ?>)
+                writeDict((Map<?, ?>) value, depth);
+            else if (value instanceof Iterable<?>)
+                writeArray((Iterable<?>) value, depth);
+            else if (value.getClass().isArray())
+                writeArray(Arrays.asList((Object[]) value), depth);
+            else
+                throw new IllegalArgumentException("Cannot encode complex types into plists: "
+                        + value.getClass().getName());
+            writer.writeCharacters("\n");
+        }
+        
+        private static String formatReal(double value) {
+            if (Double.isNaN(value))
+                return "nan";
+            if (Double.isInfinite(value))
+                return (value > 0 ? "+infinity" : "-infinity");
+            return Double.toString(value);
+        }
+        
+        private void writeDict(Map<?, ?> map, int depth) throws XMLStreamException {
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>(map.entrySet());
+            try {
+                Collections.sort(entries, ENTRY_KEY_COMPARATOR);
+            } catch (ClassCastException e) {
+                // uncomparable, go unsorted
+            }
+            if (entries.isEmpty()) {
+                writer.writeEmptyElement("dict");
+                return;
+            }
+            writer.writeStartElement("dict");
+            writer.writeCharacters("\n");
+            for (Map.Entry<?, ?> entry : entries) {
+                if (!(entry.getKey() instanceof CharSequence))
+                    throw new IllegalArgumentException("Plist dictionary keys must be strings: "
+                            + entry.getKey());
+                if (entry.getValue() == null)
+                    continue;
+                indent(depth + 1);
+                element("key", entry.getKey().toString());
+                writer.writeCharacters("\n");
+                write(entry.getValue(), depth + 1);
+            }
+            indent(depth);
+            writer.writeEndElement();
+        }
+        
+        private void writeArray(Iterable<?> items, int depth) throws XMLStreamException {
+            Iterator<?> iterator = items.iterator();
+            if (!iterator.hasNext()) {
+                writer.writeEmptyElement("array");
+                return;
+            }
+            writer.writeStartElement("array");
+            writer.writeCharacters("\n");
+            while (iterator.hasNext())
+                write(iterator.next(), depth + 1);
+            indent(depth);
+            writer.writeEndElement();
+        }
+        
+        /** Writes base64 through the character buffer, without building a string. */
+        private void writeData(byte[] data) throws XMLStreamException {
+            writer.writeStartElement("data");
+            int length = 0;
+            for (int i = 0; i < data.length; i += 3) {
+                if (length > buffer.length - 4) {
+                    writer.writeCharacters(buffer, 0, length);
+                    length = 0;
+                }
+                int remaining = data.length - i;
+                int bits = (data[i] & 0xFF) << 16;
+                if (remaining > 1)
+                    bits |= (data[i + 1] & 0xFF) << 8;
+                if (remaining > 2)
+                    bits |= data[i + 2] & 0xFF;
+                buffer[length++] = BASE64_CHARS[bits >> 18];
+                buffer[length++] = BASE64_CHARS[(bits >> 12) & 0x3F];
+                buffer[length++] = (remaining > 1 ? BASE64_CHARS[(bits >> 6) & 0x3F] : '=');
+                buffer[length++] = (remaining > 2 ? BASE64_CHARS[bits & 0x3F] : '=');
+            }
+            writer.writeCharacters(buffer, 0, length);
+            writer.writeEndElement();
+        }
+        
+    }
+    
+    private static final char[] BASE64_CHARS = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ" + "abcdefghijklmnopqrstuvwxyz"
+            + "0123456789+/").toCharArray();
+    
+    private static final int[] BASE64_VALUES = new int[128];
+    
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        for (int i = 0; i < BASE64_CHARS.length; i++)
+            BASE64_VALUES[BASE64_CHARS[i]] = i;
+    }
+    
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+    
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newFactory();
+    
+    static {
+        // plists only need the DOCTYPE line to be skipped, never resolved
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+    }
+    
+    private final static Comparator<Map.Entry<?, ?>> ENTRY_KEY_COMPARATOR = new Comparator<Entry<?, ?>>() {
+        
+        @SuppressWarnings("unchecked")
+        public int compare(Entry<?, ?> o1, Entry<?, ?> o2) {
+            return ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+        }
+    };
+    
+}
@@ -0,0 +1,1119 @@
+package com.yoursway.jyp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+/**
+ * Encodes and decodes YAML, using the same data model as the JSON class.
+ * 
+ * The decoder handles block and flow collections, plain, quoted and block
+ * (<code>|</code>, <code>&gt;</code>) scalars, comments, multi-document streams
+ * and anchors. An alias yields the very object its anchor was put on, so
+ * repeated content is never copied. Plain scalars are resolved using the YAML
+ * 1.2 core schema; mapping keys are always strings, as in JSON. Of the tags,
+ * only <code>!!str</code> and <code>!!binary</code> are understood, the rest
+ * are ignored. Complex (<code>?</code>) keys and merge keys are not supported.
+ * 
+ * The encoder writes block style, with keys sorted and strings quoted only
+ * when they would otherwise read back as something else.
+ * 
+ * @author Andrey Tarantsov <andreyvit@gmail.com>
+ */
+public class YAML {
+    
+    public static final int DEFAULT_MAX_DEPTH = 1000;
+    
+    public static class SyntaxError extends Exception {
+        private static final long serialVersionUID = 1L;
+        
+        public SyntaxError(String s, int line, int column) {
+            super(s + " on line " + line + ", column " + column);
+        }
+        
+    }
+    
+    public static String encode(Object value) {
+        StringBuilder result = new StringBuilder();
+        try {
+            encode(value, result);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return result.toString();
+    }
+    
+    public static void encode(Object value, Appendable output) throws IOException {
+        new YAMLEncoder(output).writeDocument(value);
+    }
+    
+    /**
+     * Writes the given values as a multi-document stream, each one preceded by
+     * a <code>---</code> line.
+     */
+    public static void encodeDocuments(Iterable<?> documents, Appendable output) throws IOException {
+        YAMLEncoder encoder = new YAMLEncoder(output);
+        for (Object document : documents) {
+            output.append("---\n");
+            encoder.writeDocument(document);
+        }
+    }
+    
+    /**
+     * Decodes a single YAML document. An empty input decodes to
+     * <code>null</code>; use {@link #documents(Reader)} for streams with more
+     * than one document.
+     */
+    public static Object decode(String yaml) throws SyntaxError {
+        try {
+            return decode(new StringReader(yaml));
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+    
+    public static Object decode(Reader input) throws SyntaxError, IOException {
+        return decode(input, DEFAULT_MAX_DEPTH);
+    }
+    
+    public static Object decode(Reader input, int maxDepth) throws SyntaxError, IOException {
+        YAMLParser parser = new YAMLParser(input, maxDepth);
+        if (!parser.hasNext())
+            return null;
+        Object value = parser.next();
+        if (parser.hasNext())
+            throw parser.error("Expected a single document");
+        return value;
+    }
+    
+    /**
+     * Returns an iterator over the documents of a (possibly huge) YAML stream.
+     * Only the document being returned is held in memory; the input is read as
+     * the iteration proceeds. Errors are thrown as
+     * <code>IllegalStateException</code> with a <code>SyntaxError</code> cause,
+     * or as <code>UncheckedIOException</code>, after which the iteration should
+     * not be continued.
+     */
+    public static Iterator<Object> documents(Reader input) {
+        final YAMLParser parser = new YAMLParser(input, DEFAULT_MAX_DEPTH);
+        return new Iterator<Object>() {
+            
+            public boolean hasNext() {
+                try {
+                    return parser.hasNext();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            
+            public Object next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    return parser.next();
+                } catch (SyntaxError e) {
+                    throw new IllegalStateException("Malformed YAML document", e);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+    
+    static final class YAMLParser {
+        
+        private final BufferedReader input;
+        
+        private final int maxDepth;
+        
+        /** The current line, or <code>null</code> at the end of input. */
+        private String line = "";
+        
+        private int lineNumber;
+        
+        private int pos;
+        
+        private final Map<String, Object> anchors = new HashMap<String, Object>();
+        
+        YAMLParser(Reader input, int maxDepth) {
+            this.input = (input instanceof BufferedReader ? (BufferedReader) input
+                    : new BufferedReader(input));
+            this.maxDepth = maxDepth;
+        }
+        
+        SyntaxError error(String message) {
+            return new SyntaxError(message, lineNumber, pos + 1);
+        }
+        
+        private void nextLine() throws IOException {
+            line = input.readLine();
+            lineNumber++;
+            pos = 0;
+            if (lineNumber == 1 && line != null && line.startsWith("\uFEFF"))
+                line = line.substring(1);
+        }
+        
+        private char peek() {
+            return (line != null && pos < line.length() ? line.charAt(pos) : 0);
+        }
+        
+        private char peek(int offset) {
+            return (line != null && pos + offset < line.length() ? line.charAt(pos + offset) : 0);
+        }
+        
+        private static boolean isSpace(char c) {
+            return c == ' ' || c == '\t';
+        }
+        
+        private static boolean isFlowIndicator(char c) {
+            return c == ',' || c == '[' || c == ']' || c == '{' || c == '}';
+        }
+        
+        private void skipSpaces() {
+            while (line != null && pos < line.length() && isSpace(line.charAt(pos)))
+                pos++;
+        }
+        
+        /** Whether only whitespace or a comment is left on the current line. */
+        private boolean atLineEnd() {
+            if (pos >= line.length())
+                return true;
+            return line.charAt(pos) == '#' && (pos == 0 || isSpace(line.charAt(pos - 1)));
+        }
+        
+        /** Moves to the next content, skipping whitespace, comments and blank lines. */
+        private void skipToContent() throws IOException {
+            skipSpaces();
+            while (line != null && atLineEnd()) {
+                nextLine();
+                skipSpaces();
+            }
+        }
+        
+        private boolean atLineStart() {
+            for (int i = 0; i < pos; i++)
+                if (!isSpace(line.charAt(i)))
+                    return false;
+            return true;
+        }
+        
+        private boolean isMarker(String marker) {
+            return line != null && pos == 0 && line.startsWith(marker)
+                    && (line.length() == 3 || isSpace(line.charAt(3)));
+        }
+        
+        private boolean documentEnd() {
+            return line == null || isMarker("---") || isMarker("...");
+        }
+        
+        boolean hasNext() throws IOException {
+            for (;;) {
+                skipToContent();
+                if (line == null)
+                    return false;
+                if (pos == 0 && line.startsWith("%")) // directive
+                    nextLine();
+                else if (isMarker("..."))
+                    nextLine();
+                else
+                    return true;
+            }
+        }
+        
+        Object next() throws SyntaxError, IOException {
+            anchors.clear();
+            if (isMarker("---"))
+                pos = 3;
+            Object value = parseBlockNode(-1, false, 0);
+            skipToContent();
+            if (!documentEnd())
+                throw error("Unexpected content");
+            if (isMarker("..."))
+                nextLine();
+            return value;
+        }
+        
+        private Object parseBlockNode(int parentIndent, boolean sequenceAtParentIndent, int depth)
+                throws SyntaxError, IOException {
+            skipSpaces();
+            String anchor = null, tag = null;
+            for (;;) {
+                if (peek() == '&') {
+                    anchor = readName();
+                } else if (peek() == '!') {
+                    tag = readTag();
+                } else
+                    break;
+                skipSpaces();
+            }
+            Object value;
+            if (atLineEnd()) {
+                skipToContent();
+                if (!documentEnd()
+                        && (pos > parentIndent || sequenceAtParentIndent && pos == parentIndent
+                                && isSequenceEntry()))
+                    value = parseNodeHere(parentIndent, tag, true, depth);
+                else
+                    value = scalar("", true, tag);
+            } else {
+                // a mapping can start on the same line as a sequence entry, but not as a mapping key
+                value = parseNodeHere(parentIndent, tag, !sequenceAtParentIndent, depth);
+            }
+            if (anchor != null)
+                anchors.put(anchor, value);
+            return value;
+        }
+        
+        private Object parseNodeHere(int parentIndent, String tag, boolean mappingAllowed, int depth)
+                throws SyntaxError, IOException {
+            char c = peek();
+            if (c == '*')
+                return alias();
+            if (isSequenceEntry())
+                return parseBlockSequence(pos, depth);
+            if (c == '|' || c == '>')
+                return scalar(parseBlockScalar(parentIndent), false, tag);
+            if (c == '[' || c == '{')
+                return parseFlowCollection(depth);
+            if (c == '?' && (isSpace(peek(1)) || peek(1) == 0))
+                throw error("Complex mapping keys are not supported");
+            if (isMappingKeyAhead()) {
+                if (!mappingAllowed)
+                    throw error("Nested mapping must start on a new line");
+                return parseBlockMapping(pos, depth);
+            }
+            if (c == '"' || c == '\'')
+                return scalar(parseQuoted(), false, tag);
+            return scalar(parsePlain(parentIndent), true, tag);
+        }
+        
+        private boolean isSequenceEntry() {
+            return peek() == '-' && (isSpace(peek(1)) || peek(1) == 0);
+        }
+        
+        /** Whether the current line holds <code>key:</code> starting at the current position. */
+        private boolean isMappingKeyAhead() {
+            int length = line.length();
+            int i = pos;
+            char quote = line.charAt(i);
+            if (quote == '"' || quote == '\'') {
+                for (i++; i < length; i++) {
+                    char c = line.charAt(i);
+                    if (quote == '"' && c == '\\')
+                        i++;
+                    else if (c == quote && quote == '\'' && i + 1 < length && line.charAt(i + 1) == '\'')
+                        i++;
+                    else if (c == quote)
+                        break;
+                }
+                for (i++; i < length && isSpace(line.charAt(i)); i++)
+                    ;
+                return i < length && line.charAt(i) == ':'
+                        && (i + 1 == length || isSpace(line.charAt(i + 1)));
+            }
+            for (; i < length; i++) {
+                char c = line.charAt(i);
+                if (c == ':' && (i + 1 == length || isSpace(line.charAt(i + 1))))
+                    return true;
+                if (c == '#' && i > pos && isSpace(line.charAt(i - 1)))
+                    return false;
+            }
+            return false;
+        }
+        
+        private Map<Object, Object> parseBlockMapping(int indent, int depth) throws SyntaxError, IOException {
+            if (depth == maxDepth)
+                throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+            Map<Object, Object> map = new HashMap<Object, Object>();
+            for (;;) {
+                String key;
+                if (peek() == '"' || peek() == '\'') {
+                    key = parseQuoted();
+                    skipSpaces();
+                } else {
+                    int start = pos;
+                    while (!(peek() == ':' && (isSpace(peek(1)) || peek(1) == 0)))
+                        pos++;
+                    key = line.substring(start, pos).trim();
+                }
+                if (peek() != ':')
+                    throw error("Expected ':' after a mapping key");
+                if (map.containsKey(key))
+                    throw error("Duplicate key " + key);
+                pos++;
+                map.put(key, parseBlockNode(indent, true, depth + 1));
+                skipToContent();
+                if (documentEnd())
+                    break;
+                if (!atLineStart())
+                    throw error("Unexpected content");
+                if (pos < indent)
+                    break;
+                if (pos > indent)
+                    throw error("Bad indentation of a mapping entry");
+                if (isSequenceEntry() || !isMappingKeyAhead())
+                    throw error("Expected a mapping key");
+            }
+            return map;
+        }
+        
+        private List<Object> parseBlockSequence(int indent, int depth) throws SyntaxError, IOException {
+            if (depth == maxDepth)
+                throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+            List<Object> list = new ArrayList<Object>();
+            for (;;) {
+                pos++; // the dash
+                list.add(parseBlockNode(indent, false, depth + 1));
+                skipToContent();
+                if (documentEnd())
+                    break;
+                if (!atLineStart())
+                    throw error("Unexpected content");
+                if (pos < indent || pos == indent && !isSequenceEntry())
+                    break;
+                if (pos > indent)
+                    throw error("Bad indentation of a sequence entry");
+            }
+            return list;
+        }
+        
+        private Object alias() throws SyntaxError {
+            String name = readName();
+            if (!anchors.containsKey(name))
+                throw error("Unknown alias *" + name);
+            return anchors.get(name);
+        }
+        
+        /** Reads an anchor or alias name following the current character. */
+        private String readName() throws SyntaxError {
+            int start = ++pos;
+            while (pos < line.length() && !isSpace(line.charAt(pos)) && !isFlowIndicator(line.charAt(pos)))
+                pos++;
+            if (pos == start)
+                throw error("Missing anchor name");
+            return line.substring(start, pos);
+        }
+        
+        private String readTag() {
+            int start = pos;
+            while (pos < line.length() && !isSpace(line.charAt(pos)) && !isFlowIndicator(line.charAt(pos)))
+                pos++;
+            return line.substring(start, pos);
+        }
+        
+        private Object scalar(String text, boolean plain, String tag) throws SyntaxError {
+            if (tag != null && tag.equals("!!binary")) {
+                try {
+                    return Base64.getMimeDecoder().decode(text);
+                } catch (IllegalArgumentException e) {
+                    throw error("Invalid !!binary value");
+                }
+            }
+            if (plain && (tag == null || !tag.equals("!!str") && !tag.equals("!")))
+                return resolve(text);
+            return text;
+        }
+        
+        /**
+         * Reads a plain scalar in block context, folding continuation lines
+         * that are indented deeper than the parent node.
+         */
+        private String parsePlain(int parentIndent) throws IOException {
+            String text = readPlainLine();
+            if (pos < line.length())
+                return text; // stopped at a comment
+            StringBuilder result = null;
+            int breaks = 0;
+            for (;;) {
+                nextLine();
+                if (line == null)
+                    break;
+                skipSpaces();
+                if (pos == line.length()) {
+                    breaks++;
+                    continue;
+                }
+                if (pos <= parentIndent || line.charAt(pos) == '#' || isMarker("---") || isMarker("..."))
+                    break;
+                if (result == null)
+                    result = new StringBuilder(text);
+                if (breaks == 0)
+                    result.append(' ');
+                for (; breaks > 0; breaks--)
+                    result.append('\n');
+                result.append(readPlainLine());
+                if (pos < line.length())
+                    break;
+            }
+            return (result == null ? text : result.toString());
+        }
+        
+        /** Reads up to the end of line or a comment, without trailing whitespace. */
+        private String readPlainLine() {
+            int start = pos, length = line.length();
+            while (pos < length && !(line.charAt(pos) == '#' && isSpace(line.charAt(pos - 1))))
+                pos++;
+            int end = pos;
+            while (end > start && isSpace(line.charAt(end - 1)))
+                end--;
+            return line.substring(start, end);
+        }
+        
+        private String parseQuoted() throws SyntaxError, IOException {
+            char quote = line.charAt(pos++);
+            StringBuilder result = new StringBuilder();
+            int escaped = 0; // escaped characters are kept when trimming before a line break
+            for (;;) {
+                if (pos >= line.length()) {
+                    while (result.length() > escaped && isSpace(result.charAt(result.length() - 1)))
+                        result.setLength(result.length() - 1);
+                    int breaks = 0;
+                    for (;;) {
+                        nextLine();
+                        if (line == null)
+                            throw error("Unterminated quoted string");
+                        skipSpaces();
+                        if (pos < line.length())
+                            break;
+                        breaks++;
+                    }
+                    if (breaks == 0)
+                        result.append(' ');
+                    for (; breaks > 0; breaks--)
+                        result.append('\n');
+                    continue;
+                }
+                char c = line.charAt(pos++);
+                if (c == quote) {
+                    if (quote == '\'' && peek() == '\'') {
+                        pos++;
+                        result.append('\'');
+                        continue;
+                    }
+                    return result.toString();
+                }
+                if (c != '\\' || quote != '"') {
+                    result.append(c);
+                    continue;
+                }
+                if (pos >= line.length()) { // escaped line break joins the lines
+                    nextLine();
+                    if (line == null)
+                        throw error("Unterminated quoted string");
+                    skipSpaces();
+                    escaped = result.length();
+                    continue;
+                }
+                c = line.charAt(pos++);
+                switch (c) {
+                case '0':
+                    result.append('\0');
+                    break;
+                case 'a':
+                    result.append('\u0007');
+                    break;
+                case 'b':
+                    result.append('\b');
+                    break;
+                case 't':
+                case '\t':
+                    result.append('\t');
+                    break;
+                case 'n':
+                    result.append('\n');
+                    break;
+                case 'v':
+                    result.append('\u000B');
+                    break;
+                case 'f':
+                    result.append('\f');
+                    break;
+                case 'r':
+                    result.append('\r');
+                    break;
+                case 'e':
+                    result.append('\u001B');
+                    break;
+                case ' ':
+                case '"':
+                case '/':
+                case '\\':
+                    result.append(c);
+                    break;
+                case 'N':
+                    result.append('\u0085');
+                    break;
+                case '_':
+                    result.append('\u00A0');
+                    break;
+                case 'L':
+                    result.append('\u2028');
+                    break;
+                case 'P':
+                    result.append('\u2029');
+                    break;
+                case 'x':
+                    result.appendCodePoint(readHex(2));
+                    break;
+                case 'u':
+                    result.appendCodePoint(readHex(4));
+                    break;
+                case 'U':
+                    result.appendCodePoint(readHex(8));
+                    break;
+                default:
+                    pos--;
+                    throw error("Invalid escape sequence \\" + c);
+                }
+                escaped = result.length();
+            }
+        }
+        
+        private int readHex(int digits) throws SyntaxError {
+            if (pos + digits > line.length())
+                throw error("Invalid escape sequence");
+            try {
+                int value = Integer.parseUnsignedInt(line.substring(pos, pos + digits), 16);
+                if (!Character.isValidCodePoint(value))
+                    throw error("Invalid escape sequence");
+                pos += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw error("Invalid escape sequence");
+            }
+        }
+        
+        private String parseBlockScalar(int parentIndent) throws SyntaxError, IOException {
+            boolean literal = (line.charAt(pos++) == '|');
+            int chomping = 0; // -1 strip, 0 clip, 1 keep
+            int indent = -1;
+            for (int i = 0; i < 2; i++) {
+                char c = peek();
+                if (c == '-' || c == '+') {
+                    chomping = (c == '-' ? -1 : 1);
+                    pos++;
+                } else if (c >= '1' && c <= '9') {
+                    indent = Math.max(parentIndent, 0) + (c - '0');
+                    pos++;
+                }
+            }
+            skipSpaces();
+            if (!atLineEnd())
+                throw error("Unexpected text after a block scalar indicator");
+            StringBuilder result = new StringBuilder();
+            int breaks = 0;
+            boolean first = true, previousMoreIndented = false;
+            for (;;) {
+                nextLine();
+                if (line == null)
+                    break;
+                int spaces = 0;
+                while (spaces < line.length() && line.charAt(spaces) == ' ')
+                    spaces++;
+                if (spaces == line.length() && (indent < 0 || spaces <= indent)) {
+                    breaks++;
+                    continue;
+                }
+                if (indent < 0) {
+                    if (spaces <= parentIndent)
+                        break;
+                    indent = spaces;
+                }
+                if (spaces < indent || spaces == 0 && (isMarker("---") || isMarker("...")))
+                    break;
+                String text = line.substring(indent);
+                boolean moreIndented = (text.length() > 0 && isSpace(text.charAt(0)));
+                if (first) {
+                    for (; breaks > 0; breaks--)
+                        result.append('\n');
+                } else if (literal || moreIndented || previousMoreIndented) {
+                    for (breaks++; breaks > 0; breaks--)
+                        result.append('\n');
+                } else if (breaks == 0) {
+                    result.append(' ');
+                } else {
+                    for (; breaks > 0; breaks--)
+                        result.append('\n');
+                }
+                result.append(text);
+                first = false;
+                previousMoreIndented = moreIndented;
+            }
+            skipSpaces();
+            if (!first && chomping >= 0)
+                result.append('\n');
+            if (chomping > 0)
+                for (; breaks > 0; breaks--)
+                    result.append('\n');
+            return result.toString();
+        }
+        
+        /** Skips whitespace, comments and line breaks inside a flow collection. */
+        private void skipFlowSpace() throws SyntaxError, IOException {
+            for (;;) {
+                skipSpaces();
+                if (!atLineEnd())
+                    return;
+                nextLine();
+                if (line == null || isMarker("---") || isMarker("..."))
+                    throw error("Unterminated flow collection");
+            }
+        }
+        
+        private Object parseFlowCollection(int depth) throws SyntaxError, IOException {
+            if (depth == maxDepth)
+                throw error("Maximum nesting depth of " + maxDepth + " exceeded");
+            char open = line.charAt(pos++);
+            char close = (open == '[' ? ']' : '}');
+            List<Object> list = (open == '[' ? new ArrayList<Object>() : null);
+            Map<Object, Object> map = (open == '{' ? new HashMap<Object, Object>() : null);
+            for (;;) {
+                skipFlowSpace();
+                if (peek() == close) {
+                    pos++;
+                    return (list != null ? list : map);
+                }
+                Object item = parseFlowNode(depth + 1, map != null);
+                if (map != null && map.containsKey(item))
+                    throw error("Duplicate key " + item);
+                skipFlowSpace();
+                Object value = null;
+                boolean pair = (peek() == ':');
+                if (pair) {
+                    pos++;
+                    skipFlowSpace();
+                    if (peek() != ',' && peek() != close) {
+                        value = parseFlowNode(depth + 1, false);
+                        skipFlowSpace();
+                    }
+                }
+                if (map != null) {
+                    map.put(item, value);
+                } else if (pair) { // a single-pair mapping
+                    Map<Object, Object> single = new HashMap<Object, Object>();
+                    single.put(String.valueOf(item), value);
+                    list.add(single);
+                } else {
+                    list.add(item);
+                }
+                if (peek() == ',')
+                    pos++;
+                else if (peek() != close)
+                    throw error("Expected ',' or '" + close + "'");
+            }
+        }
+        
+        private Object parseFlowNode(int depth, boolean key) throws SyntaxError, IOException {
+            String anchor = null, tag = null;
+            for (;;) {
+                if (peek() == '&')
+                    anchor = readName();
+                else if (peek() == '!')
+                    tag = readTag();
+                else
+                    break;
+                skipFlowSpace();
+            }
+            Object value;
+            char c = peek();
+            if (c == '*') {
+                value = alias();
+            } else if (c == '[' || c == '{') {
+                if (key)
+                    throw error("Complex mapping keys are not supported");
+                value = parseFlowCollection(depth);
+            } else if (c == '"' || c == '\'') {
+                value = scalar(parseQuoted(), false, tag);
+            } else {
+                String text = parseFlowPlain();
+                value = (key ? text : scalar(text, true, tag));
+            }
+            if (anchor != null)
+                anchors.put(anchor, value);
+            return value;
+        }
+        
+        private String parseFlowPlain() throws SyntaxError, IOException {
+            StringBuilder result = new StringBuilder();
+            for (;;) {
+                int start = pos, length = line.length();
+                for (; pos < length; pos++) {
+                    char c = line.charAt(pos);
+                    if (isFlowIndicator(c))
+                        break;
+                    if (c == ':' && (pos + 1 == length || isSpace(line.charAt(pos + 1))
+                            || isFlowIndicator(line.charAt(pos + 1))))
+                        break;
+                    if (c == '#' && pos > start && isSpace(line.charAt(pos - 1)))
+                        break;
+                }
+                int end = pos;
+                while (end > start && isSpace(line.charAt(end - 1)))
+                    end--;
+                result.append(line, start, end);
+                if (pos < length && line.charAt(pos) != '#')
+                    return result.toString();
+                skipFlowSpace();
+                char c = peek();
+                if (isFlowIndicator(c) || c == ':')
+                    return result.toString();
+                result.append(' ');
+            }
+        }
+        
+    }
+    
+    /**
+     * Resolves a plain scalar according to the YAML 1.2 core schema: nulls,
+     * booleans, decimal, octal (<code>0o</code>) and hex integers, and floats
+     * including <code>.inf</code> and <code>.nan</code>. Anything else is a
+     * string.
+     */
+    static Object resolve(String text) {
+        int length = text.length();
+        if (length == 0)
+            return null;
+        switch (text.charAt(0)) {
+        case '~':
+            return (length == 1 ? null : text);
+        case 'n':
+        case 'N':
+            return (text.equals("null") || text.equals("Null") || text.equals("NULL") ? null : text);
+        case 't':
+        case 'T':
+            return (text.equals("true") || text.equals("True") || text.equals("TRUE") ? Boolean.TRUE : text);
+        case 'f':
+        case 'F':
+            return (text.equals("false") || text.equals("False") || text.equals("FALSE") ? Boolean.FALSE
+                    : text);
+        case '.':
+        case '+':
+        case '-':
+        case '0':
+        case '1':
+        case '2':
+        case '3':
+        case '4':
+        case '5':
+        case '6':
+        case '7':
+        case '8':
+        case '9':
+            return resolveNumber(text);
+        default:
+            return text;
+        }
+    }
+    
+    private static Object resolveNumber(String text) {
+        int length = text.length();
+        if (length > 2 && text.charAt(0) == '0' && (text.charAt(1) == 'x' || text.charAt(1) == 'o')) {
+            int radix = (text.charAt(1) == 'x' ? 16 : 8);
+            for (int i = 2; i < length; i++)
+                if (Character.digit(text.charAt(i), radix) < 0)
+                    return text;
+            return normalize(new BigInteger(text.substring(2), radix));
+        }
+        int i = 0;
+        if (text.charAt(0) == '+' || text.charAt(0) == '-')
+            i++;
+        String rest = text.substring(i);
+        if (rest.equals(".inf") || rest.equals(".Inf") || rest.equals(".INF"))
+            return (text.charAt(0) == '-' ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+        if (i == 0 && (rest.equals(".nan") || rest.equals(".NaN") || rest.equals(".NAN")))
+            return Double.NaN;
+        int digits = 0;
+        for (; i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++)
+            digits++;
+        if (i == length) {
+            if (digits == 0)
+                return text;
+            if (digits <= 9)
+                return Integer.parseInt(text);
+            if (digits <= 18)
+                return normalize(BigInteger.valueOf(Long.parseLong(text)));
+            return normalize(new BigInteger(text));
+        }
+        if (text.charAt(i) == '.')
+            for (i++; i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9'; i++)
+                digits++;
+        if (digits == 0)
+            return text;
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i++;
+            if (i < length && (text.charAt(i) == '+' || text.charAt(i) == '-'))
+                i++;
+            int exponentStart = i;
+            while (i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9')
+                i++;
+            if (i == exponentStart)
+                return text;
+        }
+        return (i == length ? (Object) Double.parseDouble(text) : text);
+    }
+    
+    private static Object normalize(BigInteger value) {
+        if (value.bitLength() < 32)
+            return value.intValue();
+        if (value.bitLength() < 64)
+            return value.longValue();
+        return value;
+    }
+    
+    static final class YAMLEncoder {
+        
+        private final Appendable output;
+        
+        YAMLEncoder(Appendable output) {
+            this.output = output;
+        }
+        
+        void writeDocument(Object value) throws IOException {
+            List<?> list = asList(value);
+            if (value instanceof Map<?, ?> && !((Map<?, ?>) value).isEmpty())
+                writeMapping((Map<?, ?>) value, 0, false, 0);
+            else if (list != null && !list.isEmpty())
+                writeSequence(list, 0, false, 0);
+            else
+                writeScalar(value, 2);
+        }
+        
+        private static List<?> asList(Object value) {
+            if (value instanceof List<?>)
+                return (List<?>) value;
+            if (value instanceof Iterable<?>) {
+                List<Object> list = new ArrayList<Object>();
+                for (Object item : (Iterable<?>) value)
+                    list.add(item);
+                return list;
+            }
+            if (value != null && value.getClass().isArray() && !(value instanceof byte[]))
+                return Arrays.asList((Object[]) value);
+            return null;
+        }
+        
+        private void indent(int indent) throws IOException {
+            for (int i = 0; i < indent; i++)
+                output.append(' ');
+        }
+        
+        private void writeMapping(Map<?, ?> map, int indent, boolean inline, int depth) throws IOException {
+            if (depth > DEFAULT_MAX_DEPTH)
+                throw new IllegalArgumentException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH
+                        + " exceeded");
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>(map.entrySet());
+            try {
+                Collections.sort(entries, ENTRY_KEY_COMPARATOR);
+            } catch (ClassCastException e) {
+                // uncomparable, go unsorted
+            }
+            for (Map.Entry<?, ?> entry : entries) {
+                if (!inline)
+                    indent(indent);
+                inline = false;
+                Object key = entry.getKey();
+                if (key instanceof Map<?, ?> || asList(key) != null)
+                    throw new IllegalArgumentException("YAML mapping keys must be scalars: " + key);
+                String name = String.valueOf(key);
+                if (isPlainSafe(name))
+                    output.append(name);
+                else
+                    writeQuoted(name);
+                output.append(':');
+                Object value = entry.getValue();
+                List<?> list = asList(value);
+                if (value instanceof Map<?, ?> && !((Map<?, ?>) value).isEmpty()) {
+                    output.append('\n');
+                    writeMapping((Map<?, ?>) value, indent + 2, false, depth + 1);
+                } else if (list != null && !list.isEmpty()) {
+                    output.append('\n');
+                    writeSequence(list, indent, false, depth + 1);
+                } else {
+                    output.append(' ');
+                    writeScalar(value, indent + 2);
+                }
+            }
+        }
+        
+        private void writeSequence(List<?> items, int indent, boolean inline, int depth) throws IOException {
+            if (depth > DEFAULT_MAX_DEPTH)
+                throw new IllegalArgumentException("Maximum nesting depth of " + DEFAULT_MAX_DEPTH
+                        + " exceeded");
+            for (Object item : items) {
+                if (!inline)
+                    indent(indent);
+                inline = false;
+                output.append("- ");
+                List<?> list = asList(item);
+                if (item instanceof Map<?, ?> && !((Map<?, ?>) item).isEmpty())
+                    writeMapping((Map<?, ?>) item, indent + 2, true, depth + 1);
+                else if (list != null && !list.isEmpty())
+                    writeSequence(list, indent + 2, true, depth + 1);
+                else
+                    writeScalar(item, indent + 2);
+            }
+        }
+        
+        /** Writes a scalar or an empty collection, followed by a line break. */
+        private void writeScalar(Object value, int blockIndent) throws IOException {
+            if (value == null) {
+                output.append("null");
+            } else if (value instanceof CharSequence || value instanceof Character) {
+                String string = value.toString();
+                if (isPlainSafe(string))
+                    output.append(string);
+                else if (isLiteralSafe(string)) {
+                    writeLiteral(string, blockIndent);
+                    return;
+                } else
+                    writeQuoted(string);
+            } else if (value instanceof Boolean || value instanceof Integer || value instanceof Long
+                    || value instanceof Short || value instanceof Byte || value instanceof BigInteger) {
+                output.append(value.toString());
+            } else if (value instanceof Double || value instanceof Float) {
+                double number = ((Number) value).doubleValue();
+                if (Double.isNaN(number))
+                    output.append(".nan");
+                else if (Double.isInfinite(number))
+                    output.append(number > 0 ? ".inf" : "-.inf");
+                else
+                    output.append(value.toString());
+            } else if (value instanceof Number) {
+                output.append(value.toString());
+            } else if (value instanceof byte[]) {
+                output.append("!!binary \"").append(Base64.getEncoder().encodeToString((byte[]) value))
+                        .append('"');
+            } else if (value instanceof Map<?, ?>) {
+                output.append("{}");
+            } else if (asList(value) != null) {
+                output.append("[]");
+            } else {
+                throw new IllegalArgumentException("Cannot encode complex types into YAML: "
+                        + value.getClass().getName());
+            }
+            output.append('\n');
+        }
+        
+        /** Whether the string can be written unquoted and still read back as the same string. */
+        private static boolean isPlainSafe(String string) {
+            int length = string.length();
+            if (length == 0 || !(resolve(string) instanceof String))
+                return false;
+            char first = string.charAt(0), last = string.charAt(length - 1);
+            if ("-?:,[]{}#&*!|>'\"%@`".indexOf(first) >= 0 || first == ' ' || last == ' ' || last == ':'
+                    || string.startsWith("..."))
+                return false;
+            // booleans in YAML 1.1, which many parsers still follow
+            String lower = string.toLowerCase();
+            if (lower.equals("y") || lower.equals("n") || lower.equals("yes") || lower.equals("no")
+                    || lower.equals("on") || lower.equals("off"))
+                return false;
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (isSpecial(c))
+                    return false;
+                if (c == ':' && string.charAt(i + 1) == ' ' || c == '#' && string.charAt(i - 1) == ' ')
+                    return false;
+            }
+            return true;
+        }
+        
+        /** Control and other characters that are only safe to write escaped. */
+        private static boolean isSpecial(char c) {
+            return c < ' ' || c >= 0x7F && c <= 0x9F || c == '\uFEFF' || c == '\u2028' || c == '\u2029';
+        }
+        
+        /** Whether a multi-line string can be written as a literal block scalar. */
+        private static boolean isLiteralSafe(String string) {
+            int length = string.length();
+            boolean lineStart = true, hasContent = false;
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                if (c == '\n') {
+                    lineStart = true;
+                    continue;
+                }
+                if (c != '\t' && isSpecial(c) || lineStart && (c == ' ' || c == '\t'))
+                    return false;
+                lineStart = false;
+                hasContent = true;
+            }
+            return hasContent && string.indexOf('\n') >= 0;
+        }
+        
+        private void writeLiteral(String string, int indent) throws IOException {
+            int end = string.length();
+            while (end > 0 && string.charAt(end - 1) == '\n')
+                end--;
+            int trailing = string.length() - end;
+            output.append(trailing == 0 ? "|-" : trailing == 1 ? "|" : "|+").append('\n');
+            for (int start = 0; start <= end;) {
+                int next = string.indexOf('\n', start);
+                if (next < 0 || next > end)
+                    next = end;
+                if (next > start) {
+                    indent(indent);
+                    output.append(string, start, next);
+                }
+                output.append('\n');
+                start = next + 1;
+            }
+            for (int i = 1; i < trailing; i++)
+                output.append('\n');
+        }
+        
+        private void writeQuoted(String string) throws IOException {
+            output.append('"');
+            for (int i = 0, length = string.length(); i < length; i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                case '"':
+                    output.append("\\\"");
+                    break;
+                case '\\':
+                    output.append("\\\\");
+                    break;
+                case '\n':
+                    output.append("\\n");
+                    break;
+                case '\t':
+                    output.append("\\t");
+                    break;
+                case '\r':
+                    output.append("\\r");
+                    break;
+                default:
+                    if (isSpecial(c))
+                        output.append(String.format("\\u%04x", (int) c));
+                    else
+                        output.append(c);
+                }
+            }
+            output.append('"');
+        }
+        
+    }
+    
+    private final static Comparator<Map.Entry<?, ?>> ENTRY_KEY_COMPARATOR = new Comparator<Entry<?, ?>>() {
+        
+        @SuppressWarnings("unchecked")
+        public int compare(Entry<?, ?> o1, Entry<?, ?> o2) {
+            return ((Comparable<Object>) o1.getKey()).compareTo(o2.getKey());
+        }
+    };
+    
+}